@@ -37,6 +37,7 @@ public class LuaVm {
 	public LuaVm(VmOptions options) {
 		this.options = options;
 		this.globals = new LuaTable();
+		globals.trackKeyChanges(); // Globals are mostly read, allow linking them as constants
 		installLibraries();
 	}
 	
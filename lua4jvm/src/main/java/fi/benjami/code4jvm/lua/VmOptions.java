@@ -2,13 +2,23 @@ package fi.benjami.code4jvm.lua;
 
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.lang.reflect.Modifier;
 import java.nio.file.FileSystem;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import fi.benjami.code4jvm.lua.ffi.LuaLibrary;
 import fi.benjami.code4jvm.lua.stdlib.BasicLib;
+import fi.benjami.code4jvm.lua.stdlib.MathLib;
+import fi.benjami.code4jvm.lua.stdlib.StringLib;
+import fi.benjami.code4jvm.lua.stdlib.TableLib;
 
 /**
  * lua4jvm Lua VM options.
@@ -22,10 +32,12 @@ public class VmOptions implements Cloneable {
 		return new Builder();
 	}
 
-	private Collection<LuaLibrary> libraries = List.of(BasicLib.INSTANCE);
+	private Collection<LuaLibrary> libraries = List.of(BasicLib.INSTANCE, StringLib.INSTANCE, TableLib.INSTANCE, MathLib.INSTANCE);
 	private Optional<PrintStream> stdOut = Optional.of(System.out);
 	private Optional<InputStream> stdIn = Optional.empty(); // By default, don't let VM capture user input!
 	private Optional<FileSystem> fileSystem = Optional.empty();
+	private Set<Class<?>> javaClasses = Set.of(); // By default, don't let scripts index Java objects
+	private Map<Class<?>, Object> services = Map.of();
 	
 	private VmOptions() {}
 	
@@ -57,6 +69,42 @@ public class VmOptions implements Cloneable {
 			return this;
 		}
 		
+		/**
+		 * Allows Lua code to access public fields, getters and instance
+		 * methods of Java objects that are instances of the given classes.
+		 * Only members of these classes are accessible, even if objects
+		 * are instances of subclasses. If an object is an instance of
+		 * multiple allowed classes, the most specific one is used; if none
+		 * of them is more specific, the first given one is used.
+		 * @param classes Allowed classes.
+		 * @return This builder.
+		 * @throws IllegalArgumentException When a class is not public.
+		 */
+		public Builder javaClasses(Class<?>... classes) {
+			for (var type : classes) {
+				if (!Modifier.isPublic(type.getModifiers())) {
+					throw new IllegalArgumentException("class " + type.getName() + " is not public");
+				}
+			}
+			opts.javaClasses = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(classes)));
+			return this;
+		}
+		
+		/**
+		 * Adds a service that is {@link fi.benjami.code4jvm.lua.ffi.Inject injected}
+		 * to Java functions that have a parameter of the given type.
+		 * @param <T> Type of the service.
+		 * @param type Type of the service.
+		 * @param service The service.
+		 * @return This builder.
+		 */
+		public <T> Builder service(Class<T> type, T service) {
+			var services = new HashMap<>(opts.services);
+			services.put(type, service);
+			opts.services = Map.copyOf(services);
+			return this;
+		}
+		
 		public VmOptions build() {
 			try {
 				return (VmOptions) opts.clone();
@@ -81,4 +129,12 @@ public class VmOptions implements Cloneable {
 	public Optional<FileSystem> fileSystem() {
 		return fileSystem;
 	}
+	
+	public Set<Class<?>> javaClasses() {
+		return javaClasses;
+	}
+	
+	public <T> T service(Class<T> type) {
+		return type.cast(services.get(type));
+	}
 }
@@ -7,6 +7,7 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import fi.benjami.code4jvm.Constant;
 import fi.benjami.code4jvm.Type;
@@ -22,6 +23,8 @@ import fi.benjami.code4jvm.lua.runtime.LuaBox;
 import fi.benjami.code4jvm.lua.runtime.LuaFunction;
 import fi.benjami.code4jvm.statement.Return;
 import fi.benjami.code4jvm.typedef.ClassDef;
+import fi.benjami.code4jvm.typedef.ClassLoaderPool;
+import fi.benjami.code4jvm.util.StaticClassData;
 
 /**
  * Compiles specializations for {@link LuaFunction functions} and (in future)
@@ -42,6 +45,26 @@ public class FunctionCompiler {
 	
 	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
 	
+	/**
+	 * Class loaders for generated classes.
+	 */
+	static final ClassLoaderPool CLASS_LOADERS = new ClassLoaderPool(FunctionCompiler.class.getClassLoader(), 32);
+	
+	/**
+	 * Suffix for names of generated classes. Each specialization needs a
+	 * unique name, because a class loader can't contain two classes with
+	 * same name.
+	 */
+	private static final AtomicLong CLASS_COUNTER = new AtomicLong();
+	
+	/**
+	 * Gets statistics of class loaders used for generated code.
+	 * @return Class loader statistics.
+	 */
+	public static ClassLoaderPool.Stats classLoaderStats() {
+		return CLASS_LOADERS.stats();
+	}
+	
 	/**
 	 * Fetches or compiles a specialization for given Lua function.
 	 * @param argTypes Argument types to use for compilation.
@@ -66,21 +89,17 @@ public class FunctionCompiler {
 			var ctx = LuaContext.forFunction(function.owner(), function.type(), truncateReturn, argTypes);
 			
 			CompilerPass.setCurrent(CompilerPass.CODEGEN);
-			var code = generateCode(ctx, function.type(), argTypes, upvalueTypes, function.upvalues());
+			var className = toClassName(function.type().moduleName()) + "$" + CLASS_COUNTER.incrementAndGet();
+			var code = generateCode(ctx, className, function.type(), argTypes, upvalueTypes, function.upvalues());
 			CompilerPass.setCurrent(null);
 			
 			try {
-				// Load the class with single-use class loader
+				// Load the class with a pooled class loader
 				// Using hidden classes would be preferable, but JVM hides them from stack frames
 				// ... which really screws up stack traces of Lua code
 				// See https://bugs.openjdk.org/browse/JDK-8212620
-				var implClass = SingleClassLoader.load(toClassName(function.type().moduleName()), code);
-				try {
-					LOOKUP.findStaticSetter(implClass, ClassData.FIELD_NAME, Object[].class)
-							.invokeExact(ctx.allClassData());
-				} catch (Throwable e) {
-					throw new AssertionError(e); // We just generated the field!
-				}
+				var implClass = CLASS_LOADERS.define(className, code);
+				StaticClassData.set(LOOKUP, implClass, ctx.allClassData());
 				
 				// Cache the constructor and actual function MHs
 				// They'll hold references to the underlying class
@@ -132,14 +151,14 @@ public class FunctionCompiler {
 		}
 	}
 	
-	private static byte[] generateCode(LuaContext ctx, LuaType.Function type,
+	private static byte[] generateCode(LuaContext ctx, String className, LuaType.Function type,
 			LuaType[] argTypes, LuaType[] upvalueTypes, Object[] upvalues) {
 		// Create class that wraps the method acting as function body
-		var def = ClassDef.create(toClassName(type.moduleName()), Access.PUBLIC);
-		def.sourceFile(type.moduleName());
+		var def = ClassDef.create(className, Access.PUBLIC);
+		def.sourceFile(type.moduleName()); // Keeps stack traces readable despite the suffix
 		
 		// Class data constants
-		def.addStaticField(Access.PUBLIC, Type.OBJECT.array(1), ClassData.FIELD_NAME);
+		StaticClassData.addField(def);
 		
 		// Add fields for upvalues
 		for (var i = 0; i < upvalueTypes.length; i++) {
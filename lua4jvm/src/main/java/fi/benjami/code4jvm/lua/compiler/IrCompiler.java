@@ -442,7 +442,21 @@ public class IrCompiler extends LuaBaseVisitor<IrNode> {
 
 	@Override
 	public IrNode visitStringConcat(StringConcatContext ctx) {
-		return new StringConcatExpr(List.of(visit(ctx.lhs), visit(ctx.rhs)));
+		// Flatten chained concatenations (a .. b .. c) to one node
+		// Concatenation is right associative, so only rhs can be flattened
+		// (a .. b) .. c must not become a .. (b .. c), or metamethods would see wrong operands
+		var parts = new ArrayList<IrNode>();
+		parts.add(visit(ctx.lhs));
+		addConcatParts(parts, visit(ctx.rhs));
+		return new StringConcatExpr(parts);
+	}
+	
+	private void addConcatParts(List<IrNode> parts, IrNode node) {
+		if (node.concreteNode() instanceof StringConcatExpr concat) {
+			parts.addAll(concat.parts());
+		} else {
+			parts.add(node);
+		}
 	}
 
 	@Override
@@ -16,6 +16,7 @@ import fi.benjami.code4jvm.lua.ir.LuaVariable;
 import fi.benjami.code4jvm.lua.ir.TableField;
 import fi.benjami.code4jvm.lua.ir.expr.LuaConstant;
 import fi.benjami.code4jvm.lua.runtime.LuaBox;
+import fi.benjami.code4jvm.util.StaticClassData;
 
 public class LuaContext {
 	
@@ -262,7 +263,7 @@ public class LuaContext {
 	public Constant addClassData(Object value, Type type) {
 		var index = classData.size();
 		classData.add(value);
-		return Constant.dynamic(type, ClassData.BOOTSTRAP, Constant.of(index));
+		return StaticClassData.constantAt(type, index);
 	}
 	
 	public Object[] allClassData() {
@@ -1,7 +1,5 @@
 package fi.benjami.code4jvm.lua.compiler;
 
-import java.lang.invoke.MethodHandles;
-
 import fi.benjami.code4jvm.Condition;
 import fi.benjami.code4jvm.Constant;
 import fi.benjami.code4jvm.Type;
@@ -13,31 +11,22 @@ import fi.benjami.code4jvm.typedef.ClassDef;
 
 public class ShapeGenerator {
 	
-	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
-	
 	public static Class<?> compile(CompiledShape type) {
 		var code = generateCode(type);
 		
-		// FIXME this probably leaks memory
-		try {
-			return LOOKUP.defineClass(code);
-		} catch (IllegalAccessException e) {
-			throw new AssertionError(e);
-		}
+		// Shapes can be unloaded with other generated classes
+		// NOTE: function classes can't refer to shapes by name, because their loaders don't see each other
+		return FunctionCompiler.CLASS_LOADERS.define(className(type), code);
+	}
 		
-		// NOTE: this won't work, because hidden classes need to refer to shapes
-//		var loader = new SingleClassLoader(code);
-//		try {
-//			return loader.loadClass("fi.benjami.code4jvm.lua.compiler.Shape");
-//		} catch (ClassNotFoundException e) {
-//			throw new AssertionError(e);
-//		}
+	private static String className(CompiledShape shape) {
+		return "fi.benjami.code4jvm.lua.compiler.Shape" + System.identityHashCode(shape);
 	}
 	
 	private static byte[] generateCode(CompiledShape shape) {
 		var keys = shape.includedKeys();
 		
-		var def = ClassDef.create("fi.benjami.code4jvm.lua.compiler.Shape" + System.identityHashCode(shape), Access.PUBLIC);
+		var def = ClassDef.create(className(shape), Access.PUBLIC);
 		def.superClass(LuaTable.TYPE);
 		
 		// TODO specialized (=number) array path? or do it runtime?
@@ -0,0 +1,163 @@
+package fi.benjami.code4jvm.lua.ffi;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fi.benjami.code4jvm.lua.LuaVm;
+
+/**
+ * Members of a Java class that Lua code can access when indexing objects of
+ * it. These are resolved once per class and shared by all Lua VMs; which
+ * classes can be accessed is controlled by
+ * {@link fi.benjami.code4jvm.lua.VmOptions#javaClasses() VM options}.
+ * Fields and properties take precedence over methods with same name.
+ *
+ */
+public class JavaMembers {
+	
+	private static final ClassValue<JavaMembers> MEMBERS = new ClassValue<>() {
+		@Override
+		protected JavaMembers computeValue(Class<?> type) {
+			return new JavaMembers(type);
+		}
+	};
+	
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+	
+	/**
+	 * Gets members of a class.
+	 * @param type Java class.
+	 * @return Public instance members of the class.
+	 */
+	public static JavaMembers of(Class<?> type) {
+		return MEMBERS.get(type);
+	}
+	
+	/**
+	 * Gets members of an object that the given VM is allowed to access.
+	 * @param vm Lua VM.
+	 * @param obj Java object.
+	 * @return Members of the most specific allowed class the object is an
+	 * instance of, or null if it is not allowed to be accessed.
+	 */
+	public static JavaMembers of(LuaVm vm, Object obj) {
+		Class<?> best = null;
+		for (var type : vm.options().javaClasses()) {
+			// On ties, prefer the class that was allowed first
+			if (type.isInstance(obj) && (best == null || best != type && best.isAssignableFrom(type))) {
+				best = type;
+			}
+		}
+		return best != null ? of(best) : null;
+	}
+	
+	private final Map<String, MethodHandle> getters;
+	private final Map<String, JavaFunction> methods;
+	
+	private JavaMembers(Class<?> type) {
+		var lookup = MethodHandles.publicLookup();
+		this.getters = new HashMap<>();
+		var methodsByName = new HashMap<String, List<Method>>();
+		try {
+			for (var method : type.getMethods()) {
+				if (!isAccessible(method.getModifiers(), method.getDeclaringClass())
+						|| method.isBridge() || method.getDeclaringClass() == Object.class) {
+					continue;
+				}
+				methodsByName.computeIfAbsent(method.getName(), k -> new ArrayList<>()).add(method);
+				
+				// Getters, e.g. getFoo() and isFoo() are also available as property foo
+				var property = propertyName(method);
+				if (property != null) {
+					getters.putIfAbsent(property, asGetter(lookup.unreflect(method)));
+				}
+			}
+			// Public fields take precedence over getters
+			for (var field : type.getFields()) {
+				if (isAccessible(field.getModifiers(), field.getDeclaringClass())) {
+					getters.put(field.getName(), asGetter(lookup.unreflectGetter(field)));
+				}
+			}
+			if (type.isRecord() && Modifier.isPublic(type.getModifiers())) {
+				// Record components are properties, even though their accessors lack the get prefix
+				for (var component : type.getRecordComponents()) {
+					getters.put(component.getName(), asGetter(lookup.unreflect(component.getAccessor())));
+				}
+			}
+		} catch (IllegalAccessException e) {
+			throw new AssertionError(e); // Only public members are accessed
+		}
+		
+		var binder = new LuaBinder(lookup);
+		this.methods = new HashMap<>();
+		for (var entry : methodsByName.entrySet()) {
+			methods.put(entry.getKey(), binder.bindFunction(entry.getKey(), entry.getValue()));
+		}
+	}
+	
+	private static MethodHandle asGetter(MethodHandle handle) {
+		return LuaBinder.toLuaReturn(handle).asType(GETTER_TYPE);
+	}
+	
+	private static boolean isAccessible(int modifiers, Class<?> declaringClass) {
+		return !Modifier.isStatic(modifiers) && Modifier.isPublic(declaringClass.getModifiers());
+	}
+	
+	private static String propertyName(Method method) {
+		if (method.getParameterCount() != 0 || method.getReturnType() == void.class) {
+			return null;
+		}
+		var name = method.getName();
+		var prefix = name.startsWith("get") ? 3
+				: name.startsWith("is") && method.getReturnType() == boolean.class ? 2 : 0;
+		if (prefix == 0 || name.length() == prefix || !Character.isUpperCase(name.charAt(prefix))) {
+			return null;
+		}
+		return Character.toLowerCase(name.charAt(prefix)) + name.substring(prefix + 1);
+	}
+	
+	/**
+	 * Gets a getter for a field or property.
+	 * @param name Name of the field or property.
+	 * @return Method handle that takes the object and returns value of the
+	 * field, or null if there is no such field or property.
+	 */
+	public MethodHandle getter(String name) {
+		return getters.get(name);
+	}
+	
+	/**
+	 * Gets an instance method. The receiver is the first argument of the
+	 * function, so that it can be called with Lua method call syntax.
+	 * @param name Name of the method.
+	 * @return Function that contains all overloads of the method, or null if
+	 * there is no such method.
+	 */
+	public JavaFunction method(String name) {
+		return methods.get(name);
+	}
+	
+	/**
+	 * Gets value of a member, without linking.
+	 * @param obj Java object.
+	 * @param name Name of the member.
+	 * @return Value of a {@link #getter(String) field or property}, a
+	 * {@link #method(String) method} if there is no field or property with
+	 * the name, or null if there is no such member.
+	 * @throws Throwable When a getter throws.
+	 */
+	public Object get(Object obj, String name) throws Throwable {
+		var getter = getters.get(name);
+		if (getter != null) {
+			return getter.invokeExact(obj);
+		}
+		return methods.get(name);
+	}
+}
@@ -2,7 +2,9 @@ package fi.benjami.code4jvm.lua.ffi;
 
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Parameter;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -12,6 +14,7 @@ import java.util.List;
 
 import fi.benjami.code4jvm.lua.LuaVm;
 import fi.benjami.code4jvm.lua.ir.LuaType;
+import fi.benjami.code4jvm.lua.stdlib.LuaException;
 
 /**
  * Tools for constructing {@link JavaFunction Java functions} that allow
@@ -23,6 +26,18 @@ import fi.benjami.code4jvm.lua.ir.LuaType;
  */
 public class LuaBinder {
 	
+	private static final MethodHandle LONG_TO_LUA, OBJECT_TO_LUA;
+	
+	static {
+		var lookup = MethodHandles.lookup();
+		try {
+			LONG_TO_LUA = lookup.findStatic(LuaBinder.class, "toLuaValue", MethodType.methodType(Object.class, long.class));
+			OBJECT_TO_LUA = lookup.findStatic(LuaBinder.class, "toLuaValue", MethodType.methodType(Object.class, Object.class));
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			throw new AssertionError(e);
+		}
+	}
+	
 	private final MethodHandles.Lookup lookup;
 	
 	public LuaBinder(MethodHandles.Lookup lookup) {
@@ -36,6 +51,22 @@ public class LuaBinder {
 	 * @return A collection of functions that can be called from Lua.
 	 */
 	public Collection<JavaFunction> bindFunctionsFrom(Class<?> container) {
+		return bindFunctionsFrom(container, null);
+	}
+	
+	/**
+	 * Binds all {@link LuaExport exported} functions from an object.
+	 * Instance methods are bound to the given receiver, so Lua code calls
+	 * them without passing the receiver.
+	 * @param receiver Java object whose class contains (static or instance)
+	 * methods with {@link LuaExport} annotation.
+	 * @return A collection of functions that can be called from Lua.
+	 */
+	public Collection<JavaFunction> bindFunctionsFrom(Object receiver) {
+		return bindFunctionsFrom(receiver.getClass(), receiver);
+	}
+	
+	private Collection<JavaFunction> bindFunctionsFrom(Class<?> container, Object receiver) {
 		// Group methods by name
 		var methods = new HashMap<String, List<Method>>();
 		for (var method : container.getDeclaredMethods()) {
@@ -46,7 +77,7 @@ public class LuaBinder {
 		}
 		
 		return methods.entrySet().stream()
-				.map(entry -> bindFunction(entry.getKey(), toSorted(entry.getValue())))
+				.map(entry -> bindFunction(entry.getKey(), toSorted(entry.getValue()), receiver))
 				.toList();
 	}
 	
@@ -61,10 +92,22 @@ public class LuaBinder {
 	}
 	
 	public JavaFunction bindFunction(String name, List<Method> targetMethods) {
+		return bindFunction(name, targetMethods, null);
+	}
+	
+	/**
+	 * Binds a function with given Java methods as its targets.
+	 * @param name Function name.
+	 * @param targetMethods Target methods.
+	 * @param receiver Receiver that instance methods are bound to, or null
+	 * if they should take the receiver as first argument.
+	 * @return A function that can be called from Lua.
+	 */
+	public JavaFunction bindFunction(String name, List<Method> targetMethods, Object receiver) {
 		var targets = new ArrayList<JavaFunction.Target>(targetMethods.size());
 		JavaFunction.Target fallback = null;
 		for (Method method : targetMethods) {
-			var target = toFunctionTarget(method);
+			var target = toFunctionTarget(method, receiver);
 			if (method.isAnnotationPresent(Fallback.class)) {
 				if (fallback != null) {
 					throw new IllegalArgumentException("function " + name + " has more than one @Fallback");
@@ -82,13 +125,19 @@ public class LuaBinder {
 		return new JavaFunction(name, targets, fallback);
 	}
 
-	private JavaFunction.Target toFunctionTarget(Method method) {
+	private JavaFunction.Target toFunctionTarget(Method method, Object receiver) {
 		var injectedArgs = new ArrayList<InjectedArg>();
 		var args = new ArrayList<JavaFunction.Arg>();
+		var boundReceiver = !Modifier.isStatic(method.getModifiers()) && receiver != null;
+		var instanceMethod = !Modifier.isStatic(method.getModifiers()) && receiver == null;
+		if (instanceMethod) {
+			// Receiver is the first argument, like self is for Lua methods
+			args.add(new JavaFunction.Arg("self", LuaType.of(method.getDeclaringClass()), false));
+		}
 		for (var param : method.getParameters()) {
 			var inject = param.getAnnotation(Inject.class);
 			if (inject != null) {
-				if (!args.isEmpty()) {
+				if (args.size() > (instanceMethod ? 1 : 0)) {
 					throw new IllegalArgumentException("injected arguments after normal ones in method " + method.getName());
 				}
 				injectedArgs.add(toInjectedArg(param.getType(), inject.value()));
@@ -108,12 +157,74 @@ public class LuaBinder {
 		} catch (IllegalAccessException e) {
 			throw new IllegalStateException("lookup provided for LuaBinder has insufficient access", e);
 		}
+		if (!multipleReturns) {
+			handle = toLuaReturn(handle);
+			returnType = handle.type().returnType();
+		}
+		if (boundReceiver) {
+			// Bind the receiver once, instead of looking it up on every call
+			handle = handle.bindTo(receiver);
+		} else if (instanceMethod && !injectedArgs.isEmpty()) {
+			// Injected arguments must come first, so move receiver after them
+			handle = moveFirstArgument(handle, injectedArgs.size());
+		}
 		
 		var intrinsic = method.getAnnotation(LuaIntrinsic.class);
 		var intrinsicId = intrinsic != null ? intrinsic.value() : null;
 		return new JavaFunction.Target(injectedArgs, args, method.isVarArgs(), LuaType.of(returnType), multipleReturns, handle, intrinsicId);
 	}
 	
+	/**
+	 * Converts return value of a method handle to a type that Lua code
+	 * understands. Lua numbers are ints and doubles, and there are no
+	 * characters in Lua.
+	 * @param handle Method handle.
+	 * @return Method handle that returns a Lua value.
+	 */
+	static MethodHandle toLuaReturn(MethodHandle handle) {
+		var type = handle.type().returnType();
+		if (type == long.class) {
+			return MethodHandles.filterReturnValue(handle, LONG_TO_LUA);
+		} else if (type == float.class) {
+			return handle.asType(handle.type().changeReturnType(double.class));
+		} else if (type == short.class || type == byte.class) {
+			return handle.asType(handle.type().changeReturnType(int.class));
+		} else if (type == char.class || type == Long.class || type == Float.class
+				|| type == Short.class || type == Byte.class || type == Character.class) {
+			// Box, then convert (boxed values may also be null)
+			return MethodHandles.filterReturnValue(handle.asType(handle.type().changeReturnType(Object.class)), OBJECT_TO_LUA);
+		}
+		return handle;
+	}
+	
+	private static Object toLuaValue(long value) {
+		// Integers that don't fit in int are approximated with doubles
+		var intValue = (int) value;
+		return intValue == value ? (Object) intValue : (Object) (double) value;
+	}
+	
+	private static Object toLuaValue(Object value) {
+		return switch (value) {
+		case Long l -> toLuaValue(l.longValue());
+		case Float f -> f.doubleValue();
+		case Short s -> s.intValue();
+		case Byte b -> b.intValue();
+		case Character c -> c.toString();
+		case null, default -> value;
+		};
+	}
+	
+	private static MethodHandle moveFirstArgument(MethodHandle handle, int index) {
+		var type = handle.type();
+		var params = new ArrayList<>(type.parameterList());
+		params.add(index, params.remove(0));
+		var reorder = new int[type.parameterCount()];
+		for (var i = 0; i < reorder.length; i++) {
+			reorder[i] = i == 0 ? index : (i <= index ? i - 1 : i);
+		}
+		return MethodHandles.permuteArguments(handle, MethodType.methodType(type.returnType(), params), reorder);
+	}
+	
 	private InjectedArg toInjectedArg(Class<?> type, String source) {
 		// TODO support non-default sources
 		if (!source.equals("default")) {
@@ -123,7 +234,14 @@ public class LuaBinder {
 		if (type.equals(LuaVm.class)) {
 			return site -> site.options.owner();
 		} else {
-			throw new IllegalArgumentException("unsupported type for @Inject");
+			// Per-VM service; this is looked up when the call site is linked, not on every call
+			return site -> {
+				var service = site.options.owner().options().service(type);
+				if (service == null) {
+					throw new LuaException("no service of type " + type.getName() + " for @Inject");
+				}
+				return service;
+			};
 		}
 	}
 	
@@ -278,7 +278,8 @@ public interface LuaType {
 	Type backingType();
 	
 	default boolean isAssignableFrom(LuaType other) {
-		return this == LuaType.UNKNOWN || equals(other);
+		// Table shapes are still tables
+		return this == LuaType.UNKNOWN || equals(other) || (this == LuaType.TABLE && other instanceof Shape);
 	}
 	
 	default boolean isNumber() {
@@ -3,9 +3,11 @@ package fi.benjami.code4jvm.lua.ir.expr;
 import java.util.Arrays;
 import java.util.List;
 
+import fi.benjami.code4jvm.Condition;
 import fi.benjami.code4jvm.Constant;
 import fi.benjami.code4jvm.Type;
 import fi.benjami.code4jvm.Value;
+import fi.benjami.code4jvm.Variable;
 import fi.benjami.code4jvm.block.Block;
 import fi.benjami.code4jvm.call.CallTarget;
 import fi.benjami.code4jvm.call.FixedCallTarget;
@@ -17,6 +19,7 @@ import fi.benjami.code4jvm.lua.ir.LuaType;
 import fi.benjami.code4jvm.lua.linker.CallSiteOptions;
 import fi.benjami.code4jvm.lua.linker.LuaLinker;
 import fi.benjami.code4jvm.lua.runtime.MultiVals;
+import fi.benjami.code4jvm.structure.IfBlock;
 
 public record FunctionCallExpr(
 		IrNode function,
@@ -79,6 +82,22 @@ public record FunctionCallExpr(
 		var jvmReturnType = returnType.equals(LuaType.NIL) ? Type.VOID : returnType.backingType();
 		var target = CallTarget.dynamic(bootstrap, jvmReturnType, "_",
 				Arrays.stream(argTypes).map(LuaType::backingType).toArray(Type[]::new));
+		
+		var intrinsic = MathIntrinsics.find(function, argTypes);
+		if (intrinsic != null) {
+			// Skip the call if math function has not been replaced by something else
+			var result = Variable.create(Type.OBJECT);
+			var dispatch = new IfBlock();
+			dispatch.branch(Condition.refEqual(argValues[0], ctx.addClassData(intrinsic.function())), inner -> {
+				var value = inner.add(intrinsic.emit(Arrays.copyOfRange(argValues, 1, argValues.length)));
+				inner.add(result.set(value.cast(Type.OBJECT)));
+			});
+			dispatch.fallback(inner -> {
+				inner.add(result.set(inner.add(target.call(argValues)).cast(Type.OBJECT)));
+			});
+			block.add(dispatch);
+			return result;
+		}
 		return block.add(target.call(argValues));
 	}
 
@@ -0,0 +1,136 @@
+package fi.benjami.code4jvm.lua.ir.expr;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import fi.benjami.code4jvm.Expression;
+import fi.benjami.code4jvm.Type;
+import fi.benjami.code4jvm.Value;
+import fi.benjami.code4jvm.call.CallTarget;
+import fi.benjami.code4jvm.lua.ir.IrNode;
+import fi.benjami.code4jvm.lua.ir.LuaType;
+import fi.benjami.code4jvm.lua.ir.TableField;
+import fi.benjami.code4jvm.lua.stdlib.MathLib;
+import fi.benjami.code4jvm.statement.Arithmetic;
+
+/**
+ * Direct JVM implementations of {@link MathLib math library} functions
+ * for known argument types.
+ *
+ */
+class MathIntrinsics {
+	
+	/**
+	 * An intrinsic implementation of a math function.
+	 * @param function The function this replaces.
+	 * @param argTypes Argument types this accepts.
+	 * @param widening Whether integers are accepted in place of floats.
+	 * @param emitter Emits the implementation given argument values.
+	 */
+	record Intrinsic(Object function, LuaType[] argTypes, boolean widening, Function<Value[], Expression> emitter) {
+		
+		boolean accepts(LuaType[] types) {
+			if (types.length != argTypes.length) {
+				return false;
+			}
+			for (var i = 0; i < types.length; i++) {
+				if (!argTypes[i].equals(types[i])
+						&& !(widening && argTypes[i].equals(LuaType.FLOAT) && types[i].equals(LuaType.INTEGER))) {
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		Expression emit(Value[] args) {
+			var casted = new Value[args.length];
+			for (var i = 0; i < args.length; i++) {
+				casted[i] = args[i].cast(argTypes[i].backingType());
+			}
+			return emitter.apply(casted);
+		}
+	}
+	
+	private static final Type MATH = Type.of(Math.class), MATH_LIB = Type.of(MathLib.class);
+	
+	private static final Map<String, List<Intrinsic>> INTRINSICS = new HashMap<>();
+	
+	private static void add(String name, Function<Value[], Expression> emitter, LuaType... argTypes) {
+		add(name, true, emitter, argTypes);
+	}
+	
+	private static void add(String name, boolean widening, Function<Value[], Expression> emitter, LuaType... argTypes) {
+		var function = MathLib.function(name);
+		assert function != null : name;
+		INTRINSICS.computeIfAbsent(name, k -> new ArrayList<>())
+				.add(new Intrinsic(function, argTypes, widening, emitter));
+	}
+	
+	private static Function<Value[], Expression> staticCall(Type owner, Type returnType, String name, Type... argTypes) {
+		var target = CallTarget.staticMethod(owner, returnType, name, argTypes);
+		return args -> target.call(args);
+	}
+	
+	private static Function<Value[], Expression> identity() {
+		return args -> block -> args[0];
+	}
+	
+	static {
+		// Integer variants must come first, since float ones accept integers too
+		add("abs", staticCall(MATH, Type.INT, "abs", Type.INT), LuaType.INTEGER);
+		add("abs", staticCall(MATH, Type.DOUBLE, "abs", Type.DOUBLE), LuaType.FLOAT);
+		add("floor", identity(), LuaType.INTEGER);
+		add("floor", staticCall(MATH_LIB, Type.OBJECT, "floor", Type.DOUBLE), LuaType.FLOAT);
+		add("ceil", identity(), LuaType.INTEGER);
+		add("ceil", staticCall(MATH_LIB, Type.OBJECT, "ceil", Type.DOUBLE), LuaType.FLOAT);
+		add("tointeger", identity(), LuaType.INTEGER);
+		
+		// Functions of floats that Math has, usually as JIT intrinsics
+		for (var name : List.of("sqrt", "exp", "log", "sin", "cos", "tan", "asin", "acos", "atan")) {
+			add(name, staticCall(MATH, Type.DOUBLE, name, Type.DOUBLE), LuaType.FLOAT);
+		}
+		add("atan", staticCall(MATH, Type.DOUBLE, "atan2", Type.DOUBLE, Type.DOUBLE), LuaType.FLOAT, LuaType.FLOAT);
+		
+		// Mixed integer and float arguments would change result type
+		// Math's float min and max differ from Lua for NaN and signed zeros
+		add("min", false, staticCall(MATH, Type.INT, "min", Type.INT, Type.INT), LuaType.INTEGER, LuaType.INTEGER);
+		add("min", false, staticCall(MATH_LIB, Type.DOUBLE, "min", Type.DOUBLE, Type.DOUBLE), LuaType.FLOAT, LuaType.FLOAT);
+		add("max", false, staticCall(MATH, Type.INT, "max", Type.INT, Type.INT), LuaType.INTEGER, LuaType.INTEGER);
+		add("max", false, staticCall(MATH_LIB, Type.DOUBLE, "max", Type.DOUBLE, Type.DOUBLE), LuaType.FLOAT, LuaType.FLOAT);
+		add("fmod", staticCall(MATH_LIB, Type.INT, "fmod", Type.INT, Type.INT), LuaType.INTEGER, LuaType.INTEGER); // Checks for zero
+		add("fmod", args -> Arithmetic.remainder(args[0], args[1]), LuaType.FLOAT, LuaType.FLOAT); // drem has C fmod semantics
+	}
+	
+	/**
+	 * Finds an intrinsic for a function call.
+	 * @param function Function that is called.
+	 * @param argTypes Argument types.
+	 * @return Intrinsic for the call, or null if the call does not target
+	 * math library, or there is no intrinsic for given argument types.
+	 */
+	static Intrinsic find(IrNode function, LuaType[] argTypes) {
+		// Only math.name(...) where math is a global
+		if (!(function.concreteNode() instanceof VariableExpr funcVar)
+				|| !(funcVar.source() instanceof TableField funcField)
+				|| !(funcField.field() instanceof LuaConstant funcName)
+				|| !(funcField.table().concreteNode() instanceof VariableExpr libVar)
+				|| !(libVar.source() instanceof TableField libField)
+				|| !(libField.field() instanceof LuaConstant libName)
+				|| !"math".equals(libName.value())) {
+			return null;
+		}
+		var candidates = INTRINSICS.get(funcName.value());
+		if (candidates == null) {
+			return null;
+		}
+		for (var intrinsic : candidates) {
+			if (intrinsic.accepts(argTypes)) {
+				return intrinsic;
+			}
+		}
+		return null;
+	}
+}
@@ -3,72 +3,272 @@ package fi.benjami.code4jvm.lua.ir.expr;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
+import java.lang.invoke.StringConcatException;
+import java.lang.invoke.StringConcatFactory;
+import java.util.Arrays;
 import java.util.List;
 
 import fi.benjami.code4jvm.Type;
 import fi.benjami.code4jvm.Value;
 import fi.benjami.code4jvm.block.Block;
+import fi.benjami.code4jvm.call.CallTarget;
 import fi.benjami.code4jvm.lua.compiler.LuaContext;
 import fi.benjami.code4jvm.lua.ir.IrNode;
 import fi.benjami.code4jvm.lua.ir.LuaType;
-import fi.benjami.code4jvm.lua.linker.BinaryOp;
 import fi.benjami.code4jvm.lua.linker.CallSiteOptions;
 import fi.benjami.code4jvm.lua.linker.DynamicTarget;
+import fi.benjami.code4jvm.lua.linker.LuaCallSite;
+import fi.benjami.code4jvm.lua.linker.LuaCallTarget;
 import fi.benjami.code4jvm.lua.linker.LuaLinker;
+import fi.benjami.code4jvm.lua.runtime.LuaTable;
 import fi.benjami.code4jvm.lua.stdlib.LuaException;
+import fi.benjami.code4jvm.lua.stdlib.StringLib;
 import fi.benjami.code4jvm.statement.StringConcat;
 
+/**
+ * Concatenation of two or more values. Chained concatenations such as
+ * {@code a .. b .. c} are flattened to one node by the IR compiler, so that
+ * they can be emitted as one {@link StringConcatFactory} call instead of
+ * creating intermediate strings.
+ *
+ */
 public record StringConcatExpr(
 		List<IrNode> parts
 ) implements IrNode {
 	
+	/**
+	 * Maximum number of parts in one call site. Longer chains are split
+	 * to stay well below JVM and {@link StringConcatFactory} argument limits.
+	 */
+	private static final int MAX_PARTS = 100;
+	
 	private static final DynamicTarget TARGET;
-	private static final MethodHandle CONCAT_TWO;
+	private static final MethodHandle CHECK_CLASSES, CONCAT_GENERIC, FLOAT_TO_STRING, CHECK_ARG_CLASSES, RELINK_METAMETHOD;
+	private static final CallTarget NUMBER_TO_STRING = CallTarget.staticMethod(Type.of(StringLib.class), Type.STRING,
+			"numberToString", Type.DOUBLE);
 	
 	static {
-		// TODO when nested concatenations are lowered, consider directly using StringConcatFactory
 		var lookup = MethodHandles.lookup();
 		try {
-			CONCAT_TWO = lookup.findStatic(StringConcatExpr.class, "concat",
-					MethodType.methodType(String.class, Object.class, String.class, String.class));
+			CHECK_CLASSES = lookup.findStatic(StringConcatExpr.class, "checkClasses",
+					MethodType.methodType(boolean.class, Class[].class, Object.class, Object[].class));
+			CONCAT_GENERIC = lookup.findStatic(StringConcatExpr.class, "concatGeneric",
+					MethodType.methodType(Object.class, MetamethodCall.class, Object.class, Object[].class));
+			FLOAT_TO_STRING = lookup.findStatic(StringLib.class, "numberToString",
+					MethodType.methodType(String.class, double.class)).asType(MethodType.methodType(String.class, Double.class));
+			CHECK_ARG_CLASSES = lookup.findStatic(StringConcatExpr.class, "checkArgClasses",
+					MethodType.methodType(boolean.class, Class.class, Class.class, Object.class, Object.class, Object.class));
+			RELINK_METAMETHOD = lookup.findVirtual(MetamethodCall.class, "relink",
+					MethodType.methodType(Object.class, Object.class, Object.class, Object.class));
 		} catch (NoSuchMethodException | IllegalAccessException e) {
-			throw new AssertionError();
+			throw new AssertionError(e);
+		}
+		
+		TARGET = (meta, args) -> {
+			var classes = new Class<?>[args.length];
+			for (var i = 0; i < args.length; i++) {
+				if (!(args[i] instanceof String || args[i] instanceof Integer || args[i] instanceof Double)) {
+					// Tables with metamethods or invalid values; slow path
+					var target = MethodHandles.insertArguments(CONCAT_GENERIC, 0, new MetamethodCall(meta))
+							.asCollector(Object[].class, args.length);
+					return new LuaCallTarget(target);
+				}
+				classes[i] = args[i].getClass();
+			}
+			
+			// Only strings and numbers, which StringConcatFactory handles well
+			// Floats are formatted by Lua's rules before that
+			var concatTypes = classes.clone();
+			var filters = new MethodHandle[args.length];
+			for (var i = 0; i < args.length; i++) {
+				if (classes[i] == Double.class) {
+					concatTypes[i] = String.class;
+					filters[i] = FLOAT_TO_STRING;
+				}
+			}
+			MethodHandle concat;
+			try {
+				concat = StringConcatFactory.makeConcatWithConstants(MethodHandles.lookup(), "concat",
+						MethodType.methodType(String.class, concatTypes), "\1".repeat(args.length)).getTarget();
+			} catch (StringConcatException e) {
+				throw new AssertionError(e);
+			}
+			concat = MethodHandles.filterArguments(concat, 0, filters);
+			var target = MethodHandles.dropArguments(concat, 0, Object.class);
+			var guard = MethodHandles.insertArguments(CHECK_CLASSES, 0, (Object) classes)
+					.asCollector(Object[].class, args.length);
+			return new LuaCallTarget(target, guard);
+		};
+	}
+	
+	@SuppressWarnings("unused") // MethodHandle
+	private static boolean checkClasses(Class<?>[] expected, Object callable, Object[] args) {
+		for (var i = 0; i < args.length; i++) {
+			if (args[i] == null || args[i].getClass() != expected[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	@SuppressWarnings("unused") // MethodHandle
+	private static boolean checkArgClasses(Class<?> lhs, Class<?> rhs, Object callable, Object lhsArg, Object rhsArg) {
+		return classOf(lhsArg) == lhs && classOf(rhsArg) == rhs;
+	}
+	
+	private static Class<?> classOf(Object value) {
+		return value != null ? value.getClass() : null;
+	}
+	
+	/**
+	 * Call to {@code __concat} metamethods at a concatenation site. The call
+	 * is linked like an {@code invokedynamic} site would be, but the result
+	 * is kept here instead of a JVM call site, so that evaluating a
+	 * concatenation doesn't need to link it again.
+	 *
+	 */
+	private static class MetamethodCall {
+		
+		private static final MethodType CALL_TYPE = MethodType.genericMethodType(3);
+		
+		private final LuaCallSite meta;
+		private final MethodHandle relink;
+		private MethodHandle target;
+		
+		MetamethodCall(LuaCallSite concatSite) {
+			this.meta = new LuaCallSite(null,
+					CallSiteOptions.nonFunction(concatSite.options.owner(), LuaType.UNKNOWN, LuaType.UNKNOWN));
+			this.relink = RELINK_METAMETHOD.bindTo(this);
+			this.target = relink;
 		}
 		
-		TARGET = BinaryOp.newTarget(List.of(new BinaryOp.Path(String.class, String.class, CONCAT_TWO)), "__concat",
-				(a, b) -> new LuaException("attempted to concatenate non-string values"));
+		Object call(Object metamethod, Object lhs, Object rhs) throws Throwable {
+			return target.invokeExact(metamethod, lhs, rhs);
+		}
+		
+		@SuppressWarnings("unused") // MethodHandle
+		private Object relink(Object metamethod, Object lhs, Object rhs) throws Throwable {
+			meta.linkageCount++;
+			var linked = LuaLinker.linkCall(meta, metamethod, lhs, rhs);
+			var target = linked.target().asType(CALL_TYPE);
+			
+			// Compose guards like LuaLinker does for call sites, but relink only this
+			var guarded = target;
+			for (var guard : linked.guards()) {
+				guard = guard.asType(MethodType.methodType(boolean.class,
+						Arrays.copyOf(CALL_TYPE.parameterArray(), guard.type().parameterCount())));
+				guarded = MethodHandles.guardWithTest(guard, guarded, relink);
+			}
+			if (meta.usesRuntimeTypes) {
+				// Target was specialized for these argument types
+				var guard = MethodHandles.insertArguments(CHECK_ARG_CLASSES, 0, classOf(lhs), classOf(rhs));
+				guarded = MethodHandles.guardWithTest(guard, guarded, relink);
+			}
+			this.target = guarded;
+			return target.invokeExact(metamethod, lhs, rhs);
+		}
 	}
 	
 	@SuppressWarnings("unused") // MethodHandle
-	private static String concat(Object callable, String a, String b) {
-		return a + b;
+	private static Object concatGeneric(MetamethodCall meta, Object callable, Object[] args) throws Throwable {
+		// Concatenation is right associative
+		var result = args[args.length - 1];
+		for (var i = args.length - 2; i >= 0; i--) {
+			result = concat(meta, args[i], result);
+		}
+		return result;
+	}
+	
+	private static Object concat(MetamethodCall meta, Object lhs, Object rhs) throws Throwable {
+		if (isConcatenable(lhs) && isConcatenable(rhs)) {
+			return toString(lhs) + toString(rhs);
+		}
+		var metamethod = findMetamethod(lhs);
+		if (metamethod == null) {
+			metamethod = findMetamethod(rhs);
+		}
+		if (metamethod == null) {
+			var invalid = isConcatenable(lhs) ? rhs : lhs;
+			throw new LuaException("attempted to concatenate a " + LuaType.of(invalid).name() + " value");
+		}
+		return meta.call(metamethod, lhs, rhs);
+	}
+	
+	private static String toString(Object value) {
+		return value instanceof Double num ? StringLib.numberToString(num) : value.toString();
+	}
+	
+	private static boolean isConcatenable(Object value) {
+		return value instanceof String || value instanceof Number;
+	}
+	
+	private static Object findMetamethod(Object value) {
+		if (value instanceof LuaTable table && table.metatable() != null) {
+			return table.metatable().get("__concat");
+		}
+		return null;
 	}
 	
 	public StringConcatExpr {
-		// TODO lower nested string concatenations to one operation
-		assert parts.size() == 2; // For now, we don't support this
+		assert parts.size() >= 2;
 	}
 
 	@Override
 	public Value emit(LuaContext ctx, Block block) {
-		if (outputType(ctx).equals(LuaType.STRING)) {
-			// Only strings, concatenate directly
-			return block.add(StringConcat.concat(parts.stream()
-					.map(part -> part.emit(ctx, block))
-					.map(value -> value.cast(Type.STRING))
-					.toArray(Value[]::new)));
+		if (parts.size() > MAX_PARTS) {
+			// Concatenate the tail first; this is fine, because concatenation is right associative
+			var head = parts.subList(0, MAX_PARTS - 1);
+			var tail = new StringConcatExpr(parts.subList(MAX_PARTS - 1, parts.size()));
+			var values = new Value[MAX_PARTS];
+			for (var i = 0; i < head.size(); i++) {
+				values[i] = head.get(i).emit(ctx, block);
+			}
+			values[MAX_PARTS - 1] = tail.emit(ctx, block);
+			var types = Arrays.copyOf(partTypes(ctx, head), MAX_PARTS);
+			types[MAX_PARTS - 1] = tail.outputType(ctx);
+			return emitConcat(ctx, block, values, types);
+		}
+		var values = parts.stream()
+				.map(part -> part.emit(ctx, block))
+				.toArray(Value[]::new);
+		return emitConcat(ctx, block, values, partTypes(ctx, parts));
+	}
+	
+	private static Value emitConcat(LuaContext ctx, Block block, Value[] values, LuaType[] types) {
+		if (Arrays.stream(types).allMatch(StringConcatExpr::isConcatenable)) {
+			// Only strings and numbers, concatenate directly with one StringConcatFactory call
+			// Floats are formatted by Lua's rules, which Java's string conversion doesn't follow
+			var parts = new Value[values.length];
+			for (var i = 0; i < values.length; i++) {
+				parts[i] = types[i].equals(LuaType.FLOAT)
+						? block.add(NUMBER_TO_STRING.call(values[i].cast(Type.DOUBLE))) : values[i];
+			}
+			return block.add(StringConcat.concat(parts));
 		} else {
 			// Types not known at compile time; use invokedynamic
-			var lhs = parts.get(0).emit(ctx, block);
-			var rhs = parts.get(1).emit(ctx, block);
-			return block.add(LuaLinker.setupCall(ctx, CallSiteOptions.nonFunction(ctx.owner(), LuaType.UNKNOWN, LuaType.UNKNOWN), TARGET, lhs, rhs));
+			var args = Arrays.stream(values)
+					.map(value -> value.cast(Type.OBJECT))
+					.toArray(Value[]::new);
+			var argTypes = new LuaType[args.length];
+			Arrays.fill(argTypes, LuaType.UNKNOWN);
+			return block.add(LuaLinker.setupCall(ctx, CallSiteOptions.nonFunction(ctx.owner(), argTypes), TARGET, args));
 		}
 	}
+	
+	private static LuaType[] partTypes(LuaContext ctx, List<IrNode> parts) {
+		return parts.stream()
+				.map(part -> part.outputType(ctx))
+				.toArray(LuaType[]::new);
+	}
+	
+	private static boolean isConcatenable(LuaType type) {
+		return type.equals(LuaType.STRING) || type.equals(LuaType.INTEGER) || type.equals(LuaType.FLOAT);
+	}
 
 	@Override
 	public LuaType outputType(LuaContext ctx) {
-		var nonStrings = parts.stream().map(part -> part.outputType(ctx))
-				.anyMatch(type -> !type.equals(LuaType.STRING));
-		return nonStrings ? LuaType.UNKNOWN : LuaType.STRING;
+		// Analyze all parts, even if the first one already has unknown type
+		var types = partTypes(ctx, parts);
+		return Arrays.stream(types).allMatch(StringConcatExpr::isConcatenable) ? LuaType.STRING : LuaType.UNKNOWN;
 	}
 }
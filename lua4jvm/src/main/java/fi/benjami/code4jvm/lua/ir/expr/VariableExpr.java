@@ -38,7 +38,7 @@ public record VariableExpr(
 		} else if (source instanceof TableField tableField) {			
 			var table = tableField.table().emit(ctx, block);
 			var field = tableField.field().emit(ctx, block);
-			if (tableField.field() instanceof LuaConstant constant) {				
+			if (tableField.field().concreteNode() instanceof LuaConstant) {				
 				// Use invokedynamic w/ LuaLinker to try to speed up reads
 				var options = new CallSiteOptions(ctx.owner(), new LuaType[] {LuaType.UNKNOWN, LuaType.UNKNOWN, LuaType.UNKNOWN}, false, false, false);
 				var bootstrap = LuaLinker.BOOTSTRAP_DYNAMIC.withCapturedArgs(ctx.addClassData(options));
@@ -47,6 +47,15 @@ public record VariableExpr(
 				var target = CallTarget.dynamic(bootstrap, Type.OBJECT, "_",
 						Type.OBJECT, Type.OBJECT, Type.OBJECT);
 				return block.add(target.call(getter, table.asType(Type.OBJECT), field));
+			} else if (field.type().equals(Type.INT)) {
+				// Integer keys are usually array indices, e.g. in loops
+				// Link to accessors of typed arrays, which don't need the key boxed
+				var options = new CallSiteOptions(ctx.owner(), new LuaType[] {LuaType.UNKNOWN, LuaType.UNKNOWN, LuaType.INTEGER}, false, false, false);
+				var bootstrap = LuaLinker.BOOTSTRAP_DYNAMIC.withCapturedArgs(ctx.addClassData(options));
+				var getter = ctx.addClassData(TableAccess.INDEX_GET, Type.OBJECT);
+				var target = CallTarget.dynamic(bootstrap, Type.OBJECT, "_",
+						Type.OBJECT, Type.OBJECT, Type.INT);
+				return block.add(target.call(getter, table.asType(Type.OBJECT), field));
 			} else {
 				// Just get directly; since we can't cache slot, the guards would just slow down reads
 				return block.add(table.callVirtual(Type.OBJECT, "get", field.cast(Type.OBJECT)));
@@ -19,6 +19,8 @@ import fi.benjami.code4jvm.lua.ir.LuaType;
 import fi.benjami.code4jvm.lua.ir.expr.FunctionCallExpr;
 import fi.benjami.code4jvm.lua.linker.CallSiteOptions;
 import fi.benjami.code4jvm.lua.linker.LuaLinker;
+import fi.benjami.code4jvm.lua.runtime.LuaTable;
+import fi.benjami.code4jvm.lua.stdlib.BasicLib;
 import fi.benjami.code4jvm.lua.stdlib.LuaException;
 import fi.benjami.code4jvm.statement.ArrayAccess;
 import fi.benjami.code4jvm.statement.Instanceof;
@@ -32,6 +34,12 @@ public record IteratorForStmt(
 		List<IrNode> iterable
 ) implements IrNode {
 	
+	private static final Type TABLE_ITERATOR = Type.of(LuaTable.Iterator.class);
+	private static final CallTarget NEW_ITERATOR = LuaTable.TYPE.virtualMethod(TABLE_ITERATOR, "iterator"),
+			ITERATOR_NEXT = TABLE_ITERATOR.virtualMethod(Type.BOOLEAN, "next"),
+			ITERATOR_KEY = TABLE_ITERATOR.virtualMethod(Type.OBJECT, "key"),
+			ITERATOR_VALUE = TABLE_ITERATOR.virtualMethod(Type.OBJECT, "value");
+	
 	@Override
 	public Value emit(LuaContext ctx, Block block) {
 		// TODO code4jvm's LoopBlock is dangerously useless; return here if/when it is fixed
@@ -105,46 +113,79 @@ public record IteratorForStmt(
 		}
 		block.add(init);
 		
-		// In loop body, call next(state, control)		
-		var bootstrap = LuaLinker.BOOTSTRAP_DYNAMIC;
-		// Types are unknown because we can't yet track them for multivals
-		var options = new CallSiteOptions(ctx.owner(), new LuaType[] {LuaType.UNKNOWN, LuaType.UNKNOWN}, true, false, false);
-		bootstrap = bootstrap.withCapturedArgs(ctx.addClassData(options));
-		var target = CallTarget.dynamic(bootstrap, Type.OBJECT, "_", Type.OBJECT, Type.OBJECT);
-		var results = loop.add(target.call(next, state, control));
-		
-		// TODO add another path for non-array iterators
-		// Initialize loop variables with nulls, since some might not be assigned anything
-		for (var loopVar : loopJvmVars) {
-			loop.add(loopVar.set(Constant.nullValue(Type.OBJECT)));
-		}
+		// Tables iterated with pairs, ipairs or next don't need calls to iterator function
+		// Instead, use a stateful table iterator directly to avoid allocating for every iteration
+		// If the table is modified during iteration, the iterator takes care of it
+		var tableIterator = Variable.create(TABLE_ITERATOR);
+		block.add(tableIterator.set(Constant.nullValue(TABLE_ITERATOR)));
+		var setupDirect = new IfBlock();
+		setupDirect.branch(Condition.refEqual(next, ctx.addClassData(BasicLib.INTRINSIC_ITERATOR)), inner -> {
+			inner.add(tableIterator.set(state.cast(TABLE_ITERATOR)));
+		});
+		setupDirect.branch(Condition.refEqual(next, ctx.addClassData(BasicLib.NEXT)), inner -> {
+			// Only if iteration starts from beginning of a table; otherwise, call next() normally
+			inner.add(Jump.to(inner, Jump.Target.END, Condition.isNull(control).not()));
+			var isTable = inner.add(Instanceof.isInstance(state, LuaTable.TYPE));
+			inner.add(Jump.to(inner, Jump.Target.END, Condition.isFalse(isTable)));
+			inner.add(tableIterator.set(inner.add(NEW_ITERATOR.call(state.cast(LuaTable.TYPE)))));
+		});
+		block.add(setupDirect);
 		
-		// Assign whatever was returned to loop variables
-		var assignVars = new IfBlock();
-		assignVars.branch(inner -> {
-			var isArray = inner.add(Instanceof.isInstance(results, Type.OBJECT.array(1)));
-			return Condition.isTrue(isArray);
-		}, inner -> {
-			// Got multival for loop variables
-			var array = results.cast(Type.OBJECT.array(1));
-			var resultCount = inner.add(ArrayAccess.length(array));
-			for (var i = 0; i < loopJvmVars.size(); i++) {
-				// Skip rest of assignments when we've reached end of next's results
-				var idx = Constant.of(i);
-				inner.add(Jump.to(inner, Jump.Target.END, Condition.equal(resultCount, idx)));
-				var value = inner.add(ArrayAccess.get(array, idx));
-				inner.add(loopJvmVars.get(i).set(value));
+		var step = new IfBlock();
+		step.branch(Condition.isNull(tableIterator).not(), inner -> {
+			// Direct table iteration; end loop when table has no more entries
+			var hasNext = inner.add(ITERATOR_NEXT.call(tableIterator));
+			inner.add(Jump.to(loop, Jump.Target.END, Condition.isFalse(hasNext)));
+			inner.add(control.set(inner.add(ITERATOR_KEY.call(tableIterator))));
+			if (loopJvmVars.size() > 1) {
+				inner.add(loopJvmVars.get(1).set(inner.add(ITERATOR_VALUE.call(tableIterator))));
+			}
+			for (var i = 2; i < loopJvmVars.size(); i++) {
+				inner.add(loopJvmVars.get(i).set(Constant.nullValue(Type.OBJECT)));
 			}
 		});
-		assignVars.fallback(inner -> {
-			// Only one value, assign it to the first loop var (control)
-			inner.add(control.set(results));
+		step.fallback(inner -> {
+			// In loop body, call next(state, control)
+			var bootstrap = LuaLinker.BOOTSTRAP_DYNAMIC;
+			// Types are unknown because we can't yet track them for multivals
+			var options = new CallSiteOptions(ctx.owner(), new LuaType[] {LuaType.UNKNOWN, LuaType.UNKNOWN}, true, false, false);
+			bootstrap = bootstrap.withCapturedArgs(ctx.addClassData(options));
+			var target = CallTarget.dynamic(bootstrap, Type.OBJECT, "_", Type.OBJECT, Type.OBJECT);
+			var results = inner.add(target.call(next, state, control));
+			
+			// Initialize loop variables with nulls, since some might not be assigned anything
+			for (var loopVar : loopJvmVars) {
+				inner.add(loopVar.set(Constant.nullValue(Type.OBJECT)));
+			}
+			
+			// Assign whatever was returned to loop variables
+			var assignVars = new IfBlock();
+			assignVars.branch(assign -> {
+				var isArray = assign.add(Instanceof.isInstance(results, Type.OBJECT.array(1)));
+				return Condition.isTrue(isArray);
+			}, assign -> {
+				// Got multival for loop variables
+				var array = results.cast(Type.OBJECT.array(1));
+				var resultCount = assign.add(ArrayAccess.length(array));
+				for (var i = 0; i < loopJvmVars.size(); i++) {
+					// Skip rest of assignments when we've reached end of next's results
+					var idx = Constant.of(i);
+					assign.add(Jump.to(assign, Jump.Target.END, Condition.equal(resultCount, idx)));
+					var value = assign.add(ArrayAccess.get(array, idx));
+					assign.add(loopJvmVars.get(i).set(value));
+				}
+			});
+			assignVars.fallback(assign -> {
+				// Only one value, assign it to the first loop var (control)
+				assign.add(control.set(results));
+			});
+			
+			inner.add(assignVars);
+			
+			// Finally, if the control (=first of loop variables) is null, end loop
+			inner.add(Jump.to(loop, Jump.Target.END, Condition.isNull(control)));
 		});
-		
-		loop.add(assignVars);
-		
-		// Finally, if the control (=first of loop variables) is null, end loop
-		loop.add(Jump.to(loop, Jump.Target.END, Condition.isNull(control)));
+		loop.add(step);
 		
 		// Tell LoopBreaks how to break out of this loop
 		ref.breakLoop = b -> b.add(Jump.to(loop, Jump.Target.END));
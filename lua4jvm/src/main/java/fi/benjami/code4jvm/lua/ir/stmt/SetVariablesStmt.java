@@ -16,10 +16,14 @@ import fi.benjami.code4jvm.lua.ir.LuaType;
 import fi.benjami.code4jvm.lua.ir.LuaVariable;
 import fi.benjami.code4jvm.lua.ir.TableField;
 import fi.benjami.code4jvm.lua.ir.expr.FunctionCallExpr;
+import fi.benjami.code4jvm.lua.ir.expr.LuaConstant;
 import fi.benjami.code4jvm.lua.ir.expr.VariableExpr;
+import fi.benjami.code4jvm.lua.linker.CallSiteOptions;
+import fi.benjami.code4jvm.lua.linker.LuaLinker;
 import fi.benjami.code4jvm.lua.runtime.LuaBox;
 import fi.benjami.code4jvm.lua.runtime.LuaTable;
 import fi.benjami.code4jvm.lua.runtime.MultiVals;
+import fi.benjami.code4jvm.lua.runtime.TableAccess;
 
 /**
  * Statement that sets one or more variables.
@@ -113,11 +117,38 @@ public record SetVariablesStmt(
 					block.add(jvmVar.set(value.cast(jvmVar.type())));
 				}
 			} else if (variable instanceof TableField tableField) {
-				// Just call the setter
-				// TODO invokedynamic to TableAccess.CONSTANT_SET once it has some optimizations
-				var table = tableField.table().emit(ctx, block).cast(LuaTable.TYPE);
-				var field = tableField.field().emit(ctx, block).cast(Type.OBJECT);
-				block.add(table.callVirtual(Type.VOID, "set", field, value.cast(Type.OBJECT)));
+				if (tableField.field().concreteNode() instanceof LuaConstant) {
+					// Use invokedynamic w/ LuaLinker to speed up writes to typed arrays
+					var table = tableField.table().emit(ctx, block).cast(Type.OBJECT);
+					var field = tableField.field().emit(ctx, block).cast(Type.OBJECT);
+					var options = new CallSiteOptions(ctx.owner(), new LuaType[] {LuaType.UNKNOWN, LuaType.UNKNOWN, LuaType.UNKNOWN, LuaType.UNKNOWN}, false, false, false);
+					var bootstrap = LuaLinker.BOOTSTRAP_DYNAMIC.withCapturedArgs(ctx.addClassData(options));
+					var setter = ctx.addClassData(TableAccess.CONSTANT_SET, Type.OBJECT);
+					var target = CallTarget.dynamic(bootstrap, Type.VOID, "_",
+							Type.OBJECT, Type.OBJECT, Type.OBJECT, Type.OBJECT);
+					block.add(target.call(setter, table, field, value.cast(Type.OBJECT)));
+				} else if (tableField.field().outputType(ctx).equals(LuaType.INTEGER)) {
+					// Link integer keys to typed array setters; ints and doubles are passed unboxed
+					var table = tableField.table().emit(ctx, block).cast(Type.OBJECT);
+					var field = tableField.field().emit(ctx, block);
+					var valueType = value.type().equals(Type.INT) || value.type().equals(Type.DOUBLE) ? value.type() : Type.OBJECT;
+					var options = new CallSiteOptions(ctx.owner(), new LuaType[] {LuaType.UNKNOWN, LuaType.UNKNOWN, LuaType.INTEGER, LuaType.UNKNOWN}, false, false, false);
+					var bootstrap = LuaLinker.BOOTSTRAP_DYNAMIC.withCapturedArgs(ctx.addClassData(options));
+					var setter = ctx.addClassData(TableAccess.INDEX_SET, Type.OBJECT);
+					var target = CallTarget.dynamic(bootstrap, Type.VOID, "_",
+							Type.OBJECT, Type.OBJECT, Type.INT, valueType);
+					block.add(target.call(setter, table, field.cast(Type.INT), value.cast(valueType)));
+				} else if (tableField.table().outputType(ctx).equals(LuaType.TABLE)) {
+					// Just call the setter; since we can't cache slot, the guards would just slow down writes
+					var table = tableField.table().emit(ctx, block).cast(LuaTable.TYPE);
+					var field = tableField.field().emit(ctx, block).cast(Type.OBJECT);
+					block.add(table.callVirtual(Type.VOID, "set", field, value.cast(Type.OBJECT)));
+				} else {
+					// Might not be a table at all; this throws a Lua error in that case
+					var table = tableField.table().emit(ctx, block).cast(Type.OBJECT);
+					var field = tableField.field().emit(ctx, block).cast(Type.OBJECT);
+					block.add(SET_ANY.call(table, field, value.cast(Type.OBJECT)));
+				}
 			} else {				
 				throw new AssertionError();
 			}
@@ -172,6 +203,9 @@ public record SetVariablesStmt(
 		}
 	}
 	
+	private static final CallTarget SET_ANY = Type.of(TableAccess.class)
+			.staticMethod(Type.VOID, "setAny", Type.OBJECT, Type.OBJECT, Type.OBJECT);
+	
 	private static final CallTarget SPREAD_FIRST = Type.of(SetVariablesStmt.class)
 			.staticMethod(Type.OBJECT, "spreadFirst", Type.OBJECT);
 	
@@ -1,5 +1,8 @@
 package fi.benjami.code4jvm.lua.runtime;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.Arrays;
 import java.util.Objects;
 
@@ -7,6 +10,8 @@ import fi.benjami.code4jvm.Type;
 import fi.benjami.code4jvm.lua.LuaVm;
 import fi.benjami.code4jvm.lua.compiler.FunctionCompiler;
 import fi.benjami.code4jvm.lua.ir.LuaType;
+import fi.benjami.code4jvm.lua.linker.CallSiteOptions;
+import fi.benjami.code4jvm.lua.linker.LuaLinker;
 
 public record LuaFunction(
 		/**
@@ -63,4 +68,24 @@ public record LuaFunction(
 		return result;
 	}
 	
+	/**
+	 * Creates a method handle that calls this function. Unlike
+	 * {@link #call(Object...)}, the handle is backed by a Lua call site, so
+	 * it is linked to a specialization for the given parameter types and
+	 * relinked only if the function or runtime argument types change.
+	 * Callers should cache the handle, ideally in a static final field.
+	 * @param type Type of the handle. Return type may be void, in which case
+	 * results are discarded.
+	 * @return A method handle of the given type.
+	 */
+	public MethodHandle bind(MethodType type) {
+		var argTypes = type.parameterList().stream()
+				.map(LuaType::of)
+				.toArray(LuaType[]::new);
+		var siteType = type.changeReturnType(Object.class).insertParameterTypes(0, Object.class);
+		var site = LuaLinker.dynamic(MethodHandles.lookup(), "call", siteType,
+				new CallSiteOptions(owner, argTypes, false, false, false));
+		return site.dynamicInvoker().bindTo(this).asType(type);
+	}
+	
 }
@@ -1,17 +1,26 @@
 package fi.benjami.code4jvm.lua.runtime;
 
+import java.lang.invoke.SwitchPoint;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
 import fi.benjami.code4jvm.Type;
 import fi.benjami.code4jvm.lua.ir.LuaType;
 import fi.benjami.code4jvm.lua.linker.CallSiteOptions;
 import fi.benjami.code4jvm.lua.linker.LuaCallSite;
 import fi.benjami.code4jvm.lua.linker.LuaLinker;
+import fi.benjami.code4jvm.lua.stdlib.LuaException;
 
 /**
  * A Java implementation of the Lua <code>table</code> data type.
  *
  * @implNote The table part uses open addressing (closed hashing), while
  * array part is just an array. Both are internally placed within same Java
- * array.
+ * array, unless the array part contains only integers or only floats. In that
+ * case, it is stored in a primitive array until a value of another type is
+ * written to it.
  */
 public class LuaTable {
 	
@@ -23,10 +32,23 @@ public class LuaTable {
 	private Object[] table;
 	private int arraySize, arrayCapacity;
 	private Object[] keys;
+	
+	/**
+	 * Typed array parts. When either is present, {@link #arrayCapacity} is 0
+	 * and the whole {@link #table} is used for hash part.
+	 */
+	int[] ints;
+	double[] doubles;
 	LuaTable metatable;
 	
 	Object shape;
 	
+	/**
+	 * Switch points of keys that have been linked as constants, or null
+	 * if this table does not track key changes.
+	 */
+	private Map<Object, SwitchPoint> switchPoints;
+	
 	public LuaTable() {
 		this.table = EMPTY;
 		this.keys = EMPTY;
@@ -66,20 +88,41 @@ public class LuaTable {
 	
 	int getArrayIndex(Object key) {
 		if (key instanceof Integer index) {
-			if (index < arrayCapacity) {
+			if (index >= 0 && index < arrayPartCapacity()) {
 				return index;
 			}
 		}
 		return -1; // Not an array index
 	}
 	
+	private int arrayPartCapacity() {
+		if (ints != null) {
+			return ints.length;
+		} else if (doubles != null) {
+			return doubles.length;
+		}
+		return arrayCapacity;
+	}
+	
 	// Getters
 	
 	Object getArray(int index) {
-		assert index < arraySize;
+		if (ints != null) {
+			return index >= 1 && index < arraySize ? ints[index] : null;
+		} else if (doubles != null) {
+			return index >= 1 && index < arraySize ? doubles[index] : null;
+		}
 		return table[index];
 	}
 	
+	Object getIntArray(int index) {
+		return index >= 1 && index < arraySize ? ints[index] : getRaw(index);
+	}
+	
+	Object getDoubleArray(int index) {
+		return index >= 1 && index < arraySize ? doubles[index] : getRaw(index);
+	}
+	
 	Object getAt(int slot) {
 		return table[arrayCapacity + slot];
 	}
@@ -88,7 +131,7 @@ public class LuaTable {
 		key = normalizeKey(key);
 		var arrayIndex = getArrayIndex(key);
 		if (arrayIndex != -1) {
-			return table[arrayIndex];
+			return getArray(arrayIndex);
 		}
 		
 		var slot = getSlot(key);
@@ -128,6 +171,38 @@ public class LuaTable {
 		table[index] = value;
 	}
 	
+	void setIntArray(int index, Object value) {
+		if (value instanceof Integer num && index >= 1 && index < arraySize && switchPoints == null) {
+			ints[index] = num; // Replace existing value
+		} else {
+			setRaw(index, value); // Append, remove or change array type
+		}
+	}
+	
+	void setDoubleArray(int index, Object value) {
+		if (value instanceof Double num && index >= 1 && index < arraySize && switchPoints == null) {
+			doubles[index] = num;
+		} else {
+			setRaw(index, value);
+		}
+	}
+	
+	void setIntArray(int index, int value) {
+		if (index >= 1 && index < arraySize && switchPoints == null) {
+			ints[index] = value;
+		} else {
+			setRaw(index, value);
+		}
+	}
+	
+	void setDoubleArray(int index, double value) {
+		if (index >= 1 && index < arraySize && switchPoints == null) {
+			doubles[index] = value;
+		} else {
+			setRaw(index, value);
+		}
+	}
+	
 	void setAt(int slot, Object key, Object value) {
 		var oldKey = keys[slot];
 		if (value == null && oldKey != null) {
@@ -153,10 +228,32 @@ public class LuaTable {
 	
 	public void setRaw(Object key, Object value) {
 		key = normalizeKey(key);
+		if (switchPoints != null) {
+			keyChanged(key);
+		}
 		if (key instanceof Integer index) {
+			if (ints != null || doubles != null) {
+				if (setTyped(index, value)) {
+					return;
+				} // else: not in array part, or array is no longer typed
+			} else if (index == 1 && arraySize == 0 && arrayCapacity == 0
+					&& (value instanceof Integer || value instanceof Double) && !hasIntegerKeysBelow(4)) {
+				// First value of an empty array; try to use a primitive array
+				if (value instanceof Integer num) {
+					ints = new int[4];
+					ints[1] = num;
+				} else {
+					doubles = new double[4];
+					doubles[1] = (double) value;
+				}
+				arraySize = 2;
+				shapeChanged();
+				return;
+			}
+			
 			// The logic here is subtly different from getArrayIndex()
 			// We allow appending to array (with a few gaps) even if it is full
-			if (index < arrayCapacity + 3) {
+			if (ints == null && doubles == null && index >= 0 && index < arrayCapacity + 3) {
 				if (index >= arrayCapacity) {
 					enlargeArray();
 				}
@@ -201,6 +298,90 @@ public class LuaTable {
 		}
 	}
 	
+	private boolean setTyped(int index, Object value) {
+		var capacity = arrayPartCapacity();
+		if (index >= 1 && index < arraySize) {
+			// Replace existing value
+			if (storeTyped(index, value)) {
+				return true;
+			} else if (value == null && index == arraySize - 1) {
+				arraySize--; // Last value removed
+				return true;
+			}
+		} else if (index == arraySize && value != null) {
+			if (isArrayType(value)) {
+				// Append, growing the array if needed
+				if (index == capacity && !growTypedArray()) {
+					return false; // Array is no longer typed
+				}
+				storeTyped(index, value);
+				arraySize++;
+				return true;
+			} // else: append value of different type
+		} else if (index < 0 || index >= capacity) {
+			return false; // Not an array index, use table part
+		} else if (value == null) {
+			return true; // Gap in array is already empty
+		}
+		toGenericArray();
+		return false;
+	}
+	
+	private boolean isArrayType(Object value) {
+		return ints != null ? value instanceof Integer : value instanceof Double;
+	}
+	
+	private boolean storeTyped(int index, Object value) {
+		if (ints != null && value instanceof Integer num) {
+			ints[index] = num;
+			return true;
+		} else if (doubles != null && value instanceof Double num) {
+			doubles[index] = num;
+			return true;
+		}
+		return false;
+	}
+	
+	private boolean growTypedArray() {
+		var newCapacity = arrayPartCapacity() * 2;
+		if (hasIntegerKeysBelow(newCapacity)) {
+			// Keys from table part would need to be moved to array; generic array can do that
+			toGenericArray();
+			return false;
+		}
+		shapeChanged();
+		if (ints != null) {
+			ints = Arrays.copyOf(ints, newCapacity);
+		} else {
+			doubles = Arrays.copyOf(doubles, newCapacity);
+		}
+		return true;
+	}
+	
+	private void toGenericArray() {
+		shapeChanged();
+		
+		var capacity = arrayPartCapacity();
+		var newTable = new Object[capacity + keys.length];
+		for (var i = 1; i < arraySize; i++) {
+			newTable[i] = getArray(i);
+		}
+		System.arraycopy(table, 0, newTable, capacity, keys.length); // Typed arrays have no array part in table
+		this.table = newTable;
+		this.arrayCapacity = capacity;
+		this.ints = null;
+		this.doubles = null;
+	}
+	
+	private boolean hasIntegerKeysBelow(int limit) {
+		for (var key : keys) {
+			if (key instanceof Integer index && index >= 0 && index < limit) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
 	private int getFreeSlot(Object key) {
 		if (keys == EMPTY) {
 			return -1;
@@ -233,7 +414,7 @@ public class LuaTable {
 		var oldTable = table;
 		var oldKeys = keys;
 		this.table = new Object[arrayCapacity + newSlotCount];
-		System.arraycopy(oldTable, 0, table, 0, arraySize); // Copy array members
+		System.arraycopy(oldTable, 0, table, 0, Math.min(arraySize, arrayCapacity)); // Copy array members
 		this.keys = new Object[newSlotCount];
 		
 		// Re-insert all non-array elements
@@ -283,6 +464,41 @@ public class LuaTable {
 		}
 	}
 	
+	// Key change tracking
+	
+	/**
+	 * Enables per-key change tracking for this table. Values of tracked
+	 * keys can be linked as constants, guarded by {@link SwitchPoint}s that
+	 * are invalidated when the keys are written to. This is intended for
+	 * tables that are read much more often than they are written, such as
+	 * the global table.
+	 */
+	public void trackKeyChanges() {
+		if (switchPoints == null) {
+			switchPoints = new HashMap<>();
+		}
+	}
+	
+	/**
+	 * Gets a switch point that is invalidated when value of the given key
+	 * changes.
+	 * @param key Normalized key.
+	 * @return A switch point, or null if this table does not track changes.
+	 */
+	SwitchPoint switchPoint(Object key) {
+		if (switchPoints == null) {
+			return null;
+		}
+		return switchPoints.computeIfAbsent(key, k -> new SwitchPoint());
+	}
+	
+	private void keyChanged(Object key) {
+		var switchPoint = switchPoints.remove(key);
+		if (switchPoint != null) {
+			SwitchPoint.invalidateAll(new SwitchPoint[] {switchPoint});
+		}
+	}
+	
 	// Misc
 	
 	public LuaTable metatable() {
@@ -315,6 +531,143 @@ public class LuaTable {
 		return shape;
 	}
 	
+	// Array part operations for table library
+	
+	/**
+	 * Inserts a value to array part of this table, moving the following
+	 * elements up by one. Metamethods are not called.
+	 * @param index Index to insert at, between 1 and
+	 * {@link #arraySize()} + 1.
+	 * @param value Value to insert.
+	 */
+	public void insertRaw(int index, Object value) {
+		var size = arraySize();
+		assert index >= 1 && index <= size + 1;
+		if (index == size + 1) {
+			setRaw(index, value); // Append, may need to enlarge array
+			return;
+		}
+		if (ints != null || doubles != null) {
+			if (isArrayType(value) && (arraySize < arrayPartCapacity() || growTypedArray())) {
+				if (ints != null) {
+					System.arraycopy(ints, index, ints, index + 1, arraySize - index);
+				} else {
+					System.arraycopy(doubles, index, doubles, index + 1, arraySize - index);
+				}
+				storeTyped(index, value);
+				arraySize++;
+				return;
+			}
+			if (ints != null || doubles != null) {
+				toGenericArray();
+			}
+		}
+		if (arraySize == arrayCapacity) {
+			enlargeArray();
+		}
+		System.arraycopy(table, index, table, index + 1, arraySize - index);
+		table[index] = value;
+		arraySize++;
+	}
+	
+	/**
+	 * Removes a value from array part of this table, moving the following
+	 * elements down by one. Metamethods are not called.
+	 * @param index Index to remove, between 1 and {@link #arraySize()}.
+	 * @return The removed value.
+	 */
+	public Object removeRaw(int index) {
+		assert index >= 1 && index <= arraySize();
+		var value = getArray(index);
+		if (ints != null) {
+			System.arraycopy(ints, index + 1, ints, index, arraySize - index - 1);
+			arraySize--;
+			return value;
+		} else if (doubles != null) {
+			System.arraycopy(doubles, index + 1, doubles, index, arraySize - index - 1);
+			arraySize--;
+			return value;
+		}
+		System.arraycopy(table, index + 1, table, index, arraySize - index - 1);
+		table[--arraySize] = null;
+		return value;
+	}
+	
+	/**
+	 * Copies a range of values from this table. Metamethods are not called.
+	 * @param first Index of first value.
+	 * @param last Index of last value (inclusive).
+	 * @return Array of values.
+	 */
+	public Object[] arraySlice(int first, int last) {
+		if (first > last) {
+			return EMPTY;
+		}
+		if (first >= 0 && last < arraySize && ints == null && doubles == null) {
+			return Arrays.copyOfRange(table, first, last + 1);
+		}
+		// Some values are not in the array part
+		var values = new Object[last - first + 1];
+		for (var i = 0; i < values.length; i++) {
+			values[i] = getRaw(first + i);
+		}
+		return values;
+	}
+	
+	/**
+	 * Sorts the array part of this table in place.
+	 * @param comparator Comparator for values.
+	 */
+	public void sortArray(Comparator<Object> comparator) {
+		if (arraySize > 2) {
+			if (ints != null || doubles != null) {
+				// Comparator needs Lua values, so sort boxed copy and store results back
+				var values = arraySlice(1, arraySize - 1);
+				Arrays.sort(values, comparator);
+				for (var i = 0; i < values.length; i++) {
+					storeTyped(i + 1, values[i]);
+				}
+			} else {
+				Arrays.sort(table, 1, arraySize, comparator);
+			}
+		}
+	}
+	
+	/**
+	 * Sorts a range of an array.
+	 *
+	 */
+	public interface ArraySorter {
+		
+		/**
+		 * Sorts values in an array.
+		 * @param values Array to sort.
+		 * @param from Start of range, inclusive.
+		 * @param to End of range, exclusive.
+		 */
+		void sort(Object[] values, int from, int to);
+	}
+	
+	/**
+	 * Sorts the array part of this table in place with a custom sort
+	 * algorithm. Typed arrays are sorted as a boxed copy, because the sorter
+	 * works with Lua values.
+	 * @param sorter Sort algorithm.
+	 */
+	public void sortArray(ArraySorter sorter) {
+		if (arraySize > 2) {
+			if (ints != null || doubles != null) {
+				var values = arraySlice(1, arraySize - 1);
+				sorter.sort(values, 0, values.length);
+				for (var i = 0; i < values.length; i++) {
+					storeTyped(i + 1, values[i]);
+				}
+			} else {
+				sorter.sort(table, 1, arraySize);
+			}
+		}
+	}
+	
 	/**
 	 * Gets the next entry in this table.
 	 * 
@@ -399,25 +752,51 @@ public class LuaTable {
 		private final boolean arrayOnly;
 		private boolean array;
 		private int index;
+		private Object key, value;
+		
+		/**
+		 * Storage of the table when this iterator last advanced. If the table
+		 * is reallocated during iteration, position in it must be recomputed.
+		 */
+		private Object[] storage;
 		
 		private Iterator(boolean arrayOnly) {
 			this.arrayOnly = arrayOnly;
 			this.array = true;
 			this.index = 0;
+			this.storage = table;
 		}
 		
 		public boolean next() {
+			if (storage != table) {
+				tableReallocated();
+			}
 			return array ? nextArray() : nextTable();
 		}
 		
+		private void tableReallocated() {
+			storage = table;
+			if (!array && index < table.length) {
+				// Position in hash part is not stable across reallocations
+				// Assigning to existing fields is fine, so find where our current key is now
+				var slot = getSlot(key);
+				if (slot == -1) {
+					throw new LuaException("invalid key to 'next'");
+				}
+				index = arrayCapacity + slot;
+			}
+		}
+		
 		private boolean nextArray() {
 			index++;
-			if (index >= arraySize || table[index] == null) {
+			if (index >= arraySize || getArray(index) == null) {
 				// Reached array end
 				// ... but if there were previously gaps, some hash table entries
 				// might also need to be visible to array iterators
 				var nextEntry = getRaw(index);
 				if (nextEntry != null) {
+					key = index;
+					value = nextEntry;
 					return true;
 				} // else: REALLY reached array end
 				
@@ -425,11 +804,15 @@ public class LuaTable {
 				index = arrayCapacity - 1; // Jump over possible unused array space
 				return nextTable(); // Table might or might not have entries
 			}
+			key = index;
+			value = getArray(index);
 			return true;
 		}
 		
 		private boolean nextTable() {
 			if (arrayOnly) {
+				key = null;
+				value = null;
 				return false; // ipairs() like behavior
 			}
 			
@@ -437,19 +820,23 @@ public class LuaTable {
 			for (var i = index + 1; i < table.length; i++) {
 				if (table[i] != null) {
 					index = i;
+					key = keys[i - arrayCapacity];
+					value = table[i];
 					return true;
 				}
 			}
 			index = table.length;
+			key = null;
+			value = null; // Allow last value to be GC'd
 			return false;
 		}
 		
 		public Object key() {
-			return array ? index : keys[index - arrayCapacity];
+			return key;
 		}
 		
 		public Object value() {
-			return table[index];
+			return value;
 		}
 	}
 }
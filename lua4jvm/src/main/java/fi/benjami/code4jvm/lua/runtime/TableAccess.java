@@ -4,12 +4,15 @@ import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
 
+import fi.benjami.code4jvm.lua.LuaVm;
+import fi.benjami.code4jvm.lua.ffi.JavaMembers;
 import fi.benjami.code4jvm.lua.ir.LuaType;
 import fi.benjami.code4jvm.lua.linker.CallSiteOptions;
 import fi.benjami.code4jvm.lua.linker.DynamicTarget;
 import fi.benjami.code4jvm.lua.linker.LuaCallSite;
 import fi.benjami.code4jvm.lua.linker.LuaCallTarget;
 import fi.benjami.code4jvm.lua.linker.LuaLinker;
+import fi.benjami.code4jvm.lua.stdlib.LuaException;
 
 /**
  * Linker support for table access.
@@ -22,9 +25,11 @@ public class TableAccess {
 	private static final int MAX_LINKAGE_COUNT = 3;
 
 	public static final MethodHandle CHECK_TABLE_SHAPE, CHECK_TABLE_AND_META_SHAPES;
-	private static final MethodHandle GET_ARRAY, SET_ARRAY, GET_AT, SET_AT, GET_RAW, SET_RAW, GET, SET;
+	private static final MethodHandle CHECK_TABLE, CHECK_CLASS, CHECK_INT_ARRAY, CHECK_DOUBLE_ARRAY, CHECK_OBJECT_ARRAY, TRUE, FALSE;
+	private static final MethodHandle GET_ARRAY, SET_ARRAY, GET_AT, SET_AT, GET_RAW, SET_RAW, GET, SET, GET_ANY, SET_ANY;
+	private static final MethodHandle GET_INTS, GET_DOUBLES, SET_INTS, SET_DOUBLES, SET_INTS_INT, SET_DOUBLES_DOUBLE;
 	
-	public static final DynamicTarget CONSTANT_GET, CONSTANT_SET;
+	public static final DynamicTarget CONSTANT_GET, CONSTANT_SET, INDEX_GET, INDEX_SET;
 	
 	static {
 		var lookup = MethodHandles.lookup();
@@ -34,12 +39,36 @@ public class TableAccess {
 					MethodType.methodType(boolean.class, Object.class, Object.class, Object.class));
 			CHECK_TABLE_AND_META_SHAPES = lookup.findStatic(TableAccess.class, "checkTableAndMetaShapes",
 					MethodType.methodType(boolean.class, Object.class, Object.class, Object.class, Object.class));
+			CHECK_TABLE = lookup.findStatic(TableAccess.class, "checkTable",
+					MethodType.methodType(boolean.class, Object.class, Object.class, Object.class));
+			CHECK_CLASS = lookup.findStatic(TableAccess.class, "checkClass",
+					MethodType.methodType(boolean.class, Class.class, Object.class, Object.class));
+			CHECK_INT_ARRAY = lookup.findStatic(TableAccess.class, "checkIntArray",
+					MethodType.methodType(boolean.class, Object.class, Object.class));
+			CHECK_DOUBLE_ARRAY = lookup.findStatic(TableAccess.class, "checkDoubleArray",
+					MethodType.methodType(boolean.class, Object.class, Object.class));
+			CHECK_OBJECT_ARRAY = lookup.findStatic(TableAccess.class, "checkObjectArray",
+					MethodType.methodType(boolean.class, Object.class, Object.class));
+			TRUE = MethodHandles.constant(boolean.class, true);
+			FALSE = MethodHandles.constant(boolean.class, false);
 			
 			// LuaTable accessors
 			GET_ARRAY = MethodHandles.dropArguments(lookup.findVirtual(LuaTable.class, "getArray",
 					MethodType.methodType(Object.class, int.class)), 0, Object.class);
 			SET_ARRAY = MethodHandles.dropArguments(lookup.findVirtual(LuaTable.class, "setArray",
 					MethodType.methodType(void.class, int.class, Object.class)), 0, Object.class);
+			GET_INTS = MethodHandles.dropArguments(lookup.findVirtual(LuaTable.class, "getIntArray",
+					MethodType.methodType(Object.class, int.class)), 0, Object.class);
+			GET_DOUBLES = MethodHandles.dropArguments(lookup.findVirtual(LuaTable.class, "getDoubleArray",
+					MethodType.methodType(Object.class, int.class)), 0, Object.class);
+			SET_INTS = MethodHandles.dropArguments(lookup.findVirtual(LuaTable.class, "setIntArray",
+					MethodType.methodType(void.class, int.class, Object.class)), 0, Object.class);
+			SET_DOUBLES = MethodHandles.dropArguments(lookup.findVirtual(LuaTable.class, "setDoubleArray",
+					MethodType.methodType(void.class, int.class, Object.class)), 0, Object.class);
+			SET_INTS_INT = MethodHandles.dropArguments(lookup.findVirtual(LuaTable.class, "setIntArray",
+					MethodType.methodType(void.class, int.class, int.class)), 0, Object.class);
+			SET_DOUBLES_DOUBLE = MethodHandles.dropArguments(lookup.findVirtual(LuaTable.class, "setDoubleArray",
+					MethodType.methodType(void.class, int.class, double.class)), 0, Object.class);
 			GET_AT = lookup.findVirtual(LuaTable.class, "getAt",
 					MethodType.methodType(Object.class, int.class));
 			SET_AT = lookup.findVirtual(LuaTable.class, "setAt",
@@ -52,19 +81,25 @@ public class TableAccess {
 					MethodType.methodType(Object.class, Object.class)), 0, Object.class);
 			SET = MethodHandles.dropArguments(lookup.findVirtual(LuaTable.class, "set",
 					MethodType.methodType(void.class, Object.class, Object.class)), 0, Object.class);
+			GET_ANY = lookup.findStatic(TableAccess.class, "getAny",
+					MethodType.methodType(Object.class, LuaVm.class, Object.class, Object.class, Object.class));
+			SET_ANY = MethodHandles.dropArguments(lookup.findStatic(TableAccess.class, "setAny",
+					MethodType.methodType(void.class, Object.class, Object.class, Object.class)), 0, Object.class);
 		} catch (NoSuchMethodException | IllegalAccessException e) {
 			throw new AssertionError(e);
 		}
 		
 		CONSTANT_GET = TableAccess::resolveConstantGet;
 		CONSTANT_SET = TableAccess::resolveConstantSet;
+		INDEX_GET = TableAccess::resolveIndexGet;
+		INDEX_SET = TableAccess::resolveIndexSet;
 	}
 	
 	private static LuaCallTarget resolveConstantGet(LuaCallSite meta, Object[] args) {
 		if (meta.linkageCount > MAX_LINKAGE_COUNT) {
 			// Slow path: table seems to be changing too often
 			// TODO try to still optimize stable, shared metatable; this is used for Lua "OOP"
-			return new LuaCallTarget(GET);
+			return new LuaCallTarget(MethodHandles.insertArguments(GET_ANY, 0, meta.options.owner()));
 		}
 		
 		var key = LuaTable.normalizeKey(args[1]); // Low-level table APIs don't do this for us
@@ -73,16 +108,32 @@ public class TableAccess {
 			var arrayIndex = table.getArrayIndex(key);
 			if (arrayIndex != -1 && (table.getArray(arrayIndex) != null || metatable == null)) {
 				// Fast path: read value from array
-				return new LuaCallTarget(GET_ARRAY, CHECK_TABLE_SHAPE.bindTo(table));
+				// Changing array type changes shape, so we can link to accessor of current type
+				var target = table.ints != null ? GET_INTS : table.doubles != null ? GET_DOUBLES : GET_ARRAY;
+				return new LuaCallTarget(target, CHECK_TABLE_SHAPE.bindTo(table.shape));
 			}
 			
 			var slot = table.getSlot(key);
-			if (slot != -1) {
+			// Only link constants once per site; a value that has changed once will likely change again
+			var switchPoint = slot != -1 && meta.linkageCount <= 1 ? table.switchPoint(key) : null;
+			if (switchPoint != null) {
+				// Fastest path: table tracks key changes, so link the current value as constant
+				// Writing to the key invalidates the switch point, which causes relinking
+				var target = MethodHandles.dropArguments(MethodHandles.constant(Object.class, table.getAt(slot)),
+						0, Object.class, Object.class, Object.class);
+				var switchGuard = MethodHandles.dropArguments(switchPoint.guardWithTest(TRUE, FALSE),
+						0, Object.class, Object.class);
+				return new LuaCallTarget(target, switchGuard, CHECK_TABLE.bindTo(table));
+			} else if (slot != -1) {
 				// Fast path: key is present in table -> use slot-based access
 				// (absent keys don't have a slot, but might receive one without table shape changing)
 				var target = MethodHandles.dropArguments(MethodHandles.insertArguments(GET_AT, 0, table, slot),
 						0, Object.class, Object.class, Object.class);
 				return new LuaCallTarget(target, CHECK_TABLE_SHAPE.bindTo(table.shape));
+			} else if (metatable == null) {
+				// Slow path: not in table and there is no metatable
+				// (absent keys might receive a slot without table shape changing)
+				return new LuaCallTarget(GET, CHECK_TABLE_SHAPE.bindTo(table.shape));
 			} else {
 				// We need to check the metatable
 				if (metatable.metatable() == null) {
@@ -112,14 +163,137 @@ public class TableAccess {
 				}
 			}
 		} else {
-			throw new UnsupportedOperationException("userdata");
+			return resolveJavaGet(meta, args[0], key);
 		}
 	}
 	
+	private static LuaCallTarget resolveJavaGet(LuaCallSite meta, Object obj, Object key) {
+		var members = javaMembers(meta.options.owner(), obj);
+		// Members are resolved per class, so linking them is valid as long as class doesn't change
+		var guard = CHECK_CLASS.bindTo(obj.getClass());
+		var method = key instanceof String name ? members.method(name) : null;
+		var getter = key instanceof String name ? members.getter(name) : null;
+		MethodHandle target;
+		if (getter != null) {
+			// Call field or property getter directly
+			target = MethodHandles.dropArguments(MethodHandles.dropArguments(getter, 1, Object.class), 0, Object.class);
+		} else if (method != null) {
+			// Method is a JavaFunction that is shared by all objects of the class
+			target = MethodHandles.dropArguments(MethodHandles.constant(Object.class, method),
+					0, Object.class, Object.class, Object.class);
+		} else {
+			// Missing members are nil, like missing keys in tables
+			target = MethodHandles.dropArguments(MethodHandles.constant(Object.class, null),
+					0, Object.class, Object.class, Object.class);
+		}
+		return new LuaCallTarget(target, guard);
+	}
+	
+	private static JavaMembers javaMembers(LuaVm vm, Object obj) {
+		var members = obj != null ? JavaMembers.of(vm, obj) : null;
+		if (members == null) {
+			throw indexError(obj);
+		}
+		return members;
+	}
+	
+	private static LuaException indexError(Object obj) {
+		var type = LuaType.of(obj);
+		return new LuaException("attempt to index a " + (type == LuaType.UNKNOWN ? "userdata" : type.name()) + " value");
+	}
+	
+	@SuppressWarnings("unused") // MethodHandle
+	private static Object getAny(LuaVm vm, Object callable, Object obj, Object key) throws Throwable {
+		if (obj instanceof LuaTable table) {
+			return table.get(key);
+		}
+		return key instanceof String name ? javaMembers(vm, obj).get(obj, name) : null;
+	}
+	
 	private static LuaCallTarget resolveConstantSet(LuaCallSite meta, Object[] args) {
-		// TODO implement some optimizations for write path before this is used
-		// Right now this would just slow down the write path
-		return new LuaCallTarget(SET);
+		if (meta.linkageCount <= MAX_LINKAGE_COUNT && args[0] instanceof LuaTable table
+				&& table.metatable() == null && (table.ints != null || table.doubles != null)
+				&& table.getArrayIndex(LuaTable.normalizeKey(args[1])) != -1) {
+			// Fast path: store to typed array
+			// Values of other types, appends and removals fall back to normal setter
+			var target = table.ints != null ? SET_INTS : SET_DOUBLES;
+			return new LuaCallTarget(target, CHECK_TABLE_SHAPE.bindTo(table.shape));
+		}
+		// TODO optimize writes to hash and generic array parts
+		// Without metatables, guards for them would cost about as much as the setter
+		return new LuaCallTarget(SET_ANY);
+	}
+	
+	private static LuaCallTarget resolveIndexGet(LuaCallSite meta, Object[] args) {
+		// Key is an int that changes between calls, so slots and constants can't be linked
+		// Link to typed array instead; the guard only checks array type, so site works for any such table
+		if (meta.linkageCount <= MAX_LINKAGE_COUNT && args[0] instanceof LuaTable table && table.metatable() == null) {
+			if (table.ints != null) {
+				return new LuaCallTarget(GET_INTS, CHECK_INT_ARRAY);
+			} else if (table.doubles != null) {
+				return new LuaCallTarget(GET_DOUBLES, CHECK_DOUBLE_ARRAY);
+			} else {
+				// Relink if the table (or another one) gets a typed array later
+				return new LuaCallTarget(MethodHandles.insertArguments(GET_ANY, 0, meta.options.owner()), CHECK_OBJECT_ARRAY);
+			}
+		}
+		return new LuaCallTarget(MethodHandles.insertArguments(GET_ANY, 0, meta.options.owner()));
+	}
+	
+	private static LuaCallTarget resolveIndexSet(LuaCallSite meta, Object[] args) {
+		if (meta.linkageCount <= MAX_LINKAGE_COUNT && args[0] instanceof LuaTable table && table.metatable() == null) {
+			// Store ints and doubles without boxing them, if the call site has them unboxed
+			var valueType = meta.site.type().parameterType(3);
+			if (table.ints != null) {
+				return new LuaCallTarget(valueType == int.class ? SET_INTS_INT : SET_INTS, CHECK_INT_ARRAY);
+			} else if (table.doubles != null) {
+				return new LuaCallTarget(valueType == double.class ? SET_DOUBLES_DOUBLE : SET_DOUBLES, CHECK_DOUBLE_ARRAY);
+			} else {
+				// Tables usually get typed arrays when they're filled, which happens after linking
+				return new LuaCallTarget(SET_ANY, CHECK_OBJECT_ARRAY);
+			}
+		}
+		return new LuaCallTarget(SET_ANY);
+	}
+	
+	/**
+	 * Sets a value to a table. Fields of Java objects cannot be written to.
+	 * @param obj Table to write to.
+	 * @param key Key.
+	 * @param value Value.
+	 * @throws LuaException When the object is not a table.
+	 */
+	public static void setAny(Object obj, Object key, Object value) {
+		if (obj instanceof LuaTable table) {
+			table.set(key, value);
+		} else {
+			throw indexError(obj);
+		}
+	}
+	
+	@SuppressWarnings("unused") // MethodHandle
+	private static boolean checkTable(Object expected, Object callable, Object tbl) {
+		return expected == tbl;
+	}
+	
+	@SuppressWarnings("unused") // MethodHandle
+	private static boolean checkClass(Class<?> expected, Object callable, Object obj) {
+		return obj != null && expected == obj.getClass();
+	}
+	
+	@SuppressWarnings("unused") // MethodHandle
+	private static boolean checkIntArray(Object callable, Object tbl) {
+		return tbl instanceof LuaTable table && table.ints != null && table.metatable == null;
+	}
+	
+	@SuppressWarnings("unused") // MethodHandle
+	private static boolean checkDoubleArray(Object callable, Object tbl) {
+		return tbl instanceof LuaTable table && table.doubles != null && table.metatable == null;
+	}
+	
+	@SuppressWarnings("unused") // MethodHandle
+	private static boolean checkObjectArray(Object callable, Object tbl) {
+		return tbl instanceof LuaTable table && table.ints == null && table.doubles == null && table.metatable == null;
 	}
 	
 	@SuppressWarnings("unused") // MethodHandle
@@ -35,6 +35,13 @@ public class BasicLib implements LuaLibrary {
 	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
 	private static final Collection<JavaFunction> FUNCTIONS = new LuaBinder(LOOKUP).bindFunctionsFrom(BasicLib.class);
 	
+	/**
+	 * The {@code next} function.
+	 */
+	public static final JavaFunction NEXT = FUNCTIONS.stream()
+			.filter(func -> func.name().equals("next"))
+			.findAny().orElseThrow();
+	
 	private BasicLib() {}
 	
 	@Override
@@ -264,8 +271,13 @@ public class BasicLib implements LuaLibrary {
 		return LuaType.of(value).name();
 	}
 	
-	private static final JavaFunction INTRINSIC_ITERATOR = InternalLib.FUNCTIONS.get("intrinsicIterator"),
-			TABLE_ITERATOR = InternalLib.FUNCTIONS.get("tableIterator"),
+	/**
+	 * Iterator function that {@code pairs} and {@code ipairs} return for
+	 * for loops. Its state is a {@link LuaTable.Iterator}.
+	 */
+	public static final JavaFunction INTRINSIC_ITERATOR = InternalLib.FUNCTIONS.get("intrinsicIterator");
+	
+	private static final JavaFunction TABLE_ITERATOR = InternalLib.FUNCTIONS.get("tableIterator"),
 			ARRAY_ITERATOR = InternalLib.FUNCTIONS.get("arrayIterator");
 		
 	@LuaExport("pairs")
@@ -37,6 +37,11 @@ class InternalLib {
 		return PAIRS_ARRAY;
 	}
 	
+	@LuaExport("gmatchIterator")
+	private static Object gmatchIterator(StringLib.GmatchState state, Object prevMatch) {
+		return state.next(); // Single capture as-is, array for multiple
+	}
+	
 	@LuaExport("tableIterator")
 	private static Object[] tableIterator(LuaTable table, String prevKey) {
 		return table.next(prevKey);
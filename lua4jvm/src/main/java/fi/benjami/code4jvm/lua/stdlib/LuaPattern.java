@@ -0,0 +1,618 @@
+package fi.benjami.code4jvm.lua.stdlib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A compiled Lua pattern. Patterns are parsed once to a program of items,
+ * which the matcher then executes with backtracking like the reference
+ * implementation does.
+ *
+ */
+final class LuaPattern {
+	
+	private static final int MAX_CACHED = 1024;
+	
+	/**
+	 * Compiled patterns by their source. Scripts may build patterns
+	 * dynamically, so least recently used patterns are evicted when it grows
+	 * too large. Access must be synchronized on this.
+	 */
+	private static final Map<String, LuaPattern> CACHE = new LinkedHashMap<>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, LuaPattern> eldest) {
+			return size() > MAX_CACHED;
+		}
+	};
+	
+	// Item kinds
+	private static final int CLASS = 0, OPEN = 1, POSITION = 2, CLOSE = 3, BALANCE = 4, FRONTIER = 5, BACKREF = 6, END = 7;
+	
+	// Quantifiers of CLASS items
+	private static final int SINGLE = 0, STAR = 1, PLUS = 2, LAZY = 3, OPTIONAL = 4;
+	
+	// Capture lengths that are not lengths
+	private static final int CAP_UNFINISHED = -1, CAP_POSITION = -2;
+	
+	private static final String SPECIALS = "^$*+?.([%-";
+	
+	public static LuaPattern get(String pattern) {
+		LuaPattern compiled;
+		synchronized (CACHE) {
+			compiled = CACHE.get(pattern);
+		}
+		if (compiled == null) {
+			// Compile outside of lock; in worst case, a pattern is compiled twice
+			compiled = new LuaPattern(pattern);
+			synchronized (CACHE) {
+				CACHE.put(pattern, compiled);
+			}
+		}
+		return compiled;
+	}
+	
+	/**
+	 * Checks if the given pattern contains no special characters.
+	 * @param pattern Pattern.
+	 * @return Whether the pattern matches only itself.
+	 */
+	public static boolean isPlain(String pattern) {
+		for (var i = 0; i < pattern.length(); i++) {
+			if (SPECIALS.indexOf(pattern.charAt(i)) != -1) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * A set of characters.
+	 */
+	private static final class CharClass {
+		
+		/**
+		 * Literal character that is the only member of this class, or -1.
+		 */
+		final int literal;
+		
+		/**
+		 * Membership of ASCII characters.
+		 */
+		final boolean[] ascii;
+		
+		/**
+		 * Ranges of non-ASCII characters (start, end inclusive) in this class.
+		 */
+		final int[] ranges;
+		
+		/**
+		 * Whether all non-ASCII characters are members, before negation.
+		 */
+		final boolean allNonAscii;
+		
+		final boolean negated;
+		
+		CharClass(int literal) {
+			this.literal = literal;
+			this.ascii = null;
+			this.ranges = null;
+			this.allNonAscii = false;
+			this.negated = false;
+		}
+		
+		CharClass(boolean[] ascii, int[] ranges, boolean allNonAscii, boolean negated) {
+			this.literal = -1;
+			this.ascii = ascii;
+			this.ranges = ranges;
+			this.allNonAscii = allNonAscii;
+			this.negated = negated;
+		}
+		
+		boolean matches(char c) {
+			if (literal != -1) {
+				return c == literal;
+			} else if (c < 128) {
+				return ascii[c]; // Negation already applied
+			}
+			var member = allNonAscii;
+			for (var i = 0; !member && i < ranges.length; i += 2) {
+				member = c >= ranges[i] && c <= ranges[i + 1];
+			}
+			return member != negated;
+		}
+	}
+	
+	/**
+	 * State of matching a pattern against a string.
+	 */
+	final class Matcher {
+		
+		private final String str;
+		private final int end;
+		
+		private int level;
+		private final int[] captureStart, captureLength;
+		
+		private int matchStart, matchEnd;
+		
+		Matcher(String str) {
+			this.str = str;
+			this.end = str.length();
+			this.captureStart = new int[captureCount];
+			this.captureLength = new int[captureCount];
+		}
+		
+		/**
+		 * Attempts to match the pattern at the given position. Captures are
+		 * available if this succeeds.
+		 * @param start Start index.
+		 * @return End index of the match, or -1 if it did not match.
+		 */
+		int matchAt(int start) {
+			level = 0;
+			var result = match(this, start, 0);
+			if (result != -1) {
+				matchStart = start;
+				matchEnd = result;
+			}
+			return result;
+		}
+		
+		/**
+		 * Finds the next match.
+		 * @param from Index to start searching from.
+		 * @return Whether a match was found.
+		 */
+		boolean find(int from) {
+			for (var start = from; start <= end; start++) {
+				if (matchAt(start) != -1) {
+					return true;
+				} else if (anchored) {
+					break;
+				}
+			}
+			return false;
+		}
+		
+		int start() {
+			return matchStart;
+		}
+		
+		int end() {
+			return matchEnd;
+		}
+		
+		/**
+		 * Gets the whole match.
+		 * @return Matched substring.
+		 */
+		String matched() {
+			return str.substring(matchStart, matchEnd);
+		}
+		
+		/**
+		 * Number of values {@link #capture(int)} can return. If the pattern
+		 * has no captures, the whole match is captured.
+		 * @return Capture count.
+		 */
+		int captureCount() {
+			return captureCount == 0 ? 1 : captureCount;
+		}
+		
+		/**
+		 * Gets a captured value.
+		 * @param index Index of capture.
+		 * @return Captured string, or 1-based position for position captures.
+		 */
+		Object capture(int index) {
+			if (captureCount == 0) {
+				return str.substring(matchStart, matchEnd);
+			}
+			var length = captureLength[index];
+			if (length == CAP_POSITION) {
+				return captureStart[index] + 1;
+			} else if (length == CAP_UNFINISHED) {
+				throw new LuaException("unfinished capture");
+			}
+			return str.substring(captureStart[index], captureStart[index] + length);
+		}
+		
+		/**
+		 * Gets all captured values.
+		 * @return Captures.
+		 */
+		Object[] captures() {
+			var values = new Object[captureCount()];
+			for (var i = 0; i < values.length; i++) {
+				values[i] = capture(i);
+			}
+			return values;
+		}
+		
+		/**
+		 * Gets captured values, or nothing if the pattern has no captures.
+		 * @return Explicit captures.
+		 */
+		Object[] explicitCaptures() {
+			return captureCount == 0 ? new Object[0] : captures();
+		}
+	}
+	
+	private final boolean anchored;
+	private final int captureCount;
+	
+	// Items of the pattern program
+	private final int[] kinds;
+	private final int[] args;
+	private final CharClass[] classes;
+	
+	private LuaPattern(String pattern) {
+		var kinds = new ArrayList<Integer>();
+		var args = new ArrayList<Integer>();
+		var classes = new ArrayList<CharClass>();
+		
+		var i = 0;
+		var length = pattern.length();
+		anchored = length > 0 && pattern.charAt(0) == '^';
+		if (anchored) {
+			i++;
+		}
+		var captures = 0;
+		while (i < length) {
+			var c = pattern.charAt(i);
+			int kind, arg = 0;
+			CharClass charClass = null;
+			if (c == '(') {
+				if (i + 1 < length && pattern.charAt(i + 1) == ')') {
+					kind = POSITION;
+					i += 2;
+				} else {
+					kind = OPEN;
+					i++;
+				}
+				captures++;
+			} else if (c == ')') {
+				kind = CLOSE;
+				i++;
+			} else if (c == '$' && i == length - 1) {
+				kind = END;
+				i++;
+			} else if (c == '%' && i + 1 < length && pattern.charAt(i + 1) == 'b') {
+				if (i + 3 >= length) {
+					throw new LuaException("malformed pattern (missing arguments to '%b')");
+				}
+				kind = BALANCE;
+				arg = (pattern.charAt(i + 2) << 16) | pattern.charAt(i + 3);
+				i += 4;
+			} else if (c == '%' && i + 1 < length && pattern.charAt(i + 1) == 'f') {
+				i += 2;
+				if (i >= length || pattern.charAt(i) != '[') {
+					throw new LuaException("missing '[' after '%f' in pattern");
+				}
+				kind = FRONTIER;
+				var classEnd = classEnd(pattern, i);
+				charClass = parseClass(pattern, i, classEnd);
+				i = classEnd;
+			} else if (c == '%' && i + 1 < length && Character.isDigit(pattern.charAt(i + 1))) {
+				kind = BACKREF;
+				arg = pattern.charAt(i + 1) - '1'; // Validated when matching, like in reference implementation
+				i += 2;
+			} else {
+				kind = CLASS;
+				var classEnd = classEnd(pattern, i);
+				charClass = parseClass(pattern, i, classEnd);
+				i = classEnd;
+				if (i < length) {
+					arg = switch (pattern.charAt(i)) {
+					case '*' -> STAR;
+					case '+' -> PLUS;
+					case '-' -> LAZY;
+					case '?' -> OPTIONAL;
+					default -> SINGLE;
+					};
+					if (arg != SINGLE) {
+						i++;
+					}
+				}
+			}
+			kinds.add(kind);
+			args.add(arg);
+			classes.add(charClass);
+		}
+		
+		this.captureCount = captures;
+		this.kinds = kinds.stream().mapToInt(Integer::intValue).toArray();
+		this.args = args.stream().mapToInt(Integer::intValue).toArray();
+		this.classes = classes.toArray(CharClass[]::new);
+	}
+	
+	private static int classEnd(String pattern, int i) {
+		var length = pattern.length();
+		var c = pattern.charAt(i++);
+		if (c == '%') {
+			if (i >= length) {
+				throw new LuaException("malformed pattern (ends with '%')");
+			}
+			return i + 1;
+		} else if (c == '[') {
+			if (i < length && pattern.charAt(i) == '^') {
+				i++;
+			}
+			// First character of set is never its end
+			do {
+				if (i >= length) {
+					throw new LuaException("malformed pattern (missing ']')");
+				}
+				var next = pattern.charAt(i++);
+				if (next == '%' && i < length) {
+					i++; // Skip escaped character
+				}
+			} while (i >= length || pattern.charAt(i) != ']');
+			return i + 1;
+		} else {
+			return i;
+		}
+	}
+	
+	private static CharClass parseClass(String pattern, int start, int end) {
+		var c = pattern.charAt(start);
+		if (c == '.') {
+			var ascii = new boolean[128];
+			Arrays.fill(ascii, true);
+			return new CharClass(ascii, new int[0], true, false);
+		} else if (c == '%') {
+			var escaped = pattern.charAt(start + 1);
+			var ascii = new boolean[128];
+			if (!addClass(ascii, escaped)) {
+				return new CharClass(escaped); // Escaped literal
+			}
+			// Non-ASCII characters are not members of any class in C locale
+			return new CharClass(ascii, new int[0], Character.isUpperCase(escaped), false);
+		} else if (c == '[') {
+			var ascii = new boolean[128];
+			var ranges = new ArrayList<Integer>();
+			var allNonAscii = false;
+			var i = start + 1;
+			var negated = pattern.charAt(i) == '^';
+			if (negated) {
+				i++;
+			}
+			var setEnd = end - 1; // Closing ]
+			while (i < setEnd) {
+				var first = pattern.charAt(i);
+				if (first == '%' && i + 1 < setEnd) {
+					var escaped = pattern.charAt(i + 1);
+					if (addClass(ascii, escaped)) {
+						allNonAscii |= Character.isUpperCase(escaped);
+					} else {
+						addRange(ascii, ranges, escaped, escaped);
+					}
+					i += 2;
+				} else if (i + 2 < setEnd && pattern.charAt(i + 1) == '-') {
+					addRange(ascii, ranges, first, pattern.charAt(i + 2));
+					i += 3;
+				} else {
+					addRange(ascii, ranges, first, first);
+					i++;
+				}
+			}
+			if (negated) {
+				for (var j = 0; j < ascii.length; j++) {
+					ascii[j] = !ascii[j];
+				}
+			}
+			return new CharClass(ascii, ranges.stream().mapToInt(Integer::intValue).toArray(), allNonAscii, negated);
+		} else {
+			return new CharClass(c);
+		}
+	}
+	
+	private static void addRange(boolean[] ascii, ArrayList<Integer> ranges, char first, char last) {
+		for (int c = first; c <= last && c < 128; c++) {
+			ascii[c] = true;
+		}
+		if (last >= 128) {
+			ranges.add((int) Math.max(first, 128));
+			ranges.add((int) last);
+		}
+	}
+	
+	private static boolean addClass(boolean[] ascii, char name) {
+		var lower = Character.toLowerCase(name);
+		if ("acdglpsuwx".indexOf(lower) == -1) {
+			return false;
+		}
+		for (var c = 0; c < 128; c++) {
+			var member = switch (lower) {
+			case 'a' -> isAlpha(c);
+			case 'c' -> c < 32 || c == 127;
+			case 'd' -> c >= '0' && c <= '9';
+			case 'g' -> c > 32 && c < 127;
+			case 'l' -> c >= 'a' && c <= 'z';
+			case 'p' -> c > 32 && c < 127 && !isAlpha(c) && !(c >= '0' && c <= '9');
+			case 's' -> c == ' ' || (c >= '\t' && c <= '\r');
+			case 'u' -> c >= 'A' && c <= 'Z';
+			case 'w' -> isAlpha(c) || (c >= '0' && c <= '9');
+			case 'x' -> (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+			default -> throw new AssertionError();
+			};
+			if (member != (name != lower)) { // Upper case class is complement
+				ascii[c] = true;
+			}
+		}
+		return true;
+	}
+	
+	private static boolean isAlpha(int c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+	
+	public Matcher matcher(String str) {
+		return new Matcher(str);
+	}
+	
+	public boolean isAnchored() {
+		return anchored;
+	}
+	
+	private int match(Matcher ms, int s, int p) {
+		var str = ms.str;
+		while (p < kinds.length) {
+			switch (kinds[p]) {
+			case OPEN:
+				return startCapture(ms, s, p + 1, CAP_UNFINISHED);
+			case POSITION:
+				return startCapture(ms, s, p + 1, CAP_POSITION);
+			case CLOSE:
+				return endCapture(ms, s, p + 1);
+			case END:
+				return s == ms.end ? s : -1;
+			case BALANCE:
+				s = matchBalance(ms, s, args[p]);
+				if (s == -1) {
+					return -1;
+				}
+				p++;
+				break;
+			case FRONTIER:
+				var prev = s == 0 ? '\0' : str.charAt(s - 1);
+				var current = s < ms.end ? str.charAt(s) : '\0';
+				if (classes[p].matches(prev) || !classes[p].matches(current)) {
+					return -1;
+				}
+				p++;
+				break;
+			case BACKREF:
+				s = matchCapture(ms, s, args[p]);
+				if (s == -1) {
+					return -1;
+				}
+				p++;
+				break;
+			default: // CLASS
+				var charClass = classes[p];
+				var matches = s < ms.end && charClass.matches(str.charAt(s));
+				switch (args[p]) {
+				case OPTIONAL:
+					if (matches) {
+						var result = match(ms, s + 1, p + 1);
+						if (result != -1) {
+							return result;
+						}
+					}
+					p++;
+					break;
+				case PLUS:
+					return matches ? maxExpand(ms, s + 1, p) : -1;
+				case STAR:
+					return maxExpand(ms, s, p);
+				case LAZY:
+					return minExpand(ms, s, p);
+				default:
+					if (!matches) {
+						return -1;
+					}
+					s++;
+					p++;
+				}
+			}
+		}
+		return s;
+	}
+	
+	private int maxExpand(Matcher ms, int s, int p) {
+		var charClass = classes[p];
+		var count = 0;
+		while (s + count < ms.end && charClass.matches(ms.str.charAt(s + count))) {
+			count++;
+		}
+		// Try with maximum repetitions, then fewer
+		for (; count >= 0; count--) {
+			var result = match(ms, s + count, p + 1);
+			if (result != -1) {
+				return result;
+			}
+		}
+		return -1;
+	}
+	
+	private int minExpand(Matcher ms, int s, int p) {
+		var charClass = classes[p];
+		while (true) {
+			var result = match(ms, s, p + 1);
+			if (result != -1) {
+				return result;
+			} else if (s < ms.end && charClass.matches(ms.str.charAt(s))) {
+				s++; // Try with one more repetition
+			} else {
+				return -1;
+			}
+		}
+	}
+	
+	private int startCapture(Matcher ms, int s, int p, int what) {
+		var level = ms.level;
+		ms.captureStart[level] = s;
+		ms.captureLength[level] = what;
+		ms.level = level + 1;
+		var result = match(ms, s, p);
+		if (result == -1) {
+			ms.level--; // Undo capture
+		}
+		return result;
+	}
+	
+	private int endCapture(Matcher ms, int s, int p) {
+		var level = captureToClose(ms);
+		ms.captureLength[level] = s - ms.captureStart[level];
+		var result = match(ms, s, p);
+		if (result == -1) {
+			ms.captureLength[level] = CAP_UNFINISHED; // Undo capture
+		}
+		return result;
+	}
+	
+	private int captureToClose(Matcher ms) {
+		for (var level = ms.level - 1; level >= 0; level--) {
+			if (ms.captureLength[level] == CAP_UNFINISHED) {
+				return level;
+			}
+		}
+		throw new LuaException("invalid pattern capture");
+	}
+	
+	private int matchBalance(Matcher ms, int s, int delimiters) {
+		char open = (char) (delimiters >>> 16), close = (char) delimiters;
+		if (s >= ms.end || ms.str.charAt(s) != open) {
+			return -1;
+		}
+		var depth = 1;
+		for (var i = s + 1; i < ms.end; i++) {
+			var c = ms.str.charAt(i);
+			if (c == close) {
+				if (--depth == 0) {
+					return i + 1;
+				}
+			} else if (c == open) {
+				depth++;
+			}
+		}
+		return -1;
+	}
+	
+	private int matchCapture(Matcher ms, int s, int level) {
+		if (level < 0 || level >= ms.level || ms.captureLength[level] == CAP_UNFINISHED) {
+			throw new LuaException("invalid capture index %" + (level + 1));
+		}
+		var length = ms.captureLength[level];
+		if (length == CAP_POSITION) {
+			length = 0;
+		}
+		if (ms.end - s >= length && ms.str.regionMatches(s, ms.str, ms.captureStart[level], length)) {
+			return s + length;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,293 @@
+package fi.benjami.code4jvm.lua.stdlib;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import fi.benjami.code4jvm.lua.LuaVm;
+import fi.benjami.code4jvm.lua.ffi.JavaFunction;
+import fi.benjami.code4jvm.lua.ffi.LuaBinder;
+import fi.benjami.code4jvm.lua.ffi.LuaExport;
+import fi.benjami.code4jvm.lua.ffi.LuaLibrary;
+import fi.benjami.code4jvm.lua.ir.LuaType;
+import fi.benjami.code4jvm.lua.runtime.LuaTable;
+
+/**
+ * Lua math library.
+ *
+ * <p>When argument types are known at compile time, the compiler replaces
+ * calls to these functions with direct JVM instructions or calls to
+ * {@link Math}, as long as the called function is the one returned by
+ * {@link #function(String)}.
+ *
+ */
+public class MathLib implements LuaLibrary {
+	
+	public static final MathLib INSTANCE = new MathLib();
+	
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	private static final Collection<JavaFunction> FUNCTIONS = new LuaBinder(LOOKUP).bindFunctionsFrom(MathLib.class);
+	private static final Map<String, JavaFunction> BY_NAME = new HashMap<>();
+	
+	static {
+		for (var func : FUNCTIONS) {
+			BY_NAME.put(func.name(), func);
+		}
+	}
+	
+	private MathLib() {}
+	
+	@Override
+	public void install(LuaVm vm) {
+		var math = new LuaTable();
+		for (var func : FUNCTIONS) {
+			math.set(func.name(), func);
+		}
+		math.set("pi", Math.PI);
+		math.set("huge", Double.POSITIVE_INFINITY);
+		math.set("maxinteger", Integer.MAX_VALUE);
+		math.set("mininteger", Integer.MIN_VALUE);
+		vm.globals().set("math", math);
+	}
+	
+	/**
+	 * Gets a function of math library.
+	 * @param name Function name.
+	 * @return The function, or null if it does not exist.
+	 */
+	public static JavaFunction function(String name) {
+		return BY_NAME.get(name);
+	}
+	
+	private static LuaException numberExpected(String func, int arg, Object value) {
+		return new LuaException("bad argument #" + arg + " to '" + func + "' (number expected, got " + LuaType.of(value).name() + ")");
+	}
+	
+	@LuaExport("abs")
+	public static Object abs(Object x) {
+		if (x instanceof Integer num) {
+			return Math.abs(num);
+		} else if (x instanceof Double num) {
+			return Math.abs(num);
+		}
+		throw numberExpected("abs", 1, x);
+	}
+	
+	@LuaExport("floor")
+	public static Object floor(Object x) {
+		if (x instanceof Integer) {
+			return x;
+		} else if (x instanceof Double num) {
+			return floor((double) num);
+		}
+		throw numberExpected("floor", 1, x);
+	}
+	
+	/**
+	 * Rounds a float down, converting it to integer if it fits.
+	 * @param x Number.
+	 * @return Integer or float.
+	 */
+	public static Object floor(double x) {
+		return toIntegerIfExact(Math.floor(x));
+	}
+	
+	@LuaExport("ceil")
+	public static Object ceil(Object x) {
+		if (x instanceof Integer) {
+			return x;
+		} else if (x instanceof Double num) {
+			return ceil((double) num);
+		}
+		throw numberExpected("ceil", 1, x);
+	}
+	
+	/**
+	 * Rounds a float up, converting it to integer if it fits.
+	 * @param x Number.
+	 * @return Integer or float.
+	 */
+	public static Object ceil(double x) {
+		return toIntegerIfExact(Math.ceil(x));
+	}
+	
+	private static Object toIntegerIfExact(double x) {
+		var intVal = (int) x;
+		return intVal == x ? (Object) intVal : (Object) x;
+	}
+	
+	@LuaExport("sqrt")
+	public static double sqrt(double x) {
+		return Math.sqrt(x);
+	}
+	
+	@LuaExport("exp")
+	public static double exp(double x) {
+		return Math.exp(x);
+	}
+	
+	@LuaExport("log")
+	public static double log(double x, double base) {
+		if (base == 2) {
+			return Math.log(x) / Math.log(2);
+		} else if (base == 10) {
+			return Math.log10(x);
+		}
+		return Math.log(x) / Math.log(base);
+	}
+	
+	@LuaExport("log")
+	public static double log(double x) {
+		return Math.log(x);
+	}
+	
+	@LuaExport("sin")
+	public static double sin(double x) {
+		return Math.sin(x);
+	}
+	
+	@LuaExport("cos")
+	public static double cos(double x) {
+		return Math.cos(x);
+	}
+	
+	@LuaExport("tan")
+	public static double tan(double x) {
+		return Math.tan(x);
+	}
+	
+	@LuaExport("asin")
+	public static double asin(double x) {
+		return Math.asin(x);
+	}
+	
+	@LuaExport("acos")
+	public static double acos(double x) {
+		return Math.acos(x);
+	}
+	
+	@LuaExport("atan")
+	public static double atan(double y, double x) {
+		return Math.atan2(y, x);
+	}
+	
+	@LuaExport("atan")
+	public static double atan(double y) {
+		return Math.atan(y);
+	}
+	
+	@LuaExport("fmod")
+	public static Object fmod(Object a, Object b) {
+		if (a instanceof Integer x && b instanceof Integer y) {
+			return fmod((int) x, (int) y);
+		} else if (a instanceof Number x && b instanceof Number y) {
+			return x.doubleValue() % y.doubleValue();
+		}
+		throw numberExpected("fmod", a instanceof Number ? 2 : 1, a instanceof Number ? b : a);
+	}
+	
+	/**
+	 * Computes integer remainder, rounding the quotient towards zero.
+	 * @param a Dividend.
+	 * @param b Divisor.
+	 * @return Remainder.
+	 */
+	public static int fmod(int a, int b) {
+		if (b == 0) {
+			throw new LuaException("bad argument #2 to 'fmod' (zero)");
+		}
+		return a % b;
+	}
+	
+	@LuaExport("modf")
+	public static Object[] modf(double x) {
+		var integral = x >= 0 ? Math.floor(x) : Math.ceil(x);
+		var fraction = Double.isInfinite(x) ? 0.0 : x - integral;
+		return new Object[] {integral, fraction};
+	}
+	
+	@LuaExport("min")
+	public static Object min(Object first, Object... rest) {
+		var result = first;
+		var resultNum = toNumber("min", 1, first);
+		for (var i = 0; i < rest.length; i++) {
+			var num = toNumber("min", i + 2, rest[i]);
+			if (num < resultNum) {
+				result = rest[i];
+				resultNum = num;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Gets the smaller of two floats. Unlike {@link Math#min(double, double)},
+	 * this returns the first argument unless the second is less than it,
+	 * which matters for NaN and signed zeros.
+	 * @param a First number.
+	 * @param b Second number.
+	 * @return The smaller number.
+	 */
+	public static double min(double a, double b) {
+		return b < a ? b : a;
+	}
+	
+	@LuaExport("max")
+	public static Object max(Object first, Object... rest) {
+		var result = first;
+		var resultNum = toNumber("max", 1, first);
+		for (var i = 0; i < rest.length; i++) {
+			var num = toNumber("max", i + 2, rest[i]);
+			if (num > resultNum) {
+				result = rest[i];
+				resultNum = num;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Gets the larger of two floats, with same semantics for NaN and signed
+	 * zeros as {@link #min(double, double)}.
+	 * @param a First number.
+	 * @param b Second number.
+	 * @return The larger number.
+	 */
+	public static double max(double a, double b) {
+		return b > a ? b : a;
+	}
+	
+	private static double toNumber(String func, int arg, Object value) {
+		if (value instanceof Number num) {
+			return num.doubleValue();
+		}
+		throw numberExpected(func, arg, value);
+	}
+	
+	@LuaExport("tointeger")
+	public static Object tointeger(Object x) {
+		if (x instanceof Integer) {
+			return x;
+		} else if (x instanceof Double num) {
+			var intVal = num.intValue();
+			return intVal == num ? intVal : null;
+		}
+		return null; // Not a number
+	}
+	
+	@LuaExport("type")
+	public static String type(Object x) {
+		if (x instanceof Integer) {
+			return "integer";
+		} else if (x instanceof Double) {
+			return "float";
+		}
+		return null; // Not a number
+	}
+	
+	@LuaExport("ult")
+	public static boolean ult(int a, int b) {
+		return Integer.compareUnsigned(a, b) < 0;
+	}
+}
@@ -0,0 +1,629 @@
+package fi.benjami.code4jvm.lua.stdlib;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IllegalFormatException;
+import java.util.List;
+import java.util.Locale;
+
+import fi.benjami.code4jvm.lua.LuaVm;
+import fi.benjami.code4jvm.lua.ffi.Inject;
+import fi.benjami.code4jvm.lua.ffi.JavaFunction;
+import fi.benjami.code4jvm.lua.ffi.LuaBinder;
+import fi.benjami.code4jvm.lua.ffi.LuaExport;
+import fi.benjami.code4jvm.lua.ffi.LuaIntrinsic;
+import fi.benjami.code4jvm.lua.ffi.LuaLibrary;
+import fi.benjami.code4jvm.lua.ir.LuaType;
+import fi.benjami.code4jvm.lua.linker.CallSiteOptions;
+import fi.benjami.code4jvm.lua.linker.LuaCallSite;
+import fi.benjami.code4jvm.lua.linker.LuaLinker;
+import fi.benjami.code4jvm.lua.runtime.LuaTable;
+
+/**
+ * Lua string library. Patterns are compiled once and
+ * {@link LuaPattern#get(String) cached}.
+ *
+ */
+public class StringLib implements LuaLibrary {
+	
+	public static final StringLib INSTANCE = new StringLib();
+	
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	private static final Collection<JavaFunction> FUNCTIONS = new LuaBinder(LOOKUP).bindFunctionsFrom(StringLib.class);
+	
+	private static final JavaFunction GMATCH_ITERATOR = InternalLib.FUNCTIONS.get("gmatchIterator");
+	
+	private StringLib() {}
+	
+	@Override
+	public void install(LuaVm vm) {
+		var string = new LuaTable();
+		for (var func : FUNCTIONS) {
+			string.set(func.name(), func);
+		}
+		vm.globals().set("string", string);
+	}
+	
+	static String tostring(Object value) {
+		if (value instanceof Double num) {
+			return numberToString(num);
+		}
+		return value == null ? "nil" : value.toString();
+	}
+	
+	/**
+	 * Converts a float to string like Lua does, with format {@code %.14g}.
+	 * Unlike with C's {@code %g}, the result always looks like a float.
+	 * @param value Number.
+	 * @return String representation of the number.
+	 */
+	public static String numberToString(double value) {
+		if (Double.isNaN(value)) {
+			return "nan";
+		} else if (Double.isInfinite(value)) {
+			return value > 0 ? "inf" : "-inf";
+		}
+		var text = formatGeneral(".14", 14, false, value);
+		return text.chars().allMatch(c -> c == '-' || Character.isDigit(c)) ? text + ".0" : text;
+	}
+	
+	static int toInteger(Object value, int arg, String func) {
+		if (value instanceof Integer num) {
+			return num;
+		} else if (value instanceof Double num) {
+			// Rejects NaN, infinities and fractions too
+			if (num != Math.floor(num) || num < Integer.MIN_VALUE || num > Integer.MAX_VALUE) {
+				throw new LuaException("bad argument #" + arg + " to '" + func + "' (number has no integer representation)");
+			}
+			return num.intValue();
+		} else if (value instanceof String str) {
+			try {
+				return toInteger(Double.parseDouble(str), arg, func);
+			} catch (NumberFormatException e) {
+				// Fall through to error
+			}
+		}
+		throw new LuaException("bad argument #" + arg + " to '" + func + "' (number expected, got " + LuaType.of(value).name() + ")");
+	}
+	
+	/**
+	 * Converts a Lua string position (1-based, negative from end) to
+	 * a zero-based start index.
+	 */
+	private static int startIndex(Object pos, int length, int arg, String func) {
+		if (pos == null) {
+			return 0;
+		}
+		var index = toInteger(pos, arg, func);
+		if (index > 0) {
+			return index - 1;
+		} else if (index == 0 || index < -length) {
+			return 0;
+		} else {
+			return length + index;
+		}
+	}
+	
+	/**
+	 * Converts a Lua string position to an exclusive end index.
+	 */
+	private static int endIndex(Object pos, int length, int arg, String func) {
+		if (pos == null) {
+			return length;
+		}
+		var index = toInteger(pos, arg, func);
+		if (index > length) {
+			return length;
+		} else if (index >= 0) {
+			return index;
+		} else if (index < -length) {
+			return 0;
+		} else {
+			return length + index + 1;
+		}
+	}
+	
+	@LuaExport("len")
+	private static int len(String s) {
+		return s.length();
+	}
+	
+	@LuaExport("sub")
+	private static String sub(String s, Object i, Object j) {
+		var start = startIndex(i, s.length(), 2, "sub");
+		var end = endIndex(j, s.length(), 3, "sub");
+		return start < end ? s.substring(start, end) : "";
+	}
+	
+	@LuaExport("sub")
+	private static String sub(String s, Object i) {
+		return sub(s, i, null);
+	}
+	
+	@LuaExport("upper")
+	private static String upper(String s) {
+		return s.toUpperCase(Locale.ROOT);
+	}
+	
+	@LuaExport("lower")
+	private static String lower(String s) {
+		return s.toLowerCase(Locale.ROOT);
+	}
+	
+	@LuaExport("reverse")
+	private static String reverse(String s) {
+		return new StringBuilder(s).reverse().toString();
+	}
+	
+	@LuaExport("rep")
+	private static String rep(String s, Object n, String sep) {
+		var count = toInteger(n, 2, "rep");
+		if (count <= 0) {
+			return "";
+		}
+		var length = (long) s.length() * count + (long) sep.length() * (count - 1);
+		if (length > Integer.MAX_VALUE - 8) { // Maximum array size on most JVMs
+			throw new LuaException("resulting string too large");
+		}
+		var sb = new StringBuilder((int) length);
+		for (var i = 0; i < count; i++) {
+			if (i != 0) {
+				sb.append(sep);
+			}
+			sb.append(s);
+		}
+		return sb.toString();
+	}
+	
+	@LuaExport("rep")
+	private static String rep(String s, Object n) {
+		return rep(s, n, "");
+	}
+	
+	@LuaExport("byte")
+	private static Object[] byte_(String s, Object i, Object j) {
+		var start = startIndex(i, s.length(), 2, "byte");
+		var end = endIndex(j == null ? i : j, s.length(), 3, "byte");
+		if (i == null && j == null) {
+			end = Math.min(1, s.length());
+		}
+		if (start >= end) {
+			return new Object[0];
+		}
+		var codes = new Object[end - start];
+		for (var k = 0; k < codes.length; k++) {
+			codes[k] = (int) s.charAt(start + k);
+		}
+		return codes;
+	}
+	
+	@LuaExport("byte")
+	private static Object[] byte_(String s, Object i) {
+		return byte_(s, i, null);
+	}
+	
+	@LuaExport("byte")
+	private static Object[] byte_(String s) {
+		return byte_(s, null, null);
+	}
+	
+	@LuaExport("char")
+	private static String char_(Object... codes) {
+		var chars = new char[codes.length];
+		for (var i = 0; i < codes.length; i++) {
+			var code = toInteger(codes[i], i + 1, "char");
+			if (code < 0 || code > Character.MAX_VALUE) {
+				throw new LuaException("bad argument #" + (i + 1) + " to 'char' (value out of range)");
+			}
+			chars[i] = (char) code;
+		}
+		return new String(chars);
+	}
+	
+	@LuaExport("format")
+	private static String format(String format, Object... args) {
+		var sb = new StringBuilder(format.length() + 16 * args.length);
+		var argIndex = 0;
+		for (var i = 0; i < format.length(); i++) {
+			var c = format.charAt(i);
+			if (c != '%') {
+				sb.append(c);
+				continue;
+			}
+			if (++i == format.length()) {
+				throw new LuaException("invalid conversion '%' to 'format'");
+			}
+			if (format.charAt(i) == '%') {
+				sb.append('%');
+				continue;
+			}
+			
+			// Flags, width and precision are passed to Java formatter mostly as-is
+			var specStart = i;
+			while (i < format.length() && "-+ #0".indexOf(format.charAt(i)) != -1) {
+				i++;
+			}
+			var widthStart = i;
+			while (i < format.length() && Character.isDigit(format.charAt(i))) {
+				i++;
+			}
+			// Like in Lua, width and precision may have at most two digits
+			var tooLong = i - widthStart > 2;
+			var precision = -1;
+			if (i < format.length() && format.charAt(i) == '.') {
+				var precisionStart = ++i;
+				while (i < format.length() && Character.isDigit(format.charAt(i))) {
+					i++;
+				}
+				tooLong |= i - precisionStart > 2;
+				precision = precisionStart == i || tooLong ? 0 : Integer.parseInt(format.substring(precisionStart, i));
+			}
+			if (i == format.length()) {
+				throw new LuaException("invalid conversion '%" + format.substring(specStart) + "' to 'format'");
+			}
+			var spec = format.substring(specStart, i);
+			var conversion = format.charAt(i);
+			if (tooLong) {
+				throw new LuaException("invalid conversion '%" + spec + conversion + "' to 'format'");
+			}
+			
+			if (argIndex >= args.length) {
+				throw new LuaException("bad argument #" + (argIndex + 2) + " to 'format' (no value)");
+			}
+			var arg = args[argIndex++];
+			var argNum = argIndex + 1;
+			try {
+				switch (conversion) {
+				case 'd', 'i', 'u' -> sb.append(String.format(Locale.ROOT, "%" + spec + "d", (long) toInteger(arg, argNum, "format")));
+				case 'c' -> sb.append((char) toInteger(arg, argNum, "format"));
+				case 'x', 'X', 'o' -> sb.append(String.format(Locale.ROOT, "%" + spec + conversion, (long) toInteger(arg, argNum, "format")));
+				case 'e', 'E', 'f', 'a', 'A' -> sb.append(String.format(Locale.ROOT, "%" + spec + conversion, toNumber(arg, argNum)));
+				case 'F' -> sb.append(String.format(Locale.ROOT, "%" + spec + 'f', toNumber(arg, argNum)).toUpperCase(Locale.ROOT));
+				case 'g', 'G' -> sb.append(formatGeneral(spec, precision, conversion == 'G', toNumber(arg, argNum)));
+				case 's' -> sb.append(String.format(Locale.ROOT, "%" + spec + 's', tostring(arg)));
+				case 'q' -> quote(sb, arg);
+				default -> throw new LuaException("invalid conversion '%" + spec + conversion + "' to 'format'");
+				}
+			} catch (IllegalFormatException e) {
+				// Flags that Java doesn't support for the conversion, e.g. %#d
+				throw new LuaException("invalid conversion '%" + spec + conversion + "' to 'format'");
+			}
+		}
+		return sb.toString();
+	}
+	
+	private static double toNumber(Object value, int arg) {
+		if (value instanceof Number num) {
+			return num.doubleValue();
+		} else if (value instanceof String str) {
+			try {
+				return Double.parseDouble(str);
+			} catch (NumberFormatException e) {
+				// Fall through to error
+			}
+		}
+		throw new LuaException("bad argument #" + arg + " to 'format' (number expected, got " + LuaType.of(value).name() + ")");
+	}
+	
+	/**
+	 * Formats a number like C's {@code %g}, which Java's formatter does not
+	 * quite replicate.
+	 */
+	private static String formatGeneral(String spec, int precision, boolean upper, double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			return String.format(Locale.ROOT, "%" + spec + (upper ? 'E' : 'e'), value);
+		}
+		var flags = precision == -1 ? spec : spec.substring(0, spec.indexOf('.'));
+		var p = precision == -1 ? 6 : Math.max(precision, 1);
+		var exponent = value == 0 ? 0 : (int) Math.floor(Math.log10(Math.abs(value)));
+		// Rounding to precision might bump the exponent
+		var rounded = String.format(Locale.ROOT, "%." + (p - 1) + "e", value);
+		exponent = Integer.parseInt(rounded.substring(rounded.indexOf('e') + 1));
+		
+		String text;
+		if (p > exponent && exponent >= -4) {
+			text = String.format(Locale.ROOT, "%." + (p - 1 - exponent) + "f", value);
+		} else {
+			text = rounded;
+		}
+		if (flags.indexOf('#') == -1) {
+			// Strip trailing zeros of fraction
+			var exponentStart = text.indexOf('e');
+			var mantissa = exponentStart == -1 ? text : text.substring(0, exponentStart);
+			var suffix = exponentStart == -1 ? "" : text.substring(exponentStart);
+			if (mantissa.indexOf('.') != -1) {
+				mantissa = mantissa.replaceAll("0+$", "");
+				if (mantissa.endsWith(".")) {
+					mantissa = mantissa.substring(0, mantissa.length() - 1);
+				}
+			}
+			text = mantissa + suffix;
+		}
+		if (upper) {
+			text = text.toUpperCase(Locale.ROOT);
+		}
+		if (flags.indexOf('+') != -1 && value >= 0) {
+			text = "+" + text;
+		} else if (flags.indexOf(' ') != -1 && value >= 0) {
+			text = " " + text;
+		}
+		// Pad to width, if any was given
+		var width = flags.replaceAll("[-+ #0]", "");
+		if (!width.isEmpty()) {
+			var padding = Integer.parseInt(width) - text.length();
+			if (padding > 0) {
+				if (flags.indexOf('-') != -1) {
+					text = text + " ".repeat(padding);
+				} else if (flags.indexOf('0') != -1) {
+					var sign = text.startsWith("-") || text.startsWith("+") || text.startsWith(" ") ? 1 : 0;
+					text = text.substring(0, sign) + "0".repeat(padding) + text.substring(sign);
+				} else {
+					text = " ".repeat(padding) + text;
+				}
+			}
+		}
+		return text;
+	}
+	
+	private static void quote(StringBuilder sb, Object value) {
+		if (value instanceof String str) {
+			sb.append('"');
+			for (var i = 0; i < str.length(); i++) {
+				var c = str.charAt(i);
+				switch (c) {
+				case '"', '\\' -> sb.append('\\').append(c);
+				case '\n' -> sb.append("\\\n");
+				case '\r' -> sb.append("\\r");
+				case '\0' -> sb.append("\\0");
+				default -> {
+					if (Character.isISOControl(c)) {
+						sb.append('\\').append((int) c);
+					} else {
+						sb.append(c);
+					}
+				}
+				}
+			}
+			sb.append('"');
+		} else if (value instanceof Double num && Double.isNaN(num)) {
+			sb.append("(0/0)");
+		} else if (value instanceof Double num && Double.isInfinite(num)) {
+			sb.append(num > 0 ? "1e9999" : "-1e9999");
+		} else if (value instanceof Double num && num != Math.floor(num)) {
+			sb.append(Double.toHexString(num)); // Exact representation
+		} else if (value == null || value instanceof Number || value instanceof Boolean) {
+			sb.append(value);
+		} else {
+			throw new LuaException("bad argument to 'format' (value has no literal form)");
+		}
+	}
+	
+	@LuaExport("find")
+	private static Object[] find(String s, String pattern, Object init, Object plain) {
+		var start = startIndex(init, s.length(), 3, "find");
+		if (start > s.length()) {
+			return new Object[] {null};
+		}
+		if ((plain != null && !Boolean.FALSE.equals(plain)) || LuaPattern.isPlain(pattern)) {
+			// Fast path for plain text search
+			var index = s.indexOf(pattern, start);
+			return index == -1 ? new Object[] {null} : new Object[] {index + 1, index + pattern.length()};
+		}
+		var matcher = LuaPattern.get(pattern).matcher(s);
+		if (!matcher.find(start)) {
+			return new Object[] {null};
+		}
+		var captures = matcher.explicitCaptures();
+		var results = new Object[2 + captures.length];
+		results[0] = matcher.start() + 1;
+		results[1] = matcher.end();
+		System.arraycopy(captures, 0, results, 2, captures.length);
+		return results;
+	}
+	
+	@LuaExport("find")
+	private static Object[] find(String s, String pattern, Object init) {
+		return find(s, pattern, init, null);
+	}
+	
+	@LuaExport("find")
+	private static Object[] find(String s, String pattern) {
+		return find(s, pattern, null, null);
+	}
+	
+	@LuaExport("match")
+	private static Object[] match(String s, String pattern, Object init) {
+		var start = startIndex(init, s.length(), 3, "match");
+		if (start > s.length()) {
+			return new Object[] {null};
+		}
+		var matcher = LuaPattern.get(pattern).matcher(s);
+		return matcher.find(start) ? matcher.captures() : new Object[] {null};
+	}
+	
+	@LuaExport("match")
+	private static Object[] match(String s, String pattern) {
+		return match(s, pattern, null);
+	}
+	
+	/**
+	 * State of a {@code gmatch} iteration.
+	 */
+	static class GmatchState {
+		
+		private final LuaPattern.Matcher matcher;
+		private final int length;
+		private int position;
+		private int lastMatch;
+		
+		GmatchState(String s, String pattern, int position) {
+			this.matcher = LuaPattern.get(pattern).matcher(s);
+			this.length = s.length();
+			this.position = position;
+			this.lastMatch = -1;
+		}
+		
+		/**
+		 * Finds the next match.
+		 * @return Captures of the match; a single capture is not wrapped to
+		 * an array. Null when there are no more matches.
+		 */
+		Object next() {
+			for (; position <= length; position++) {
+				var end = matcher.matchAt(position);
+				// Empty match right after previous match is not allowed
+				if (end != -1 && end != lastMatch) {
+					position = lastMatch = end;
+					return matcher.captureCount() == 1 ? matcher.capture(0) : matcher.captures();
+				}
+			}
+			return null;
+		}
+		
+		/**
+		 * Finds the next match for a standalone iterator function.
+		 * @return All captures of the match, or nil when there are no
+		 * more matches.
+		 */
+		Object[] nextAll() {
+			var value = next();
+			if (value instanceof Object[] captures) {
+				return captures;
+			}
+			return new Object[] {value};
+		}
+	}
+	
+	@LuaExport("gmatch")
+	@LuaIntrinsic("iteratorFor")
+	private static Object[] gmatchStateful(String s, String pattern) {
+		// Iterate with stateless function and our state; no function allocation needed
+		return new Object[] {GMATCH_ITERATOR, new GmatchState(s, pattern, 0)};
+	}
+	
+	@LuaExport("gmatch")
+	private static JavaFunction gmatch(String s, String pattern, Object init) {
+		var state = new GmatchState(s, pattern, Math.min(startIndex(init, s.length(), 3, "gmatch"), s.length() + 1));
+		try {
+			var next = LOOKUP.findVirtual(GmatchState.class, "nextAll", MethodType.methodType(Object[].class)).bindTo(state);
+			return new JavaFunction("gmatch", List.of(new JavaFunction.Target(List.of(), List.of(), false,
+					LuaType.UNKNOWN, true, next, null)), null);
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			throw new AssertionError(e);
+		}
+	}
+	
+	@LuaExport("gmatch")
+	private static JavaFunction gmatch(String s, String pattern) {
+		return gmatch(s, pattern, null);
+	}
+	
+	@LuaExport("gsub")
+	private static Object[] gsub(@Inject LuaVm vm, String s, String pattern, Object repl, Object n) throws Throwable {
+		var maxCount = n == null ? Integer.MAX_VALUE : toInteger(n, 4, "gsub");
+		var compiled = LuaPattern.get(pattern);
+		var matcher = compiled.matcher(s);
+		var sb = new StringBuilder(s.length());
+		
+		var position = 0;
+		var lastMatch = -1;
+		var count = 0;
+		Replacer replacer = null;
+		while (count < maxCount) {
+			var end = matcher.matchAt(position);
+			if (end != -1 && end != lastMatch) {
+				count++;
+				if (replacer == null) {
+					replacer = replacer(vm, repl, matcher);
+				}
+				var value = replacer.replace(matcher);
+				if (value == null || Boolean.FALSE.equals(value)) {
+					sb.append(s, position, end); // Keep original text
+				} else if (value instanceof String || value instanceof Number) {
+					sb.append(value);
+				} else {
+					throw new LuaException("invalid replacement value (a " + LuaType.of(value).name() + ")");
+				}
+				position = lastMatch = end;
+			} else if (position < s.length()) {
+				sb.append(s.charAt(position++));
+			} else {
+				break;
+			}
+			if (compiled.isAnchored()) {
+				break;
+			}
+		}
+		sb.append(s, position, s.length());
+		return new Object[] {sb.toString(), count};
+	}
+	
+	@LuaExport("gsub")
+	private static Object[] gsub(@Inject LuaVm vm, String s, String pattern, Object repl) throws Throwable {
+		return gsub(vm, s, pattern, repl, null);
+	}
+	
+	private interface Replacer {
+		Object replace(LuaPattern.Matcher matcher) throws Throwable;
+	}
+	
+	private static Replacer replacer(LuaVm vm, Object repl, LuaPattern.Matcher first) {
+		if (repl instanceof String str) {
+			if (str.indexOf('%') == -1) {
+				return matcher -> str; // Nothing to substitute
+			}
+			return matcher -> substitute(str, matcher);
+		} else if (repl instanceof Number num) {
+			return matcher -> num;
+		} else if (repl instanceof LuaTable table) {
+			return matcher -> table.get(matcher.capture(0));
+		} else if (repl != null) {
+			// Link the call once; captures have same types for every match
+			var captures = first.captures();
+			var types = Arrays.stream(captures).map(LuaType::of).toArray(LuaType[]::new);
+			var target = LuaLinker.linkCall(new LuaCallSite(null, CallSiteOptions.nonFunction(vm, types)),
+					repl, captures).target();
+			return matcher -> {
+				var args = matcher.captures();
+				var allArgs = new Object[args.length + 1];
+				allArgs[0] = repl;
+				System.arraycopy(args, 0, allArgs, 1, args.length);
+				return target.invokeWithArguments(allArgs);
+			};
+		} else {
+			throw new LuaException("bad argument #3 to 'gsub' (string/function/table expected, got nil)");
+		}
+	}
+	
+	private static String substitute(String repl, LuaPattern.Matcher matcher) {
+		var sb = new StringBuilder();
+		for (var i = 0; i < repl.length(); i++) {
+			var c = repl.charAt(i);
+			if (c != '%') {
+				sb.append(c);
+				continue;
+			}
+			i++;
+			if (i == repl.length()) {
+				throw new LuaException("invalid use of '%' in replacement string");
+			}
+			c = repl.charAt(i);
+			if (c == '%') {
+				sb.append('%');
+			} else if (c == '0') {
+				sb.append(matcher.matched());
+			} else if (c >= '1' && c <= '9') {
+				var index = c - '1';
+				if (index >= matcher.captureCount()) {
+					throw new LuaException("invalid capture index %" + c + " in replacement string");
+				}
+				sb.append(matcher.capture(index));
+			} else {
+				throw new LuaException("invalid use of '%' in replacement string");
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,296 @@
+package fi.benjami.code4jvm.lua.stdlib;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+import fi.benjami.code4jvm.lua.LuaVm;
+import fi.benjami.code4jvm.lua.ffi.Inject;
+import fi.benjami.code4jvm.lua.ffi.JavaFunction;
+import fi.benjami.code4jvm.lua.ffi.LuaBinder;
+import fi.benjami.code4jvm.lua.ffi.LuaExport;
+import fi.benjami.code4jvm.lua.ffi.LuaLibrary;
+import fi.benjami.code4jvm.lua.ir.LuaType;
+import fi.benjami.code4jvm.lua.linker.CallSiteOptions;
+import fi.benjami.code4jvm.lua.linker.LuaLinker;
+import fi.benjami.code4jvm.lua.runtime.LuaTable;
+
+/**
+ * Lua table library. Tables without metatables are manipulated through
+ * their array parts directly; metamethods are respected otherwise.
+ *
+ */
+public class TableLib implements LuaLibrary {
+	
+	public static final TableLib INSTANCE = new TableLib();
+	
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	private static final Collection<JavaFunction> FUNCTIONS = new LuaBinder(LOOKUP).bindFunctionsFrom(TableLib.class);
+	
+	private TableLib() {}
+	
+	@Override
+	public void install(LuaVm vm) {
+		var table = new LuaTable();
+		for (var func : FUNCTIONS) {
+			table.set(func.name(), func);
+		}
+		vm.globals().set("table", table);
+	}
+	
+	@LuaExport("insert")
+	private static void insert(LuaTable list, Object pos, Object value) {
+		var size = list.arraySize();
+		var index = StringLib.toInteger(pos, 2, "insert");
+		if (index < 1 || index > size + 1) {
+			throw new LuaException("bad argument #2 to 'insert' (position out of bounds)");
+		}
+		if (list.metatable() == null) {
+			list.insertRaw(index, value);
+		} else {
+			for (var i = size; i >= index; i--) {
+				list.set(i + 1, list.get(i));
+			}
+			list.set(index, value);
+		}
+	}
+	
+	@LuaExport("insert")
+	private static void insert(LuaTable list, Object value) {
+		var index = list.arraySize() + 1;
+		if (list.metatable() == null) {
+			list.setRaw(index, value);
+		} else {
+			list.set(index, value);
+		}
+	}
+	
+	@LuaExport("remove")
+	private static Object remove(LuaTable list, Object pos) {
+		var size = list.arraySize();
+		var index = StringLib.toInteger(pos, 2, "remove");
+		if (index != size && (index < 1 || index > size + 1)) {
+			throw new LuaException("bad argument #2 to 'remove' (position out of bounds)");
+		}
+		if (list.metatable() == null) {
+			if (index >= 1 && index <= size) {
+				return list.removeRaw(index);
+			}
+			// #t + 1, or 0 when the table is empty; these are cleared like in Lua
+			var value = list.getRaw(index);
+			list.setRaw(index, null);
+			return value;
+		}
+		var value = list.get(index);
+		for (var i = index; i < size; i++) {
+			list.set(i, list.get(i + 1));
+		}
+		list.set(Math.max(index, size), null);
+		return value;
+	}
+	
+	@LuaExport("remove")
+	private static Object remove(LuaTable list) {
+		return remove(list, list.arraySize());
+	}
+	
+	@LuaExport("concat")
+	private static String concat(LuaTable list, String sep, Object i, Object j) {
+		var first = i == null ? 1 : StringLib.toInteger(i, 3, "concat");
+		var last = j == null ? list.arraySize() : StringLib.toInteger(j, 4, "concat");
+		var values = list.metatable() == null ? list.arraySlice(first, last) : slice(list, first, last);
+		
+		// Compute exact length first to avoid growing the builder
+		var length = sep.length() * Math.max(0, values.length - 1);
+		for (var k = 0; k < values.length; k++) {
+			var value = values[k];
+			if (value instanceof String str) {
+				length += str.length();
+			} else if (value instanceof Number) {
+				values[k] = StringLib.tostring(value);
+				length += ((String) values[k]).length();
+			} else {
+				throw new LuaException("invalid value (at index " + (first + k) + ") in table for 'concat'");
+			}
+		}
+		var sb = new StringBuilder(length);
+		for (var k = 0; k < values.length; k++) {
+			if (k != 0) {
+				sb.append(sep);
+			}
+			sb.append((String) values[k]);
+		}
+		return sb.toString();
+	}
+	
+	@LuaExport("concat")
+	private static String concat(LuaTable list, String sep, Object i) {
+		return concat(list, sep, i, null);
+	}
+	
+	@LuaExport("concat")
+	private static String concat(LuaTable list, String sep) {
+		return concat(list, sep, null, null);
+	}
+	
+	@LuaExport("concat")
+	private static String concat(LuaTable list) {
+		return concat(list, "", null, null);
+	}
+	
+	@LuaExport("unpack")
+	private static Object[] unpack(LuaTable list, Object i, Object j) {
+		var first = i == null ? 1 : StringLib.toInteger(i, 2, "unpack");
+		var last = j == null ? list.arraySize() : StringLib.toInteger(j, 3, "unpack");
+		return list.metatable() == null ? list.arraySlice(first, last) : slice(list, first, last);
+	}
+	
+	@LuaExport("unpack")
+	private static Object[] unpack(LuaTable list, Object i) {
+		return unpack(list, i, null);
+	}
+	
+	@LuaExport("unpack")
+	private static Object[] unpack(LuaTable list) {
+		return unpack(list, null, null);
+	}
+	
+	private static Object[] slice(LuaTable list, int first, int last) {
+		var values = new Object[Math.max(0, last - first + 1)];
+		for (var k = 0; k < values.length; k++) {
+			values[k] = list.get(first + k);
+		}
+		return values;
+	}
+	
+	@LuaExport("sort")
+	private static void sort(@Inject LuaVm vm, LuaTable list, Object comp) throws Throwable {
+		var size = list.arraySize();
+		if (size < 2) {
+			return; // Nothing to sort
+		}
+		if (comp == null) {
+			Comparator<Object> comparator = TableLib::compare;
+			try {
+				if (list.metatable() == null) {
+					list.sortArray(comparator);
+				} else {
+					var values = slice(list, 1, size);
+					Arrays.sort(values, comparator);
+					store(list, values);
+				}
+			} catch (IllegalArgumentException e) {
+				throw new LuaException("invalid order function for sorting");
+			}
+		} else {
+			// Call through a call site, so the comparator is linked once (and relinked if value types change)
+			var site = LuaLinker.dynamic(LOOKUP, "sort", MethodType.genericMethodType(3),
+					CallSiteOptions.nonFunction(vm, LuaType.UNKNOWN, LuaType.UNKNOWN));
+			var lessThan = site.dynamicInvoker();
+			
+			// Java's sorts need three-way comparisons, which would take two calls
+			LessThan comparator = (a, b) -> isTrue(callComparator(lessThan, comp, a, b));
+			if (list.metatable() == null) {
+				list.sortArray((values, from, to) -> mergeSort(values, new Object[to], from, to, comparator));
+			} else {
+				var values = slice(list, 1, size);
+				mergeSort(values, new Object[values.length], 0, values.length, comparator);
+				store(list, values);
+			}
+		}
+	}
+	
+	private static void store(LuaTable list, Object[] values) {
+		for (var i = 0; i < values.length; i++) {
+			list.set(i + 1, values[i]);
+		}
+	}
+	
+	private interface LessThan {
+		boolean test(Object a, Object b);
+	}
+	
+	/**
+	 * Sorts a range of values, calling the comparison function once per
+	 * comparison like Lua's sort does. If the comparison function throws,
+	 * the range is left as a permutation of the original values.
+	 * @param values Values to sort.
+	 * @param temp Temporary array, at least as long as values.
+	 * @param from Start of range, inclusive.
+	 * @param to End of range, exclusive.
+	 * @param lessThan Comparison function.
+	 */
+	private static void mergeSort(Object[] values, Object[] temp, int from, int to, LessThan lessThan) {
+		if (to - from <= 8) {
+			// Insertion sort for short ranges
+			for (var i = from + 1; i < to; i++) {
+				var value = values[i];
+				var j = i;
+				try {
+					while (j > from && lessThan.test(value, values[j - 1])) {
+						values[j] = values[j - 1];
+						j--;
+					}
+				} finally {
+					values[j] = value; // Fill the hole even on error
+				}
+			}
+			return;
+		}
+		var middle = (from + to) >>> 1;
+		mergeSort(values, temp, from, middle, lessThan);
+		mergeSort(values, temp, middle, to, lessThan);
+		if (!lessThan.test(values[middle], values[middle - 1])) {
+			return; // Already in order
+		}
+		System.arraycopy(values, from, temp, from, to - from);
+		var left = from;
+		var right = middle;
+		try {
+			for (var i = from; i < to; i++) {
+				if (left < middle && (right == to || !lessThan.test(temp[right], temp[left]))) {
+					values[i] = temp[left++];
+				} else {
+					values[i] = temp[right++];
+				}
+			}
+		} catch (RuntimeException | Error e) {
+			// Values may be sorted in place, so don't lose any of them
+			System.arraycopy(temp, from, values, from, to - from);
+			throw e;
+		}
+	}
+	
+	@LuaExport("sort")
+	private static void sort(@Inject LuaVm vm, LuaTable list) throws Throwable {
+		sort(vm, list, null);
+	}
+	
+	private static Object callComparator(MethodHandle lessThan, Object comp, Object a, Object b) {
+		try {
+			return lessThan.invokeExact(comp, a, b);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new LuaException("error in sort comparator", e);
+		}
+	}
+	
+	private static boolean isTrue(Object value) {
+		return value != null && !Boolean.FALSE.equals(value);
+	}
+	
+	private static int compare(Object a, Object b) {
+		if (a instanceof Integer x && b instanceof Integer y) {
+			return Integer.compare(x, y);
+		} else if (a instanceof Number x && b instanceof Number y) {
+			return Double.compare(x.doubleValue(), y.doubleValue());
+		} else if (a instanceof String x && b instanceof String y) {
+			return x.compareTo(y);
+		}
+		throw new LuaException("attempt to compare " + LuaType.of(a).name() + " with " + LuaType.of(b).name());
+	}
+}
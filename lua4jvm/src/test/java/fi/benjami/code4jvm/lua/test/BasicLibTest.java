@@ -10,6 +10,7 @@ import java.io.PrintStream;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashSet;
 
 import org.junit.jupiter.api.Test;
 
@@ -185,6 +186,75 @@ public class BasicLibTest {
 		assertEquals(null, out.get("second"));
 	}
 	
+	@Test
+	public void nextLoop() throws Throwable {
+		vm.execute("""
+				tbl = {"foo", "bar", baz = 3}
+				out = {}
+				for k,v in next, tbl do
+					out[k] = v
+				end
+				""");
+		var out = (LuaTable) vm.globals().get("out");
+		assertEquals("foo", out.get(1));
+		assertEquals("bar", out.get(2));
+		assertEquals(3, out.get("baz"));
+	}
+	
+	@Test
+	public void pairsModification() throws Throwable {
+		// Assigning to existing fields and removing them is allowed during traversal
+		var result = vm.execute("""
+				tbl = {1, 2, 3, foo = 4, bar = 5, baz = 6}
+				local sum = 0
+				for k,v in pairs(tbl) do
+					sum = sum + v
+					tbl[k] = nil
+				end
+				return sum
+				""");
+		assertEquals(21, result);
+		var tbl = (LuaTable) vm.globals().get("tbl");
+		assertEquals(null, tbl.get("foo"));
+		assertEquals(null, tbl.get(2));
+		
+		vm.execute("""
+				tbl = {a = 1, b = 2, c = 3}
+				count = 0
+				for k,v in pairs(tbl) do
+					count = count + 1
+					tbl[k] = v * 2
+				end
+				""");
+		assertEquals(3, vm.globals().get("count"));
+		tbl = (LuaTable) vm.globals().get("tbl");
+		assertEquals(2, tbl.get("a"));
+		assertEquals(6, tbl.get("c"));
+	}
+	
+	@Test
+	public void tableIterator() throws Throwable {
+		// Iteration should continue from current key after table is reallocated
+		var table = new LuaTable();
+		for (var i = 0; i < 3; i++) {
+			table.set("key" + i, i);
+		}
+		var it = table.iterator();
+		assertTrue(it.next());
+		var first = it.key();
+		for (var i = 3; i < 100; i++) {
+			table.set("new" + i, i); // Forces the table to grow
+		}
+		
+		// Lua doesn't define which new keys are visible, but existing ones must not repeat
+		var seen = new HashSet<>();
+		seen.add(first);
+		while (it.next()) {
+			assertTrue(seen.add(it.key()));
+			assertEquals(table.get(it.key()), it.value());
+		}
+	}
+	
 	@Test
 	public void pcallTest() throws Throwable {
 		{			
@@ -1,6 +1,7 @@
 package fi.benjami.code4jvm.lua.test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.util.List;
@@ -9,6 +10,8 @@ import org.junit.jupiter.api.Test;
 
 import fi.benjami.code4jvm.internal.DebugOptions;
 import fi.benjami.code4jvm.lua.LuaVm;
+import fi.benjami.code4jvm.lua.debug.LinkerTrace;
+import fi.benjami.code4jvm.lua.debug.LuaDebugOptions;
 import fi.benjami.code4jvm.lua.runtime.LuaFunction;
 import fi.benjami.code4jvm.lua.runtime.LuaTable;
 import fi.benjami.code4jvm.lua.stdlib.LuaException;
@@ -50,7 +53,131 @@ public class BinaryOpTest {
 		assertEquals(tbl, concat.call("foo", tbl));
 		metaTbl.set("__concat", null); // causes site to be relinked
 		assertThrows(LuaException.class, () -> concat.call("foo", tbl));
-		assertThrows(LuaException.class, () -> concat.call(10.0, 1.0));
+		assertEquals("10.01", concat.call(10.0, 1));
+		assertThrows(LuaException.class, () -> concat.call("foo", null));
+	}
+	
+	@Test
+	public void stringConcatChains() throws Throwable {
+		assertEquals("a1b2.5c", vm.execute("""
+				local x = 1
+				local y = 2.5
+				return "a" .. x .. "b" .. y .. "c"
+				"""));
+		assertEquals("key:1:foo:true", vm.execute("""
+				id = 1
+				name = "foo"
+				flag = true
+				return "key:" .. id .. ":" .. name .. ":" .. tostring(flag)
+				"""));
+		
+		var longChain = new StringBuilder("return \"\"");
+		var expected = new StringBuilder();
+		for (var i = 0; i < 250; i++) {
+			longChain.append(" .. ").append(i);
+			expected.append(i);
+		}
+		assertEquals(expected.toString(), vm.execute(longChain.toString()));
+	}
+	
+	@Test
+	public void stringConcatChainMetatables() throws Throwable {
+		var metaTbl = new LuaTable();
+		metaTbl.set("__concat", vm.execute("""
+				return function (a, b)
+					return "<tbl>"
+				end
+				"""));
+		var tbl = new LuaTable();
+		tbl.metatable(metaTbl);
+		
+		var concat = (LuaFunction) vm.execute("""
+				return function (a, b, c)
+					return a .. b .. c
+				end
+				""");
+		assertEquals("abc", concat.call("a", "b", "c"));
+		assertEquals("a<tbl>", concat.call("a", tbl, "c"));
+		assertEquals("<tbl>", concat.call(tbl, "b", "c"));
+		assertEquals("ab1", concat.call("a", "b", 1));
+		assertThrows(LuaException.class, () -> concat.call("a", null, "c"));
+		
+		// Parentheses change which values the metamethod sees
+		var grouped = (LuaFunction) vm.execute("""
+				return function (a, b, c)
+					return (a .. b) .. c
+				end
+				""");
+		assertEquals("abc", grouped.call("a", "b", "c"));
+		assertEquals("<tbl>c", grouped.call(tbl, "b", "c"));
+		assertEquals("<tbl>", grouped.call("a", "b", tbl));
+	}
+	
+	@Test
+	public void stringConcatMetamethodLinking() throws Throwable {
+		var metaTbl = new LuaTable();
+		metaTbl.set("__concat", vm.execute("""
+				return function (a, b)
+					return "<tbl>"
+				end
+				"""));
+		var tbl = new LuaTable();
+		tbl.metatable(metaTbl);
+		var concat = (LuaFunction) vm.execute("""
+				return function (a, b)
+					return a .. b
+				end
+				""");
+		
+		var trace = new LinkerTrace();
+		LuaDebugOptions.linkerTrace = trace;
+		try {
+			assertEquals("<tbl>", concat.call(tbl, "foo"));
+			trace.metadata = null;
+			// Metamethod call was linked once for the site
+			for (var i = 0; i < 5; i++) {
+				assertEquals("<tbl>", concat.call(tbl, "foo"));
+			}
+			assertNull(trace.metadata);
+		} finally {
+			LuaDebugOptions.linkerTrace = null;
+		}
+	}
+	
+	@Test
+	public void stringConcatNumbers() throws Throwable {
+		// Floats are formatted like Lua's %.14g, but always look like floats
+		assertEquals("a1e+100 2.0 0.33333333333333", vm.execute("""
+				local x = 10 ^ 100
+				local y = 4 / 2
+				local z = 1 / 3
+				return "a" .. x .. " " .. y .. " " .. z
+				"""));
+		var concat = (LuaFunction) vm.execute("""
+				return function (a, b)
+					return a .. b
+				end
+				""");
+		assertEquals("1e+100-2.5", concat.call(1e100, -2.5));
+		assertEquals("9.007199254741e+15", concat.call(9007199254740992d, ""));
+		assertEquals("inf-inf", concat.call(Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY));
+		assertEquals("nan", concat.call("", Double.NaN));
+		
+		// Same in the generic path for tables with metamethods
+		var metaTbl = new LuaTable();
+		metaTbl.set("__concat", vm.execute("""
+				return function (a, b)
+					return b
+				end
+				"""));
+		var tbl = new LuaTable();
+		tbl.metatable(metaTbl);
+		var chain = (LuaFunction) vm.execute("""
+				return function (a, b, c)
+					return a .. b .. c
+				end
+				""");
+		assertEquals("1e+100", chain.call(tbl, 1e100, ""));
 	}
 	
 	@Test
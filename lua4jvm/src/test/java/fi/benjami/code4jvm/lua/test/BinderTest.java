@@ -9,14 +9,19 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.time.Duration;
 import java.util.Arrays;
 
 import org.junit.jupiter.api.Test;
 
 import fi.benjami.code4jvm.lua.LuaVm;
+import fi.benjami.code4jvm.lua.VmOptions;
 import fi.benjami.code4jvm.lua.ffi.Fallback;
+import fi.benjami.code4jvm.lua.ffi.Inject;
 import fi.benjami.code4jvm.lua.ffi.LuaBinder;
 import fi.benjami.code4jvm.lua.ffi.LuaExport;
+import fi.benjami.code4jvm.lua.runtime.LuaFunction;
+import fi.benjami.code4jvm.lua.runtime.LuaTable;
 import fi.benjami.code4jvm.lua.stdlib.LuaException;
 
 public class BinderTest {
@@ -188,4 +193,193 @@ public class BinderTest {
 				return returnArgs2(123, "foo", "bar", 3.1, "baz")
 				"""));
 	}
+	
+	public static class Counter {
+		
+		public final String name;
+		private int count;
+		
+		public Counter(String name) {
+			this.name = name;
+		}
+		
+		public int getCount() {
+			return count;
+		}
+		
+		public boolean isEmpty() {
+			return count == 0;
+		}
+		
+		public void add(int amount) {
+			count += amount;
+		}
+		
+		public String describe(String prefix) {
+			return prefix + name + "=" + count;
+		}
+	}
+	
+	public static class LabeledCounter extends Counter {
+		
+		public LabeledCounter(String name) {
+			super(name);
+		}
+		
+		public String getLabel() {
+			return "label";
+		}
+	}
+	
+	public record Point(int x, int y) {}
+	
+	@Test
+	public void javaObjects() throws Throwable {
+		var vm = new LuaVm(VmOptions.builder().javaClasses(Counter.class, Point.class).build());
+		var counter = new Counter("foo");
+		vm.globals().set("counter", counter);
+		
+		assertEquals("foo", vm.execute("return counter.name"));
+		assertEquals(true, vm.execute("return counter.empty"));
+		var result = vm.execute("""
+				counter:add(2)
+				counter:add(3)
+				return counter.count
+				""");
+		assertEquals(5, result);
+		assertEquals(5, counter.getCount());
+		assertEquals(5, vm.execute("return counter:getCount()"));
+		assertEquals("count: foo=5", vm.execute("return counter:describe(\"count: \")"));
+		assertNull(vm.execute("return counter.missing"));
+		
+		// Linked accesses must handle objects of different classes
+		var getX = (LuaFunction) vm.execute("""
+				return function (obj)
+					return obj.x
+				end
+				""");
+		for (var i = 0; i < 10; i++) {
+			assertEquals(i, getX.call(new Point(i, 0)));
+			assertNull(getX.call(counter));
+			var table = new LuaTable();
+			table.set("x", i);
+			assertEquals(i, getX.call(table));
+		}
+		
+		// Only allowed classes can be accessed
+		vm.globals().set("obj", new Object());
+		assertThrows(LuaException.class, () -> vm.execute("return obj.foo"));
+		assertThrows(LuaException.class, () -> vm.execute("return missing.foo"));
+		var defaultVm = new LuaVm();
+		defaultVm.globals().set("counter", counter);
+		assertThrows(LuaException.class, () -> defaultVm.execute("return counter.name"));
+	}
+	
+	@Test
+	public void javaObjectRules() throws Throwable {
+		// Most specific allowed class is used, regardless of order
+		var labeled = new LabeledCounter("foo");
+		for (var vm : new LuaVm[] {
+				new LuaVm(VmOptions.builder().javaClasses(Counter.class, LabeledCounter.class).build()),
+				new LuaVm(VmOptions.builder().javaClasses(LabeledCounter.class, Counter.class).build())}) {
+			vm.globals().set("counter", labeled);
+			assertEquals("label", vm.execute("return counter.label"));
+			assertEquals("foo", vm.execute("return counter.name"));
+		}
+		
+		// Members of non-public classes can't be accessed
+		assertThrows(IllegalArgumentException.class, () -> VmOptions.builder().javaClasses(LuaApi.class));
+		
+		// Java objects can't be written to
+		var vm = new LuaVm(VmOptions.builder().javaClasses(Counter.class).build());
+		vm.globals().set("counter", new Counter("foo"));
+		assertThrows(LuaException.class, () -> vm.execute("counter.name = \"bar\""));
+		assertThrows(LuaException.class, () -> vm.execute("""
+				local key = "name"
+				counter[key] = "bar"
+				"""));
+	}
+	
+	public record Sample(float ratio, char grade, byte small, Long big) {}
+	
+	@Test
+	public void javaObjectNumbers() throws Throwable {
+		// Java numbers are converted to Lua integers and floats
+		var vm = new LuaVm(VmOptions.builder().javaClasses(Duration.class, Sample.class).build());
+		vm.globals().set("d", Duration.ofSeconds(60));
+		assertEquals(61, vm.execute("return d.seconds + 1"));
+		assertEquals(60001, vm.execute("return d:toMillis() + 1"));
+		assertEquals(60000000000d, vm.execute("return d:toNanos()")); // Too large for int
+		
+		vm.globals().set("s", new Sample(0.5f, 'A', (byte) 3, 7L));
+		assertEquals(1.5, vm.execute("return s.ratio + 1"));
+		assertEquals("A+", vm.execute("return s.grade .. \"+\""));
+		assertEquals(4, vm.execute("return s.small + 1"));
+		assertEquals(8, vm.execute("return s.big + 1"));
+		vm.globals().set("s", new Sample(0.5f, 'A', (byte) 3, null));
+		assertNull(vm.execute("return s.big"));
+	}
+	
+	public static class HostContext {
+		
+		private final String name;
+		
+		public HostContext(String name) {
+			this.name = name;
+		}
+	}
+	
+	private static class InstanceApi {
+		
+		private int total;
+		
+		@LuaExport("add")
+		public int add(int amount) {
+			total += amount;
+			return total;
+		}
+		
+		@LuaExport("hostName")
+		public String hostName(@Inject HostContext ctx, String suffix) {
+			return ctx.name + suffix;
+		}
+		
+		@LuaExport("twice")
+		public static int twice(int value) {
+			return value * 2;
+		}
+	}
+	
+	@Test
+	public void instanceFunctions() throws Throwable {
+		var api = new InstanceApi();
+		var funcs = BINDER.bindFunctionsFrom(api);
+		
+		var vm = new LuaVm(VmOptions.builder().service(HostContext.class, new HostContext("host")).build());
+		for (var func : funcs) {
+			vm.globals().set(func.name(), func);
+		}
+		
+		assertEquals(5, vm.execute("""
+				add(2)
+				return add(3)
+				"""));
+		assertEquals(5, api.total);
+		assertEquals(8, vm.execute("return twice(4)"));
+		assertEquals("host!", vm.execute("return hostName(\"!\")"));
+		
+		// Each VM gets its own services
+		var otherVm = new LuaVm(VmOptions.builder().service(HostContext.class, new HostContext("other")).build());
+		for (var func : funcs) {
+			otherVm.globals().set(func.name(), func);
+		}
+		assertEquals("other!", otherVm.execute("return hostName(\"!\")"));
+		
+		var noServiceVm = new LuaVm();
+		for (var func : funcs) {
+			noServiceVm.globals().set(func.name(), func);
+		}
+		var e = assertThrows(LuaException.class, () -> noServiceVm.execute("return hostName(\"!\")"));
+		assertTrue(e.getMessage().contains(HostContext.class.getName()));
+	}
 }
@@ -1,6 +1,7 @@
 package fi.benjami.code4jvm.lua.test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
 
@@ -20,7 +21,7 @@ public class DebugInfoTest {
 				""");
 		} catch (LuaException e) {
 			var el =  e.getStackTrace()[0];
-			assertEquals("file", el.getClassName());
+			assertTrue(el.getClassName().startsWith("file$"));
 			assertEquals("main chunk", el.getMethodName());
 			assertEquals("dir/file.lua", el.getFileName());
 			assertEquals(2, el.getLineNumber());
@@ -38,13 +39,13 @@ public class DebugInfoTest {
 				""");
 		} catch (LuaException e) {
 			var inner = e.getStackTrace()[0];
-			assertEquals("file", inner.getClassName());
+			assertTrue(inner.getClassName().startsWith("file$"));
 			assertEquals("raiseError", inner.getMethodName());
 			assertEquals("dir/file.lua", inner.getFileName());
 			assertEquals(2, inner.getLineNumber());
 			
 			var outer = e.getStackTrace()[1];
-			assertEquals("file", outer.getClassName());
+			assertTrue(outer.getClassName().startsWith("file$"));
 			assertEquals("main chunk", outer.getMethodName());
 			assertEquals("dir/file.lua", outer.getFileName());
 			assertEquals(4, outer.getLineNumber());
@@ -57,13 +58,13 @@ public class DebugInfoTest {
 				""");
 		} catch (LuaException e) {
 			var inner = e.getStackTrace()[0];
-			assertEquals("file", inner.getClassName());
+			assertTrue(inner.getClassName().startsWith("file$"));
 			assertEquals("anonymous", inner.getMethodName());
 			assertEquals("dir/file.lua", inner.getFileName());
 			assertEquals(1, inner.getLineNumber());
 			
 			var outer = e.getStackTrace()[1];
-			assertEquals("file", outer.getClassName());
+			assertTrue(outer.getClassName().startsWith("file$"));
 			assertEquals("main chunk", outer.getMethodName());
 			assertEquals("dir/file.lua", outer.getFileName());
 			assertEquals(1, outer.getLineNumber());
@@ -156,6 +156,78 @@ public class LinkerTest {
 		assertFalse(trace.metadata.hasUnknownTypes);
 	}
 	
+	@Test
+	public void globalConstants() throws Throwable {
+		var func = (LuaFunction) vm.execute("""
+				function helper(x)
+					return x + 1
+				end
+				return function (x)
+					return helper(x)
+				end
+				""");
+		assertEquals(2, func.call(1));
+		assertEquals(3, func.call(2));
+		
+		// Redefining the global invalidates the linked constant
+		vm.execute("""
+				function helper(x)
+					return x * 10
+				end
+				""");
+		assertEquals(20, func.call(2));
+		vm.globals().set("helper", vm.execute("""
+				return function (x)
+					return x - 1
+				end
+				"""));
+		assertEquals(1, func.call(2));
+		
+		// Frequently written globals are still read correctly
+		var counter = (LuaFunction) vm.execute("""
+				return function ()
+					count = count + 1
+					return count
+				end
+				""");
+		vm.globals().set("count", 0);
+		for (var i = 1; i <= 20; i++) {
+			assertEquals(i, counter.call());
+		}
+	}
+	
+	@Test
+	public void boundFunction() throws Throwable {
+		var func = (LuaFunction) vm.execute("""
+				return function (a, b)
+					return a + b
+				end
+				""");
+		var sum = func.bind(MethodType.methodType(int.class, int.class, int.class));
+		for (var i = 0; i < 100; i++) {
+			assertEquals(i + 1, (int) sum.invokeExact(i, 1));
+		}
+		assertEquals(1, trace.metadata.linkageCount);
+		assertFalse(trace.metadata.hasUnknownTypes);
+		
+		// Unknown types are specialized based on runtime types and relinked as needed
+		var generic = func.bind(MethodType.methodType(Object.class, Object.class, Object.class));
+		assertEquals(3, generic.invoke(1, 2));
+		assertEquals(3.5, generic.invoke(1, 2.5));
+		assertEquals(3.5, generic.invoke(1, 2.5));
+		assertEquals(2, trace.metadata.linkageCount);
+		
+		// Results can be discarded
+		vm.execute("called = false");
+		var callback = (LuaFunction) vm.execute("""
+				return function ()
+					called = true
+				end
+				""");
+		callback.bind(MethodType.methodType(void.class)).invokeExact();
+		assertEquals(true, vm.globals().get("called"));
+	}
+	
 	@AfterEach
 	public void cleanup() {
 		LuaDebugOptions.linkerTrace = null;
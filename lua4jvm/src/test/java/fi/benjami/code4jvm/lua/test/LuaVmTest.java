@@ -3,6 +3,7 @@ package fi.benjami.code4jvm.lua.test;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
@@ -12,6 +13,7 @@ import java.util.function.Function;
 import org.junit.jupiter.api.Test;
 
 import fi.benjami.code4jvm.lua.LuaVm;
+import fi.benjami.code4jvm.lua.compiler.FunctionCompiler;
 import fi.benjami.code4jvm.lua.ffi.JavaFunction;
 import fi.benjami.code4jvm.lua.ir.LuaType;
 import fi.benjami.code4jvm.lua.runtime.LuaFunction;
@@ -301,4 +303,18 @@ public class LuaVmTest {
 				""");
 		assertArrayEquals(new Object[] {1, 2, 3}, result);
 	}
+	
+	@Test
+	public void sharedClassLoaders() throws Throwable {
+		// Every chunk is a class with the same module name
+		var before = FunctionCompiler.classLoaderStats();
+		for (var i = 0; i < 64; i++) {
+			assertEquals(i, vm.execute("return " + i));
+		}
+		var after = FunctionCompiler.classLoaderStats();
+		var classes = after.classesDefined() - before.classesDefined();
+		var loaders = after.loadersCreated() - before.loadersCreated();
+		assertTrue(classes >= 64);
+		assertTrue(loaders <= classes / 8, loaders + " loaders for " + classes + " classes");
+	}
 }
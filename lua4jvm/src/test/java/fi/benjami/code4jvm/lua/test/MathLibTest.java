@@ -0,0 +1,96 @@
+package fi.benjami.code4jvm.lua.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import fi.benjami.code4jvm.lua.LuaVm;
+import fi.benjami.code4jvm.lua.stdlib.LuaException;
+
+public class MathLibTest {
+	
+	private final LuaVm vm = new LuaVm();
+	
+	@Test
+	public void rounding() throws Throwable {
+		assertEquals(3, vm.execute("return math.floor(3.7)"));
+		assertEquals(-4, vm.execute("return math.floor(-3.2)"));
+		assertEquals(4, vm.execute("return math.ceil(3.2)"));
+		assertEquals(5, vm.execute("return math.floor(5)"));
+		vm.globals().set("x", 1e100);
+		assertEquals(1e100, vm.execute("return math.floor(x)"));
+		assertEquals(3, vm.execute("return math.tointeger(3.0)"));
+		assertEquals(null, vm.execute("return math.tointeger(3.5)"));
+	}
+	
+	@Test
+	public void functions() throws Throwable {
+		assertEquals(3.0, vm.execute("return math.sqrt(9)"));
+		assertEquals(5, vm.execute("return math.abs(-5)"));
+		assertEquals(2.5, vm.execute("return math.abs(-2.5)"));
+		assertEquals(1, vm.execute("return math.min(3, 1, 2)"));
+		assertEquals(1, vm.execute("return math.min(1, 2.5)"));
+		assertEquals(2.5, vm.execute("return math.max(1, 2.5)"));
+		assertEquals(1, vm.execute("return math.fmod(7, 3)"));
+		assertEquals(-1, vm.execute("return math.fmod(-7, 3)"));
+		assertEquals(1.5, vm.execute("return math.fmod(7.5, 3)"));
+		assertEquals(Math.PI, vm.execute("return math.pi"));
+		assertEquals(3.0, vm.execute("return math.log(1000, 10)"));
+		assertEquals("integer", vm.execute("return math.type(1)"));
+		assertEquals("float", vm.execute("return math.type(1.5)"));
+		assertArrayEquals(new Object[] {3.0, 0.5}, (Object[]) vm.execute("return math.modf(3.5)"));
+		assertThrows(LuaException.class, () -> vm.execute("return math.fmod(1, 0)"));
+		assertThrows(LuaException.class, () -> vm.execute("return math.floor(\"x\")"));
+	}
+	
+	@Test
+	public void intrinsics() throws Throwable {
+		// Known argument types, so these compile to direct calls
+		assertEquals(4.0, vm.execute("""
+				local function hypot(a, b)
+					return math.sqrt(a * a + b * b)
+				end
+				return hypot(3, 0) + math.max(1, 1)
+				"""));
+		assertEquals(2.5, vm.execute("""
+				local x = 4.5
+				return math.floor(x) - math.ceil(x / 2) + math.min(x, 1.5)
+				"""));
+	}
+	
+	@Test
+	public void minMaxSpecialValues() throws Throwable {
+		// First argument wins unless the other one is strictly smaller (or larger)
+		var expected = new Object[] {0.0, -0.0, 0.0, -0.0, Double.NaN, 1.0, Double.NaN, 1.0};
+		assertArrayEquals(expected, (Object[]) vm.execute("""
+				local z, nz, nan, one = 0 / 1, 0 / -1, 0 / 0, 1 / 1
+				return math.min(z, nz), math.min(nz, z), math.max(z, nz), math.max(nz, z),
+					math.min(nan, one), math.min(one, nan), math.max(nan, one), math.max(one, nan)
+				"""));
+		assertArrayEquals(expected, (Object[]) vm.execute("""
+				local min, max = math.min, math.max
+				local z, nz, nan, one = 0 / 1, 0 / -1, 0 / 0, 1 / 1
+				return min(z, nz), min(nz, z), max(z, nz), max(nz, z),
+					min(nan, one), min(one, nan), max(nan, one), max(one, nan)
+				"""));
+	}
+	
+	@Test
+	public void replacedFunction() throws Throwable {
+		assertEquals("replaced", vm.execute("""
+				math.sqrt = function(x) return "replaced" end
+				return math.sqrt(4)
+				"""));
+		var vm = new LuaVm();
+		assertArrayEquals(new Object[] {2.0, "replaced"}, (Object[]) vm.execute("""
+				local function root(x)
+					return math.sqrt(x)
+				end
+				local a = root(4)
+				math.sqrt = function(x) return "replaced" end
+				return a, root(4)
+				"""));
+	}
+}
@@ -0,0 +1,132 @@
+package fi.benjami.code4jvm.lua.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Locale;
+
+import org.junit.jupiter.api.Test;
+
+import fi.benjami.code4jvm.lua.LuaVm;
+import fi.benjami.code4jvm.lua.stdlib.LuaException;
+
+public class StringLibTest {
+	
+	private final LuaVm vm = new LuaVm();
+	
+	@Test
+	public void basics() throws Throwable {
+		assertEquals(3, vm.execute("return string.len(\"foo\")"));
+		assertEquals("oob", vm.execute("return string.sub(\"foobar\", 2, 4)"));
+		assertEquals("bar", vm.execute("return string.sub(\"foobar\", -3)"));
+		assertEquals("", vm.execute("return string.sub(\"foobar\", 5, 2)"));
+		assertEquals("FOO", vm.execute("return string.upper(\"foo\")"));
+		assertEquals("oof", vm.execute("return string.reverse(\"foo\")"));
+		assertEquals("ab,ab,ab", vm.execute("return string.rep(\"ab\", 3, \",\")"));
+		assertArrayEquals(new Object[] {98, 99}, (Object[]) vm.execute("return string.byte(\"abc\", 2, 3)"));
+		assertEquals("abc", vm.execute("return string.char(97, 98, 99)"));
+	}
+	
+	@Test
+	public void format() throws Throwable {
+		assertEquals("x=5 y=1.50 s=foo", vm.execute("return string.format(\"x=%d y=%.2f s=%s\", 5, 1.5, \"foo\")"));
+		assertEquals("0.1 1e-05 100", vm.execute("return string.format(\"%g %g %g\", 0.1, 0.00001, 100)"));
+		assertEquals("  ff|7   |100%", vm.execute("return string.format(\"%4x|%-4d|%d%%\", 255, 7, 100)"));
+		assertEquals("\"a\\\"b\"", vm.execute("return string.format(\"%q\", 'a\"b')"));
+	}
+	
+	@Test
+	public void formatEdgeCases() throws Throwable {
+		assertEquals("1e9999 -1e9999 (0/0)", vm.execute("return string.format(\"%q %q %q\", 1/0, -1/0, 0/0)"));
+		var e = assertThrows(LuaException.class, () -> vm.execute("return string.format(\"%#d\", 1)"));
+		assertEquals("invalid conversion '%#d' to 'format'", e.getMessage());
+		assertThrows(LuaException.class, () -> vm.execute("return string.format(\"%100d\", 1)"));
+		assertThrows(LuaException.class, () -> vm.execute("return string.format(\"%.100f\", 1)"));
+		assertEquals("1.5", vm.execute("return string.format(\"%.1f\", 1.5)"));
+	}
+	
+	@Test
+	public void integerArguments() throws Throwable {
+		var e = assertThrows(LuaException.class, () -> vm.execute("return string.sub(\"foo\", 2^100)"));
+		assertEquals("bad argument #2 to 'sub' (number has no integer representation)", e.getMessage());
+		assertThrows(LuaException.class, () -> vm.execute("return string.rep(\"x\", 2^40)"));
+		assertThrows(LuaException.class, () -> vm.execute("return string.byte(\"foo\", 0/0)"));
+		assertThrows(LuaException.class, () -> vm.execute("return string.char(2^40)"));
+		assertEquals("foo", vm.execute("return string.sub(\"foo\", -2147483648)"));
+		
+		e = assertThrows(LuaException.class, () -> vm.execute("return string.rep(\"abc\", 1000000000)"));
+		assertEquals("resulting string too large", e.getMessage());
+	}
+	
+	@Test
+	public void caseConversionIgnoresLocale() throws Throwable {
+		var locale = Locale.getDefault();
+		Locale.setDefault(Locale.forLanguageTag("tr"));
+		try {
+			assertEquals("TITLE", vm.execute("return string.upper(\"title\")"));
+			assertEquals("title", vm.execute("return string.lower(\"TITLE\")"));
+		} finally {
+			Locale.setDefault(locale);
+		}
+	}
+	
+	@Test
+	public void find() throws Throwable {
+		assertArrayEquals(new Object[] {4, 6}, (Object[]) vm.execute("return string.find(\"foobar\", \"bar\")"));
+		assertEquals(null, vm.execute("return string.find(\"foobar\", \"baz\")"));
+		assertArrayEquals(new Object[] {2, 2}, (Object[]) vm.execute("return string.find(\"a.b.\", \".\", 2, true)"));
+		assertArrayEquals(new Object[] {5, 7, "123"}, (Object[]) vm.execute("return string.find(\"abc 123 def\", \"(%d+)\")"));
+		assertEquals(null, vm.execute("return string.find(\"abc\", \"^b\")"));
+	}
+	
+	@Test
+	public void match() throws Throwable {
+		assertEquals("123", vm.execute("return string.match(\"abc 123\", \"%d+\")"));
+		assertArrayEquals(new Object[] {"key", "value"}, (Object[]) vm.execute("return string.match(\"key = value\", \"(%w+)%s*=%s*(%w+)\")"));
+		assertEquals("[x]", vm.execute("return string.match(\"a[x]b\", \"%b[]\")"));
+		assertEquals(3, vm.execute("return string.match(\"ab\", \"ab()\")"));
+		assertEquals("THE", vm.execute("return string.match(\"THE (quick) fox\", \"%f[%a]%a+\")"));
+		assertArrayEquals(new Object[] {2, 3, "a"}, (Object[]) vm.execute("return string.find(\"xaaay\", \"(a)%1\")"));
+		assertEquals("", vm.execute("return string.match(\"aaa\", \"a-\")"));
+		assertThrows(LuaException.class, () -> vm.execute("return string.match(\"a\", \"(a\")"));
+	}
+	
+	@Test
+	public void gmatch() throws Throwable {
+		assertEquals("one,two,three,", vm.execute("""
+				local s = ""
+				for word in string.gmatch("one two three", "%a+") do
+					s = s .. word .. ","
+				end
+				return s
+				"""));
+		assertEquals("a=1;b=2;", vm.execute("""
+				local s = ""
+				for k, v in string.gmatch("a=1, b=2", "(%w+)=(%w+)") do
+					s = s .. k .. "=" .. v .. ";"
+				end
+				return s
+				"""));
+		assertEquals("x", vm.execute("""
+				local it = string.gmatch("x y", "%a")
+				return it()
+				"""));
+	}
+	
+	@Test
+	public void gsub() throws Throwable {
+		assertArrayEquals(new Object[] {"hello hello world world", 2},
+				(Object[]) vm.execute("return string.gsub(\"hello world\", \"(%w+)\", \"%1 %1\")"));
+		assertArrayEquals(new Object[] {"hello Lua", 1},
+				(Object[]) vm.execute("return string.gsub(\"hello world\", \"world\", \"Lua\")"));
+		assertArrayEquals(new Object[] {"-a-b-", 3},
+				(Object[]) vm.execute("return string.gsub(\"ab\", \"\", \"-\")"));
+		assertArrayEquals(new Object[] {"x = 1, y = 2", 2},
+				(Object[]) vm.execute("return string.gsub(\"x = $x, y = $y\", \"%$(%w+)\", {x = 1, y = 2})"));
+		assertArrayEquals(new Object[] {"HELLO world", 1},
+				(Object[]) vm.execute("return string.gsub(\"hello world\", \"%w+\", string.upper, 1)"));
+		assertArrayEquals(new Object[] {"abc", 1},
+				(Object[]) vm.execute("return string.gsub(\"abc\", \"b\", function(s) return false end)"));
+	}
+}
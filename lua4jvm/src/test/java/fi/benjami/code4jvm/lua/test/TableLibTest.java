@@ -0,0 +1,185 @@
+package fi.benjami.code4jvm.lua.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import fi.benjami.code4jvm.lua.LuaVm;
+import fi.benjami.code4jvm.lua.runtime.LuaTable;
+import fi.benjami.code4jvm.lua.stdlib.LuaException;
+
+public class TableLibTest {
+	
+	private final LuaVm vm = new LuaVm();
+	
+	@Test
+	public void insertRemove() throws Throwable {
+		assertEquals("a,b,c,d,d", vm.execute("""
+				local t = {"b", "d"}
+				table.insert(t, "c")
+				table.insert(t, 1, "a")
+				table.insert(t, 4, "d")
+				table.remove(t, 3)
+				table.insert(t, 3, "c")
+				table.remove(t)
+				table.insert(t, "d")
+				return table.concat(t, ",")
+				"""));
+		assertEquals("c", vm.execute("""
+				local t = {"a", "b", "c"}
+				return table.remove(t)
+				"""));
+		assertEquals(2, vm.execute("""
+				local t = {"a", "b", "c"}
+				table.remove(t, 1)
+				return #t
+				"""));
+		assertThrows(LuaException.class, () -> vm.execute("table.insert({}, 3, 1)"));
+		
+		// Removing at #t + 1, or at 0 of an empty table, clears that key
+		assertArrayEquals(new Object[] {"z", null, 0}, (Object[]) vm.execute("""
+				local t = {}
+				t[0] = "z"
+				return table.remove(t, 0), t[0], #t
+				"""));
+		assertArrayEquals(new Object[] {"i2", 2, 1}, (Object[]) vm.execute("""
+				state = {}
+				local t = setmetatable({"a"}, {
+					__index = function(t, k) return "i" .. k end,
+					__newindex = function(t, k, v) state.key = k end
+				})
+				return table.remove(t, 2), state.key, #t
+				"""));
+	}
+	
+	@Test
+	public void grow() throws Throwable {
+		var src = new LuaTable();
+		for (var i = 1; i <= 1000; i++) {
+			src.set(i, i);
+		}
+		vm.globals().set("src", src);
+		assertEquals(1000, vm.execute("""
+				local t = {}
+				for _, v in ipairs(src) do
+					table.insert(t, 1, v)
+				end
+				return t[1]
+				"""));
+		assertEquals(0, vm.execute("""
+				local t = {}
+				for _, v in ipairs(src) do
+					table.insert(t, v)
+				end
+				for _, v in ipairs(src) do
+					table.remove(t, 1)
+				end
+				return #t
+				"""));
+	}
+	
+	@Test
+	public void concat() throws Throwable {
+		assertEquals("1, 2.5, x", vm.execute("return table.concat({1, 2.5, \"x\"}, \", \")"));
+		assertEquals("bc", vm.execute("return table.concat({\"a\", \"b\", \"c\"}, \"\", 2)"));
+		assertEquals("", vm.execute("return table.concat({})"));
+		assertEquals("1e+100 2.0", vm.execute("return table.concat({10 ^ 100, 4 / 2}, \" \")"));
+		assertThrows(LuaException.class, () -> vm.execute("return table.concat({true})"));
+	}
+	
+	@Test
+	public void unpack() throws Throwable {
+		assertArrayEquals(new Object[] {1, 2, 3}, (Object[]) vm.execute("return table.unpack({1, 2, 3})"));
+		assertArrayEquals(new Object[] {2, 3}, (Object[]) vm.execute("return table.unpack({1, 2, 3}, 2)"));
+		assertArrayEquals(new Object[] {1, 2, null}, (Object[]) vm.execute("return table.unpack({1, 2}, 1, 3)"));
+	}
+	
+	@Test
+	public void sort() throws Throwable {
+		assertEquals("1 2 3 5 8", vm.execute("""
+				local t = {5, 3, 8, 1, 2}
+				table.sort(t)
+				return table.concat(t, " ")
+				"""));
+		assertEquals("a b c", vm.execute("""
+				local t = {"c", "a", "b"}
+				table.sort(t)
+				return table.concat(t, " ")
+				"""));
+		assertEquals("9 4 3 1", vm.execute("""
+				local t = {3, 1, 9, 4}
+				table.sort(t, function(a, b) return a > b end)
+				return table.concat(t, " ")
+				"""));
+		assertThrows(LuaException.class, () -> vm.execute("table.sort({1, \"x\", 2})"));
+	}
+	
+	@Test
+	public void sortComparatorError() throws Throwable {
+		// Array part is sorted in place, but an error must not lose values
+		var t = new LuaTable();
+		var expected = new HashSet<Object>();
+		for (var i = 1; i <= 20; i++) {
+			// Mixing integers and floats makes the array generic
+			Object value = i == 1 ? (Object) 0.5 : (Object) (i * 7 % 20);
+			t.set(i, value);
+			expected.add(value);
+		}
+		vm.globals().set("t", t);
+		assertThrows(LuaException.class, () -> vm.execute("""
+				table.sort(t, function(a, b)
+					if a == 13 then
+						error("comparator failed")
+					end
+					return a < b
+				end)
+				"""));
+		var actual = new HashSet<Object>();
+		for (var i = 1; i <= 20; i++) {
+			actual.add(t.get(i));
+		}
+		assertEquals(expected, actual);
+	}
+	
+	@Test
+	public void sortComparatorCalls() throws Throwable {
+		var result = (LuaTable) vm.execute("""
+				local t, i = {}, 1
+				while i <= 100 do
+					t[i] = (i * 37) % 101
+					i = i + 1
+				end
+				state = {calls = 0, log = {}}
+				table.sort(t, function(a, b)
+					state.calls = state.calls + 1
+					state.log[state.calls * 2 - 1] = a
+					state.log[state.calls * 2] = b
+					return a < b
+				end)
+				return {sorted = t, log = state.log, calls = state.calls}
+				""");
+		var sorted = (LuaTable) result.get("sorted");
+		for (var i = 2; i <= 100; i++) {
+			assertTrue((int) sorted.get(i - 1) < (int) sorted.get(i));
+		}
+		
+		// Comparator is called once per comparison, never for same pair in both orders
+		var log = (LuaTable) result.get("log");
+		var calls = (int) result.get("calls");
+		assertTrue(calls <= 700);
+		var pairs = new HashSet<List<Object>>();
+		for (var i = 1; i <= calls; i++) {
+			var a = log.get(i * 2 - 1);
+			var b = log.get(i * 2);
+			assertFalse(pairs.contains(List.of(b, a)));
+			pairs.add(List.of(a, b));
+		}
+	}
+}
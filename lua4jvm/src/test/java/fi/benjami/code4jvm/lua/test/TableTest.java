@@ -1,9 +1,11 @@
 package fi.benjami.code4jvm.lua.test;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.HashSet;
@@ -18,6 +20,7 @@ import fi.benjami.code4jvm.lua.debug.LuaDebugOptions;
 import fi.benjami.code4jvm.lua.runtime.LuaFunction;
 import fi.benjami.code4jvm.lua.runtime.LuaTable;
 import fi.benjami.code4jvm.lua.runtime.TableAccess;
+import fi.benjami.code4jvm.lua.stdlib.LuaException;
 
 public class TableTest {
 
@@ -371,4 +374,157 @@ public class TableTest {
 		table.set(1d, "test");
 		table.set(5d, "second");
 	}
+	
+	@Test
+	public void typedArrays() {
+		var ints = new LuaTable();
+		for (var i = 1; i <= 100; i++) {
+			ints.set(i, i * 10);
+		}
+		assertEquals(100, ints.arraySize());
+		assertEquals(10, ints.get(1));
+		assertEquals(1000, ints.get(100));
+		assertNull(ints.get(0));
+		assertNull(ints.get(101));
+		
+		// Writing a float to integer array must not convert the existing integers
+		ints.set(50, 0.5);
+		assertEquals(0.5, ints.get(50));
+		assertInstanceOf(Integer.class, ints.get(49));
+		assertEquals(100, ints.arraySize());
+		
+		var floats = new LuaTable();
+		floats.set(1, 1.5);
+		floats.set(2, 2.5);
+		floats.set(3, 3.5);
+		floats.set(3, null); // Remove last
+		assertEquals(2, floats.arraySize());
+		assertNull(floats.get(3));
+		floats.set(2, "foo");
+		assertEquals(1.5, floats.get(1));
+		assertEquals("foo", floats.get(2));
+		
+		// Gaps and other keys
+		var gaps = new LuaTable();
+		gaps.set(1, 1);
+		gaps.set(2, 2);
+		gaps.set(5, 5);
+		gaps.set(0, 0);
+		gaps.set(-1, -1);
+		for (var i = -1; i <= 2; i++) {
+			assertEquals(i, gaps.get(i));
+		}
+		assertNull(gaps.get(3));
+		assertEquals(5, gaps.get(5));
+	}
+	
+	@Test
+	public void typedArraysLua() throws Throwable {
+		var result = vm.execute("""
+				local t = {3, 1, 2}
+				table.insert(t, 1, 4)
+				table.insert(t, 5)
+				table.sort(t)
+				local removed = table.remove(t, 2)
+				local sum = 0
+				for i, v in ipairs(t) do
+					sum = sum + v
+				end
+				return table.concat(t, ","), removed, sum, math.type(t[1])
+				""");
+		assertArrayEquals(new Object[] {"1,3,4,5", 2, 13, "integer"}, (Object[]) result);
+	}
+	
+	@Test
+	public void typedArrayAccess() throws Throwable {
+		// Constant keys link to accessors of the array type
+		var access = (LuaFunction) vm.execute("""
+				return function (t, v)
+					t[2] = v
+					return t[1], t[2], t[3]
+				end
+				""");
+		var ints = new LuaTable();
+		for (var i = 1; i <= 3; i++) {
+			ints.set(i, i);
+		}
+		assertArrayEquals(new Object[] {1, 10, 3}, (Object[]) access.call(ints, 10));
+		assertArrayEquals(new Object[] {1, 20, 3}, (Object[]) access.call(ints, 20));
+		// Storing a float changes array type, so the accessors are relinked
+		assertArrayEquals(new Object[] {1, 0.5, 3}, (Object[]) access.call(ints, 0.5));
+		assertArrayEquals(new Object[] {1, 7, 3}, (Object[]) access.call(ints, 7));
+		assertInstanceOf(Integer.class, ints.get(1));
+		
+		var floats = new LuaTable();
+		for (var i = 1; i <= 3; i++) {
+			floats.set(i, i + 0.5);
+		}
+		assertArrayEquals(new Object[] {1.5, 4.5, 3.5}, (Object[]) access.call(floats, 4.5));
+		assertArrayEquals(new Object[] {1.5, null, 3.5}, (Object[]) access.call(floats, null));
+		assertEquals(3, floats.arraySize());
+	}
+	
+	@Test
+	public void typedArrayIndexAccess() throws Throwable {
+		// Integer keys that aren't constants link to accessors of the array type
+		var access = (LuaFunction) vm.execute("""
+				return function (t, i, v)
+					t[i] = v
+					return t[i]
+				end
+				""");
+		var ints = new LuaTable();
+		for (var i = 1; i <= 3; i++) {
+			ints.set(i, i);
+		}
+		assertEquals(10, access.call(ints, 2, 10));
+		assertEquals(4, access.call(ints, 4, 4)); // Append
+		assertEquals(4, ints.arraySize());
+		assertEquals(5, access.call(ints, 100, 5)); // Not in array part
+		assertEquals(5, ints.get(100));
+		assertNull(access.call(ints, 4, null));
+		assertEquals(3, ints.arraySize());
+		// Storing a float changes array type
+		assertEquals(0.5, access.call(ints, 1, 0.5));
+		assertEquals(6, access.call(ints, 1, 6));
+		assertEquals(10, ints.get(2));
+		
+		var floats = new LuaTable();
+		for (var i = 1; i <= 3; i++) {
+			floats.set(i, i + 0.5);
+		}
+		assertEquals(4.5, access.call(floats, 2, 4.5));
+		assertEquals(1.5, floats.get(1));
+		
+		// Tables with metatables are not read from arrays directly
+		var meta = new LuaTable();
+		meta.set("__index", vm.execute("""
+				return function (t, k)
+					return "missing"
+				end
+				"""));
+		var withMeta = new LuaTable();
+		withMeta.set(1, 1);
+		withMeta.metatable(meta);
+		assertEquals("missing", access.call(withMeta, 1, null));
+		
+		assertThrows(LuaException.class, () -> access.call("foo", 1, 1));
+		
+		// Loops with integer indices
+		assertEquals(27.5, vm.execute("""
+				local t = {}
+				local i = 1
+				while i <= 10 do
+					t[i] = i / 2
+					i = i + 1
+				end
+				local sum = 0 / 1
+				i = 1
+				while i <= 10 do
+					sum = sum + t[i]
+					i = i + 1
+				end
+				return sum
+				"""));
+	}
 }
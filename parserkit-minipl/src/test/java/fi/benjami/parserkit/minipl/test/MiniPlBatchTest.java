@@ -0,0 +1,114 @@
+package fi.benjami.parserkit.minipl.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.junit.jupiter.api.io.TempDir;
+
+import fi.benjami.parserkit.minipl.parser.HandWrittenLexer;
+import fi.benjami.parserkit.minipl.parser.MiniPlError;
+import fi.benjami.parserkit.minipl.parser.MiniPlNodes;
+import fi.benjami.parserkit.minipl.parser.MiniPlNodes.*;
+import fi.benjami.parserkit.minipl.parser.MiniPlTokenType;
+import fi.benjami.parserkit.minipl.parser.MiniPlTransformer;
+import fi.benjami.parserkit.parser.BatchParser;
+import fi.benjami.parserkit.parser.BatchResult;
+import fi.benjami.parserkit.parser.ParseError;
+import fi.benjami.parserkit.parser.Parser;
+
+@TestInstance(Lifecycle.PER_CLASS)
+public class MiniPlBatchTest {
+
+	private Parser parser;
+
+	@TempDir
+	Path tempDir;
+
+	@BeforeAll
+	public void init() {
+		parser = Parser.compileAndLoad(MiniPlNodes.REGISTRY, MiniPlTokenType.values());
+	}
+
+	private List<String> inputs() {
+		var inputs = new ArrayList<String>();
+		for (var i = 0; i < 500; i++) {
+			inputs.add("var x : int := " + i + ";\nprint x;\n");
+		}
+		inputs.set(100, "print 1");
+		return inputs;
+	}
+
+	private void checkResults(BatchResult<Program> result) {
+		assertEquals(500, result.results().size());
+		for (var i = 0; i < 500; i++) {
+			if (i == 100) {
+				continue;
+			}
+			assertEquals(new Program(new Block(List.of(
+					new VarDeclaration("x", "int", new Literal(new Constant(i))),
+					new BuiltinPrint(new Literal(new VarReference("x")))
+					))), result.results().get(i).node());
+		}
+		assertTrue(result.hasErrors());
+		assertEquals(List.of(new BatchResult.InputError(100, new ParseError(MiniPlError.MISSING_SEMICOLON, 7, 7))),
+				result.errors());
+	}
+
+	@Test
+	public void platformThreads() {
+		try (var executor = Executors.newFixedThreadPool(4)) {
+			var batch = new BatchParser(parser, new HandWrittenLexer(), new MiniPlTransformer(), executor);
+			checkResults(batch.parseAll(Program.class, inputs()));
+		}
+	}
+
+	@Test
+	public void virtualThreads() {
+		try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			var batch = new BatchParser(parser, new HandWrittenLexer(), new MiniPlTransformer(), executor);
+			checkResults(batch.parseAll(Program.class, inputs()));
+		}
+	}
+
+	@Test
+	public void files() throws IOException {
+		var files = new ArrayList<Path>();
+		var inputs = inputs();
+		for (var i = 0; i < inputs.size(); i++) {
+			var file = tempDir.resolve(i + ".minipl");
+			Files.writeString(file, inputs.get(i));
+			files.add(file);
+		}
+		try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			var batch = new BatchParser(parser, new HandWrittenLexer(), new MiniPlTransformer(), executor);
+			checkResults(batch.parseFiles(Program.class, files));
+
+			// Missing files are reported to caller
+			files.add(tempDir.resolve("missing.minipl"));
+			assertThrows(IOException.class, () -> batch.parseFiles(Program.class, files));
+		}
+	}
+
+	@Test
+	public void noErrors() {
+		try (var executor = Executors.newFixedThreadPool(2)) {
+			var batch = new BatchParser(parser, new HandWrittenLexer(), new MiniPlTransformer(), executor);
+			var result = batch.parseAll(Program.class, List.of("print 1;", "print 2;"));
+			assertFalse(result.hasErrors());
+			assertEquals(List.of(), result.errors());
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package fi.benjami.parserkit.minipl.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import fi.benjami.parserkit.lexer.TokenizedText;
+import fi.benjami.parserkit.minipl.parser.HandWrittenLexer;
+import fi.benjami.parserkit.minipl.parser.MiniPlNodes;
+import fi.benjami.parserkit.minipl.parser.MiniPlNodes.*;
+import fi.benjami.parserkit.minipl.parser.MiniPlTokenType;
+import fi.benjami.parserkit.minipl.parser.MiniPlTransformer;
+import fi.benjami.parserkit.parser.Parser;
+import fi.benjami.parserkit.parser.ParserFlag;
+
+public class MiniPlProfileTest {
+
+	private TokenizedText.View tokenize(String text) {
+		var tokenized = new TokenizedText(new HandWrittenLexer(), new MiniPlTransformer());
+		return tokenized.apply(text, 0, 0);
+	}
+
+	@Test
+	public void profiling() {
+		var parser = Parser.compileAndLoad(MiniPlNodes.REGISTRY, MiniPlTokenType.values(), ParserFlag.PROFILING);
+		var result = parser.parseFully(Program.class, tokenize("var x : int := 1 + 2 * 3;\nprint x;\n"));
+		assertEquals(Set.of(), result.errors());
+
+		var profile = parser.profile();
+		var program = profile.nodes().stream()
+				.filter(stats -> stats.type() == Program.class)
+				.findAny()
+				.orElseThrow();
+		assertEquals(1, program.attempts());
+		assertEquals(1, program.successes());
+		assertEquals(0, program.backtracks());
+		assertTrue(program.nanos() > 0);
+
+		// Expression parsing needs to backtrack
+		var nodes = profile.nodes();
+		assertTrue(nodes.get(0).backtracks() > 0);
+		var alternatives = profile.alternatives();
+		assertTrue(!alternatives.isEmpty());
+		for (var alt : alternatives) {
+			assertTrue(alt.attempts() >= alt.successes());
+		}
+		assertTrue(profile.report().contains("Program"));
+
+		profile.reset();
+		assertEquals(0, profile.nodes().size());
+		assertEquals(0, profile.alternatives().size());
+	}
+
+	@Test
+	public void notEnabled() {
+		var parser = Parser.compileAndLoad(MiniPlNodes.REGISTRY, MiniPlTokenType.values());
+		assertThrows(IllegalStateException.class, parser::profile);
+	}
+}
@@ -11,8 +11,6 @@ public interface Lexer {
 	boolean isWhitespace(int ch);
 	
 	default void skipWhitespace(LexerInput input) {
-		while (input.codepointsLeft() != 0 && isWhitespace(input.getCodepoint(0))) {
-			input.advance(1); // TODO batch advance?
-		}
+		input.advanceWhile(this::isWhitespace);
 	}
 }
@@ -1,26 +1,131 @@
 package fi.benjami.parserkit.lexer;
 
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntPredicate;
+
+import fi.benjami.parserkit.lexer.internal.CharArrayInput;
+import fi.benjami.parserkit.lexer.internal.CharSequenceInput;
+import fi.benjami.parserkit.lexer.internal.MappedUtf8Input;
+
+/**
+ * Text that a {@link Lexer} reads. Positions and lengths are in UTF-16
+ * code units (Java chars), regardless of how the text is stored.
+ *
+ */
 public class LexerInput {
 
+	/**
+	 * Creates an input that reads the given text without copying it.
+	 * The text must not be modified while it is lexed.
+	 * @param text Text to read.
+	 * @param startPos Position where to start reading.
+	 * @return A new lexer input.
+	 */
+	public static LexerInput of(CharSequence text, int startPos) {
+		return new CharSequenceInput(text, startPos);
+	}
+
+	/**
+	 * Creates an input that reads a range of the given array without
+	 * copying it. Positions are relative to start of the range.
+	 * @param chars Array of characters.
+	 * @param start Start index of the range (inclusive).
+	 * @param end End index of the range (exclusive).
+	 * @return A new lexer input.
+	 */
+	public static LexerInput of(char[] chars, int start, int end) {
+		if (start < 0 || end > chars.length || start > end) {
+			throw new IndexOutOfBoundsException("invalid range " + start + ".." + end + " (length " + chars.length + ")");
+		}
+		return new CharArrayInput(chars, start, end);
+	}
+
+	/**
+	 * Creates an input that reads an UTF-8 encoded file by mapping it into
+	 * memory. The file is decoded lazily while the lexer advances, so it is
+	 * never fully loaded to heap. Malformed byte sequences are read as
+	 * {@code U+FFFD}.
+	 * @param path Path to the file.
+	 * @return A new lexer input.
+	 * @throws IOException When the file cannot be read.
+	 */
+	public static LexerInput mapFile(Path path) throws IOException {
+		try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			var size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("file too large: " + path);
+			}
+			// Mapping remains valid after the channel is closed
+			return new MappedUtf8Input(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+		}
+	}
+
+	/**
+	 * Text of inputs created with the deprecated public constructor.
+	 * Null for subclasses, which override accessors instead.
+	 */
 	private final String text;
 	private int pos;
 	
 	private int error;
 	
+	/**
+	 * Creates an input that reads the given string.
+	 * @param text Text to read.
+	 * @param startPos Position where to start reading.
+	 * @deprecated Use {@link #of(CharSequence, int)}, which supports other
+	 * kinds of text too.
+	 */
+	@Deprecated
 	public LexerInput(String text, int startPos) {
 		this.text = text;
 		this.pos = startPos;
 	}
+
+	/**
+	 * Creates an input for a subclass. Subclasses must override
+	 * {@link #getCodepoint(int)} and {@link #codepointsLeft()}.
+	 * @param startPos Position where to start reading.
+	 */
+	protected LexerInput(int startPos) {
+		this.text = null;
+		this.pos = startPos;
+	}
 	
 	public void advance(int count) {
 		assert count > 0;
 		pos += count;
 	}
 	
+	/**
+	 * Advances past all codepoints that match the given predicate.
+	 * Implementations should override this to read their storage directly.
+	 * @param predicate Predicate that codepoints to skip match.
+	 * @return How many chars were skipped.
+	 */
+	public int advanceWhile(IntPredicate predicate) {
+		var offset = 0;
+		var left = codepointsLeft();
+		while (offset < left) {
+			var ch = getCodepoint(offset);
+			if (!predicate.test(ch)) {
+				break;
+			}
+			offset += Character.charCount(ch);
+		}
+		if (offset != 0) {
+			advance(offset);
+		}
+		return offset;
+	}
+	
 	public int getCodepoint(int offset) {
 		return text.codePointAt(pos + offset);
 	}
-	
+
 	public int codepointsLeft() {
 		return text.length() - pos;
 	}
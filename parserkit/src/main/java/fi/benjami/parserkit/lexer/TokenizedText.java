@@ -1,5 +1,6 @@
 package fi.benjami.parserkit.lexer;
 
+import fi.benjami.parserkit.lexer.internal.TextRope;
 import fi.benjami.parserkit.lexer.internal.TokenList;
 
 public class TokenizedText {
@@ -8,20 +9,21 @@ public class TokenizedText {
 	private final TokenTransformer transformer;
 	
 	private final TokenList tokens;
-	private String text;
+	private final TextRope text;
 	
 	public TokenizedText(Lexer lexer, TokenTransformer transformer) {
 		this.lexer = lexer;
 		this.transformer = transformer;
 		this.tokens = new TokenList();
-		this.text = "";
+		this.text = new TextRope();
 	}
 
-	public View apply(String newText, int start, int end) {
+	public View apply(CharSequence newText, int start, int end) {
 		// Compute modifier to indices of tokens after end
 		var indicesAfterMod = newText.length() - (end - start);
 		// Update the stored text and the end index in it
-		text = text.substring(0, start) + newText + text.substring(end);
+		// Rope replaces the range without copying rest of the document
+		text.replace(start, end, newText);
 		int newEnd = end + indicesAfterMod;
 		
 		// Go back to nearest whitespace
@@ -32,7 +34,7 @@ public class TokenizedText {
 			if (start == 0) {
 				break;
 			}
-			var ch = text.codePointAt(start);
+			var ch = Character.codePointAt(text, start);
 			if (lexer.isWhitespace(ch)) {
 				break;
 			}
@@ -44,7 +46,7 @@ public class TokenizedText {
 		var slice = tokens.select(start, end);
 		// select() may backtrack from start if there are existing tokens
 		var lexerStart = slice.hasNext() ? slice.peek().start() : start;
-		var input = new LexerInput(text, lexerStart);
+		var input = LexerInput.of(text, lexerStart);
 		// Lexer uses indices in the new text -> newEnd
 		while (input.pos() <= newEnd) {
 			var token = nextToken(input);
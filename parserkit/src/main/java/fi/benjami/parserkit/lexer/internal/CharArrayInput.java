@@ -0,0 +1,51 @@
+package fi.benjami.parserkit.lexer.internal;
+
+import java.util.function.IntPredicate;
+
+import fi.benjami.parserkit.lexer.LexerInput;
+
+public class CharArrayInput extends LexerInput {
+
+	private final char[] chars;
+	private final int start, end;
+
+	public CharArrayInput(char[] chars, int start, int end) {
+		super(0);
+		this.chars = chars;
+		this.start = start;
+		this.end = end;
+	}
+
+	@Override
+	public int getCodepoint(int offset) {
+		var index = start + pos() + offset;
+		if (index >= end) {
+			throw new IndexOutOfBoundsException(index - start);
+		}
+		return Character.codePointAt(chars, index, end);
+	}
+
+	@Override
+	public int codepointsLeft() {
+		return end - start - pos();
+	}
+
+	@Override
+	public int advanceWhile(IntPredicate predicate) {
+		var first = start + pos();
+		var index = first;
+		while (index < end) {
+			var ch = Character.codePointAt(chars, index, end);
+			if (!predicate.test(ch)) {
+				break;
+			}
+			index += Character.charCount(ch);
+		}
+		var count = index - first;
+		if (count != 0) {
+			advance(count);
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,46 @@
+package fi.benjami.parserkit.lexer.internal;
+
+import java.util.function.IntPredicate;
+
+import fi.benjami.parserkit.lexer.LexerInput;
+
+public class CharSequenceInput extends LexerInput {
+
+	private final CharSequence text;
+	private final int length;
+
+	public CharSequenceInput(CharSequence text, int startPos) {
+		super(startPos);
+		this.text = text;
+		this.length = text.length();
+	}
+
+	@Override
+	public int getCodepoint(int offset) {
+		return Character.codePointAt(text, pos() + offset);
+	}
+
+	@Override
+	public int codepointsLeft() {
+		return length - pos();
+	}
+
+	@Override
+	public int advanceWhile(IntPredicate predicate) {
+		var start = pos();
+		var index = start;
+		while (index < length) {
+			var ch = Character.codePointAt(text, index);
+			if (!predicate.test(ch)) {
+				break;
+			}
+			index += Character.charCount(ch);
+		}
+		var count = index - start;
+		if (count != 0) {
+			advance(count);
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,230 @@
+package fi.benjami.parserkit.lexer.internal;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+import fi.benjami.parserkit.lexer.LexerInput;
+
+/**
+ * Lexer input that decodes UTF-8 bytes lazily into a small sliding window.
+ * Only characters at or after current position are retained, so memory use
+ * depends on the lexer's lookahead rather than size of the input.
+ *
+ */
+public class MappedUtf8Input extends LexerInput {
+
+	private static final int INITIAL_WINDOW = 8192;
+
+	private final ByteBuffer bytes;
+
+	/**
+	 * Length of the whole input in chars, or -1 if not yet counted.
+	 */
+	private int length;
+
+	private char[] window;
+
+	/**
+	 * Char index of first char in window.
+	 */
+	private int windowStart;
+
+	/**
+	 * Char index after the last decoded char in window.
+	 */
+	private int windowEnd;
+
+	/**
+	 * Index of next undecoded byte.
+	 */
+	private int bytePos;
+
+	/**
+	 * How many bytes the last {@link #decode(int)} consumed.
+	 */
+	private int decodedBytes;
+
+	public MappedUtf8Input(ByteBuffer bytes) {
+		super(0);
+		this.bytes = bytes;
+		this.length = -1;
+		this.window = new char[INITIAL_WINDOW];
+	}
+
+	@Override
+	public int getCodepoint(int offset) {
+		var index = pos() + offset;
+		if (!ensure(index, pos())) {
+			throw new IndexOutOfBoundsException(index);
+		}
+		var ch = window[index - windowStart];
+		if (Character.isHighSurrogate(ch) && ensure(index + 1, pos())) {
+			var low = window[index + 1 - windowStart];
+			if (Character.isLowSurrogate(low)) {
+				return Character.toCodePoint(ch, low);
+			}
+		}
+		return ch;
+	}
+
+	@Override
+	public int codepointsLeft() {
+		if (length == -1) {
+			// Count only chars that have not been decoded yet, once
+			// This doesn't store them to window, so memory use stays low
+			var count = windowEnd;
+			var limit = bytes.limit();
+			for (var i = bytePos; i < limit;) {
+				if (bytes.get(i) >= 0) {
+					// Fast path for ASCII
+					count++;
+					i++;
+				} else {
+					count += Character.charCount(decode(i));
+					i += decodedBytes;
+				}
+			}
+			length = count;
+		}
+		return length - pos();
+	}
+
+	@Override
+	public int advanceWhile(IntPredicate predicate) {
+		var first = pos();
+		var index = first;
+		for (;;) {
+			// Chars that were already skipped need not be retained
+			if (!ensure(index, index)) {
+				break; // End of input
+			}
+			int ch = window[index - windowStart];
+			if (Character.isHighSurrogate((char) ch) && ensure(index + 1, index)) {
+				var low = window[index + 1 - windowStart];
+				if (Character.isLowSurrogate(low)) {
+					ch = Character.toCodePoint((char) ch, low);
+				}
+			}
+			if (!predicate.test(ch)) {
+				break;
+			}
+			index += Character.charCount(ch);
+		}
+		var count = index - first;
+		if (count != 0) {
+			advance(count);
+		}
+		return count;
+	}
+
+	/**
+	 * Ensures that the char at given index is in the window.
+	 * @param index Char index.
+	 * @param keepFrom Char index before which the window may be discarded.
+	 * @return Whether the index is in the window, i.e. not past end of input.
+	 */
+	private boolean ensure(int index, int keepFrom) {
+		if (index < windowStart) {
+			// Seeking backwards; we don't know where in bytes this is
+			// This should be rare, so just decode again from beginning
+			windowStart = 0;
+			windowEnd = 0;
+			bytePos = 0;
+			keepFrom = index;
+		}
+		while (index >= windowEnd) {
+			if (bytePos == bytes.limit()) {
+				return false;
+			}
+			fill(keepFrom);
+		}
+		return true;
+	}
+
+	private void fill(int keepFrom) {
+		// Discard chars that are no longer needed
+		var discard = Math.min(keepFrom, windowEnd) - windowStart;
+		if (discard > 0) {
+			System.arraycopy(window, discard, window, 0, windowEnd - windowStart - discard);
+			windowStart += discard;
+		}
+		// Grow window if lookahead doesn't fit to it
+		var used = windowEnd - windowStart;
+		if (window.length - used < 2) {
+			window = Arrays.copyOf(window, window.length * 2);
+		}
+
+		// Decode as much as fits to window
+		var limit = bytes.limit();
+		var pos = bytePos;
+		var end = used;
+		var capacity = window.length - 1; // Space for surrogate pairs
+		while (end < capacity && pos < limit) {
+			var b = bytes.get(pos);
+			if (b >= 0) {
+				// Fast path for ASCII
+				window[end++] = (char) b;
+				pos++;
+			} else {
+				var cp = decode(pos);
+				pos += decodedBytes;
+				end += Character.toChars(cp, window, end);
+			}
+		}
+		bytePos = pos;
+		windowEnd = windowStart + end;
+	}
+
+	/**
+	 * Decodes a codepoint. Invalid byte sequences are decoded to
+	 * {@code U+FFFD}, consuming one byte.
+	 * @param index Byte index.
+	 * @return Codepoint. Amount of bytes consumed is stored to
+	 * {@link #decodedBytes}.
+	 */
+	private int decode(int index) {
+		var b = bytes.get(index) & 0xff;
+		int count, cp, min;
+		if (b < 0x80) {
+			decodedBytes = 1;
+			return b;
+		} else if ((b & 0xe0) == 0xc0) {
+			count = 1;
+			cp = b & 0x1f;
+			min = 0x80;
+		} else if ((b & 0xf0) == 0xe0) {
+			count = 2;
+			cp = b & 0x0f;
+			min = 0x800;
+		} else if ((b & 0xf8) == 0xf0) {
+			count = 3;
+			cp = b & 0x07;
+			min = 0x10000;
+		} else {
+			decodedBytes = 1;
+			return 0xfffd; // Unexpected continuation byte or invalid lead byte
+		}
+
+		if (index + count >= bytes.limit()) {
+			decodedBytes = 1;
+			return 0xfffd; // Truncated sequence
+		}
+		for (var i = 1; i <= count; i++) {
+			var next = bytes.get(index + i) & 0xff;
+			if ((next & 0xc0) != 0x80) {
+				decodedBytes = 1;
+				return 0xfffd;
+			}
+			cp = (cp << 6) | (next & 0x3f);
+		}
+		if (cp < min || cp > Character.MAX_CODE_POINT
+				|| (cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE)) {
+			decodedBytes = 1;
+			return 0xfffd; // Overlong encoding or not a valid codepoint
+		}
+		decodedBytes = count + 1;
+		return cp;
+	}
+
+}
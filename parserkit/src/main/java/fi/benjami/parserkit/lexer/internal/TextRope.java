@@ -0,0 +1,276 @@
+package fi.benjami.parserkit.lexer.internal;
+
+/**
+ * Mutable text storage backed by a balanced binary tree of text chunks.
+ * Replacing a range of text costs O(log n) plus the length of the new text,
+ * instead of copying the whole document.
+ *
+ * <p>Sequential reads with {@link #charAt(int)} are cheap, because the most
+ * recently accessed chunk is cached. Random access is O(log n).
+ *
+ * <p>Not thread-safe; even reads mutate the chunk cache.
+ *
+ */
+public class TextRope implements CharSequence {
+
+	/**
+	 * Maximum size of a chunk created from new text. Small chunks next to
+	 * each other are merged up to this size.
+	 */
+	private static final int CHUNK_SIZE = 512;
+
+	private static abstract sealed class Node permits Leaf, Concat {
+		final int length;
+		final int depth;
+
+		Node(int length, int depth) {
+			this.length = length;
+			this.depth = depth;
+		}
+	}
+
+	private static final class Leaf extends Node {
+		final String text;
+
+		Leaf(String text) {
+			super(text.length(), 0);
+			this.text = text;
+		}
+	}
+
+	private static final class Concat extends Node {
+		final Node left, right;
+
+		Concat(Node left, Node right) {
+			super(left.length + right.length, Math.max(left.depth, right.depth) + 1);
+			this.left = left;
+			this.right = right;
+		}
+	}
+
+	private static final Leaf EMPTY = new Leaf("");
+
+	private Node root;
+
+	// Cache of most recently accessed chunk
+	private Leaf cachedLeaf;
+	private int cachedStart;
+
+	public TextRope() {
+		this.root = EMPTY;
+	}
+
+	public TextRope(CharSequence text) {
+		this.root = build(text, 0, text.length());
+	}
+
+	/**
+	 * Replaces the text between given indices.
+	 * @param start Start index (inclusive).
+	 * @param end End index (exclusive).
+	 * @param text New text to place between start and end.
+	 */
+	public void replace(int start, int end, CharSequence text) {
+		if (start < 0 || end > root.length || start > end) {
+			throw new IndexOutOfBoundsException("invalid range " + start + ".." + end + " (length " + root.length + ")");
+		}
+		var before = prefix(root, start);
+		var after = suffix(root, end);
+		root = concat(concat(before, build(text, 0, text.length())), after);
+		cachedLeaf = null;
+	}
+
+	@Override
+	public int length() {
+		return root.length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		var leaf = cachedLeaf;
+		var offset = index - cachedStart;
+		if (leaf != null && offset >= 0 && offset < leaf.length) {
+			return leaf.text.charAt(offset);
+		}
+		if (index < 0 || index >= root.length) {
+			throw new IndexOutOfBoundsException(index);
+		}
+
+		// Slow path: find the chunk and cache it
+		var node = root;
+		var start = 0;
+		while (node instanceof Concat concat) {
+			if (index - start < concat.left.length) {
+				node = concat.left;
+			} else {
+				start += concat.left.length;
+				node = concat.right;
+			}
+		}
+		cachedLeaf = (Leaf) node;
+		cachedStart = start;
+		return cachedLeaf.text.charAt(index - start);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || end > root.length || start > end) {
+			throw new IndexOutOfBoundsException("invalid range " + start + ".." + end + " (length " + root.length + ")");
+		}
+		var sb = new StringBuilder(end - start);
+		append(sb, root, start, end);
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		var sb = new StringBuilder(root.length);
+		append(sb, root, 0, root.length);
+		return sb.toString();
+	}
+
+	/**
+	 * Depth of the underlying tree. Exposed for testing.
+	 * @return Tree depth.
+	 */
+	public int depth() {
+		return root.depth;
+	}
+
+	private static void append(StringBuilder sb, Node node, int start, int end) {
+		if (start >= end) {
+			return;
+		}
+		if (node instanceof Leaf leaf) {
+			sb.append(leaf.text, start, end);
+		} else if (node instanceof Concat concat) {
+			var split = concat.left.length;
+			append(sb, concat.left, start, Math.min(end, split));
+			append(sb, concat.right, Math.max(start, split) - split, end - split);
+		}
+	}
+
+	private static Node build(CharSequence text, int start, int end) {
+		var length = end - start;
+		if (length == 0) {
+			return EMPTY;
+		} else if (length <= CHUNK_SIZE) {
+			return new Leaf(text.subSequence(start, end).toString());
+		}
+		// Split to two halves of roughly equal size to create a balanced tree
+		var mid = start + length / 2;
+		if (Character.isHighSurrogate(text.charAt(mid - 1))) {
+			mid++; // Don't split surrogate pairs between chunks
+		}
+		return new Concat(build(text, start, mid), build(text, mid, end));
+	}
+
+	/**
+	 * Gets text before the given index.
+	 * @param node Root node.
+	 * @param index End index (exclusive).
+	 * @return Node that contains the text.
+	 */
+	private static Node prefix(Node node, int index) {
+		if (index == 0) {
+			return EMPTY;
+		} else if (index == node.length) {
+			return node;
+		}
+		if (node instanceof Leaf leaf) {
+			return new Leaf(leaf.text.substring(0, index));
+		} else if (node instanceof Concat concat) {
+			var split = concat.left.length;
+			if (index <= split) {
+				return prefix(concat.left, index);
+			} else {
+				return concat(concat.left, prefix(concat.right, index - split));
+			}
+		} else {
+			throw new AssertionError();
+		}
+	}
+
+	/**
+	 * Gets text after the given index.
+	 * @param node Root node.
+	 * @param index Start index (inclusive).
+	 * @return Node that contains the text.
+	 */
+	private static Node suffix(Node node, int index) {
+		if (index == 0) {
+			return node;
+		} else if (index == node.length) {
+			return EMPTY;
+		}
+		if (node instanceof Leaf leaf) {
+			return new Leaf(leaf.text.substring(index));
+		} else if (node instanceof Concat concat) {
+			var split = concat.left.length;
+			if (index >= split) {
+				return suffix(concat.right, index - split);
+			} else {
+				return concat(suffix(concat.left, index), concat.right);
+			}
+		} else {
+			throw new AssertionError();
+		}
+	}
+
+	/**
+	 * Concatenates two trees, keeping the result balanced (AVL join).
+	 * This takes time proportional to difference of their depths.
+	 * @param left Left tree.
+	 * @param right Right tree.
+	 * @return Concatenated tree.
+	 */
+	private static Node concat(Node left, Node right) {
+		if (left.length == 0) {
+			return right;
+		} else if (right.length == 0) {
+			return left;
+		}
+
+		// Merge small chunks to avoid fragmentation after many small edits
+		if (left instanceof Leaf a && right instanceof Leaf b && a.length + b.length <= CHUNK_SIZE) {
+			return new Leaf(a.text + b.text);
+		}
+
+		if (left.depth > right.depth + 1) {
+			var concat = (Concat) left;
+			return balance(concat.left, concat(concat.right, right));
+		} else if (right.depth > left.depth + 1) {
+			var concat = (Concat) right;
+			return balance(concat(left, concat.left), concat.right);
+		} else {
+			return new Concat(left, right);
+		}
+	}
+
+	private static Node balance(Node left, Node right) {
+		if (left.depth > right.depth + 1) {
+			var l = (Concat) left;
+			if (l.left.depth >= l.right.depth) {
+				// Single right rotation
+				return new Concat(l.left, new Concat(l.right, right));
+			} else {
+				// Double rotation
+				var lr = (Concat) l.right;
+				return new Concat(new Concat(l.left, lr.left), new Concat(lr.right, right));
+			}
+		} else if (right.depth > left.depth + 1) {
+			var r = (Concat) right;
+			if (r.right.depth >= r.left.depth) {
+				// Single left rotation
+				return new Concat(new Concat(left, r.left), r.right);
+			} else {
+				// Double rotation
+				var rl = (Concat) r.left;
+				return new Concat(new Concat(left, rl.left), new Concat(rl.right, r.right));
+			}
+		} else {
+			return new Concat(left, right);
+		}
+	}
+
+}
@@ -0,0 +1,114 @@
+package fi.benjami.parserkit.parser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import fi.benjami.parserkit.lexer.Lexer;
+import fi.benjami.parserkit.lexer.TokenTransformer;
+import fi.benjami.parserkit.lexer.TokenizedText;
+import fi.benjami.parserkit.parser.ast.AstNode;
+
+/**
+ * Lexes and parses many independent documents concurrently.
+ *
+ * <p>Parsers created by {@link Parser#compileAndLoad(NodeRegistry, fi.benjami.parserkit.lexer.TokenType[], ParserFlag...)}
+ * keep no state between calls, so a single parser is shared by all tasks.
+ * The lexer and token transformer are shared too, and must thus be
+ * thread-safe. Each document gets its own {@link TokenizedText}.
+ *
+ */
+public class BatchParser {
+
+	private final Parser parser;
+	private final Lexer lexer;
+	private final TokenTransformer transformer;
+	private final Executor executor;
+
+	/**
+	 * Creates a new batch parser.
+	 * @param parser Parser to share between tasks.
+	 * @param lexer Lexer to share between tasks.
+	 * @param transformer Token transformer to share between tasks.
+	 * @param executor Executor that runs parse tasks, one per document. For
+	 * example, a fork-join pool or a virtual thread per task executor.
+	 */
+	public BatchParser(Parser parser, Lexer lexer, TokenTransformer transformer, Executor executor) {
+		this.parser = parser;
+		this.lexer = lexer;
+		this.transformer = transformer;
+		this.executor = executor;
+	}
+
+	/**
+	 * Fully parses the given documents.
+	 * @param <T> Type of root AST node.
+	 * @param nodeType Type of root AST node.
+	 * @param inputs Documents to parse.
+	 * @return Parse results in same order as inputs.
+	 */
+	public <T extends AstNode> BatchResult<T> parseAll(Class<T> nodeType, List<? extends CharSequence> inputs) {
+		return run(inputs, text -> parse(nodeType, text));
+	}
+
+	/**
+	 * Reads the given UTF-8 encoded files and fully parses them. Files are
+	 * read by the parse tasks, so they need not fit in memory at once.
+	 * @param <T> Type of root AST node.
+	 * @param nodeType Type of root AST node.
+	 * @param files Files to parse.
+	 * @return Parse results in same order as files.
+	 * @throws IOException When reading a file fails.
+	 */
+	public <T extends AstNode> BatchResult<T> parseFiles(Class<T> nodeType, List<Path> files) throws IOException {
+		try {
+			return run(files, file -> {
+				try {
+					return parse(nodeType, Files.readString(file));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private <T extends AstNode> ParseResult<T> parse(Class<T> nodeType, CharSequence text) {
+		var tokens = new TokenizedText(lexer, transformer);
+		var view = tokens.apply(text, 0, 0);
+		return parser.parseFully(nodeType, view);
+	}
+
+	private <I, T extends AstNode> BatchResult<T> run(List<? extends I> inputs, Function<I, ParseResult<T>> task) {
+		var futures = new ArrayList<CompletableFuture<ParseResult<T>>>(inputs.size());
+		for (var input : inputs) {
+			futures.add(CompletableFuture.supplyAsync(() -> task.apply(input), executor));
+		}
+
+		// Wait for ALL tasks, even if some fail, before collecting results
+		try {
+			CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			} else if (e.getCause() instanceof Error cause) {
+				throw cause;
+			}
+			throw e;
+		}
+
+		var results = new ArrayList<ParseResult<T>>(futures.size());
+		for (var future : futures) {
+			results.add(future.join());
+		}
+		return new BatchResult<>(results);
+	}
+}
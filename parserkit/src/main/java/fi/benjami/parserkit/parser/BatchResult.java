@@ -0,0 +1,55 @@
+package fi.benjami.parserkit.parser;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import fi.benjami.parserkit.parser.ast.AstNode;
+
+/**
+ * Results of {@link BatchParser batch parsing}.
+ * @param <T> Type of root AST nodes.
+ * @param results Parse results, in same order as inputs were given.
+ */
+public record BatchResult<T extends AstNode>(
+		List<ParseResult<T>> results
+) {
+
+	/**
+	 * A parse error in one of the inputs.
+	 * @param input Index of the input.
+	 * @param error The error.
+	 */
+	public record InputError(
+			int input,
+			ParseError error
+	) {}
+
+	public boolean hasErrors() {
+		for (var result : results) {
+			if (!result.errors().isEmpty()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Collects errors from all inputs.
+	 * @return Errors, ordered by input index and then by location.
+	 */
+	public List<InputError> errors() {
+		var errors = new ArrayList<InputError>();
+		for (var i = 0; i < results.size(); i++) {
+			var start = errors.size();
+			for (var error : results.get(i).errors()) {
+				errors.add(new InputError(i, error));
+			}
+			// Errors of single result are in a set; sort them for consistent output
+			errors.subList(start, errors.size()).sort(Comparator.comparingInt((InputError error) -> error.error().start())
+					.thenComparingInt(error -> error.error().end())
+					.thenComparingInt(error -> error.error().type()));
+		}
+		return errors;
+	}
+}
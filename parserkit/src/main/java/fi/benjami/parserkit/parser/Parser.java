@@ -11,12 +11,26 @@ import fi.benjami.parserkit.parser.internal.ParserGenerator;
 
 public interface Parser {
 		
+	/**
+	 * Generates a parser for the given grammar and loads it as a hidden class.
+	 * The returned parser has no mutable state, so it can be shared between
+	 * threads (see {@link BatchParser}).
+	 * @param registry Node registry that contains the grammar.
+	 * @param tokenTypes All token types the lexer may produce.
+	 * @param flags Parser generator flags.
+	 * @return A new parser.
+	 */
 	static Parser compileAndLoad(NodeRegistry registry, TokenType[] tokenTypes, ParserFlag... flags) {
-		var code = compile("fi.benjami.parserkit.parser.ParserImpl", registry, tokenTypes, flags);
+		var generator = generator("fi.benjami.parserkit.parser.ParserImpl", registry, tokenTypes, flags);
+		var code = generator.compile();
 		
 		var lookup = MethodHandles.lookup();
 		try {			
 			var hiddenLookup = lookup.defineHiddenClass(code, true);
+			if (List.of(flags).contains(ParserFlag.PROFILING)) {
+				hiddenLookup.findStaticSetter(hiddenLookup.lookupClass(), "PROFILE", ParserProfile.class)
+						.invoke(generator.createProfile());
+			}
 			var constructor = hiddenLookup.findConstructor(hiddenLookup.lookupClass(),
 					MethodType.methodType(void.class));
 			return (Parser) constructor.invoke();
@@ -28,13 +42,18 @@ public interface Parser {
 	}
 	
 	static byte[] compile(String className, NodeRegistry registry, TokenType[] tokenTypes, ParserFlag... flags) {
+		return generator(className, registry, tokenTypes, flags).compile();
+	}
+	
+	private static ParserGenerator generator(String className, NodeRegistry registry, TokenType[] tokenTypes, ParserFlag... flags) {
 		var hookSupport = List.of(flags).contains(ParserFlag.INTERNAL_HOOK_SUPPORT);
+		var profiling = List.of(flags).contains(ParserFlag.PROFILING);
 		
-		var generator = new ParserGenerator(className, registry, tokenTypes, hookSupport);
+		var generator = new ParserGenerator(className, registry, tokenTypes, hookSupport, profiling);
 		for (var root : registry.nodeTypes()) {
 			generator.addRoot(root);
 		}
-		return generator.compile();
+		return generator;
 	}
 	
 	<T extends AstNode> ParseResult<T> parse(Class<T> nodeType, TokenizedText.View view);
@@ -47,4 +66,14 @@ public interface Parser {
 		}
 		return result;
 	}
+	
+	/**
+	 * Gets statistics collected by this parser.
+	 * @return Parser profile.
+	 * @throws IllegalStateException If this parser was not generated with
+	 * {@link ParserFlag#PROFILING}.
+	 */
+	default ParserProfile profile() {
+		throw new IllegalStateException("profiling is not enabled for this parser");
+	}
 }
@@ -2,5 +2,12 @@ package fi.benjami.parserkit.parser;
 
 public enum ParserFlag {
 
-	INTERNAL_HOOK_SUPPORT
+	INTERNAL_HOOK_SUPPORT,
+	
+	/**
+	 * Instruments the generated parser to count attempts, successes and
+	 * time spent for every AST node type and choice alternative.
+	 * See {@link Parser#profile()}.
+	 */
+	PROFILING
 }
@@ -0,0 +1,224 @@
+package fi.benjami.parserkit.parser;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import fi.benjami.parserkit.parser.ast.AstNode;
+
+/**
+ * Statistics collected by a parser that was generated with
+ * {@link ParserFlag#PROFILING}. Counters are thread-safe, so a profiled
+ * parser can still be shared between threads.
+ *
+ * <p>A failed attempt to parse an AST node or a choice alternative means that
+ * the parser must backtrack and try something else. Times are inclusive;
+ * the time spent parsing an AST node includes its child nodes.
+ *
+ */
+public class ParserProfile {
+
+	/**
+	 * Statistics of an AST node type.
+	 * @param type AST node type.
+	 * @param attempts How many times parsing the node was attempted.
+	 * @param successes How many times parsing the node succeeded.
+	 * @param nanos Total time spent parsing this node.
+	 */
+	public record NodeStats(
+			Class<? extends AstNode> type,
+			long attempts,
+			long successes,
+			long nanos
+	) {
+
+		public long backtracks() {
+			return attempts - successes;
+		}
+	}
+
+	/**
+	 * Statistics of an alternative in a choice input.
+	 * @param node AST node type that the choice is part of, or null if it is
+	 * part of a virtual node.
+	 * @param choice Index of the choice input in the generated parser.
+	 * @param index Index of this alternative in the choice.
+	 * @param alternative Description of the alternative input.
+	 * @param attempts How many times the alternative was tried.
+	 * @param successes How many times the alternative matched.
+	 * @param nanos Total time spent parsing this alternative.
+	 */
+	public record AlternativeStats(
+			Class<? extends AstNode> node,
+			int choice,
+			int index,
+			String alternative,
+			long attempts,
+			long successes,
+			long nanos
+	) {
+
+		public long backtracks() {
+			return attempts - successes;
+		}
+	}
+
+	/**
+	 * Location of a choice alternative in the generated parser.
+	 * @param node AST node type that contains the choice.
+	 * @param choice Choice index.
+	 * @param index Alternative index.
+	 * @param alternative Description of the alternative.
+	 */
+	public record AlternativeInfo(
+			Class<? extends AstNode> node,
+			int choice,
+			int index,
+			String alternative
+	) {}
+
+	private final List<Class<? extends AstNode>> nodeTypes;
+	private final List<AlternativeInfo> alternatives;
+
+	private final Counters[] nodeCounters;
+	private final Counters[] alternativeCounters;
+
+	private static class Counters {
+		final LongAdder attempts = new LongAdder();
+		final LongAdder successes = new LongAdder();
+		final LongAdder nanos = new LongAdder();
+
+		void record(boolean success, long startNanos) {
+			nanos.add(System.nanoTime() - startNanos);
+			attempts.increment();
+			if (success) {
+				successes.increment();
+			}
+		}
+
+		void reset() {
+			attempts.reset();
+			successes.reset();
+			nanos.reset();
+		}
+	}
+
+	/**
+	 * Creates a new profile. This is done by the parser generator.
+	 * @param nodeTypes AST node types, indexed by their ids.
+	 * @param alternatives Choice alternatives, indexed by their ids.
+	 */
+	public ParserProfile(List<Class<? extends AstNode>> nodeTypes, List<AlternativeInfo> alternatives) {
+		this.nodeTypes = nodeTypes;
+		this.alternatives = alternatives;
+		this.nodeCounters = new Counters[nodeTypes.size()];
+		for (var i = 0; i < nodeCounters.length; i++) {
+			nodeCounters[i] = new Counters();
+		}
+		this.alternativeCounters = new Counters[alternatives.size()];
+		for (var i = 0; i < alternativeCounters.length; i++) {
+			alternativeCounters[i] = new Counters();
+		}
+	}
+
+	/**
+	 * Called by generated parsers after an AST node has been parsed.
+	 * @param nodeId Id of the node type.
+	 * @param success Whether parsing succeeded.
+	 * @param startNanos {@link System#nanoTime()} before parsing.
+	 */
+	public void recordNode(int nodeId, boolean success, long startNanos) {
+		nodeCounters[nodeId].record(success, startNanos);
+	}
+
+	/**
+	 * Called by generated parsers after a choice alternative has been tried.
+	 * @param alternativeId Id of the alternative.
+	 * @param success Whether parsing succeeded.
+	 * @param startNanos {@link System#nanoTime()} before parsing.
+	 */
+	public void recordAlternative(int alternativeId, boolean success, long startNanos) {
+		alternativeCounters[alternativeId].record(success, startNanos);
+	}
+
+	/**
+	 * Gets statistics of all AST node types that have been parsed at least
+	 * once.
+	 * @return Node statistics, sorted by backtracks (most first).
+	 */
+	public List<NodeStats> nodes() {
+		var stats = new ArrayList<NodeStats>();
+		for (var i = 0; i < nodeCounters.length; i++) {
+			var counters = nodeCounters[i];
+			var attempts = counters.attempts.sum();
+			if (attempts != 0) {
+				stats.add(new NodeStats(nodeTypes.get(i), attempts, counters.successes.sum(), counters.nanos.sum()));
+			}
+		}
+		stats.sort(Comparator.comparingLong(NodeStats::backtracks).reversed());
+		return stats;
+	}
+
+	/**
+	 * Gets statistics of all choice alternatives that have been tried at
+	 * least once.
+	 * @return Alternative statistics, sorted by backtracks (most first).
+	 */
+	public List<AlternativeStats> alternatives() {
+		var stats = new ArrayList<AlternativeStats>();
+		for (var i = 0; i < alternativeCounters.length; i++) {
+			var counters = alternativeCounters[i];
+			var attempts = counters.attempts.sum();
+			if (attempts != 0) {
+				var info = alternatives.get(i);
+				stats.add(new AlternativeStats(info.node(), info.choice(), info.index(), info.alternative(),
+						attempts, counters.successes.sum(), counters.nanos.sum()));
+			}
+		}
+		stats.sort(Comparator.comparingLong(AlternativeStats::backtracks).reversed());
+		return stats;
+	}
+
+	/**
+	 * Resets all counters to zero.
+	 */
+	public void reset() {
+		for (var counters : nodeCounters) {
+			counters.reset();
+		}
+		for (var counters : alternativeCounters) {
+			counters.reset();
+		}
+	}
+
+	/**
+	 * Formats a human-readable report of collected statistics.
+	 * @return Report text.
+	 */
+	public String report() {
+		var sb = new StringBuilder();
+		sb.append("AST nodes (attempts, successes, backtracks, time ms):\n");
+		for (var node : nodes()) {
+			sb.append("  ").append(node.type().getSimpleName())
+					.append(": ").append(node.attempts())
+					.append(", ").append(node.successes())
+					.append(", ").append(node.backtracks())
+					.append(", ").append(String.format("%.3f", node.nanos() / 1_000_000.0))
+					.append('\n');
+		}
+		sb.append("Choice alternatives (attempts, successes, backtracks, time ms):\n");
+		for (var alt : alternatives()) {
+			sb.append("  ").append(alt.node() != null ? alt.node().getSimpleName() : "<virtual>")
+					.append(" choice ").append(alt.choice())
+					.append(" #").append(alt.index())
+					.append(": ").append(alt.attempts())
+					.append(", ").append(alt.successes())
+					.append(", ").append(alt.backtracks())
+					.append(", ").append(String.format("%.3f", alt.nanos() / 1_000_000.0))
+					.append(" - ").append(alt.alternative())
+					.append('\n');
+		}
+		return sb.toString();
+	}
+}
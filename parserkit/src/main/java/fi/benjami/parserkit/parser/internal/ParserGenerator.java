@@ -2,8 +2,11 @@ package fi.benjami.parserkit.parser.internal;
 
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import fi.benjami.code4jvm.Condition;
@@ -21,6 +24,7 @@ import fi.benjami.code4jvm.statement.NoOp;
 import fi.benjami.code4jvm.statement.Return;
 import fi.benjami.code4jvm.structure.IfBlock;
 import fi.benjami.code4jvm.structure.LoopBlock;
+import fi.benjami.code4jvm.structure.SwitchBlock;
 import fi.benjami.code4jvm.typedef.ClassDef;
 import fi.benjami.parserkit.lexer.Token;
 import fi.benjami.parserkit.lexer.TokenType;
@@ -30,6 +34,7 @@ import fi.benjami.parserkit.parser.Input;
 import fi.benjami.parserkit.parser.NodeRegistry;
 import fi.benjami.parserkit.parser.ParseResult;
 import fi.benjami.parserkit.parser.Parser;
+import fi.benjami.parserkit.parser.ParserProfile;
 import fi.benjami.parserkit.parser.ast.AstNode;
 import fi.benjami.parserkit.parser.ast.ChildNode;
 import fi.benjami.parserkit.parser.ast.NodeCreator;
@@ -64,6 +69,13 @@ public class ParserGenerator {
 	static final Type AST_NODE = Type.of(AstNode.class);
 	private static final Type PARSE_RESULT = Type.of(ParseResult.class);
 		
+	private static final Type PROFILE = Type.of(ParserProfile.class);
+	private static final CallTarget NANO_TIME = CallTarget.staticMethod(Type.of(System.class), Type.LONG, "nanoTime");
+	private static final CallTarget RECORD_NODE = CallTarget.virtualMethod(PROFILE, Type.VOID, "recordNode",
+			Type.INT, Type.BOOLEAN, Type.LONG);
+	private static final CallTarget RECORD_ALTERNATIVE = CallTarget.virtualMethod(PROFILE, Type.VOID, "recordAlternative",
+			Type.INT, Type.BOOLEAN, Type.LONG);
+		
 	private final NodeRegistry nodeRegistry;
 	private TokenType[] tokenTypes;
 	
@@ -71,17 +83,34 @@ public class ParserGenerator {
 	private final NodeManager nodeManager;
 	
 	private final boolean hookSupport;
+	private final boolean profiling;
+	
+	/**
+	 * Choice alternatives that have been assigned profiling ids.
+	 */
+	private final List<ParserProfile.AlternativeInfo> profiledAlternatives;
+	private final Map<ChoiceInput, Integer> choiceIds;
+	
+	/**
+	 * AST node type whose parser is currently being generated, or null for
+	 * virtual nodes. Only used for profiling.
+	 */
+	private Class<? extends AstNode> currentNode;
 	
 	private final CallTarget peekToken;
 	private final CallTarget popToken;
 	
-	public ParserGenerator(String className, NodeRegistry nodeRegistry, TokenType[] tokenTypes, boolean hookSupport) {
+	public ParserGenerator(String className, NodeRegistry nodeRegistry, TokenType[] tokenTypes, boolean hookSupport,
+			boolean profiling) {
 		this.nodeRegistry = nodeRegistry;
 		this.tokenTypes = tokenTypes;
 		this.def = ClassDef.create(className, Access.PUBLIC);
 		def.interfaces(Type.of(Parser.class));
 		this.nodeManager = new NodeManager(def.type());
 		this.hookSupport = hookSupport;
+		this.profiling = profiling;
+		this.profiledAlternatives = new ArrayList<>();
+		this.choiceIds = new IdentityHashMap<>();
 		
 		var visibleMask = visibleTokenMask(tokenTypes);
 		var errorMask = errorTokenMask(tokenTypes);
@@ -122,10 +151,34 @@ public class ParserGenerator {
 		if (hookSupport) {
 			def.addStaticField(Access.PUBLIC, Type.of(ParserHook.class), "HOOK");
 		}
+		if (profiling) {
+			// Set by Parser#compileAndLoad after the class has been loaded
+			def.addStaticField(Access.PUBLIC, PROFILE, "PROFILE");
+			var method = def.addMethod(PROFILE, "profile", Access.PUBLIC);
+			var profile = method.add(def.type().getStatic(PROFILE, "PROFILE"));
+			method.add(Return.value(profile));
+		}
 		
 		return def.compile();
 	}
 	
+	/**
+	 * Creates a profile for the generated parser. Only valid after
+	 * {@link #compile()} has been called.
+	 * @return A new profile with empty counters.
+	 */
+	public ParserProfile createProfile() {
+		var nodeTypes = new ArrayList<Class<? extends AstNode>>();
+		for (var type : nodeRegistry.nodeTypes()) {
+			var id = nodeRegistry.getTypeId(type);
+			while (nodeTypes.size() <= id) {
+				nodeTypes.add(null);
+			}
+			nodeTypes.set(id, type);
+		}
+		return new ParserProfile(nodeTypes, List.copyOf(profiledAlternatives));
+	}
+	
 	private void addPublicParseMethod() {
 		var method = def.addMethod(PARSE_RESULT, "parse", Access.PUBLIC);
 		var nodeType = method.arg(Type.of(Class.class));
@@ -230,8 +283,10 @@ public class ParserGenerator {
 			onSuccess.add(hookCall(ParserHook.CHOICE_AFTER_INPUT, Constant.of("UNKNOWN"), Constant.of(true)));
 			onSuccess.add(hookCall(ParserHook.AFTER_CHOICES, Constant.of(choices.toString()), Constant.of(true)));
 			
-			// Advance parent view given to us if parsing succeeded
-			onSuccess.add(ADVANCE_VIEW.call(view, viewCopy));
+			// Advance parent view given to us if parsing succeeded with a copy of it
+			// (falls through to onSuccess)
+			var advanceView = Block.create("advance view");
+			advanceView.add(ADVANCE_VIEW.call(view, viewCopy));
 			
 			// Fallback handler
 			var fallback = Block.create("fallback");
@@ -253,40 +308,88 @@ public class ParserGenerator {
 			var ordinal = handler.add(GET_TYPE.call(nextToken));
 			handler.add(hookCall(ParserHook.BEFORE_CHOICES, ordinal, Constant.of(choices.toString())));
 			
-			// Try to select choice using the predict set
-			// TODO use tableswitch for large tables?
-			// TODO currently everything predict set generates a lot of duplicate code
-			// (but this is difficult to solve without breaking input priorities)
-			var tokenTest = new IfBlock();
+			// Select choice using the predict set
+			// Different tokens often predict same choices, so each distinct list
+			// of alternatives gets only one block of code (in order of priority)
+			// Longer lists fall back to blocks of their shorter suffixes
+			var firstAlternativeId = profiling ? alternativeIds(choices) : 0;
+			var predictSets = choices.choices().stream()
+					.map(choice -> choice.predictSet(nodeRegistry))
+					.toList();
+			var alternativeBlocks = new HashMap<List<Integer>, Block>();
+			var blockOrder = new ArrayList<Block>();
+			var targets = new HashMap<Integer, Block>();
 			for (var type : tokenTypes) {
-				var validChoices = choices.filterFor(nodeRegistry, type);
-				if (!validChoices.isEmpty()) {
-					tokenTest.branch(Condition.equal(Constant.of(type.ordinal()), ordinal), block -> {
-						block.add(hookCall(ParserHook.CHOICE_TOKEN, Constant.of(type.ordinal()), Constant.of(validChoices.toString())));
-						for (var choice : validChoices) {
-							block.add(hookCall(ParserHook.CHOICE_BEFORE_INPUT, Constant.of(choice.toString())));
+				var validChoices = new ArrayList<Integer>();
+				for (var i = 0; i < predictSets.size(); i++) {
+					if (predictSets.get(i).has(type)) {
+						validChoices.add(i);
+					}
+				}
+				if (validChoices.isEmpty()) {
+					continue; // This token is not accepted here
+				}
 							
+				// Find or create blocks for this list and its suffixes, starting from the last one
+				var next = fallback;
+				for (var i = validChoices.size() - 1; i >= 0; i--) {
+					var suffix = List.copyOf(validChoices.subList(i, validChoices.size()));
+					var block = alternativeBlocks.get(suffix);
+					if (block == null) {
+						var index = suffix.get(0);
+						var choice = choices.choices().get(index);
+						block = Block.create("choice " + index);
+						block.add(hookCall(ParserHook.CHOICE_BEFORE_INPUT, Constant.of(choice.toString())));
+						var startTime = profiling ? block.add(NANO_TIME.call()) : null;
+						
+						if (suffix.size() == 1 && choices.fallback() == null) {
+							// Last alternative; if it fails, nothing else will use the view
+							// Parse directly from it instead of taking a copy
+							block.add(addInput(view, choice, results, errors, success, blocker, cache));
+							block.add(profileCall(RECORD_ALTERNATIVE, Constant.of(firstAlternativeId + index), success, startTime));
+							block.add(Jump.to(onSuccess, Jump.Target.START, Condition.isTrue(success)));
+						} else {
 							// Take a copy of view, backtracing may be needed when there are multiple choices
 							var newCopy = block.add(COPY_VIEW.call(view));
 							block.add(viewCopy.set(newCopy)); // newCopy is on stack, hopefully
 							// Parse the choice
 							block.add(addInput(viewCopy, choice, results, errors, success, blocker, cache));
-							
+							block.add(profileCall(RECORD_ALTERNATIVE, Constant.of(firstAlternativeId + index), success, startTime));
 							// Short-circuit on success
-							block.add(Jump.to(onSuccess, Jump.Target.START, Condition.isTrue(success)));
-
-							block.add(hookCall(ParserHook.CHOICE_AFTER_INPUT, Constant.of(choice.toString()), Constant.of(false)));
+							block.add(Jump.to(advanceView, Jump.Target.START, Condition.isTrue(success)));
 						}
-					});
-				} // else: this node type is not accepted here
+							
+						block.add(hookCall(ParserHook.CHOICE_AFTER_INPUT, Constant.of(choice.toString()), Constant.of(false)));
+						// Try the next alternative (or fallback)
+						block.add(Jump.to(next, Jump.Target.START));
+
+						alternativeBlocks.put(suffix, block);
+						blockOrder.add(block);
+					}
+					next = block;
+				}
+				if (hookSupport) {
+					// Tell hook which choices this token predicts before jumping to the first one
+					var tokenBlock = Block.create("token " + type);
+					tokenBlock.add(hookCall(ParserHook.CHOICE_TOKEN, Constant.of(type.ordinal()),
+							Constant.of(choices.filterFor(nodeRegistry, type).toString())));
+					tokenBlock.add(Jump.to(next, Jump.Target.START));
+					blockOrder.add(tokenBlock);
+					next = tokenBlock;
+				}
+				targets.put(type.ordinal(), next);
+			}
+			handler.add(SwitchBlock.jump(ordinal, targets, fallback, Jump.Target.START));
+			for (var block : blockOrder) {
+				handler.add(block);
 			}
-			handler.add(tokenTest);
 			
 			// Token was not in predict set or the prediction failed to parse
 			// (this is currently only used for error recovery)
 			handler.add(fallback);
 			
 			// Parsing succeeded
+			handler.add(advanceView);
 			handler.add(onSuccess);
 			
 			return handler;
@@ -493,6 +596,7 @@ public class ParserGenerator {
 	
 	private void addAstNode(Class<? extends AstNode> nodeType) {		
 		var input = nodeRegistry.getPattern(nodeType);
+		currentNode = nodeType;
 		
 		var target = nodeManager.astNodeParser(nodeType);
 		var method = def.addStaticMethod(AST_NODE, target.name(), Access.PRIVATE);
@@ -531,7 +635,9 @@ public class ParserGenerator {
 		var cache = new NodeCache(nodeRegistry, method.arg(NodeCache.STORAGE));
 		
 		// Handle the root input
+		var startTime = profiling ? method.add(NANO_TIME.call()) : null;
 		method.add(addInput(view, input, results, errors, success, blocker, cache));
+		method.add(profileCall(RECORD_NODE, Constant.of(nodeRegistry.getTypeId(nodeType)), success, startTime));
 		
 		// Create and return AST node if we have no failures
 		var successTest = new IfBlock();
@@ -548,6 +654,10 @@ public class ParserGenerator {
 	}
 	
 	private void addVirtualNode(VirtualNodeInput input) {
+		// Virtual node parsers are generated while generating AST node parsers
+		var parentNode = currentNode;
+		currentNode = null;
+		
 		var target = nodeManager.virtualNodeParser(input);
 		var method = def.addStaticMethod(AST_NODE, target.name(), Access.PRIVATE);
 		var view = method.arg(TOKEN_VIEW);
@@ -587,6 +697,8 @@ public class ParserGenerator {
 			block.add(Return.value(Constant.nullValue(AST_NODE)));
 		});
 		method.add(successTest);
+		
+		currentNode = parentNode;
 	}
 
 	
@@ -612,6 +724,29 @@ public class ParserGenerator {
 		return new ResultRegistry(inputArgs);
 	}
 	
+	private int alternativeIds(ChoiceInput choices) {
+		return choiceIds.computeIfAbsent(choices, k -> {
+			var firstId = profiledAlternatives.size();
+			var choiceIndex = choiceIds.size();
+			for (var i = 0; i < choices.choices().size(); i++) {
+				profiledAlternatives.add(new ParserProfile.AlternativeInfo(currentNode, choiceIndex, i,
+						choices.choices().get(i).toString()));
+			}
+			return firstId;
+		});
+	}
+	
+	private Statement profileCall(CallTarget target, Value... args) {
+		if (profiling) {
+			return block -> {
+				var profile = block.add(def.type().getStatic(PROFILE, "PROFILE"));
+				block.add(target.withCapturedArgs(profile).call(args));
+			};
+		} else {
+			return NoOp.INSTANCE;
+		}
+	}
+	
 	private Statement hookCall(CallTarget target, Value... args) {
 		if (hookSupport) {
 			return block -> {				
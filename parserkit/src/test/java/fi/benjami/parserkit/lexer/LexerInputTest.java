@@ -0,0 +1,95 @@
+package fi.benjami.parserkit.lexer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LexerInputTest {
+
+	private static final String TEXT = "foo  bar\t\nä€😀 baz";
+
+	@TempDir
+	Path tempDir;
+
+	private void checkInput(String expected, LexerInput input) {
+		assertEquals(expected.length(), input.codepointsLeft());
+		var index = 0;
+		while (index < expected.length()) {
+			var ch = expected.codePointAt(index);
+			assertEquals(ch, input.getCodepoint(0));
+			if (index + 1 < expected.length()) {
+				// Lookahead
+				assertEquals(expected.codePointAt(index + Character.charCount(ch)),
+						input.getCodepoint(Character.charCount(ch)));
+			}
+			if (Character.isWhitespace(ch)) {
+				var count = input.advanceWhile(Character::isWhitespace);
+				assertEquals(expected.substring(index).length() - expected.substring(index).stripLeading().length(), count);
+				index += count;
+			} else {
+				input.advance(Character.charCount(ch));
+				index += Character.charCount(ch);
+			}
+			assertEquals(index, input.pos());
+			assertEquals(expected.length() - index, input.codepointsLeft());
+		}
+	}
+
+	@Test
+	public void charSequence() {
+		checkInput(TEXT, LexerInput.of(TEXT, 0));
+		checkInput(TEXT, LexerInput.of(new StringBuilder(TEXT), 0));
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void stringConstructor() {
+		checkInput(TEXT, new LexerInput(TEXT, 0));
+	}
+
+	@Test
+	public void charArray() {
+		var chars = ("xx" + TEXT + "yy").toCharArray();
+		checkInput(TEXT, LexerInput.of(chars, 2, chars.length - 2));
+	}
+
+	@Test
+	public void mappedFile() throws IOException {
+		var file = tempDir.resolve("input.txt");
+		Files.writeString(file, TEXT, StandardCharsets.UTF_8);
+		checkInput(TEXT, LexerInput.mapFile(file));
+	}
+
+	@Test
+	public void largeMappedFile() throws IOException {
+		// Larger than the decoding window
+		var text = (TEXT + "\n").repeat(10_000);
+		var file = tempDir.resolve("input.txt");
+		Files.writeString(file, text, StandardCharsets.UTF_8);
+		checkInput(text, LexerInput.mapFile(file));
+
+		// Very long lookahead
+		var input = LexerInput.mapFile(file);
+		assertEquals(text.codePointAt(text.length() - 1), input.getCodepoint(text.length() - 1));
+		assertEquals(text.codePointAt(0), input.getCodepoint(0));
+
+		// Count after part of the input has been decoded
+		input = LexerInput.mapFile(file);
+		input.advance(TEXT.length());
+		assertEquals(text.codePointAt(TEXT.length()), input.getCodepoint(0));
+		assertEquals(text.length() - TEXT.length(), input.codepointsLeft());
+	}
+
+	@Test
+	public void malformedUtf8() throws IOException {
+		var file = tempDir.resolve("input.txt");
+		Files.write(file, new byte[] {'a', (byte) 0x80, 'b', (byte) 0xe2, (byte) 0x82});
+		checkInput("a�b��", LexerInput.mapFile(file));
+	}
+}
@@ -0,0 +1,75 @@
+package fi.benjami.parserkit.lexer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import fi.benjami.parserkit.lexer.internal.TextRope;
+
+public class TextRopeTest {
+
+	@Test
+	public void emptyRope() {
+		var rope = new TextRope();
+		assertEquals(0, rope.length());
+		assertEquals("", rope.toString());
+		assertThrows(IndexOutOfBoundsException.class, () -> rope.charAt(0));
+	}
+
+	@Test
+	public void simpleEdits() {
+		var rope = new TextRope("hello world");
+		rope.replace(5, 5, ",");
+		assertEquals("hello, world", rope.toString());
+		rope.replace(0, 5, "goodbye");
+		assertEquals("goodbye, world", rope.toString());
+		rope.replace(7, 14, "");
+		assertEquals("goodbye", rope.toString());
+		assertEquals('y', rope.charAt(5));
+		assertEquals("odb", rope.subSequence(2, 5));
+	}
+
+	@Test
+	public void largeText() {
+		var sb = new StringBuilder();
+		for (var i = 0; i < 100_000; i++) {
+			sb.append((char) ('a' + i % 26));
+		}
+		var rope = new TextRope(sb);
+		assertEquals(sb.toString(), rope.toString());
+		for (var i = 0; i < sb.length(); i++) {
+			assertEquals(sb.charAt(i), rope.charAt(i));
+		}
+	}
+
+	@Test
+	public void randomEdits() {
+		var random = new Random(1234);
+		var expected = new StringBuilder();
+		var rope = new TextRope();
+		for (var i = 0; i < 5000; i++) {
+			var start = random.nextInt(expected.length() + 1);
+			var end = start + random.nextInt(Math.min(expected.length() - start, 50) + 1);
+			var text = new StringBuilder();
+			for (var j = random.nextInt(1200); j > 0; j--) {
+				text.append((char) ('a' + random.nextInt(26)));
+			}
+			expected.replace(start, end, text.toString());
+			rope.replace(start, end, text);
+
+			assertEquals(expected.length(), rope.length());
+			if (expected.length() != 0) {
+				var index = random.nextInt(expected.length());
+				assertEquals(expected.charAt(index), rope.charAt(index));
+			}
+		}
+		assertEquals(expected.toString(), rope.toString());
+
+		// Tree should stay balanced even after many edits
+		assertTrue(rope.depth() < 40, "depth " + rope.depth());
+	}
+}
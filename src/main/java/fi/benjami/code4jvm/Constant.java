@@ -76,14 +76,13 @@ public class Constant implements Value {
 	public static Constant dynamic(Type type, FixedCallTarget bootstrap, Constant... args) {
 		var handle = bootstrap.toMethodHandle();
 		var argValues = Arrays.stream(args)
-				.map(Constant::value)
+				.map(Constant::asmValue)
 				.toArray();
 		var dynamic = new ConstantDynamic("_", type.descriptor(), handle, argValues);
 		return new Constant(dynamic, type);
-
 	}
 	
-	// TODO method handle, (more) constant dynamic
+	// TODO method handle
 	
 	private final Object value;
 	private final Type type;
@@ -98,7 +97,6 @@ public class Constant implements Value {
 	}
 	
 	public Object asmValue() {
-		// TODO change when dynamic constants are supported
 		if (value instanceof Type type) {
 			// Convert from our Type to ASM Type
 			return org.objectweb.asm.Type.getType(type.descriptor());
@@ -2,6 +2,7 @@ package fi.benjami.code4jvm;
 
 
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
 import fi.benjami.code4jvm.block.CompileContext;
 import fi.benjami.code4jvm.call.CallTarget;
@@ -65,7 +66,38 @@ public class Type {
 	public static final Type METHOD_RETURN_TYPE = new Type("code4jvm.special.MethodReturn", "code4jvm/special/MethodReturn", null,
 			new TypeOpcodes(NOP, NOP, NOP, NOP, NOP, NOP, NOP, NOP, NOP, NOP, NOP, NOP, NOP, NOP, NOP, NOP, NOP));
 
+	/**
+	 * Types of loaded classes. Class value lets classes (and their types) be
+	 * unloaded normally.
+	 */
+	private static final ClassValue<Type> CLASS_TYPES = new ClassValue<>() {
+		@Override
+		protected Type computeValue(Class<?> type) {
+			return create(type);
+		}
+	};
+	
+	/**
+	 * Types created by names. Generated classes can have arbitrary names,
+	 * so this cache is cleared when it grows too large.
+	 */
+	private static final ConcurrentHashMap<String, Type> CLASS_NAMES = new ConcurrentHashMap<>(),
+			INTERFACE_NAMES = new ConcurrentHashMap<>();
+	private static final int MAX_NAMES = 4096;
+	
 	public static Type of(String name, boolean isInterface) {
+		var cache = isInterface ? INTERFACE_NAMES : CLASS_NAMES;
+		var type = cache.get(name);
+		if (type == null) {
+			if (cache.size() >= MAX_NAMES) {
+				cache.clear();
+			}
+			type = cache.computeIfAbsent(name, n -> create(n, isInterface));
+		}
+		return type;
+	}
+	
+	private static Type create(String name, boolean isInterface) {
 		return switch (name) {
 		case "boolean" -> BOOLEAN;
 		case "byte" -> BYTE;
@@ -86,6 +118,10 @@ public class Type {
 	}
 	
 	public static Type of(Class<?> c) {
+		return CLASS_TYPES.get(c);
+	}
+	
+	private static Type create(Class<?> c) {
 		// Handle classes that represent arrays as special case
 		var arrayDimensions = 0;
 		while (c.isArray()) {
@@ -153,6 +189,11 @@ public class Type {
 	
 	private final TypeOpcodes opcodes;
 	
+	/**
+	 * One-dimensional array of this type, created when first needed.
+	 */
+	private Type arrayType;
+	
 	private Type(String name, String internalName, Class<?> loadedClass, int kind, String descriptor, int arrayDimensions,
 			TypeOpcodes opcodes) {
 		this.name = name;
@@ -195,6 +236,19 @@ public class Type {
 	}
 	
 	public Type array(int dimensions) {
+		if (dimensions == 1) {
+			// Cache the most common array type; racy, but types are immutable
+			var type = arrayType;
+			if (type == null) {
+				type = createArray(1);
+				arrayType = type;
+			}
+			return type;
+		}
+		return createArray(dimensions);
+	}
+	
+	private Type createArray(int dimensions) {
 		// Array access opcodes are stored in non-array opcodes, so array types can have them
 		// This won't work for multi-dimensional arrays, but getOpcode(...) has special case for them
 		return new Type(name, internalName, null, kind, "[".repeat(dimensions) + descriptor, arrayDimensions + dimensions, opcodes);
@@ -332,7 +386,9 @@ public class Type {
 
 	@Override
 	public boolean equals(Object other) {
-		if (other instanceof Type o) {
+		if (this == other) {
+			return true; // Most types are interned
+		} else if (other instanceof Type o) {
 			// Descriptor encodes name and array dimensions
 			return descriptor.equals(o.descriptor);
 		}
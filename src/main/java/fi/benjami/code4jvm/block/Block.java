@@ -1,5 +1,6 @@
 package fi.benjami.code4jvm.block;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collections;
@@ -33,6 +34,7 @@ import fi.benjami.code4jvm.statement.Return;
 import fi.benjami.code4jvm.statement.Throw;
 import fi.benjami.code4jvm.structure.IfBlock;
 import fi.benjami.code4jvm.structure.LoopBlock;
+import fi.benjami.code4jvm.structure.SwitchBlock;
 import fi.benjami.code4jvm.typedef.ClassDef;
 
 /**
@@ -42,7 +44,7 @@ import fi.benjami.code4jvm.typedef.ClassDef;
  * {@link Jump jumping} directly to them.
  * 
  * <p>For structured control flow, it is recommended to use
- * {@link IfBlock} and {@link LoopBlock}
+ * {@link IfBlock}, {@link SwitchBlock} and {@link LoopBlock}
  *
  */
 public class Block implements CompileHook.Carrier {
@@ -78,6 +80,13 @@ public class Block implements CompileHook.Carrier {
 	
 	private Map<Object, CompileHook> hooks;
 	private Label startLabel, endLabel;	
+	private List<Label> startAliases, endAliases;
+	
+	/**
+	 * Whether labels of this block have been requested for something else
+	 * than jumps that are described by edges.
+	 */
+	boolean labelsEscaped;
 	private ReturnRedirect returnRedirect;
 	
 	Block parent;
@@ -201,7 +210,7 @@ public class Block implements CompileHook.Carrier {
 	}
 	
 	public Label add(Edge edge) {
-		var targetLabel = edge.target().requestLabel(edge.position());
+		var targetLabel = edge.target().label(edge.position());
 		// SUB_BLOCK and RETURN are only for internal usage
 		nodes.add(new EdgeNode(edge.target(), edge.position(), edge.conditional()
 				? EdgeNode.CONDITIONAL_JUMP : EdgeNode.UNCONDITIONAL_JUMP, edge.vmStack()));
@@ -210,6 +219,11 @@ public class Block implements CompileHook.Carrier {
 	
 	// TODO consider if this foot-gun should be public API
 	public Label requestLabel(Jump.Target position) {
+		labelsEscaped = true; // Optimizer can't move this label
+		return label(position);
+	}
+	
+	Label label(Jump.Target position) {
 		return switch (position) {
 		case START -> {
 			if (startLabel == null) {
@@ -259,12 +273,78 @@ public class Block implements CompileHook.Carrier {
 		return returnRedirect;
 	}
 		
+	/**
+	 * Emits a label of another block at given position of this block.
+	 * Jumps to the other block will land here instead.
+	 * @param label Label to move.
+	 * @param position Where to emit it.
+	 */
+	void addLabelAlias(Label label, Jump.Target position) {
+		if (position == Jump.Target.START) {
+			if (startAliases == null) {
+				startAliases = new ArrayList<>(1);
+			}
+			startAliases.add(label);
+		} else {
+			if (endAliases == null) {
+				endAliases = new ArrayList<>(1);
+			}
+			endAliases.add(label);
+		}
+	}
+	
+	/**
+	 * Removes a label from this block, e.g. when it has been moved elsewhere.
+	 * @param position Position of the label.
+	 * @return The label, or null if there was none.
+	 */
+	Label removeLabel(Jump.Target position) {
+		var label = position == Jump.Target.START ? startLabel : endLabel;
+		if (position == Jump.Target.START) {
+			startLabel = null;
+		} else {
+			endLabel = null;
+		}
+		return label;
+	}
+	
+	boolean hasCompileHooks() {
+		return hooks != null && !hooks.isEmpty();
+	}
+	
+	/**
+	 * Calls compile hooks of this block and its sub-blocks in same order
+	 * as {@link #emitBytecode(MethodCompilerState)} would.
+	 * @param owner Class that is being compiled.
+	 */
+	void runCompileHooks(ClassDef owner) {
+		var stack = new ArrayDeque<Block>();
+		stack.push(this);
+		while (!stack.isEmpty()) {
+			var block = stack.pop();
+			if (block.hooks != null) {
+				for (var hook : block.hooks.values()) {
+					hook.onCompile(owner);
+				}
+			}
+			// Push in reverse to visit sub-blocks in emission order
+			for (var i = block.nodes.size() - 1; i >= 0; i--) {
+				if (block.nodes.get(i) instanceof EdgeNode edge && edge.type() == EdgeNode.SUB_BLOCK) {
+					stack.push(edge.target());
+				}
+			}
+		}
+	}
+
 	void emitBytecode(MethodCompilerState state) {
 		var ctx = state.ctx();
 		state.frames().visitFrame(startFrame);
 		if (startLabel != null) {
 			ctx.asm().visitLabel(startLabel);
 		}
+		if (startAliases != null) {
+			startAliases.forEach(ctx.asm()::visitLabel);
+		}
 		
 		// Call compile hooks (used by e.g. lambda method generation)
 		if (hooks != null) {			
@@ -299,6 +379,9 @@ public class Block implements CompileHook.Carrier {
 		if (endLabel != null) {
 			ctx.asm().visitLabel(endLabel);
 		}
+		if (endAliases != null) {
+			endAliases.forEach(ctx.asm()::visitLabel);
+		}
 		state.frames().visitFrame(endFrame);
 	}
 	
@@ -26,6 +26,12 @@ public sealed class ConcreteMethod extends Routine implements Method
 	 */
 	SlotAllocator slotAllocator;
 	
+	/**
+	 * Nanoseconds spent in compilation phases of this since they were last
+	 * {@link MethodCompiler#takeTimings(Method) taken}.
+	 */
+	long frameNanos, optimizeNanos, slotNanos, emitNanos;
+	
 	ConcreteMethod(Block block, Type returnType, String name, int access) {
 		super(block, returnType);
 		this.name = name;
@@ -1,7 +1,10 @@
 package fi.benjami.code4jvm.block;
 
+import java.util.ArrayDeque;
+import java.util.Collections;
 import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
 
 import fi.benjami.code4jvm.MissingReturnException;
 import fi.benjami.code4jvm.UninitializedValueException;
@@ -29,11 +32,39 @@ class FrameBuilder {
 		this.allowMutations = true;
 	}
 	
+	/**
+	 * A pending tracing task.
+	 * @param block Block to trace.
+	 * @param startNode Index of first node to trace. If this is node count
+	 * of the block, only end of block is processed.
+	 * @param source Frame that is traced from. This is the start frame,
+	 * end frame or sub-block edge frame of the block.
+	 */
+	private record Task(Block block, int startNode, Frame source) {}
+	
+	/**
+	 * Tasks to process, most recently added last.
+	 */
+	private final ArrayDeque<Task> worklist = new ArrayDeque<>();
+	
+	/**
+	 * Source frames of tasks that are in {@link #worklist}. If a frame
+	 * changes while its task is pending, no new task is needed.
+	 */
+	private final Set<Frame> pending = Collections.newSetFromMap(new IdentityHashMap<>());
+	
+	/**
+	 * Frames that have been re-traced when checking that frames are stable.
+	 * In that mode, each frame is traced once even though it didn't change.
+	 */
+	private final Set<Frame> rechecked = Collections.newSetFromMap(new IdentityHashMap<>());
+	
 	/**
 	 * Builds {@link Frame frames} for all blocks within our method. This
-	 * is done by recursively tracing the control flow of the method. The
-	 * built frames are attached to blocks ({@link Block#startFrame} and
-	 * {@link Block#endFrame}) and sub-block {@link EdgeNode edges}.
+	 * is done by tracing the control flow of the method until frames no
+	 * longer change. The built frames are attached to blocks
+	 * ({@link Block#startFrame} and {@link Block#endFrame}) and sub-block
+	 * {@link EdgeNode edges}.
 	 * 
 	 * <p>In addition to building frames required by the JVM, this throws
 	 * {@link UninitializedValueException} if values are used before they were
@@ -54,44 +85,108 @@ class FrameBuilder {
 		// Don't store sub-block frames in blocks to create less maps/arrays
 		// We don't need to after tracing, because they are not emitted in bytecode
 		var subBlockFrames = new IdentityHashMap<EdgeNode, Frame>();
-		trace(subBlockFrames, root, rootFrame, 0, false);
+		trace(subBlockFrames, root, rootFrame.copy());
 		// If assertions are enabled, make sure that the frames don't change when recomputed
 		// This could help catch bugs in tracing code
 		assert framesAreStable(subBlockFrames, root, rootFrame);
 	}
 	
 	private boolean framesAreStable(Map<EdgeNode, Frame> subBlockFrames, Block block, Frame frame) {
+		// Trace everything reachable again, asserting that no frame is modified
 		try {
 			allowMutations = false;
-			trace(subBlockFrames, block, frame, 0, false);
+			trace(subBlockFrames, block, frame.copy());
 		} finally {
 			allowMutations = true;
+			rechecked.clear();
 		}
 		return true; // Would have failed assert in trace(...)
 	}
 	
-	private void trace(Map<EdgeNode, Frame> subBlockFrames, Block block, Frame frame, int startNode, boolean jump) {
+	/**
+	 * Checks whether tracing should continue from a frame.
+	 * @param frame Frame to continue from.
+	 * @param modified Whether the frame was modified.
+	 * @return Whether tracing should continue.
+	 */
+	private boolean needsTrace(Frame frame, boolean modified) {
+		assert allowMutations || !modified;
+		// When checking stability, trace each frame once even if it didn't change
+		return modified || (!allowMutations && rechecked.add(frame));
+	}
+	
+	private void trace(Map<EdgeNode, Frame> subBlockFrames, Block root, Frame rootFrame) {
+		enterStart(root, rootFrame, false);
+		while (!worklist.isEmpty()) {
+			var task = worklist.removeLast();
+			pending.remove(task.source());
+			// Trace with the latest (merged) frame
+			traceBlock(subBlockFrames, task.block(), task.source().copy(), task.startNode());
+		}
+	}
+	
+	private void schedule(Block block, int startNode, Frame source) {
+		if (pending.add(source)) {
+			worklist.addLast(new Task(block, startNode, source));
+		}
+	}
+	
+	/**
+	 * Enters a block from its start.
+	 * @param block Target block.
+	 * @param frame Frame at entry. This may be modified.
+	 * @param jump Whether this is a jump instead of e.g. fall-through.
+	 */
+	private void enterStart(Block block, Frame frame, boolean jump) {
+		var modified = block.startFrame.merge(frame);
+		if (jump) {
+			block.startFrame.markNeedsBytecode();
+		}
+		if (needsTrace(block.startFrame, modified)) {
+			schedule(block, 0, block.startFrame);
+		} // else: start frame was not modified, no need to trace again
+	}
+	
+	/**
+	 * Enters end of a block, either by a jump or by reaching it.
+	 * @param subBlockFrames Frames of sub-block edges.
+	 * @param block Target block.
+	 * @param frame Frame at entry. This may be modified.
+	 * @param jump Whether this is a jump.
+	 */
+	private void enterEnd(Map<EdgeNode, Frame> subBlockFrames, Block block, Frame frame, boolean jump) {
+		var modified = block.endFrame.merge(frame);
+		if (jump) {
+			block.endFrame.markNeedsBytecode();
+		}
+		if (block.parent == null) {
+			// Reaching the end means that this method is not guaranteed to return or throw
+			// This would fail JVM bytecode verification, so better fail now
+			throw new MissingReturnException(method);
+		} else if (needsTrace(block.endFrame, modified)) {
+			// Blocks have implicit edge that leads to their parent block
+			// This is done so that sub-blocks can make new variables visible
+			// to their parent blocks
+			var parent = block.parent;
+			var next = block.parentNodeIndex + 1;
+			if (next < parent.nodes.size()) {
+				var edge = (EdgeNode) parent.nodes.get(next - 1);
+				var edgeFrame = subBlockFrames.computeIfAbsent(edge, k -> new Frame());
+				if (needsTrace(edgeFrame, edgeFrame.merge(frame))) {
+					schedule(parent, next, edgeFrame);
+				}
+			} else {
+				// Sub-block was last node of parent, so parent ends too
+				schedule(parent, next, block.endFrame);
+			}
+		}
+	}
+	
+	private void traceBlock(Map<EdgeNode, Frame> subBlockFrames, Block block, Frame frame, int startNode) {
 		assert startNode == 0 || startNode == block.nodes.size()
 				|| block.nodes.get(startNode - 1) instanceof EdgeNode
 				: "tracing can only start from edges";
 		
-		if (startNode == 0) {
-			var modified = block.startFrame.merge(frame);
-			assert allowMutations || !modified;
-			if (jump) {
-				block.startFrame.markNeedsBytecode();
-			}
-			if (!modified) {
-				// Start frame was not modified, no need to trace again
-				return;
-			}
-		} else if (startNode < block.nodes.size()) {
-			assert !jump; // This should be sub-block returning control to us
-			var edge = (EdgeNode) block.nodes.get(startNode - 1);
-			var modified = subBlockFrames.computeIfAbsent(edge, k -> new Frame()).merge(frame);
-			assert allowMutations || !modified;
-		}
-		
 		if (block.returnRedirect() == null && block.parent != null) {
 			// Inherit ReturnRedirect from this block if it is not set
 			block.setReturnRedirect(block.parent.returnRedirect());
@@ -141,10 +236,10 @@ class FrameBuilder {
 							// make sure it has a slot manually
 							var localVar = (LocalVar) holder.original();
 							localVar.needsSlot = true;
-							allocator.assignSlot(localVar);
+							allocator.track(localVar);
 							redirectFrame.add(localVar);
 						}
-						trace(subBlockFrames, redirect.target(), redirectFrame, 0, true);
+						enterStart(redirect.target(), redirectFrame, true);
 					}
 				} else if (type == EdgeNode.THROW) {
 					// No-op
@@ -152,17 +247,17 @@ class FrameBuilder {
 					// Sub-block or jump
 					if (edge.position() == Jump.Target.START) {
 						// Trace the target block from start to end
-						trace(subBlockFrames, edge.target(), snapshot, 0, type != EdgeNode.SUB_BLOCK);
+						enterStart(edge.target(), snapshot, type != EdgeNode.SUB_BLOCK);
 					} else {
 						// END is always a jump, never sub-block
-						trace(subBlockFrames, edge.target(), snapshot, edge.target().nodes.size(), true);
+						enterEnd(subBlockFrames, edge.target(), snapshot, true);
 					}
 				}
 				
 				if (type != EdgeNode.CONDITIONAL_JUMP) {
 					// Although sub-blocks may return control to their parent,
 					// they modify the frame before
-					// We'll need to process them recursively like jumps
+					// Tracing continues after them when their end is reached
 					return;
 				}
 			} else if (node instanceof CodeNode code) {
@@ -175,7 +270,7 @@ class FrameBuilder {
 			} else if (node instanceof StoreNode store) {
 				// Validate that whatever we're storing is available
 				if (store.value().original() instanceof LocalVar localVar && localVar.needsSlot) {
-					allocator.assignSlot(localVar); // Make sure slot is available
+					allocator.track(localVar); // Make sure slot is available
 					if (!frame.has(localVar)) {
 						throw new UninitializedValueException(localVar, block, method);
 					}
@@ -185,7 +280,7 @@ class FrameBuilder {
 					// If the variable started as uninitialized, it won't appear
 					// in frames until something is stored to it
 					// (if it is already part of frame, this does nothing)
-					allocator.assignSlot(store.target());
+					allocator.track(store.target());
 					frame.add(store.target());
 				}
 				
@@ -196,23 +291,7 @@ class FrameBuilder {
 		}
 		
 		// Reached the end, somehow
-		var modified = block.endFrame.merge(frame);
-		assert allowMutations || !modified;
-		if (jump) {
-			block.endFrame.markNeedsBytecode();
-		}
-		if (block.parent == null) {
-			// Reaching the end means that this method is not guaranteed to return or throw
-			// This would fail JVM bytecode verification, so better fail now
-			throw new MissingReturnException(method);
-		} else {
-			if (modified) {
-				// Blocks have implicit edge that leads to their parent block
-				// This is done so that sub-blocks can make new variables visible
-				// to their parent blocks
-				trace(subBlockFrames, block.parent, frame, block.parentNodeIndex + 1, false);
-			}
-		}
+		enterEnd(subBlockFrames, block, frame, false);
 	}
 
 }
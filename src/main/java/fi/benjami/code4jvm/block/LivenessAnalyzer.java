@@ -0,0 +1,293 @@
+package fi.benjami.code4jvm.block;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import fi.benjami.code4jvm.Value;
+import fi.benjami.code4jvm.internal.LocalVar;
+import fi.benjami.code4jvm.internal.SlotAllocator;
+import fi.benjami.code4jvm.internal.node.CodeNode;
+import fi.benjami.code4jvm.internal.node.EdgeNode;
+import fi.benjami.code4jvm.internal.node.StoreNode;
+import fi.benjami.code4jvm.internal.node.VarMarkerNode;
+import fi.benjami.code4jvm.statement.Jump;
+
+/**
+ * Computes where local variables are live and lets the slot allocator reuse
+ * slots of variables that are never live at same time. This must be done
+ * after {@link FrameBuilder} has tracked all variables.
+ *
+ * <p>Nodes of the method are laid out in the order they are emitted in.
+ * Each node, and start and end of each block, is a program point. Live
+ * ranges of variables are approximated by the first and last points they
+ * are live in (or stored to).
+ */
+class LivenessAnalyzer {
+	
+	private final SlotAllocator allocator;
+	private final ConcreteMethod method;
+	
+	/**
+	 * Blocks of program points.
+	 */
+	private final List<Block> blocks;
+	
+	/**
+	 * Node indices of program points in their blocks. Start of block is -1
+	 * and end of it is the node count.
+	 */
+	private int[] nodeIndices;
+	
+	private final Map<Block, Integer> startPoints, endPoints;
+	
+	public LivenessAnalyzer(SlotAllocator allocator, ConcreteMethod method) {
+		this.allocator = allocator;
+		this.method = method;
+		this.blocks = new ArrayList<>();
+		this.nodeIndices = new int[16];
+		this.startPoints = new IdentityHashMap<>();
+		this.endPoints = new IdentityHashMap<>();
+	}
+	
+	private void addPoint(Block block, int nodeIndex) {
+		var point = blocks.size();
+		if (point == nodeIndices.length) {
+			nodeIndices = Arrays.copyOf(nodeIndices, point * 2);
+		}
+		blocks.add(block);
+		nodeIndices[point] = nodeIndex;
+		if (nodeIndex == -1) {
+			startPoints.put(block, point);
+		} else if (nodeIndex == block.nodes.size()) {
+			endPoints.put(block, point);
+		}
+	}
+	
+	private void layout(Block root) {
+		// Sub-blocks are emitted in place of their edges
+		var stack = new ArrayDeque<Block>();
+		var positions = new ArrayDeque<Integer>();
+		addPoint(root, -1);
+		stack.push(root);
+		positions.push(0);
+		while (!stack.isEmpty()) {
+			var block = stack.peek();
+			var i = positions.pop();
+			if (i == block.nodes.size()) {
+				addPoint(block, i);
+				stack.pop();
+				continue;
+			}
+			positions.push(i + 1);
+			if (block.nodes.get(i) instanceof EdgeNode edge && edge.type() == EdgeNode.SUB_BLOCK) {
+				addPoint(edge.target(), -1);
+				stack.push(edge.target());
+				positions.push(0);
+			} else {
+				addPoint(block, i);
+			}
+		}
+	}
+	
+	private int targetPoint(EdgeNode edge) {
+		var point = edge.position() == Jump.Target.START ? startPoints.get(edge.target()) : endPoints.get(edge.target());
+		assert point != null : "jump target is not in method";
+		return point;
+	}
+	
+	private static boolean isJump(Object node) {
+		return node instanceof EdgeNode edge
+				&& (edge.type() == EdgeNode.CONDITIONAL_JUMP || edge.type() == EdgeNode.UNCONDITIONAL_JUMP)
+				&& (edge.vmStack() == null || edge.vmStack().length == 0);
+	}
+	
+	private void use(BitSet[] uses, int point, Value value) {
+		if (value.original() instanceof LocalVar localVar && localVar.needsSlot && localVar.frameIndex != -1) {
+			if (uses[point] == null) {
+				uses[point] = new BitSet();
+			}
+			uses[point].set(localVar.frameIndex);
+		}
+	}
+	
+	/**
+	 * Analyzes liveness of variables, assigns their slots and attaches live
+	 * variables to frames of blocks.
+	 */
+	public void allocateSlots() {
+		layout(method.block());
+		var count = blocks.size();
+		
+		// Build control flow graph and find where variables are used and stored
+		var successors = new int[count][];
+		var uses = new BitSet[count];
+		var defs = new BitSet[count];
+		var handlers = new int[count][]; // Exception handlers that cover points
+		var handlerRanges = new ArrayList<int[]>();
+		var touched = new BitSet[count]; // Variable table markers
+		for (var point = 0; point < count; point++) {
+			var block = blocks.get(point);
+			var index = nodeIndices[point];
+			var next = point + 1 < count ? new int[] {point + 1} : new int[0];
+			if (index == -1 || index == block.nodes.size()) {
+				successors[point] = next; // Start or end of block
+				continue;
+			}
+			
+			var node = block.nodes.get(index);
+			if (node instanceof CodeNode code) {
+				for (var input : code.inputs()) {
+					use(uses, point, input);
+				}
+				var output = code.output();
+				if (output != null && output.needsSlot && output.frameIndex != -1) {
+					defs[point] = new BitSet();
+					defs[point].set(output.frameIndex);
+				}
+				
+				// Jump instructions come after the edges that describe them
+				var targets = new ArrayList<Integer>();
+				var fallthrough = true;
+				for (var i = index - 1; i >= 0 && isJump(block.nodes.get(i)); i--) {
+					var edge = (EdgeNode) block.nodes.get(i);
+					targets.add(targetPoint(edge));
+					if (edge.type() == EdgeNode.UNCONDITIONAL_JUMP) {
+						fallthrough = false;
+					}
+				}
+				// ... but returns and throws come before them
+				if (index + 1 < block.nodes.size() && block.nodes.get(index + 1) instanceof EdgeNode edge
+						&& (edge.type() == EdgeNode.RETURN || edge.type() == EdgeNode.THROW)) {
+					fallthrough = false;
+					var redirect = block.returnRedirect();
+					if (edge.type() == EdgeNode.RETURN && redirect != null) {
+						targets.add(startPoints.get(redirect.target()));
+						var holder = redirect.valueHolder().orElse(null);
+						if (holder != null && ((LocalVar) holder.original()).frameIndex != -1) {
+							if (defs[point] == null) {
+								defs[point] = new BitSet();
+							}
+							defs[point].set(((LocalVar) holder.original()).frameIndex);
+						}
+					}
+				}
+				if (fallthrough) {
+					targets.addAll(Arrays.stream(next).boxed().toList());
+				}
+				successors[point] = targets.stream().mapToInt(Integer::intValue).toArray();
+			} else if (node instanceof StoreNode store) {
+				use(uses, point, store.value());
+				if (store.target().needsSlot && store.target().frameIndex != -1) {
+					defs[point] = new BitSet();
+					defs[point].set(store.target().frameIndex);
+				}
+				successors[point] = next;
+			} else if (node instanceof EdgeNode edge) {
+				var type = edge.type();
+				if (type == EdgeNode.RETURN || type == EdgeNode.THROW) {
+					successors[point] = new int[0]; // Handled by the instruction before
+				} else if (isJump(edge)) {
+					var i = index + 1;
+					while (i < block.nodes.size() && isJump(block.nodes.get(i))) {
+						i++;
+					}
+					if (i < block.nodes.size() && block.nodes.get(i) instanceof CodeNode) {
+						successors[point] = next; // Handled by the instruction after
+					} else {
+						// Edge without an instruction, be conservative
+						successors[point] = new int[] {point + 1, targetPoint(edge)};
+					}
+				} else {
+					// Exception handler; it can be entered from anywhere within the block
+					// TryBlock uses narrower ranges, but being conservative is fine
+					var handler = targetPoint(edge);
+					successors[point] = new int[] {point + 1, handler};
+					handlerRanges.add(new int[] {startPoints.get(block), endPoints.get(block), handler});
+				}
+			} else if (node instanceof VarMarkerNode marker) {
+				if (marker.localVar != null && marker.localVar.frameIndex != -1) {
+					touched[point] = new BitSet();
+					touched[point].set(marker.localVar.frameIndex);
+				}
+				successors[point] = next;
+			} else {
+				successors[point] = next;
+			}
+		}
+		for (var range : handlerRanges) {
+			for (var point = range[0]; point <= range[1]; point++) {
+				var old = handlers[point];
+				handlers[point] = old == null ? new int[] {range[2]} : Arrays.copyOf(old, old.length + 1);
+				handlers[point][handlers[point].length - 1] = range[2];
+			}
+		}
+		
+		// Compute live variables at each point until nothing changes
+		var liveIn = new BitSet[count];
+		for (var point = 0; point < count; point++) {
+			liveIn[point] = new BitSet();
+		}
+		var changed = true;
+		while (changed) {
+			changed = false;
+			for (var point = count - 1; point >= 0; point--) {
+				var live = new BitSet();
+				for (var successor : successors[point]) {
+					live.or(liveIn[successor]);
+				}
+				if (defs[point] != null) {
+					live.andNot(defs[point]);
+				}
+				if (uses[point] != null) {
+					live.or(uses[point]);
+				}
+				// Values needed by exception handlers must survive everything that might throw
+				if (handlers[point] != null) {
+					for (var handler : handlers[point]) {
+						live.or(liveIn[handler]);
+					}
+				}
+				if (!live.equals(liveIn[point])) {
+					liveIn[point] = live;
+					changed = true;
+				}
+			}
+		}
+		
+		// Approximate live ranges by first and last points
+		var varCount = allocator.varCount();
+		var start = new int[varCount];
+		var end = new int[varCount];
+		Arrays.fill(start, Integer.MAX_VALUE);
+		Arrays.fill(end, -1);
+		for (var point = 0; point < count; point++) {
+			extendRanges(start, end, liveIn[point], point);
+			extendRanges(start, end, defs[point], point);
+			extendRanges(start, end, touched[point], point);
+		}
+		allocator.allocateSlots(start, end);
+		
+		// Frames emitted in bytecode only need live variables
+		for (var entry : startPoints.entrySet()) {
+			entry.getKey().startFrame.setLive(liveIn[entry.getValue()]);
+		}
+		for (var entry : endPoints.entrySet()) {
+			entry.getKey().endFrame.setLive(liveIn[entry.getValue()]);
+		}
+	}
+	
+	private static void extendRanges(int[] start, int[] end, BitSet vars, int point) {
+		if (vars == null) {
+			return;
+		}
+		for (var i = vars.nextSetBit(0); i >= 0; i = vars.nextSetBit(i + 1)) {
+			start[i] = Math.min(start[i], point);
+			end[i] = Math.max(end[i], point);
+		}
+	}
+}
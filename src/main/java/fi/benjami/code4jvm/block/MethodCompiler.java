@@ -6,6 +6,7 @@ import org.objectweb.asm.MethodVisitor;
 import fi.benjami.code4jvm.Type;
 import fi.benjami.code4jvm.call.CallTarget;
 import fi.benjami.code4jvm.call.FixedCallTarget;
+import fi.benjami.code4jvm.config.CompileListener;
 import fi.benjami.code4jvm.config.CompileOptions;
 import fi.benjami.code4jvm.config.CoreOptions;
 import fi.benjami.code4jvm.flag.Access;
@@ -35,12 +36,36 @@ public class MethodCompiler {
 	private final ClassVisitor cv;
 	private final CompileOptions options;
 	
+	/**
+	 * Whether compilation phases are timed. This is needed only for
+	 * {@link CoreOptions#COMPILE_LISTENER compile listeners}.
+	 */
+	private final boolean timed;
+	
 	public MethodCompiler(ClassDef owner, ClassVisitor cv, CompileOptions options) {
 		this.owner = owner;
 		this.cv = cv;
 		this.options = options;
+		this.timed = options.get(CoreOptions.COMPILE_LISTENER) != CompileListener.NONE;
 	}
 
+	/**
+	 * Calls compile hooks of blocks in the given method without compiling it.
+	 * Hooks may add methods to the owner class; when this is called for
+	 * methods in order, they are added in same order as they would be
+	 * by {@link #compile(Method, Access)}.
+	 * @param method Method.
+	 */
+	public void runCompileHooks(Method method) {
+		if (method instanceof ConcreteMethod concrete) {
+			if (options.get(CoreOptions.OUTLINE_LIMIT) > 0) {
+				// Outlining adds methods too, and is done before compile hooks are called
+				prepare(concrete);
+			}
+			concrete.block().runCompileHooks(owner);
+		}
+	}
+	
 	public void compile(Method method, Access access) {
 		var argTypes = method.argumentTypes().toArray(Type[]::new);
 		// access int is not public API, so we'll need to dig it up from implementation
@@ -65,33 +90,13 @@ public class MethodCompiler {
 		}
 		
 		if (method instanceof ConcreteMethod concrete) {
+			prepare(concrete);
 			var slotAllocator = concrete.slotAllocator;
-			if (slotAllocator == null) {
-				slotAllocator = new SlotAllocator();
-				concrete.slotAllocator = slotAllocator;
-			}
-			// Assign local variable slots for arguments
-			if (method instanceof Method.Instance instance) {
-				slotAllocator.assignSlot(instance.self); // this is always slot 0
-			}
-			for (var arg : concrete.args) {
-				slotAllocator.assignSlot(arg);
-			}
-			
-			// Compute stack map table frames (and assign rest of local variables slots)
-			if (!concrete.framesComputed) {
-				new FrameBuilder(slotAllocator, concrete).trace();
-				concrete.framesComputed = true;
-				if (DebugOptions.PRINT_METHODS) {
-					// JVM property code4jvm.debug.printMethods
-					System.out.println(concrete);
-				}
-			}
+			var start = now();
 			
 			var ctx = new CompileContext(owner, getTarget(accessBits, method.returnType(), method.name(), argTypes), mv, options);
 			var state = new MethodCompilerState(ctx, slotAllocator, new FrameManager(method, slotAllocator), options.get(CoreOptions.LOCAL_VAR_TABLE));
 			
-			
 			// Emit method content
 			mv.visitCode();
 			concrete.block().emitBytecode(state);
@@ -103,9 +108,94 @@ public class MethodCompiler {
 			
 			// Set stack and local variable count
 			mv.visitMaxs(ctx.stack().maxStackSize(), slotAllocator.slotCount());
+			concrete.emitNanos += now() - start;
 		}
 		mv.visitEnd();
 	}
+	
+	/**
+	 * Gets time spent compiling the given method since this was last
+	 * called for it. Time is only measured when a compile listener is set.
+	 * @param method Method.
+	 * @return Timings of compilation phases.
+	 * @see CoreOptions#COMPILE_LISTENER
+	 */
+	public CompileListener.Timings takeTimings(Method method) {
+		if (method instanceof ConcreteMethod concrete) {
+			var timings = new CompileListener.Timings(concrete.frameNanos, concrete.optimizeNanos,
+					concrete.slotNanos, concrete.emitNanos);
+			concrete.frameNanos = 0;
+			concrete.optimizeNanos = 0;
+			concrete.slotNanos = 0;
+			concrete.emitNanos = 0;
+			return timings;
+		}
+		return new CompileListener.Timings(0, 0, 0, 0); // Nothing to compile
+	}
+	
+	/**
+	 * Assigns slots and builds frames for the given method, unless that has
+	 * already been done. This might outline some blocks of it to new methods.
+	 * @param method Method to prepare.
+	 */
+	private void prepare(ConcreteMethod method) {
+		var slotAllocator = method.slotAllocator;
+		if (slotAllocator == null) {
+			slotAllocator = new SlotAllocator();
+			method.slotAllocator = slotAllocator;
+		}
+		// Assign local variable slots for arguments
+		if (method instanceof Method.Instance instance) {
+			slotAllocator.pin(instance.self); // this is always slot 0
+		}
+		for (var arg : method.args) {
+			slotAllocator.pin(arg);
+		}
+		
+		// Compute stack map table frames (and assign rest of local variables slots)
+		if (!method.framesComputed) {
+			var start = now();
+			new FrameBuilder(slotAllocator, method).trace();
+			method.frameNanos += now() - start;
+			
+			var limit = options.get(CoreOptions.OUTLINE_LIMIT);
+			start = now();
+			if (limit > 0 && new Outliner(owner, method, limit).outline()) {
+				// Outlined blocks now belong to other methods
+				slotAllocator.reset();
+				method.optimizeNanos += now() - start;
+				start = now();
+				new FrameBuilder(slotAllocator, method).trace();
+				method.frameNanos += now() - start;
+			}
+			if (options.get(CoreOptions.OPTIMIZE)) {
+				// Frames were built to validate the original code; optimizer relies on
+				// it being valid, and might remove e.g. uses of uninitialized variables
+				// Local variable table needs stores to stay where user added them
+				start = now();
+				new Optimizer(method, slotAllocator, options.get(CoreOptions.LOCAL_VAR_TABLE)).optimize();
+				slotAllocator.reset();
+				method.optimizeNanos += now() - start;
+				start = now();
+				new FrameBuilder(slotAllocator, method).trace();
+				method.frameNanos += now() - start;
+			}
+			
+			// Variables that are not live at same time can share slots
+			start = now();
+			new LivenessAnalyzer(slotAllocator, method).allocateSlots();
+			method.slotNanos += now() - start;
+			method.framesComputed = true;
+			if (DebugOptions.PRINT_METHODS) {
+				// JVM property code4jvm.debug.printMethods
+				System.out.println(method);
+			}
+		}
+	}
+	
+	private long now() {
+		return timed ? System.nanoTime() : 0;
+	}
 
 	private FixedCallTarget getTarget(int access, Type returnType, String name, Type[] argTypes) {
 		// Static method, static linkage
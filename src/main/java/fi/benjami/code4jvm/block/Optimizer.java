@@ -0,0 +1,537 @@
+package fi.benjami.code4jvm.block;
+
+import static org.objectweb.asm.Opcodes.GOTO;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fi.benjami.code4jvm.Constant;
+import fi.benjami.code4jvm.Type;
+import fi.benjami.code4jvm.Value;
+import fi.benjami.code4jvm.internal.LocalVar;
+import fi.benjami.code4jvm.internal.SlotAllocator;
+import fi.benjami.code4jvm.internal.node.CodeNode;
+import fi.benjami.code4jvm.internal.node.EdgeNode;
+import fi.benjami.code4jvm.internal.node.Node;
+import fi.benjami.code4jvm.internal.node.StoreNode;
+import fi.benjami.code4jvm.internal.node.VarMarkerNode;
+import fi.benjami.code4jvm.statement.Bytecode;
+import fi.benjami.code4jvm.statement.Jump;
+
+/**
+ * Optional optimization pass that rewrites blocks of a method in place.
+ * It folds {@link Bytecode#fold(Constant[]) foldable}
+ * bytecode that has constant inputs, removes {@link Bytecode#PURE pure}
+ * bytecode and stores whose results are never used, threads jumps that
+ * lead to other unconditional jumps and removes blocks that can never be
+ * entered.
+ *
+ * <p>{@link MethodCompiler} runs this after {@link FrameBuilder} has traced
+ * the method once, because the optimizer expects that the method has been
+ * validated. This resets frames of all blocks, so FrameBuilder must then
+ * trace the method again before slots are allocated.
+ *
+ * <p>Blocks and local variables are modified, not copied; see
+ * {@link fi.benjami.code4jvm.config.CoreOptions#OPTIMIZE} for what that
+ * means for users.
+ *
+ * <p>Values that are kept on stack are consumed by exactly one node. When
+ * that node is removed or no longer needs its inputs, producers of those
+ * inputs are removed too, or their outputs are popped immediately.
+ */
+class Optimizer {
+	
+	private record Point(Block block, int index) {}
+	
+	private record Location(Block block, Jump.Target position) {}
+	
+	private final ConcreteMethod method;
+	private final SlotAllocator allocator;
+	private final boolean keepStores;
+	
+	/**
+	 * Blocks in order they are emitted in.
+	 */
+	private final List<Block> blocks;
+	
+	/**
+	 * Nodes (excluding sub-blocks) in order they are emitted in.
+	 */
+	private final List<Point> points;
+	
+	private final Set<Node> removed;
+	private final Map<LocalVar, Integer> uses;
+	private final Map<LocalVar, CodeNode> producers;
+	private final Map<LocalVar, List<StoreNode>> stores;
+	private final Map<LocalVar, Constant> constants;
+	private final Set<LocalVar> unused;
+	private final Set<Block> redirectTargets;
+	private final Set<LocalVar> redirectHolders;
+	
+	public Optimizer(ConcreteMethod method, SlotAllocator allocator, boolean keepStores) {
+		this.method = method;
+		this.allocator = allocator;
+		this.keepStores = keepStores;
+		this.blocks = new ArrayList<>();
+		this.points = new ArrayList<>();
+		this.removed = Collections.newSetFromMap(new IdentityHashMap<>());
+		this.uses = new IdentityHashMap<>();
+		this.producers = new IdentityHashMap<>();
+		this.stores = new IdentityHashMap<>();
+		this.constants = new IdentityHashMap<>();
+		this.unused = Collections.newSetFromMap(new IdentityHashMap<>());
+		this.redirectTargets = Collections.newSetFromMap(new IdentityHashMap<>());
+		this.redirectHolders = Collections.newSetFromMap(new IdentityHashMap<>());
+	}
+	
+	public void optimize() {
+		layout();
+		collectUses();
+		foldConstants();
+		removeDeadCode();
+		threadJumps();
+		removeUnreachableBlocks();
+		removeRedundantJumps();
+		
+		// Actually remove nodes and fix indices that refer to them
+		// Frames need to be built again, so clear them too
+		for (var block : blocks) {
+			block.nodes.removeIf(removed::contains);
+			block.reachability.clear();
+			block.startFrame.reset();
+			block.endFrame.reset();
+			for (var i = 0; i < block.nodes.size(); i++) {
+				if (block.nodes.get(i) instanceof EdgeNode edge && edge.type() == EdgeNode.SUB_BLOCK) {
+					edge.target().parentNodeIndex = i;
+				}
+			}
+		}
+	}
+	
+	private void layout() {
+		var stack = new ArrayDeque<Point>();
+		stack.push(new Point(method.block(), 0));
+		blocks.add(method.block());
+		while (!stack.isEmpty()) {
+			var point = stack.pop();
+			var block = point.block();
+			if (point.index() == block.nodes.size()) {
+				continue;
+			}
+			stack.push(new Point(block, point.index() + 1));
+			if (block.nodes.get(point.index()) instanceof EdgeNode edge && edge.type() == EdgeNode.SUB_BLOCK) {
+				blocks.add(edge.target());
+				stack.push(new Point(edge.target(), 0));
+			} else {
+				points.add(point);
+			}
+		}
+	}
+	
+	private void collectUses() {
+		for (var block : blocks) {
+			var redirect = block.returnRedirect();
+			if (redirect != null) {
+				redirectTargets.add(redirect.target());
+				redirect.valueHolder().ifPresent(holder -> redirectHolders.add((LocalVar) holder.original()));
+			}
+		}
+		for (var point : points) {
+			var node = point.block().nodes.get(point.index());
+			if (node instanceof CodeNode code) {
+				for (var input : code.inputs()) {
+					addUse(input);
+				}
+				if (code.output() != null) {
+					producers.put(code.output(), code);
+				}
+			} else if (node instanceof StoreNode store) {
+				addUse(store.value());
+				stores.computeIfAbsent(store.target(), k -> new ArrayList<>()).add(store);
+			}
+		}
+		// Outputs that are also assigned to elsewhere are variables, not constants
+		producers.keySet().removeIf(stores::containsKey);
+	}
+	
+	private void addUse(Value value) {
+		if (value.original() instanceof LocalVar localVar) {
+			uses.merge(localVar, 1, Integer::sum);
+		}
+	}
+	
+	private void release(Value value) {
+		if (value.original() instanceof LocalVar localVar && uses.merge(localVar, -1, Integer::sum) == 0) {
+			removeUnused(localVar);
+		}
+	}
+	
+	private void removeUnused(LocalVar localVar) {
+		if (!unused.add(localVar)) {
+			return; // Already handled
+		}
+		var producer = producers.get(localVar);
+		if (producer != null) {
+			if ((producer.bytecode().flags() & Bytecode.PURE) != 0) {
+				removed.add(producer);
+				for (var input : producer.inputs()) {
+					release(input);
+				}
+			} else {
+				// Side effects must be kept, but the value can be popped immediately
+				localVar.used = false;
+				localVar.needsSlot = false;
+			}
+		} else if (stores.containsKey(localVar) && !keepStores && !redirectHolders.contains(localVar)
+				&& (localVar.frameIndex == -1 || !allocator.isPinned(localVar.frameIndex))) {
+			// Variable is never read (and it is not a method argument)
+			for (var store : stores.get(localVar)) {
+				removed.add(store);
+				release(store.value());
+			}
+			localVar.needsSlot = false;
+		}
+	}
+	
+	private Constant constantOf(Value value) {
+		if (value instanceof Constant constant) {
+			return constant;
+		} else if (value instanceof LocalVar localVar) {
+			return constants.get(localVar);
+		}
+		return null; // Unknown or casted value
+	}
+	
+	private void foldConstants() {
+		outer: for (var point : points) {
+			var nodes = point.block().nodes;
+			if (!(nodes.get(point.index()) instanceof CodeNode code) || removed.contains(code)) {
+				continue;
+			}
+			var inputs = code.inputs();
+			var args = new Constant[inputs.length];
+			for (var i = 0; i < inputs.length; i++) {
+				args[i] = constantOf(inputs[i]);
+				if (args[i] == null) {
+					continue outer;
+				}
+			}
+			var result = code.bytecode().fold(args);
+			if (result == null) {
+				continue;
+			}
+			
+			var output = code.output();
+			if (code.outputType().equals(Type.VOID)) {
+				if (!foldJump(point, code, (Boolean) result.value())) {
+					continue;
+				}
+			} else if (result.type().equals(code.outputType())) {
+				if (producers.get(output) == code) {
+					constants.put(output, result);
+				}
+				if (inputs.length == 1 && inputs[0] == result) {
+					continue; // Already loads the constant
+				}
+				var folded = new CodeNode(Bytecode.stub(result.type(), new Value[] {result}), output);
+				nodes.set(point.index(), folded);
+				if (producers.get(output) == code) {
+					producers.put(output, folded);
+				}
+			} else {
+				continue;
+			}
+			
+			// Folded node no longer needs its inputs
+			for (var input : inputs) {
+				release(input);
+			}
+		}
+	}
+	
+	private static boolean isJump(Node node) {
+		return node instanceof EdgeNode edge
+				&& (edge.type() == EdgeNode.CONDITIONAL_JUMP || edge.type() == EdgeNode.UNCONDITIONAL_JUMP);
+	}
+	
+	private static boolean hasVmStack(EdgeNode edge) {
+		return edge.vmStack() != null && edge.vmStack().length != 0;
+	}
+	
+	private boolean foldJump(Point point, CodeNode code, boolean taken) {
+		// Only simple conditional jumps can be folded
+		var nodes = point.block().nodes;
+		var index = point.index();
+		if (index == 0 || !(nodes.get(index - 1) instanceof EdgeNode edge)
+				|| edge.type() != EdgeNode.CONDITIONAL_JUMP || hasVmStack(edge)
+				|| (index > 1 && isJump(nodes.get(index - 2)))) {
+			return false;
+		}
+		
+		if (taken) {
+			nodes.set(index - 1, new EdgeNode(edge.target(), edge.position(), EdgeNode.UNCONDITIONAL_JUMP, edge.vmStack()));
+			var label = edge.target().label(edge.position());
+			nodes.set(index, new CodeNode(Bytecode.run(Type.VOID, new Value[0], ctx -> {
+				ctx.asm().visitJumpInsn(GOTO, label);
+			}, "unconditional jump"), code.output()));
+		} else {
+			removed.add(edge);
+			removed.add(code);
+		}
+		return true;
+	}
+	
+	private void removeDeadCode() {
+		for (var point : points) {
+			var node = point.block().nodes.get(point.index());
+			if (node instanceof CodeNode code && code.output() != null && !removed.contains(code)
+					&& uses.getOrDefault(code.output(), 0) == 0) {
+				removeUnused(code.output());
+			} else if (node instanceof StoreNode store && uses.getOrDefault(store.target(), 0) == 0) {
+				removeUnused(store.target());
+			}
+		}
+	}
+	
+	private boolean isGoto(List<Node> nodes, int index) {
+		// Switches also end with unconditional edge, so check that this is the only one
+		return nodes.get(index) instanceof EdgeNode edge && edge.type() == EdgeNode.UNCONDITIONAL_JUMP
+				&& !hasVmStack(edge)
+				&& (index == 0 || !isJump(nodes.get(index - 1)) || removed.contains(nodes.get(index - 1)))
+				&& index + 1 < nodes.size() && nodes.get(index + 1) instanceof CodeNode code
+				&& !removed.contains(code) && code.inputs().length == 0;
+	}
+	
+	private static int subBlockIndex(Block parent, Block block) {
+		for (var i = 0; i < parent.nodes.size(); i++) {
+			if (parent.nodes.get(i) instanceof EdgeNode edge && edge.type() == EdgeNode.SUB_BLOCK
+					&& edge.target() == block) {
+				return i;
+			}
+		}
+		throw new AssertionError("block not in its parent");
+	}
+	
+	/**
+	 * Finds the unconditional jump that would be executed next after
+	 * entering the given location.
+	 * @param location Location.
+	 * @return Edge of the jump, or null if something else is executed first.
+	 */
+	private EdgeNode nextJump(Location location) {
+		var block = location.block();
+		var index = 0;
+		if (location.position() == Jump.Target.END) {
+			index = block.nodes.size();
+		}
+		while (true) {
+			if (index == block.nodes.size()) {
+				// Fall through to parent
+				if (block.parent == null) {
+					return null; // End of method
+				}
+				index = subBlockIndex(block.parent, block) + 1;
+				block = block.parent;
+				continue;
+			}
+			var node = block.nodes.get(index);
+			if (removed.contains(node) || node instanceof VarMarkerNode) {
+				index++;
+			} else if (node instanceof EdgeNode edge && edge.type() == EdgeNode.SUB_BLOCK) {
+				block = edge.target();
+				index = 0;
+			} else if (isGoto(block.nodes, index)) {
+				return (EdgeNode) node;
+			} else {
+				return null;
+			}
+		}
+	}
+	
+	private Location resolveJump(Location source) {
+		Location result = null;
+		var visited = new HashSet<Location>();
+		var location = source;
+		while (visited.add(location)) {
+			var jump = nextJump(location);
+			if (jump == null) {
+				return result;
+			}
+			location = new Location(jump.target(), jump.position());
+			result = location;
+		}
+		return null; // Infinite loop, leave it alone
+	}
+	
+	private void threadJumps() {
+		// Find jumps by their targets
+		var jumps = new LinkedHashMap<Location, List<Point>>();
+		var fixed = new HashSet<Location>();
+		for (var block : blocks) {
+			for (var i = 0; i < block.nodes.size(); i++) {
+				var node = block.nodes.get(i);
+				if (isJump(node) && !removed.contains(node)) {
+					var edge = (EdgeNode) node;
+					var target = new Location(edge.target(), edge.position());
+					if (hasVmStack(edge)) {
+						fixed.add(target); // Exception handlers can't be moved
+					} else {
+						jumps.computeIfAbsent(target, k -> new ArrayList<>()).add(new Point(block, i));
+					}
+				}
+			}
+		}
+		
+		for (var entry : jumps.entrySet()) {
+			var source = entry.getKey();
+			if (source.block().labelsEscaped || redirectTargets.contains(source.block()) || fixed.contains(source)) {
+				continue;
+			}
+			var target = resolveJump(source);
+			if (target == null || target.equals(source)) {
+				continue;
+			}
+			
+			// Jump directly to final target; since labels are baked into
+			// bytecode emitters, label of the source must move there too
+			for (var point : entry.getValue()) {
+				var edge = (EdgeNode) point.block().nodes.get(point.index());
+				point.block().nodes.set(point.index(), new EdgeNode(target.block(), target.position(), edge.type(), edge.vmStack()));
+			}
+			var label = source.block().removeLabel(source.position());
+			if (label != null) {
+				target.block().addLabelAlias(label, target.position());
+			}
+		}
+	}
+	
+	private boolean isTerminal(Node node) {
+		if (node instanceof EdgeNode edge) {
+			return edge.type() == EdgeNode.RETURN || edge.type() == EdgeNode.THROW;
+		}
+		return false;
+	}
+	
+	private void removeUnreachableBlocks() {
+		// Jumps and the blocks they're in
+		var jumps = new ArrayList<Point>();
+		for (var block : blocks) {
+			for (var i = 0; i < block.nodes.size(); i++) {
+				if (isJump(block.nodes.get(i)) && !removed.contains(block.nodes.get(i))) {
+					jumps.add(new Point(block, i));
+				}
+			}
+		}
+		
+		var pruned = Collections.newSetFromMap(new IdentityHashMap<Block, Boolean>());
+		for (var block : blocks) {
+			var parent = block.parent;
+			if (parent == null || pruned.contains(parent)) {
+				continue;
+			}
+			
+			// Find out if the previous node in parent prevents falling through
+			var index = subBlockIndex(parent, block);
+			var previous = index - 1;
+			while (previous >= 0 && (removed.contains(parent.nodes.get(previous))
+					|| parent.nodes.get(previous) instanceof VarMarkerNode)) {
+				previous--;
+			}
+			if (previous < 0) {
+				continue; // Entered with parent
+			}
+			var node = parent.nodes.get(previous);
+			var afterJump = node instanceof CodeNode && previous > 0
+					&& parent.nodes.get(previous - 1) instanceof EdgeNode edge
+					&& edge.type() == EdgeNode.UNCONDITIONAL_JUMP && !removed.contains(edge);
+			if (!afterJump && !isTerminal(node)) {
+				continue;
+			}
+			
+			// Check that nothing outside jumps into this block or its sub-blocks
+			var subtree = subtree(block);
+			var entered = false;
+			for (var member : subtree) {
+				if (member.labelsEscaped || member.hasCompileHooks() || redirectTargets.contains(member)) {
+					entered = true;
+				}
+			}
+			for (var jump : jumps) {
+				var edge = (EdgeNode) jump.block().nodes.get(jump.index());
+				if (subtree.contains(edge.target()) && !subtree.contains(jump.block())
+						&& !pruned.contains(jump.block())) {
+					entered = true;
+				}
+			}
+			if (!entered) {
+				removed.add(parent.nodes.get(index));
+				pruned.addAll(subtree);
+			}
+		}
+	}
+	
+	private void removeRedundantJumps() {
+		for (var block : blocks) {
+			for (var i = 0; i < block.nodes.size() - 1; i++) {
+				if (!removed.contains(block.nodes.get(i)) && isGoto(block.nodes, i)) {
+					var edge = (EdgeNode) block.nodes.get(i);
+					if (fallsThrough(block, i + 2, new Location(edge.target(), edge.position()))) {
+						// Jump to where execution would continue anyway
+						removed.add(edge);
+						removed.add(block.nodes.get(i + 1));
+					}
+				}
+			}
+		}
+	}
+	
+	private boolean fallsThrough(Block block, int index, Location target) {
+		while (true) {
+			if (index == block.nodes.size()) {
+				if (target.equals(new Location(block, Jump.Target.END))) {
+					return true;
+				} else if (block.parent == null) {
+					return false;
+				}
+				index = subBlockIndex(block.parent, block) + 1;
+				block = block.parent;
+				continue;
+			}
+			var node = block.nodes.get(index);
+			if (removed.contains(node) || node instanceof VarMarkerNode) {
+				index++;
+			} else if (node instanceof EdgeNode edge && edge.type() == EdgeNode.SUB_BLOCK) {
+				if (target.equals(new Location(edge.target(), Jump.Target.START))) {
+					return true;
+				}
+				block = edge.target();
+				index = 0;
+			} else {
+				return false;
+			}
+		}
+	}
+	
+	private static Set<Block> subtree(Block root) {
+		var subtree = Collections.newSetFromMap(new IdentityHashMap<Block, Boolean>());
+		var stack = new ArrayDeque<Block>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			var block = stack.pop();
+			subtree.add(block);
+			for (var node : block.nodes) {
+				if (node instanceof EdgeNode edge && edge.type() == EdgeNode.SUB_BLOCK) {
+					stack.push(edge.target());
+				}
+			}
+		}
+		return subtree;
+	}
+}
@@ -0,0 +1,446 @@
+package fi.benjami.code4jvm.block;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+import fi.benjami.code4jvm.Type;
+import fi.benjami.code4jvm.Value;
+import fi.benjami.code4jvm.call.CallTarget;
+import fi.benjami.code4jvm.config.CoreOptions;
+import fi.benjami.code4jvm.flag.Access;
+import fi.benjami.code4jvm.flag.MethodFlag;
+import fi.benjami.code4jvm.internal.CastValue;
+import fi.benjami.code4jvm.internal.LocalVar;
+import fi.benjami.code4jvm.internal.node.CodeNode;
+import fi.benjami.code4jvm.internal.node.EdgeNode;
+import fi.benjami.code4jvm.internal.node.StoreNode;
+import fi.benjami.code4jvm.internal.node.VarMarkerNode;
+import fi.benjami.code4jvm.statement.Jump;
+import fi.benjami.code4jvm.statement.Return;
+import fi.benjami.code4jvm.typedef.ClassDef;
+import fi.benjami.code4jvm.util.TypeUtils;
+
+/**
+ * Moves sub-blocks of methods that are too large to synthetic private
+ * static methods. Exact size of a method is known only after its bytecode
+ * has been emitted, so it is estimated from its blocks.
+ *
+ * <p>Blocks can be outlined if they are entered only from their parent,
+ * don't jump out of themselves and don't define variables that are used
+ * elsewhere. Variables that they use are passed as arguments; the outlined
+ * method gets new variables for these, so methods never share variables.
+ * Blocks that never complete normally (e.g. error paths) are preferred, and
+ * replaced with {@code return outlined(...)} so that they may contain
+ * returns too.
+ *
+ * <p>The method must have been traced by {@link FrameBuilder} before
+ * outlining. Afterwards, frames must be built again.
+ *
+ * @see CoreOptions#OUTLINE_LIMIT
+ */
+class Outliner {
+	
+	/**
+	 * Blocks smaller than this are never outlined, since calling them would
+	 * take almost as much space.
+	 */
+	private static final int MIN_SIZE = 32;
+	
+	private final ClassDef owner;
+	private final ConcreteMethod method;
+	private final int limit;
+	
+	/**
+	 * Blocks of the method in pre-order.
+	 */
+	private final List<Block> blocks;
+	
+	private final Map<Block, Integer> depths;
+	private final Map<Block, Integer> sizes;
+	
+	/**
+	 * Blocks that can't be outlined.
+	 */
+	private final Set<Block> fixed;
+	
+	/**
+	 * Blocks that contain returns (that are not redirected).
+	 */
+	private final Set<Block> returning;
+	
+	/**
+	 * Blocks where each local variable is read and written in.
+	 */
+	private final Map<LocalVar, List<Block>> reads, writes;
+	
+	public Outliner(ClassDef owner, ConcreteMethod method, int limit) {
+		this.owner = owner;
+		this.method = method;
+		this.limit = limit;
+		this.blocks = new ArrayList<>();
+		this.depths = new IdentityHashMap<>();
+		this.sizes = new IdentityHashMap<>();
+		this.fixed = Collections.newSetFromMap(new IdentityHashMap<>());
+		this.returning = Collections.newSetFromMap(new IdentityHashMap<>());
+		// Ordered, so that arguments of outlined methods are always in same order
+		this.reads = new LinkedHashMap<>();
+		this.writes = new LinkedHashMap<>();
+	}
+	
+	/**
+	 * Outlines blocks until the estimated size of method is below the limit,
+	 * or there is nothing more to outline.
+	 * @return Whether anything was outlined.
+	 */
+	public boolean outline() {
+		if (method.name().equals("<init>")) {
+			return false; // Uninitialized this can't be passed to other methods
+		}
+		var changed = false;
+		while (true) {
+			analyze();
+			var block = sizes.get(method.block()) > limit ? pickBlock() : null;
+			if (block == null) {
+				break; // Small enough, or can't be made any smaller
+			}
+			outline(block);
+			changed = true;
+		}
+		
+		if (changed) {
+			// Frames need to be built again
+			for (var block : blocks) {
+				block.reachability.clear();
+				block.startFrame.reset();
+				block.endFrame.reset();
+			}
+		}
+		return changed;
+	}
+	
+	private void analyze() {
+		blocks.clear();
+		depths.clear();
+		sizes.clear();
+		fixed.clear();
+		returning.clear();
+		reads.clear();
+		writes.clear();
+		
+		var root = method.block();
+		var stack = new ArrayDeque<Block>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			var block = stack.pop();
+			blocks.add(block);
+			depths.put(block, block.parent == null ? 0 : depths.get(block.parent) + 1);
+			for (var i = block.nodes.size() - 1; i >= 0; i--) {
+				if (block.nodes.get(i) instanceof EdgeNode edge && edge.type() == EdgeNode.SUB_BLOCK) {
+					stack.push(edge.target());
+				}
+			}
+		}
+		
+		// Arguments are defined at start of method
+		if (method instanceof Method.Instance instance) {
+			addRef(reads, instance.self, root);
+		}
+		for (var arg : method.args) {
+			addRef(reads, arg, root);
+		}
+		
+		for (var block : blocks) {
+			sizes.put(block, estimateSize(block));
+			if (block.labelsEscaped) {
+				// We don't know where the labels are used in
+				fixAncestors(block, null);
+			}
+			for (var node : block.nodes) {
+				if (node instanceof CodeNode code) {
+					for (var input : code.inputs()) {
+						addRef(reads, input, block);
+					}
+					if (code.output() != null && code.output().needsSlot) {
+						addRef(writes, code.output(), block);
+					}
+				} else if (node instanceof StoreNode store) {
+					addRef(reads, store.value(), block);
+					addRef(writes, store.target(), block);
+				} else if (node instanceof VarMarkerNode marker && marker.localVar != null) {
+					addRef(writes, marker.localVar, block);
+				} else if (node instanceof EdgeNode edge) {
+					var type = edge.type();
+					if (type == EdgeNode.RETURN) {
+						var redirect = block.returnRedirect();
+						if (redirect != null) {
+							// Redirected returns are just jumps
+							fixCrossing(block, redirect.target());
+							redirect.valueHolder().ifPresent(holder -> addRef(writes, holder, block));
+						} else {
+							var parent = block;
+							while (parent != null && returning.add(parent)) {
+								parent = parent.parent;
+							}
+						}
+					} else if (type == EdgeNode.CONDITIONAL_JUMP || type == EdgeNode.UNCONDITIONAL_JUMP) {
+						fixCrossing(block, edge.target());
+					}
+				}
+			}
+		}
+		
+		// Sub-blocks are included in sizes of their parents
+		for (var i = blocks.size() - 1; i > 0; i--) {
+			var block = blocks.get(i);
+			sizes.merge(block.parent, sizes.get(block), Integer::sum);
+		}
+		
+		// Blocks that write to variables can't be outlined without all other uses of them
+		for (var entry : writes.entrySet()) {
+			var common = commonAncestor(entry.getValue());
+			var readers = reads.get(entry.getKey());
+			if (readers != null) {
+				common = lowestCommon(common, commonAncestor(readers));
+			}
+			for (var block : entry.getValue()) {
+				fixAncestors(block, common);
+			}
+		}
+	}
+	
+	private void addRef(Map<LocalVar, List<Block>> refs, Value value, Block block) {
+		if (value.original() instanceof LocalVar localVar && localVar.needsSlot) {
+			var list = refs.computeIfAbsent(localVar, k -> new ArrayList<>());
+			if (list.isEmpty() || list.get(list.size() - 1) != block) {
+				list.add(block);
+			}
+		}
+	}
+	
+	private static int estimateSize(Block block) {
+		var size = 0;
+		for (var node : block.nodes) {
+			if (node instanceof CodeNode code) {
+				size += 3; // Typical instruction with operands
+				for (var input : code.inputs()) {
+					size += estimateLoad(input);
+				}
+				var output = code.output();
+				if (output != null && !output.type().equals(Type.VOID) && (!output.used || output.needsSlot)) {
+					size += 2; // Store or pop
+				}
+			} else if (node instanceof StoreNode store) {
+				size += 2 + estimateLoad(store.value());
+			}
+		}
+		return size;
+	}
+	
+	private static int estimateLoad(Value value) {
+		if (value instanceof CastValue cast) {
+			return 1 + estimateLoad(cast.original());
+		}
+		return value.original() instanceof LocalVar localVar && !localVar.needsSlot ? 0 : 2;
+	}
+	
+	/**
+	 * Marks the given block and its ancestors as not outlinable.
+	 * @param block Block.
+	 * @param until Ancestor where to stop, exclusive. If null, all
+	 * ancestors are marked.
+	 */
+	private void fixAncestors(Block block, Block until) {
+		for (var parent = block; parent != until && parent != null; parent = parent.parent) {
+			fixed.add(parent);
+		}
+	}
+	
+	private void fixCrossing(Block source, Block target) {
+		// Jump source and target must be both in outlined block, or neither
+		var common = lowestCommon(source, target);
+		fixAncestors(source, common);
+		fixAncestors(target, common);
+	}
+	
+	private Block lowestCommon(Block a, Block b) {
+		while (depths.get(a) > depths.get(b)) {
+			a = a.parent;
+		}
+		while (depths.get(b) > depths.get(a)) {
+			b = b.parent;
+		}
+		while (a != b) {
+			a = a.parent;
+			b = b.parent;
+		}
+		return a;
+	}
+	
+	private Block commonAncestor(List<Block> blocks) {
+		var common = blocks.get(0);
+		for (var block : blocks) {
+			common = lowestCommon(common, block);
+		}
+		return common;
+	}
+	
+	private boolean canOutline(Block block) {
+		if (block.parent == null || fixed.contains(block) || sizes.get(block) < MIN_SIZE
+				|| !block.startFrame.isReachable()) {
+			return false;
+		}
+		// Returning outlined blocks can't complete normally, or we couldn't tell
+		// whether the method should return
+		return !block.endFrame.isReachable() || !returning.contains(block);
+	}
+	
+	private Block pickBlock() {
+		// Prefer cold blocks, then largest blocks that fit in the limit
+		Block best = null;
+		for (var block : blocks) {
+			if (canOutline(block) && (best == null || isBetter(block, best))) {
+				best = block;
+			}
+		}
+		return best;
+	}
+	
+	private boolean isBetter(Block block, Block other) {
+		var cold = !block.endFrame.isReachable();
+		if (cold != !other.endFrame.isReachable()) {
+			return cold;
+		}
+		var size = sizes.get(block);
+		var otherSize = sizes.get(other);
+		if ((size <= limit) != (otherSize <= limit)) {
+			return size <= limit;
+		}
+		return size > otherSize;
+	}
+	
+	private void outline(Block block) {
+		// Variables used but not defined by the block become arguments
+		var defined = Collections.newSetFromMap(new IdentityHashMap<LocalVar, Boolean>());
+		var subtree = Collections.newSetFromMap(new IdentityHashMap<Block, Boolean>());
+		var stack = new ArrayDeque<Block>();
+		stack.push(block);
+		while (!stack.isEmpty()) {
+			var current = stack.pop();
+			subtree.add(current);
+			for (var i = current.nodes.size() - 1; i >= 0; i--) {
+				if (current.nodes.get(i) instanceof EdgeNode edge && edge.type() == EdgeNode.SUB_BLOCK) {
+					stack.push(edge.target());
+				}
+			}
+		}
+		for (var entry : writes.entrySet()) {
+			if (subtree.contains(entry.getValue().get(0))) {
+				defined.add(entry.getKey());
+			}
+		}
+		var args = new LinkedHashSet<LocalVar>();
+		for (var entry : reads.entrySet()) {
+			if (!defined.contains(entry.getKey()) && entry.getValue().stream().anyMatch(subtree::contains)) {
+				args.add(entry.getKey());
+			}
+		}
+		var argSlots = args.stream().mapToInt(arg -> TypeUtils.slotCount(arg.type())).sum();
+		if (argSlots > 255 || sharesInputs(subtree)) {
+			fixed.add(block); // JVM limit for arguments, or inputs can't be replaced
+			return;
+		}
+		
+		// Create the outlined method, with outlined block as its root
+		var parent = block.parent;
+		var index = block.parentNodeIndex;
+		assert parent.nodes.get(index) instanceof EdgeNode edge && edge.target() == block;
+		var cold = !block.endFrame.isReachable();
+		var returnType = cold ? method.returnType() : Type.VOID;
+		var name = "outlined$" + owner.methods().size();
+		block.parent = null;
+		block.parentNodeIndex = 0;
+		var body = block;
+		if (!cold) {
+			// Return after the block completes normally
+			body = Block.create("outlined");
+			body.add(block);
+			body.add(Return.nothing());
+		}
+		var outlined = new Method.Static(body, returnType, name, new MethodFlag[] {MethodFlag.SYNTHETIC});
+		
+		// Outlined method gets its own variables for arguments, so that slots
+		// are never shared by two methods
+		var params = new IdentityHashMap<LocalVar, LocalVar>();
+		for (var arg : args) {
+			params.put(arg, (LocalVar) outlined.mutableArg(arg.type(), arg.name().orElse(null)));
+		}
+		UnaryOperator<Value> mapper = value -> value instanceof LocalVar localVar
+				? params.getOrDefault(localVar, localVar) : value;
+		for (var member : subtree) {
+			// Arguments are only read by the block, never written to
+			var nodes = member.nodes;
+			for (var i = 0; i < nodes.size(); i++) {
+				if (nodes.get(i) instanceof CodeNode code) {
+					// Emitters that load their inputs explicitly see this too
+					var inputs = code.inputs();
+					for (var j = 0; j < inputs.length; j++) {
+						inputs[j] = inputs[j] instanceof CastValue cast ? cast.map(mapper) : mapper.apply(inputs[j]);
+					}
+				} else if (nodes.get(i) instanceof StoreNode store) {
+					var value = store.value() instanceof CastValue cast ? cast.map(mapper) : mapper.apply(store.value());
+					nodes.set(i, new StoreNode(store.target(), value));
+				}
+			}
+			
+			// Frames will be built again when the outlined method is compiled
+			member.reachability.clear();
+			member.startFrame.reset();
+			member.endFrame.reset();
+		}
+		owner.addMethod(outlined, Access.PRIVATE);
+		
+		// Replace the block with a call to outlined method
+		var call = Block.create("outlined call");
+		var target = CallTarget.staticMethod(owner.type(), returnType, name,
+				args.stream().map(LocalVar::type).toArray(Type[]::new));
+		var result = call.add(target.call(args.toArray(Value[]::new)));
+		if (cold) {
+			// Outlined method never returns normally, but verifier doesn't know that
+			call.add(Return.value(result));
+		}
+		call.parent = parent;
+		call.parentNodeIndex = index;
+		parent.nodes.set(index, new EdgeNode(call, Jump.Target.START, EdgeNode.SUB_BLOCK, null));
+	}
+	
+	private boolean sharesInputs(Set<Block> subtree) {
+		// Inputs of outlined nodes are replaced in place; this must not affect
+		// nodes that remain in this method
+		var outside = Collections.newSetFromMap(new IdentityHashMap<Value[], Boolean>());
+		for (var block : blocks) {
+			if (!subtree.contains(block)) {
+				for (var node : block.nodes) {
+					if (node instanceof CodeNode code) {
+						outside.add(code.inputs());
+					}
+				}
+			}
+		}
+		for (var block : subtree) {
+			for (var node : block.nodes) {
+				if (node instanceof CodeNode code && outside.contains(code.inputs())) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+}
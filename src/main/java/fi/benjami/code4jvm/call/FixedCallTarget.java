@@ -21,6 +21,11 @@ public final class FixedCallTarget extends CallTarget {
 	
 	private final Type owner;
 	
+	/**
+	 * Method descriptor, computed when first needed.
+	 */
+	private String descriptor;
+	
 	FixedCallTarget(Type returnType, String name, Type[] argTypes, Linkage linkage, Value[] capturedArgs, Type owner) {
 		super(returnType, name, argTypes, linkage, capturedArgs);
 		this.owner = owner;
@@ -30,15 +35,43 @@ public final class FixedCallTarget extends CallTarget {
 		return owner;
 	}
 	
+	/**
+	 * Gets the descriptor of the method this target calls. For instance
+	 * methods, the implicit {@code this} argument is not included.
+	 * @return Method descriptor.
+	 * @throws UnsupportedOperationException For
+	 * {@link Linkage#INIT_ARRAY array constructors}, since they don't call
+	 * any method.
+	 */
+	public String descriptor() {
+		// Racy, but computing it twice is harmless
+		var desc = descriptor;
+		if (desc == null) {
+			desc = switch (linkage()) {
+			case STATIC -> TypeUtils.methodDescriptor(returnType(), argTypes());
+			case VIRTUAL, INTERFACE, SPECIAL -> TypeUtils.instanceMethodDescriptor(returnType(), argTypes());
+			case INIT -> TypeUtils.methodDescriptor(Type.VOID, argTypes());
+			case INIT_ARRAY -> throw new UnsupportedOperationException();
+			case DYNAMIC -> throw new AssertionError(); // Should be DynamicCallTarget
+			};
+			descriptor = desc;
+		}
+		return desc;
+	}
+	
 	@Override
 	public FixedCallTarget withCapturedArgs(Value... args) {
-		return new FixedCallTarget(returnType(), name(), argTypes(), linkage(),
+		var target = new FixedCallTarget(returnType(), name(), argTypes(), linkage(),
 				CallTarget.mergeArgs(capturedArgs(), args), owner);
+		target.descriptor = descriptor; // Captured arguments don't change it
+		return target;
 	}
 	
 	@Override
 	public FixedCallTarget withoutCapturedArgs() {
-		return new FixedCallTarget(returnType(), name(), argTypes(), linkage(), new Value[0], owner);
+		var target = new FixedCallTarget(returnType(), name(), argTypes(), linkage(), new Value[0], owner);
+		target.descriptor = descriptor;
+		return target;
 	}
 	
 	@Override
@@ -58,19 +91,19 @@ public final class FixedCallTarget extends CallTarget {
 			return switch (linkage()) {
 			case STATIC -> block.add(Bytecode.run(returnType(), allArgs, ctx -> {
 					ctx.asm().visitMethodInsn(INVOKESTATIC, owner.internalName(), name(),
-							TypeUtils.methodDescriptor(returnType(), argTypes()), owner.isInterface());
+							descriptor(), owner.isInterface());
 				}, debugName));
 			case VIRTUAL -> block.add(Bytecode.run(returnType(), allArgs, ctx -> {
 					ctx.asm().visitMethodInsn(INVOKEVIRTUAL, owner.internalName(), name(),
-							TypeUtils.instanceMethodDescriptor(returnType(), argTypes()), owner.isInterface());
+							descriptor(), owner.isInterface());
 				}, debugName));
 			case INTERFACE -> block.add(Bytecode.run(returnType(), allArgs, ctx -> {
 					ctx.asm().visitMethodInsn(INVOKEINTERFACE, owner.internalName(), name(),
-							TypeUtils.instanceMethodDescriptor(returnType(), argTypes()), owner.isInterface());
+							descriptor(), owner.isInterface());
 				}, debugName));
 			case SPECIAL -> block.add(Bytecode.run(returnType(), allArgs, ctx -> {
 					ctx.asm().visitMethodInsn(INVOKESPECIAL, owner.internalName(), name(),
-							TypeUtils.instanceMethodDescriptor(returnType(), argTypes()), owner.isInterface());
+							descriptor(), owner.isInterface());
 				}, debugName));
 			case INIT -> block.add(Bytecode.run(returnType(), allArgs, ctx -> {
 					var ownerName = owner().internalName();
@@ -82,7 +115,7 @@ public final class FixedCallTarget extends CallTarget {
 					
 					ctx.stack().loadExplicit(allArgs);
 					ctx.asm().visitMethodInsn(INVOKESPECIAL, ownerName, "<init>",
-							TypeUtils.methodDescriptor(Type.VOID, argTypes()), false);
+							descriptor(), false);
 					// We consumed one of the instances and left another on the stack
 				}, Bytecode.EXPLICIT_LOAD, debugName));
 			case INIT_ARRAY -> {
@@ -113,17 +146,15 @@ public final class FixedCallTarget extends CallTarget {
 	}
 
 	public Handle toMethodHandle() {
+		var owner = owner().internalName();
+		var isInterface = owner().isInterface();
 		return switch (linkage()) {
-		case STATIC -> new Handle(H_INVOKESTATIC, owner().internalName(), name(),
-				TypeUtils.methodDescriptor(returnType(), argTypes()), owner().isInterface());
-		case VIRTUAL -> new Handle(H_INVOKEVIRTUAL, owner().internalName(), name(),
-				TypeUtils.methodDescriptor(returnType(), argTypes()), owner.isInterface());
-		case INTERFACE -> new Handle(H_INVOKEINTERFACE, owner().internalName(), name(),
-				TypeUtils.methodDescriptor(returnType(), argTypes()), owner.isInterface());
-		case SPECIAL -> new Handle(H_INVOKESPECIAL, owner().internalName(), name(),
-				TypeUtils.methodDescriptor(Type.VOID, argTypes()), false);
-		// INIT and INIT_ARRAY are code4jvm's own helpers, not supported by the JVM
-		case INIT -> throw new UnsupportedOperationException();
+		case STATIC -> new Handle(H_INVOKESTATIC, owner, name(), descriptor(), isInterface);
+		case VIRTUAL -> new Handle(H_INVOKEVIRTUAL, owner, name(), descriptor(), isInterface);
+		case INTERFACE -> new Handle(H_INVOKEINTERFACE, owner, name(), descriptor(), isInterface);
+		case SPECIAL -> new Handle(H_INVOKESPECIAL, owner, name(), descriptor(), isInterface);
+		case INIT -> new Handle(H_NEWINVOKESPECIAL, owner, name(), descriptor(), false);
+		// INIT_ARRAY is code4jvm's own helper, not supported by the JVM
 		case INIT_ARRAY -> throw new UnsupportedOperationException();
 		case DYNAMIC -> throw new AssertionError(); // Should be DynamicCallTarget
 		};
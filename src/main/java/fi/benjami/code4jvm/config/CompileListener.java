@@ -0,0 +1,90 @@
+package fi.benjami.code4jvm.config;
+
+import java.util.List;
+
+import fi.benjami.code4jvm.Type;
+import fi.benjami.code4jvm.typedef.ClassDef;
+
+/**
+ * Receives metrics about compiled classes. Listeners are set with
+ * {@link CoreOptions#COMPILE_LISTENER}.
+ * 
+ * <p>Listeners are called from the thread that called
+ * {@link ClassDef#compile(CompileOptions)}, after the class has been
+ * compiled.
+ *
+ */
+@FunctionalInterface
+public interface CompileListener {
+	
+	/**
+	 * Listener that does nothing.
+	 */
+	public static final CompileListener NONE = new CompileListener() {
+		
+		@Override
+		public void classCompiled(ClassMetrics metrics) {}
+		
+		@Override
+		public String toString() {
+			return "none"; // Shows up in CompileOptions
+		}
+	};
+	
+	/**
+	 * Time spent in compilation phases of a method, in nanoseconds. When a
+	 * method is compiled again, only emission is done again.
+	 * @param frames Building stack map frames.
+	 * @param optimization Outlining and optimizing, if they are enabled.
+	 * @param slots Allocating local variable slots.
+	 * @param emission Emitting the bytecode.
+	 */
+	public record Timings(
+			long frames,
+			long optimization,
+			long slots,
+			long emission
+	) {
+		
+		public long total() {
+			return frames + optimization + slots + emission;
+		}
+	}
+	
+	/**
+	 * Metrics of a compiled method. Abstract and native methods have no code,
+	 * so their sizes are zero.
+	 * @param name Method name.
+	 * @param descriptor Method descriptor.
+	 * @param timings Time spent compiling the method.
+	 * @param codeSize Size of the bytecode, in bytes.
+	 * @param maxStack Maximum stack size.
+	 * @param maxLocals Number of local variable slots.
+	 * @param frameCount Number of stack map frames.
+	 */
+	public record MethodMetrics(
+			String name,
+			String descriptor,
+			Timings timings,
+			int codeSize,
+			int maxStack,
+			int maxLocals,
+			int frameCount
+	) {}
+	
+	/**
+	 * Metrics of a compiled class.
+	 * @param type Type of the class.
+	 * @param nanos Time spent compiling the class, in nanoseconds.
+	 * @param classSize Size of the class file, in bytes.
+	 * @param methods Metrics of methods, in order they are in the class.
+	 */
+	public record ClassMetrics(
+			Type type,
+			long nanos,
+			int classSize,
+			List<MethodMetrics> methods
+	) {}
+	
+	void classCompiled(ClassMetrics metrics);
+}
@@ -59,7 +59,8 @@ public class CompileOptions {
 	}
 	
 	@SuppressWarnings("unchecked")
-	public <T> T get(CompileOption<T> option) {
+	public synchronized <T> T get(CompileOption<T> option) {
+		// Synchronized, because methods may be compiled concurrently
 		// To avoid computing default value multiple times, save results to our map
 		return (T) options.computeIfAbsent(option, (k) -> k.defaultValue.apply(this));
 	}
@@ -3,6 +3,7 @@ package fi.benjami.code4jvm.config;
 import java.lang.invoke.StringConcatFactory;
 
 import fi.benjami.code4jvm.Condition;
+import fi.benjami.code4jvm.statement.Bytecode;
 import fi.benjami.code4jvm.statement.StringConcat;
 
 /**
@@ -37,4 +38,42 @@ public class CoreOptions {
 			new CompileOption<Boolean>("indy-string-concat",
 					options -> options.get(JAVA_VERSION).isAtLeast(JavaVersion.JAVA_17),
 					new Requirement<>(true, JAVA_VERSION, Condition.Type.GREATER_OR_EQUAL, JavaVersion.JAVA_17));
+	
+	/**
+	 * Compiles methods of a class concurrently in the common fork-join pool.
+	 * Methods are still emitted in order they were defined in, so output is
+	 * same as without this option. This helps with classes that have many
+	 * large methods.
+	 */
+	public static final CompileOption<Boolean> PARALLEL_METHODS = new CompileOption<>("parallel-methods", false);
+	
+	/**
+	 * Enables an optimization pass that folds constant expressions, removes
+	 * unused {@link Bytecode#PURE pure} expressions and stores, threads jumps
+	 * to jumps and removes blocks that can never be entered.
+	 * 
+	 * <p>This rewrites blocks of methods in place when the class is compiled.
+	 * Afterwards, they no longer contain everything that was added to them,
+	 * so they should not be modified or compiled again with different
+	 * options. For this reason, optimization is disabled by default.
+	 */
+	public static final CompileOption<Boolean> OPTIMIZE = new CompileOption<>("optimize", false);
+	
+	/**
+	 * Maximum estimated size of method bytecode, in bytes. Sub-blocks of
+	 * larger methods are outlined to synthetic private static methods, with
+	 * local variables they need passed as arguments. Blocks that never
+	 * complete normally (e.g. error paths) are outlined first.
+	 * 
+	 * <p>HotSpot does not JIT-compile methods larger than 8000 bytes, so this
+	 * should be a bit less than that. By default (0), nothing is outlined.
+	 */
+	public static final CompileOption<Integer> OUTLINE_LIMIT = new CompileOption<>("outline-limit", 0);
+	
+	/**
+	 * Listener that receives metrics of compiled classes and their methods,
+	 * such as time spent in compilation phases and size of the bytecode.
+	 */
+	public static final CompileOption<CompileListener> COMPILE_LISTENER =
+			new CompileOption<>("compile-listener", CompileListener.NONE);
 }
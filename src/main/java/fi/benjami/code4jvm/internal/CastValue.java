@@ -2,6 +2,7 @@ package fi.benjami.code4jvm.internal;
 
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.UnaryOperator;
 
 import org.objectweb.asm.MethodVisitor;
 
@@ -196,6 +197,22 @@ public class CastValue implements Value {
 		return original.original();
 	}
 	
+	/**
+	 * Creates a cast that does same conversions as this, but to a different
+	 * value of same type.
+	 * @param mapper Function that gets the value this casts and returns
+	 * the value to cast instead.
+	 * @return New cast, or this if the value was not replaced.
+	 */
+	public CastValue map(UnaryOperator<Value> mapper) {
+		var mapped = original instanceof CastValue inner ? inner.map(mapper) : mapper.apply(original);
+		if (mapped == original) {
+			return this;
+		}
+		assert mapped.type().equals(original.type());
+		return new CastValue(mapped, type, cast);
+	}
+	
 	public void emitCast(MethodVisitor mv) {
 		if (cast == 0) {
 			return;
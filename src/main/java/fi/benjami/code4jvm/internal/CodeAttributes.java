@@ -0,0 +1,73 @@
+package fi.benjami.code4jvm.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Reads sizes from {@code Code} attributes of methods in a class file.
+ * ASM doesn't expose these once the class has been written.
+ *
+ */
+public class CodeAttributes {
+	
+	/**
+	 * Sizes of a method. Methods without code have zero for all of these.
+	 */
+	public record Sizes(
+			String name,
+			String descriptor,
+			int codeSize,
+			int maxStack,
+			int maxLocals,
+			int frameCount
+	) {}
+	
+	/**
+	 * Reads sizes of all methods in a class file.
+	 * @param code Class file.
+	 * @return Sizes of methods, by their names followed by descriptors.
+	 */
+	public static Map<String, Sizes> read(byte[] code) {
+		var reader = new ClassReader(code);
+		// Code is written again to measure it; sharing the constant pool keeps
+		// the instructions same size as in the original
+		var writer = new ClassWriter(reader, 0);
+		var methods = new HashMap<String, Sizes>();
+		reader.accept(new ClassVisitor(Opcodes.ASM9, writer) {
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+					String[] exceptions) {
+				methods.put(name + descriptor, new Sizes(name, descriptor, 0, 0, 0, 0));
+				var mv = super.visitMethod(access, name, descriptor, signature, exceptions);
+				return new MethodVisitor(Opcodes.ASM9, mv) {
+					
+					private int frameCount;
+					
+					@Override
+					public void visitFrame(int type, int numLocal, Object[] local, int numStack, Object[] stack) {
+						frameCount++;
+						super.visitFrame(type, numLocal, local, numStack, stack);
+					}
+					
+					@Override
+					public void visitMaxs(int maxStack, int maxLocals) {
+						// Label at end of code is at offset of its size
+						var end = new Label();
+						super.visitLabel(end);
+						methods.put(name + descriptor, new Sizes(name, descriptor, end.getOffset(),
+								maxStack, maxLocals, frameCount));
+						super.visitMaxs(maxStack, maxLocals);
+					}
+				};
+			}
+		}, 0);
+		return methods;
+	}
+}
@@ -21,9 +21,16 @@ public class Frame {
 	
 	private Type[] vmStack;
 	
-	private Frame(BitSet slots, Type[] vmStack) {
+	/**
+	 * Variables that are live where this frame is emitted. Dead variables
+	 * are left out of emitted frames, because their slots may be reused.
+	 */
+	private BitSet live;
+	
+	private Frame(BitSet slots, Type[] vmStack, BitSet live) {
 		this.slots = slots;
 		this.vmStack = vmStack;
+		this.live = live;
 	}
 	
 	public Frame() {
@@ -31,22 +38,37 @@ public class Frame {
 	}
 
 	public void add(LocalVar localVar) {
-		assert localVar.assignedSlot != -1 : "frame slot not allocated";
-		slots.set(localVar.assignedSlot);
+		assert localVar.frameIndex != -1 : "frame slot not allocated";
+		slots.set(localVar.frameIndex);
 	}
 	
 	public boolean has(LocalVar localVar) {
-		assert localVar.assignedSlot != -1 : "frame slot not allocated";
-		return slots.get(localVar.assignedSlot);
+		assert localVar.frameIndex != -1 : "frame slot not allocated";
+		return slots.get(localVar.frameIndex);
 	}
 	
 	public void setVmStack(Type[] stack) {
 		vmStack = stack;
 	}
 	
+	public void setLive(BitSet live) {
+		this.live = live;
+	}
+	
+	/**
+	 * Resets this frame to state it had when it was created.
+	 */
+	public void reset() {
+		slots.clear();
+		reachable = false;
+		needsBytecode = false;
+		vmStack = null;
+		live = null;
+	}
+	
 	public Frame copy() {
 		// BitSet doesn't have copy constructor :(
-		return new Frame((BitSet) slots.clone(), vmStack);
+		return new Frame((BitSet) slots.clone(), vmStack, live);
 	}
 	
 	public void mergeLeft(Frame frame) {
@@ -56,12 +78,19 @@ public class Frame {
 			throw new IllegalStateException("conflicting VM-provided stack");
 		}
 		slots.and(frame.slots);
+		if (live == null) {
+			live = frame.live;
+		} else if (frame.live != null) {
+			live = (BitSet) live.clone();
+			live.and(frame.live);
+		}
 	}
 	
 	public boolean merge(Frame frame) {
 		// Merge VM stack (usually empty)
 		if (vmStack != null) {
-			if (frame.vmStack != null) {
+			// Same stack is fine, e.g. when a frame is traced again
+			if (frame.vmStack != null && !Arrays.equals(vmStack, frame.vmStack)) {
 				throw new IllegalStateException("conflicting VM-provided stack");
 			}
 			frame.vmStack = vmStack;
@@ -103,14 +132,28 @@ public class Frame {
 	}
 	
 	public Object[] asmLocals(Method method, SlotAllocator allocator) {
-		var objs = new ArrayList<>(slots.cardinality());
+		// Frame indices of variables -> types by their slots
+		var locals = new Object[allocator.slotCount()];
+		for (int i = slots.nextSetBit(0); i >= 0; i = slots.nextSetBit(i + 1)) {
+			if (live != null && !live.get(i) && !allocator.isPinned(i)) {
+				continue; // Dead variable, its slot might be used by something else
+			}
+			var localVar = allocator.findVar(i);
+			assert locals[localVar.assignedSlot] == null : "slot shared by live variables";
+			locals[localVar.assignedSlot] = toAsmFrameType(method, localVar.type());
+		}
 		
+		var objs = new ArrayList<>(locals.length);
+		var end = locals.length;
+		while (end > 0 && locals[end - 1] == null) {
+			end--; // Trailing TOPs are not needed
+		}
 		// TODO we currently don't emit NULL, investigate if it is needed
-		for (int i = 0; i < slots.length(); i++) {
-			if (slots.get(i)) {
-				var type = allocator.findVar(i).type();
-				objs.add(toAsmFrameType(method, allocator.findVar(i).type()));
-				if (type.equals(Type.LONG) || type.equals(Type.DOUBLE)) {
+		for (int i = 0; i < end; i++) {
+			var type = locals[i];
+			if (type != null) {
+				objs.add(type);
+				if (type == Opcodes.LONG || type == Opcodes.DOUBLE) {
 					i++; // Skip next slot that is part of long/double
 				}
 			} else {
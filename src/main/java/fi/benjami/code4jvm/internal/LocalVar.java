@@ -36,9 +36,17 @@ public class LocalVar implements Variable {
 	 */
 	public boolean needsSlot;
 	
+	/**
+	 * Index of this variable in stack map {@link Frame frames}. This is
+	 * assigned by a {@link SlotAllocator slot allocator} when stack map
+	 * frames are built.
+	 */
+	public int frameIndex;
+	
 	/**
 	 * Slot this variable is assigned to. This is assigned by a
-	 * {@link slot allocator} when stack map frames are built.
+	 * {@link SlotAllocator slot allocator} after stack map frames have been
+	 * built. Variables that are never live at same time may share slots.
 	 */
 	public int assignedSlot;
 	
@@ -49,6 +57,7 @@ public class LocalVar implements Variable {
 		this.name = name;
 		// Variable name might need to be emitted in bytecode
 		this.needsSlot = name != null;
+		this.frameIndex = -1;
 		this.assignedSlot = -1;
 	}
 
@@ -1,55 +1,145 @@
 package fi.benjami.code4jvm.internal;
 
 import java.util.Arrays;
-import java.util.Objects;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
-import fi.benjami.code4jvm.Type;
+import fi.benjami.code4jvm.util.TypeUtils;
 
+/**
+ * Tracks local variables that need slots and assigns slots to them.
+ *
+ * <p>Variables are first {@link #track(LocalVar) tracked} while stack map
+ * frames are built. After that, {@link #allocateSlots(int[], int[])} assigns
+ * the actual slots; variables with disjoint live ranges may share a slot.
+ * Method arguments and {@code this} are {@link #pin(LocalVar) pinned} to
+ * the first slots and never shared.
+ *
+ */
 public class SlotAllocator {
 
-	private int nextSlot;
+	private int varCount;
 	private LocalVar[] variables;
 	
+	private int pinnedCount, pinnedSlots;
+	private int slotCount;
+	
 	public SlotAllocator() {
 		this.variables = new LocalVar[8];
 	}
 	
-	public void assignSlot(LocalVar localVar) {
+	private boolean isTracked(LocalVar localVar) {
+		var index = localVar.frameIndex;
+		return index >= 0 && index < varCount && variables[index] == localVar;
+	}
+	
+	/**
+	 * Starts tracking a variable that needs a slot, unless it is already
+	 * tracked. This assigns its {@link LocalVar#frameIndex frame index}.
+	 * @param localVar Local variable.
+	 */
+	public void track(LocalVar localVar) {
 		assert localVar.needsSlot; // Caller should check for needsSlot
-		var slot = localVar.assignedSlot;
-		if (slot == -1) {
-			slot = nextSlot;
-			localVar.assignedSlot = slot;
-			
-			if (nextSlot >= variables.length) {
-				var newArray = new LocalVar[variables.length + 8];
-				System.arraycopy(variables, 0, newArray, 0, variables.length);
-				variables = newArray;
+		if (!isTracked(localVar)) {
+			localVar.frameIndex = varCount;
+			localVar.assignedSlot = -1;
+			if (varCount >= variables.length) {
+				variables = Arrays.copyOf(variables, variables.length + 8);
+			}
+			variables[varCount++] = localVar;
+		}
+	}
+	
+	/**
+	 * Tracks a variable and immediately assigns the next slot to it. This
+	 * must be called for method arguments before any other variables are
+	 * tracked.
+	 * @param localVar Local variable.
+	 */
+	public void pin(LocalVar localVar) {
+		if (!isTracked(localVar)) {
+			assert pinnedCount == varCount : "pinned variables must be tracked first";
+			track(localVar);
+			pinnedCount++;
+			localVar.assignedSlot = slotCount;
+			slotCount += TypeUtils.slotCount(localVar.type());
+			pinnedSlots = slotCount;
+		}
+	}
+	
+	/**
+	 * Stops tracking all variables that are not pinned, e.g. when
+	 * the method has been modified after frames were built.
+	 */
+	public void reset() {
+		for (var i = pinnedCount; i < varCount; i++) {
+			variables[i].frameIndex = -1;
+			variables[i].assignedSlot = -1;
+			variables[i] = null;
+		}
+		varCount = pinnedCount;
+		slotCount = pinnedSlots;
+	}
+	
+	/**
+	 * Assigns slots to all tracked variables that are not pinned. Each
+	 * variable is live from its start point to end point (inclusive);
+	 * variables whose ranges do not overlap may share slots.
+	 * @param start Start points of variables, by frame indices.
+	 * @param end End points of variables, by frame indices.
+	 */
+	public void allocateSlots(int[] start, int[] end) {
+		var order = IntStream.range(pinnedCount, varCount)
+				.filter(i -> variables[i].assignedSlot == -1)
+				.boxed()
+				.sorted(Comparator.comparingInt(i -> start[i]))
+				.toList();
+		
+		// Linear scan over live ranges
+		var used = new BitSet();
+		var active = new PriorityQueue<Integer>(Comparator.comparingInt(i -> end[i]));
+		for (var index : order) {
+			// Free slots of variables that are no longer live
+			while (!active.isEmpty() && end[active.peek()] < start[index]) {
+				var expired = variables[active.poll()];
+				used.clear(expired.assignedSlot, expired.assignedSlot + TypeUtils.slotCount(expired.type()));
 			}
-			variables[nextSlot] = localVar;
 			
-			var type = localVar.type();
-			if (type == Type.LONG || type == Type.DOUBLE) {
-				nextSlot += 2;
-			} else {
-				nextSlot += 1;
+			// Find the first free slot (or two consecutive ones for long/double)
+			var localVar = variables[index];
+			var size = TypeUtils.slotCount(localVar.type());
+			var slot = used.nextClearBit(pinnedSlots);
+			while (size == 2 && used.get(slot + 1)) {
+				slot = used.nextClearBit(slot + 1);
 			}
+			localVar.assignedSlot = slot;
+			used.set(slot, slot + size);
+			active.add(index);
+			slotCount = Math.max(slotCount, slot + size);
 		}
 	}
 	
-	public LocalVar findVar(int slot) {
-		return variables[slot];
+	public LocalVar findVar(int frameIndex) {
+		return variables[frameIndex];
+	}
+	
+	public boolean isPinned(int frameIndex) {
+		return frameIndex < pinnedCount;
+	}
+	
+	public int varCount() {
+		return varCount;
 	}
 	
 	public int slotCount() {
-		return nextSlot + 1;
+		return slotCount;
 	}
 	
 	public Stream<LocalVar> variables() {
-		return Arrays.stream(variables)
-				.limit(nextSlot)
-				.filter(Objects::nonNull);
+		return Arrays.stream(variables).limit(varCount);
 	}
 
 }
@@ -5,6 +5,7 @@ import static org.objectweb.asm.Opcodes.POP;
 import static org.objectweb.asm.Opcodes.POP2;
 
 import fi.benjami.code4jvm.Type;
+import fi.benjami.code4jvm.Value;
 import fi.benjami.code4jvm.UninitializedValueException;
 import fi.benjami.code4jvm.block.Block;
 import fi.benjami.code4jvm.block.CompileContext;
@@ -58,7 +59,7 @@ public final class CodeNode implements Node {
 			// Ignore constants and on-stack variables
 			// Scope makes only variables that are not on stack use slots
 			if (input.original() instanceof LocalVar localVar && localVar.needsSlot) {
-				allocator.assignSlot(localVar); // Make sure slot is available
+				allocator.track(localVar); // Make sure slot is available
 				if (!frame.has(localVar)) {
 					throw new UninitializedValueException(localVar, parent, method);
 				}
@@ -68,11 +69,23 @@ public final class CodeNode implements Node {
 	
 	public void addOutput(SlotAllocator allocator, Frame frame) {
 		if (output != null && output.needsSlot) {
-			allocator.assignSlot(output); // Make sure slot is available
+			allocator.track(output); // Make sure slot is available
 			frame.add(output);
 		}
 	}
 	
+	public Bytecode bytecode() {
+		return statement;
+	}
+	
+	public Value[] inputs() {
+		return statement.inputs();
+	}
+	
+	public LocalVar output() {
+		return output;
+	}
+	
 	public Type outputType() {
 		return statement.outputType();
 	}
@@ -18,9 +18,10 @@ public class Arithmetic {
 		TypeCheck.mustEqual(lhs, rhs);
 		var type = lhs.type();
 		return block -> {
-			return block.add(Bytecode.run(type, new Value[] {lhs, rhs}, ctx -> {
+			return block.add(Bytecode.foldable(type, new Value[] {lhs, rhs}, ctx -> {
 				ctx.asm().visitInsn(type.getOpcode(IADD, ctx));
-			}, "add"));
+			}, Bytecode.PURE,
+					Folding.binary(type, Integer::sum, Long::sum, Double::sum), "add"));
 		};
 	}
 	
@@ -28,9 +29,10 @@ public class Arithmetic {
 		TypeCheck.mustEqual(lhs, rhs);
 		var type = lhs.type();
 		return block -> {
-			return block.add(Bytecode.run(type, new Value[] {lhs, rhs}, ctx -> {
+			return block.add(Bytecode.foldable(type, new Value[] {lhs, rhs}, ctx -> {
 				ctx.asm().visitInsn(type.getOpcode(ISUB, ctx));
-			}, "subtract"));
+			}, Bytecode.PURE,
+					Folding.binary(type, (a, b) -> a - b, (a, b) -> a - b, (a, b) -> a - b), "subtract"));
 		};
 	}
 	
@@ -38,9 +40,10 @@ public class Arithmetic {
 		TypeCheck.mustEqual(lhs, rhs);
 		var type = lhs.type();
 		return block -> {
-			return block.add(Bytecode.run(type, new Value[] {lhs, rhs}, ctx -> {
+			return block.add(Bytecode.foldable(type, new Value[] {lhs, rhs}, ctx -> {
 				ctx.asm().visitInsn(type.getOpcode(IMUL, ctx));
-			}, "multiply"));
+			}, Bytecode.PURE,
+					Folding.binary(type, (a, b) -> a * b, (a, b) -> a * b, (a, b) -> a * b), "multiply"));
 		};
 	}
 	
@@ -48,9 +51,10 @@ public class Arithmetic {
 		TypeCheck.mustEqual(lhs, rhs);
 		var type = lhs.type();
 		return block -> {
-			return block.add(Bytecode.run(type, new Value[] {lhs, rhs}, ctx -> {
+			return block.add(Bytecode.foldable(type, new Value[] {lhs, rhs}, ctx -> {
 				ctx.asm().visitInsn(type.getOpcode(IDIV, ctx));
-			}, "divide"));
+			}, floatFlags(type),
+					Folding.binary(type, (a, b) -> a / b, (a, b) -> a / b, (a, b) -> a / b), "divide"));
 		};
 	}
 	
@@ -58,17 +62,23 @@ public class Arithmetic {
 		TypeCheck.mustEqual(lhs, rhs);
 		var type = lhs.type();
 		return block -> {
-			return block.add(Bytecode.run(type, new Value[] {lhs, rhs}, ctx -> {
+			return block.add(Bytecode.foldable(type, new Value[] {lhs, rhs}, ctx -> {
 				ctx.asm().visitInsn(type.getOpcode(IREM, ctx));
-			}, "remainder"));
+			}, floatFlags(type),
+					Folding.binary(type, (a, b) -> a % b, (a, b) -> a % b, (a, b) -> a % b), "remainder"));
 		};
 	}
 	
 	public static Expression negate(Value value) {
 		return block -> {
-			return block.add(Bytecode.run(value.type(), new Value[] {value}, ctx -> {
+			return block.add(Bytecode.foldable(value.type(), new Value[] {value}, ctx -> {
 				ctx.asm().visitInsn(value.type().getOpcode(INEG, ctx));
-			}, "negate"));
+			}, Bytecode.PURE, Folding.unary(value.type(), a -> -a, a -> -a, a -> -a), "negate"));
 		};
 	}
+	
+	private static int floatFlags(Type type) {
+		// Integer division by zero throws, so it can't be removed even if unused
+		return type.equals(Type.FLOAT) || type.equals(Type.DOUBLE) ? Bytecode.PURE : 0;
+	}
 }
@@ -17,27 +17,27 @@ public class BitOp {
 	public static Expression shiftLeft(Value lhs, Value rhs) {
 		var type = lhs.type();
 		return block -> {
-			return block.add(Bytecode.run(type, new Value[] {lhs, rhs}, ctx -> {
+			return block.add(Bytecode.foldable(type, new Value[] {lhs, rhs}, ctx -> {
 				ctx.asm().visitInsn(type.getOpcode(ISHL, ctx));
-			}, "shift left"));
+			}, Bytecode.PURE, Folding.shift(type, (a, b) -> a << b, (a, b) -> a << b), "shift left"));
 		};
 	}
 	
 	public static Expression shiftRightSigned(Value lhs, Value rhs) {
 		var type = lhs.type();
 		return block -> {
-			return block.add(Bytecode.run(type, new Value[] {lhs, rhs}, ctx -> {
+			return block.add(Bytecode.foldable(type, new Value[] {lhs, rhs}, ctx -> {
 				ctx.asm().visitInsn(type.getOpcode(ISHR, ctx));
-			}, "shift right (signed)"));
+			}, Bytecode.PURE, Folding.shift(type, (a, b) -> a >> b, (a, b) -> a >> b), "shift right (signed)"));
 		};
 	}
 	
 	public static Expression shiftRightUnsigned(Value lhs, Value rhs) {
 		var type = lhs.type();
 		return block -> {
-			return block.add(Bytecode.run(type, new Value[] {lhs, rhs}, ctx -> {
+			return block.add(Bytecode.foldable(type, new Value[] {lhs, rhs}, ctx -> {
 				ctx.asm().visitInsn(type.getOpcode(IUSHR, ctx));
-			}, "shift right (unsigned)"));
+			}, Bytecode.PURE, Folding.shift(type, (a, b) -> a >>> b, (a, b) -> a >>> b), "shift right (unsigned)"));
 		};
 	}
 	
@@ -45,9 +45,9 @@ public class BitOp {
 		TypeCheck.mustEqual(lhs, rhs);
 		var type = lhs.type();
 		return block -> {
-			return block.add(Bytecode.run(type, new Value[] {lhs, rhs}, ctx -> {
+			return block.add(Bytecode.foldable(type, new Value[] {lhs, rhs}, ctx -> {
 				ctx.asm().visitInsn(type.getOpcode(IAND, ctx));
-			}, "bitwise and"));
+			}, Bytecode.PURE, Folding.binary(type, (a, b) -> a & b, (a, b) -> a & b, null), "bitwise and"));
 		};
 	}
 	
@@ -55,9 +55,9 @@ public class BitOp {
 		TypeCheck.mustEqual(lhs, rhs);
 		var type = lhs.type();
 		return block -> {
-			return block.add(Bytecode.run(type, new Value[] {lhs, rhs}, ctx -> {
+			return block.add(Bytecode.foldable(type, new Value[] {lhs, rhs}, ctx -> {
 				ctx.asm().visitInsn(type.getOpcode(IOR, ctx));
-			}, "bitwise or"));
+			}, Bytecode.PURE, Folding.binary(type, (a, b) -> a | b, (a, b) -> a | b, null), "bitwise or"));
 		};
 	}
 	
@@ -65,9 +65,9 @@ public class BitOp {
 		TypeCheck.mustEqual(lhs, rhs);
 		var type = lhs.type();
 		return block -> {
-			return block.add(Bytecode.run(type, new Value[] {lhs, rhs}, ctx -> {
+			return block.add(Bytecode.foldable(type, new Value[] {lhs, rhs}, ctx -> {
 				ctx.asm().visitInsn(type.getOpcode(IXOR, ctx));
-			}, "bitwise xor"));
+			}, Bytecode.PURE, Folding.binary(type, (a, b) -> a ^ b, (a, b) -> a ^ b, null), "bitwise xor"));
 		};
 	}
 	
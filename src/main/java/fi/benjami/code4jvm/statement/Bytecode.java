@@ -3,14 +3,19 @@ package fi.benjami.code4jvm.statement;
 import java.util.Arrays;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import org.objectweb.asm.ConstantDynamic;
+
+import fi.benjami.code4jvm.Constant;
 import fi.benjami.code4jvm.Expression;
 import fi.benjami.code4jvm.Type;
 import fi.benjami.code4jvm.Value;
 import fi.benjami.code4jvm.block.Block;
 import fi.benjami.code4jvm.block.CompileContext;
+import fi.benjami.code4jvm.config.CoreOptions;
 import fi.benjami.code4jvm.internal.DebugNames;
 import fi.benjami.code4jvm.internal.LocalVar;
 import fi.benjami.code4jvm.internal.MethodCompilerState;
@@ -32,8 +37,16 @@ public class Bytecode implements Expression {
 	 */
 	public static final int EXPLICIT_LOAD = 1;
 	
+	/**
+	 * Setting this flag tells the optimizer that the bytecode has no side
+	 * effects and never throws. If its output is not used, it can be removed.
+	 * 
+	 * @see CoreOptions#OPTIMIZE
+	 */
+	public static final int PURE = 2;
+	
 	public static Bytecode run(Type outputType, Value[] inputs, BiConsumer<CompileContext, Block> emitter, int flags, Object debugName) {
-		return new Bytecode(outputType, inputs, emitter, 0, debugName);
+		return new Bytecode(outputType, inputs, emitter, flags, null, debugName);
 	}
 	
 	public static Bytecode run(Type outputType, Value[] inputs, BiConsumer<CompileContext, Block> emitter, Object debugName) {
@@ -41,17 +54,37 @@ public class Bytecode implements Expression {
 	}
 	
 	public static Bytecode run(Type outputType, Value[] inputs, Consumer<CompileContext> emitter, int flags, Object debugName) {
-		return new Bytecode(outputType, inputs, (ctx, block) -> emitter.accept(ctx), flags, debugName);
+		return new Bytecode(outputType, inputs, (ctx, block) -> emitter.accept(ctx), flags, null, debugName);
 	}
 	
 	public static Bytecode run(Type outputType, Value[] inputs, Consumer<CompileContext> emitter, Object debugName) {
 		return run(outputType, inputs, emitter, 0, debugName);
 	}
 	
+	/**
+	 * Creates bytecode that the optimizer can evaluate at compile time when
+	 * all of its inputs are known constants.
+	 * @param outputType Output type.
+	 * @param inputs Inputs.
+	 * @param emitter Emitter for the bytecode.
+	 * @param flags Flags.
+	 * @param folder Function that computes the output from constant inputs,
+	 * or returns null if it cannot be computed. For bytecode that has no
+	 * output, this is whether the conditional jump it emits is taken.
+	 * @param debugName Debug name.
+	 * @return Foldable bytecode.
+	 */
+	public static Bytecode foldable(Type outputType, Value[] inputs, Consumer<CompileContext> emitter, int flags,
+			Function<Constant[], Constant> folder, Object debugName) {
+		return new Bytecode(outputType, inputs, (ctx, block) -> emitter.accept(ctx), flags, folder, debugName);
+	}
+	
 	public static Bytecode stub(Type outputType, Value[] inputs) {
-		// Flags don't currently make any sense for stub,
-		// because the only thing the stub does is load the inputs to stack
-		return new Bytecode(outputType, inputs, null, 0, "stub");
+		// The only thing the stub does is load the inputs to stack
+		// If it is a single value, it is also its output
+		Function<Constant[], Constant> folder = inputs.length == 1 && inputs[0].type().equals(outputType)
+				? args -> args[0] : null;
+		return new Bytecode(outputType, inputs, null, PURE, folder, "stub");
 	}
 	
 	public static String name(String name) {
@@ -66,13 +99,16 @@ public class Bytecode implements Expression {
 	private final Value[] inputs;
 	private final BiConsumer<CompileContext, Block> emitter;
 	private final int flags;
+	private final Function<Constant[], Constant> folder;
 	private final Object debugName;
 	
-	private Bytecode(Type outputType, Value[] inputs, BiConsumer<CompileContext, Block> emitter, int flags, Object debugName) {
+	private Bytecode(Type outputType, Value[] inputs, BiConsumer<CompileContext, Block> emitter, int flags,
+			Function<Constant[], Constant> folder, Object debugName) {
 		this.outputType = outputType;
 		this.inputs = inputs;
 		this.emitter = emitter;
 		this.flags = flags;
+		this.folder = folder;
 		this.debugName = debugName;
 	}
 	
@@ -93,6 +129,23 @@ public class Bytecode implements Expression {
 		return flags;
 	}
 	
+	/**
+	 * Evaluates this bytecode at compile time.
+	 * @param constants Values of inputs.
+	 * @return Output value, or null if this cannot be evaluated.
+	 */
+	public Constant fold(Constant[] constants) {
+		if (folder == null) {
+			return null;
+		}
+		for (var constant : constants) {
+			if (constant.value() instanceof ConstantDynamic) {
+				return null; // Not known until runtime
+			}
+		}
+		return folder.apply(constants);
+	}
+	
 	public void emitBytecode(MethodCompilerState state, Block block) {
 		// Load inputs that are not in stack (and keep track of stack size)
 		// - Inputs that are not on stack directly before this statement
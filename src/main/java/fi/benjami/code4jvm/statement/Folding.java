@@ -0,0 +1,132 @@
+package fi.benjami.code4jvm.statement;
+
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Function;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongUnaryOperator;
+
+import fi.benjami.code4jvm.Condition;
+import fi.benjami.code4jvm.Constant;
+import fi.benjami.code4jvm.Type;
+import fi.benjami.code4jvm.util.TypeUtils;
+
+/**
+ * Compile-time evaluation of built-in operations for
+ * {@link Bytecode#foldable(Type, fi.benjami.code4jvm.Value[], java.util.function.Consumer, int, Function, Object) foldable bytecode}.
+ * Folders return null when they can't evaluate the operation, e.g. when
+ * it would throw at runtime.
+ *
+ */
+final class Folding {
+	
+	/**
+	 * Interface for long shifts, where shift distance is an int.
+	 */
+	interface LongShift {
+		long apply(long value, int distance);
+	}
+	
+	static Function<Constant[], Constant> binary(Type type, IntBinaryOperator ints, LongBinaryOperator longs, DoubleBinaryOperator doubles) {
+		return args -> {
+			var lhs = args[0].value();
+			var rhs = args[1].value();
+			try {				
+				if (type.equals(Type.INT) && ints != null) {
+					return Constant.of(ints.applyAsInt((Integer) lhs, (Integer) rhs));
+				} else if (type.equals(Type.LONG) && longs != null) {
+					return Constant.of(longs.applyAsLong((Long) lhs, (Long) rhs));
+				} else if (type.equals(Type.FLOAT) && doubles != null) {
+					// Double rounding is exact for float add, subtract, multiply and divide
+					return Constant.of((float) doubles.applyAsDouble((Float) lhs, (Float) rhs));
+				} else if (type.equals(Type.DOUBLE) && doubles != null) {
+					return Constant.of(doubles.applyAsDouble((Double) lhs, (Double) rhs));
+				}
+			} catch (ArithmeticException e) {
+				// e.g. division by zero; leave it for runtime
+			}
+			return null; // Other int-like types are not truncated by JVM, don't bother
+		};
+	}
+	
+	static Function<Constant[], Constant> unary(Type type, IntUnaryOperator ints, LongUnaryOperator longs, DoubleUnaryOperator doubles) {
+		return args -> {
+			var value = args[0].value();
+			if (type.equals(Type.INT)) {
+				return Constant.of(ints.applyAsInt((Integer) value));
+			} else if (type.equals(Type.LONG)) {
+				return Constant.of(longs.applyAsLong((Long) value));
+			} else if (type.equals(Type.FLOAT)) {
+				return Constant.of((float) doubles.applyAsDouble((Float) value));
+			} else if (type.equals(Type.DOUBLE)) {
+				return Constant.of(doubles.applyAsDouble((Double) value));
+			}
+			return null;
+		};
+	}
+	
+	static Function<Constant[], Constant> shift(Type type, IntBinaryOperator ints, LongShift longs) {
+		return args -> {
+			if (!args[1].type().equals(Type.INT)) {
+				return null;
+			}
+			var distance = (Integer) args[1].value();
+			if (type.equals(Type.INT)) {
+				return Constant.of(ints.applyAsInt((Integer) args[0].value(), distance));
+			} else if (type.equals(Type.LONG)) {
+				return Constant.of(longs.apply((Long) args[0].value(), distance));
+			}
+			return null;
+		};
+	}
+	
+	/**
+	 * Creates a folder that evaluates whether a conditional jump would be
+	 * taken. Only conditions on null checks, booleans, int-like types and
+	 * longs can be folded.
+	 * @param condition Condition of the jump.
+	 * @return Folder that produces a boolean constant.
+	 */
+	static Function<Constant[], Constant> condition(Condition condition) {
+		return args -> {
+			var result = switch (condition.type()) {
+			case NULL -> args[0].value() == null;
+			case NOT_NULL -> args[0].value() != null;
+			case TRUE -> (Boolean) args[0].value();
+			case FALSE -> !(Boolean) args[0].value();
+			case EQUAL, NOT_EQUAL, GREATER_THAN, LESS_THAN, GREATER_OR_EQUAL, LESS_OR_EQUAL -> {
+				var lhs = toLong(args[0]);
+				var rhs = toLong(args[1]);
+				if (lhs == null || rhs == null) {
+					yield null;
+				}
+				yield switch (condition.type()) {
+				case EQUAL -> lhs.longValue() == rhs.longValue();
+				case NOT_EQUAL -> lhs.longValue() != rhs.longValue();
+				case GREATER_THAN -> lhs > rhs;
+				case LESS_THAN -> lhs < rhs;
+				case GREATER_OR_EQUAL -> lhs >= rhs;
+				case LESS_OR_EQUAL -> lhs <= rhs;
+				default -> throw new AssertionError();
+				};
+			}
+			default -> null;
+			};
+			return result != null ? Constant.of(result) : null;
+		};
+	}
+	
+	private static Long toLong(Constant constant) {
+		var type = constant.type();
+		if (type.equals(Type.BOOLEAN)) {
+			return (Boolean) constant.value() ? 1L : 0L;
+		} else if (type.equals(Type.CHAR)) {
+			return (long) (Character) constant.value();
+		} else if (TypeUtils.isIntLike(type) || type.equals(Type.LONG)) {
+			return ((Number) constant.value()).longValue();
+		}
+		return null;
+	}
+}
@@ -10,7 +10,7 @@ public class Instanceof {
 
 	public static Expression isInstance(Value value, Type type) {
 		return Bytecode.run(Type.BOOLEAN, new Value[] {value}, ctx -> {
-			ctx.asm().visitTypeInsn(Opcodes.INSTANCEOF, type.descriptor());
+			ctx.asm().visitTypeInsn(Opcodes.INSTANCEOF, type.isArray() ? type.descriptor() : type.internalName());
 		}, "instanceof");
 	}
 }
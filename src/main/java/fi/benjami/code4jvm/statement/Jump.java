@@ -62,7 +62,7 @@ public class Jump implements Statement {
 			var isObject = type.isObject();
 			var isBoolean = type.equals(Type.BOOLEAN);
 			var intLike = TypeUtils.isIntLike(type);
-			block.add(Bytecode.run(Type.VOID, condition.values(), ctx -> {
+			block.add(Bytecode.foldable(Type.VOID, condition.values(), ctx -> {
 				var mv = ctx.asm();
 				switch (condition.type()) {
 				case REF_EQUAL -> mv.visitJumpInsn(IF_ACMPEQ, label);
@@ -150,7 +150,7 @@ public class Jump implements Statement {
 				case ALWAYS_TRUE -> throw new AssertionError(); // Handled below
 				case ALWAYS_FALSE -> throw new AssertionError(); // Handled at start of method
 				}				
-			}, "conditional jump"));
+			}, 0, Folding.condition(condition), "conditional jump"));
 		} else {			
 			block.add(Bytecode.run(Type.VOID, new Value[0], ctx -> {
 				ctx.asm().visitJumpInsn(GOTO, label);
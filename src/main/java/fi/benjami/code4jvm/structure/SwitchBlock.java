@@ -0,0 +1,306 @@
+package fi.benjami.code4jvm.structure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import org.objectweb.asm.Label;
+
+import fi.benjami.code4jvm.Condition;
+import fi.benjami.code4jvm.Constant;
+import fi.benjami.code4jvm.Statement;
+import fi.benjami.code4jvm.Type;
+import fi.benjami.code4jvm.Value;
+import fi.benjami.code4jvm.block.Block;
+import fi.benjami.code4jvm.call.CallTarget;
+import fi.benjami.code4jvm.statement.Bytecode;
+import fi.benjami.code4jvm.statement.Jump;
+import fi.benjami.code4jvm.util.TypeUtils;
+
+/**
+ * A block that selects one of its branches based on value of a key.
+ *
+ * <p>Supported keys are int-like primitives, enums and strings. Each key
+ * of a switch block must be of same kind. Unlike in Java, branches never
+ * fall through to next branch; if no branch matches the key, the
+ * {@link #fallback(Block) fallback} is executed instead, if it exists.
+ *
+ * <p>Int keys are lowered to {@code tableswitch} when they are dense and to
+ * {@code lookupswitch} when they are sparse. Enum keys use
+ * {@link Enum#ordinal() ordinals} of the constants. String keys are first
+ * dispatched by {@link String#hashCode() hash code} and then compared with
+ * {@link String#equals(Object)}, like javac does. Enum and string keys must
+ * not be null.
+ */
+public class SwitchBlock implements Statement {
+	
+	private static final Type ENUM = Type.of(Enum.class);
+	private static final Type STRING = Type.of(String.class);
+	
+	/**
+	 * Creates a multi-way jump to existing blocks. This is a low-level
+	 * building block of switch blocks, for use cases where the target blocks
+	 * are arranged by the caller. All targets must be in same method.
+	 * @param key Int-like key.
+	 * @param targets Target blocks by keys. Same block may appear multiple
+	 * times.
+	 * @param defaultTarget Block to jump to when none of the keys match.
+	 * @param position Position of target blocks to jump to.
+	 * @return A jump statement.
+	 */
+	public static Statement jump(Value key, Map<Integer, Block> targets, Block defaultTarget, Jump.Target position) {
+		if (!TypeUtils.isIntLike(key.type())) {
+			throw new IllegalArgumentException("switch key must be int-like, got " + key.type());
+		}
+		var sorted = new TreeMap<>(targets);
+		return block -> {
+			if (sorted.isEmpty()) {
+				block.add(Jump.to(defaultTarget, position));
+				return;
+			}
+			
+			// Frame builder needs to know where we might jump; one edge per target is enough
+			var labels = new IdentityHashMap<Block, Label>();
+			for (var target : sorted.values()) {
+				labels.computeIfAbsent(target, k -> block.add(new Block.Edge(target, position, true, new Type[0])));
+			}
+			var defaultLabel = block.add(new Block.Edge(defaultTarget, position, false, new Type[0]));
+			
+			var keys = sorted.keySet().stream().mapToInt(Integer::intValue).toArray();
+			var min = keys[0];
+			var max = keys[keys.length - 1];
+			// Same heuristic that javac uses to choose between tableswitch and lookupswitch
+			var tableCost = 4 + ((long) max - min + 1) + 3 * 3;
+			var lookupCost = 3 + 2 * (long) keys.length + 3 * (long) keys.length;
+			block.add(Bytecode.run(Type.VOID, new Value[] {key}, ctx -> {
+				if (tableCost <= lookupCost) {
+					var table = new Label[max - min + 1];
+					Arrays.fill(table, defaultLabel);
+					for (var entry : sorted.entrySet()) {
+						table[entry.getKey() - min] = labels.get(entry.getValue());
+					}
+					ctx.asm().visitTableSwitchInsn(min, max, defaultLabel, table);
+				} else {
+					var lookup = new Label[keys.length];
+					for (var i = 0; i < keys.length; i++) {
+						lookup[i] = labels.get(sorted.get(keys[i]));
+					}
+					ctx.asm().visitLookupSwitchInsn(defaultLabel, keys, lookup);
+				}
+			}, "switch"));
+		};
+	}
+	
+	private enum KeyKind {
+		INT,
+		ENUM,
+		STRING
+	}
+	
+	private final Value key;
+	private final Block root;
+	private final Map<Object, Block> cases;
+	private final List<Block> branches;
+	private KeyKind kind;
+	private Block fallback;
+	
+	private boolean emitted;
+	
+	public SwitchBlock(Value key) {
+		this.key = key;
+		this.root = Block.create("switch block root");
+		this.cases = new LinkedHashMap<>();
+		this.branches = new ArrayList<>();
+	}
+	
+	private void ensureNotEmitted() {
+		if (emitted) {
+			throw new IllegalStateException("cannot modify SwitchBlock after it has been emitted once");
+		}
+	}
+	
+	private void addKeys(KeyKind keyKind, Object[] keys, Block block) {
+		ensureNotEmitted();
+		if (kind == null) {
+			kind = keyKind;
+		} else if (kind != keyKind) {
+			throw new IllegalArgumentException("cannot mix " + kind + " and " + keyKind + " keys");
+		}
+		for (var k : keys) {
+			if (cases.putIfAbsent(k, block) != null) {
+				throw new IllegalArgumentException("duplicate key " + k);
+			}
+		}
+		branches.add(block);
+	}
+	
+	/**
+	 * Appends a branch with int keys to this switch block.
+	 * @param block Block to execute when key matches any of the given keys.
+	 * @param keys Keys.
+	 * @return This block for chaining.
+	 */
+	public SwitchBlock branch(Block block, int... keys) {
+		if (!TypeUtils.isIntLike(key.type())) {
+			throw new IllegalArgumentException("int keys require int-like value, got " + key.type());
+		}
+		addKeys(KeyKind.INT, Arrays.stream(keys).boxed().toArray(), block);
+		return this;
+	}
+	
+	/**
+	 * Appends a branch with enum keys to this switch block.
+	 * @param block Block to execute when key matches any of the given keys.
+	 * @param keys Enum constants.
+	 * @return This block for chaining.
+	 */
+	public SwitchBlock branch(Block block, Enum<?>... keys) {
+		addKeys(KeyKind.ENUM, keys, block);
+		return this;
+	}
+	
+	/**
+	 * Appends a branch with string keys to this switch block.
+	 * @param block Block to execute when key matches any of the given keys.
+	 * @param keys String keys.
+	 * @return This block for chaining.
+	 */
+	public SwitchBlock branch(Block block, String... keys) {
+		if (!key.type().equals(STRING)) {
+			throw new IllegalArgumentException("string keys require string value, got " + key.type());
+		}
+		addKeys(KeyKind.STRING, keys, block);
+		return this;
+	}
+	
+	/**
+	 * Appends a branch with an int key to this switch block.
+	 * @param value Key.
+	 * @param callback Callback that receives the block to execute when
+	 * key matches.
+	 * @return This block for chaining.
+	 */
+	public SwitchBlock branch(int value, Consumer<Block> callback) {
+		var block = Block.create("case " + value);
+		callback.accept(block);
+		return branch(block, value);
+	}
+	
+	/**
+	 * Appends a branch with an enum key to this switch block.
+	 * @param value Key.
+	 * @param callback Callback that receives the block to execute when
+	 * key matches.
+	 * @return This block for chaining.
+	 */
+	public SwitchBlock branch(Enum<?> value, Consumer<Block> callback) {
+		var block = Block.create("case " + value);
+		callback.accept(block);
+		return branch(block, value);
+	}
+	
+	/**
+	 * Appends a branch with a string key to this switch block.
+	 * @param value Key.
+	 * @param callback Callback that receives the block to execute when
+	 * key matches.
+	 * @return This block for chaining.
+	 */
+	public SwitchBlock branch(String value, Consumer<Block> callback) {
+		var block = Block.create("case " + value);
+		callback.accept(block);
+		return branch(block, value);
+	}
+	
+	/**
+	 * Sets the fallback block of this switch block. It is executed if
+	 * none of the branches match.
+	 *
+	 * @param block The fallback block.
+	 * @return This block for chaining.
+	 */
+	public SwitchBlock fallback(Block block) {
+		ensureNotEmitted();
+		if (fallback != null) {
+			throw new IllegalStateException("fallback already set");
+		}
+		fallback = block;
+		return this;
+	}
+	
+	/**
+	 * Sets the fallback block of this switch block. It is executed if
+	 * none of the branches match.
+	 *
+	 * @param callback Callback that receives the empty fallback block.
+	 * @return This block for chaining.
+	 */
+	public SwitchBlock fallback(Consumer<Block> callback) {
+		var block = Block.create("default");
+		callback.accept(block);
+		fallback(block);
+		return this;
+	}
+	
+	@Override
+	public void emitVoid(Block block) {
+		if (emitted) {
+			throw new IllegalStateException("not allowed to emit same block twice");
+		}
+		emitted = true;
+		
+		// Without fallback, unmatched keys jump to an empty block at the end
+		var defaultTarget = fallback != null ? fallback : Block.create("no match");
+		if (kind == KeyKind.STRING) {
+			emitStringSwitch(defaultTarget);
+		} else if (kind != null) {
+			var intKey = kind == KeyKind.ENUM
+					? root.add(CallTarget.virtualMethod(ENUM, Type.INT, "ordinal").withCapturedArgs(key).call())
+					: key;
+			var targets = new TreeMap<Integer, Block>();
+			for (var entry : cases.entrySet()) {
+				var k = entry.getKey();
+				targets.put(k instanceof Enum<?> e ? e.ordinal() : (Integer) k, entry.getValue());
+			}
+			root.add(jump(intKey, targets, defaultTarget, Jump.Target.START));
+		} // else: no branches, so only fallback can be executed
+		
+		for (var branch : branches) {
+			root.add(branch);
+			// Skip rest of branches and fallback
+			root.add(Jump.to(root, Jump.Target.END));
+		}
+		root.add(defaultTarget);
+		block.add(root);
+	}
+	
+	private void emitStringSwitch(Block defaultTarget) {
+		// Group keys by their hash codes
+		var buckets = new TreeMap<Integer, List<String>>();
+		for (var k : cases.keySet()) {
+			buckets.computeIfAbsent(k.hashCode(), h -> new ArrayList<>()).add((String) k);
+		}
+		
+		var hashTargets = new TreeMap<Integer, Block>();
+		for (var entry : buckets.entrySet()) {
+			var bucket = Block.create("hash " + entry.getKey());
+			for (var str : entry.getValue()) {
+				bucket.add(Jump.to(cases.get(str), Jump.Target.START, Condition.equal(key, Constant.of(str))));
+			}
+			// Hash collision with string that is not a key
+			bucket.add(Jump.to(defaultTarget, Jump.Target.START));
+			hashTargets.put(entry.getKey(), bucket);
+		}
+		
+		var hash = root.add(CallTarget.virtualMethod(STRING, Type.INT, "hashCode").withCapturedArgs(key).call());
+		root.add(jump(hash, hashTargets, defaultTarget, Jump.Target.START));
+		for (var bucket : hashTargets.values()) {
+			root.add(bucket);
+		}
+	}
+}
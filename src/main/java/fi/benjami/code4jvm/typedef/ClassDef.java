@@ -11,9 +11,12 @@ import java.util.Map;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
 import org.objectweb.asm.util.CheckClassAdapter;
 
 import fi.benjami.code4jvm.flag.MethodFlag;
+import fi.benjami.code4jvm.internal.CodeAttributes;
 import fi.benjami.code4jvm.internal.DebugOptions;
 import fi.benjami.code4jvm.statement.Return;
 import fi.benjami.code4jvm.CompileHook;
@@ -22,11 +25,13 @@ import fi.benjami.code4jvm.Type;
 import fi.benjami.code4jvm.block.AbstractMethod;
 import fi.benjami.code4jvm.block.Method;
 import fi.benjami.code4jvm.block.MethodCompiler;
+import fi.benjami.code4jvm.config.CompileListener;
 import fi.benjami.code4jvm.config.CompileOptions;
 import fi.benjami.code4jvm.config.CoreOptions;
 import fi.benjami.code4jvm.flag.Access;
 import fi.benjami.code4jvm.flag.ClassFlag;
 import fi.benjami.code4jvm.flag.FieldFlag;
+import fi.benjami.code4jvm.util.TypeUtils;
 
 public class ClassDef implements CompileHook.Carrier {
 	
@@ -289,6 +294,9 @@ public class ClassDef implements CompileHook.Carrier {
 	}
 	
 	public byte[] compile(CompileOptions opts) {
+		var listener = opts.get(CoreOptions.COMPILE_LISTENER);
+		var start = listener != CompileListener.NONE ? System.nanoTime() : 0;
+		
 		// Execute compile hooks that were added directly to this class
 		if (hooks != null) {
 			for (var hook : hooks.values()) {
@@ -335,13 +343,58 @@ public class ClassDef implements CompileHook.Carrier {
 		// Compile hooks may add methods, so we can't use iterator or foreach (ConcurrentModificationException)
 		// Since nothing is ever removed from list, this should be safe
 		var methodCompiler = new MethodCompiler(this, cv, opts);
-		for (var i = 0; i < methods.size(); i++) {
-			var method = methods.get(i);
-			methodCompiler.compile(method, accessTable.get(method));
+		if (opts.get(CoreOptions.PARALLEL_METHODS)) {
+			compileParallel(cv, methodCompiler, opts);
+		} else {
+			for (var i = 0; i < methods.size(); i++) {
+				var method = methods.get(i);
+				methodCompiler.compile(method, accessTable.get(method));
+			}
 		}
 		
 		cv.visitEnd();
-		return writer.toByteArray();
+		var code = writer.toByteArray();
+		
+		if (listener != CompileListener.NONE) {
+			reportMetrics(listener, methodCompiler, code, System.nanoTime() - start);
+		}
+		return code;
+	}
+	
+	private void reportMetrics(CompileListener listener, MethodCompiler methodCompiler, byte[] code, long nanos) {
+		var sizes = CodeAttributes.read(code);
+		var methodMetrics = new ArrayList<CompileListener.MethodMetrics>(methods.size());
+		for (var method : methods) {
+			var descriptor = TypeUtils.methodDescriptor(method.returnType(), method.argumentTypes().toArray(Type[]::new));
+			var size = sizes.get(method.name() + descriptor);
+			methodMetrics.add(new CompileListener.MethodMetrics(method.name(), descriptor,
+					methodCompiler.takeTimings(method), size.codeSize(), size.maxStack(),
+					size.maxLocals(), size.frameCount()));
+		}
+		listener.classCompiled(new CompileListener.ClassMetrics(type, nanos, code.length, methodMetrics));
+	}
+	
+	private void compileParallel(ClassVisitor cv, MethodCompiler methodCompiler, CompileOptions opts) {
+		// Let hooks add their methods before compiling anything, so that all
+		// methods are known and class definition is not modified concurrently
+		for (var i = 0; i < methods.size(); i++) {
+			methodCompiler.runCompileHooks(methods.get(i));
+		}
+		
+		// Compile each method to a tree and then emit them in definition order
+		// This keeps the output deterministic regardless of scheduling
+		var compiled = methods.parallelStream()
+				.map(method -> compileToTree(method, opts))
+				.toList();
+		for (var node : compiled) {
+			node.accept(cv);
+		}
+	}
+	
+	private MethodNode compileToTree(Method method, CompileOptions opts) {
+		var node = new ClassNode();
+		new MethodCompiler(this, node, opts).compile(method, accessTable.get(method));
+		return node.methods.get(0);
 	}
 	
 	private static class CheckAdapterContainer {
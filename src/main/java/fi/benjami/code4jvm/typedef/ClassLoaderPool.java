@@ -0,0 +1,208 @@
+package fi.benjami.code4jvm.typedef;
+
+import java.lang.ref.Cleaner;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fi.benjami.code4jvm.config.CompileOptions;
+
+/**
+ * Defines generated classes with a pool of class loaders. Each loader
+ * defines up to a fixed number of classes, which avoids the cost of
+ * creating a class loader for every class.
+ *
+ * <p>Classes are unloaded when their class loader is, which happens only
+ * after all classes defined by it are unreachable. A larger loader size
+ * makes defining classes cheaper, but delays unloading.
+ *
+ * <p>Each loader can contain only one class with a given name. When a
+ * class is defined with a name that all open loaders already have, a new
+ * loader is created for it.
+ *
+ */
+public class ClassLoaderPool {
+	
+	/**
+	 * Statistics of a class loader pool.
+	 * @param loadersCreated Number of class loaders created.
+	 * @param loadersUnloaded Number of class loaders that have been
+	 * garbage collected.
+	 * @param classesDefined Number of classes defined.
+	 * @param classesUnloaded Number of classes whose loaders have been
+	 * garbage collected.
+	 */
+	public record Stats(
+			long loadersCreated,
+			long loadersUnloaded,
+			long classesDefined,
+			long classesUnloaded
+	) {}
+	
+	private static final Cleaner CLEANER = Cleaner.create();
+	
+	/**
+	 * Maximum number of loaders that may receive more classes.
+	 */
+	private static final int MAX_OPEN = 4;
+	
+	private static class PooledLoader extends ClassLoader {
+		
+		private final Map<String, byte[]> pending;
+		
+		/**
+		 * Number of classes in this loader, including pending ones.
+		 * Shared with cleanup action.
+		 */
+		private final AtomicLong classCount;
+		
+		PooledLoader(ClassLoader parent, AtomicLong classCount) {
+			super(parent);
+			this.pending = new HashMap<>();
+			this.classCount = classCount;
+		}
+		
+		synchronized boolean has(String name) {
+			return pending.containsKey(name) || findLoadedClass(name) != null;
+		}
+		
+		synchronized void add(String name, byte[] code) {
+			pending.put(name, code);
+			classCount.incrementAndGet();
+		}
+		
+		synchronized Class<?> define(String name) {
+			var loaded = findLoadedClass(name);
+			if (loaded != null) {
+				return loaded; // Another class in same batch referred to it
+			}
+			var code = pending.remove(name);
+			return defineClass(name, code, 0, code.length);
+		}
+		
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			// Called when classes of a batch refer to each other
+			var code = pending.remove(name);
+			if (code == null) {
+				throw new ClassNotFoundException(name);
+			}
+			return defineClass(name, code, 0, code.length);
+		}
+	}
+	
+	private final ClassLoader parent;
+	private final int loaderSize;
+	
+	/**
+	 * Loaders that have space for more classes.
+	 */
+	private final List<PooledLoader> openLoaders;
+	
+	private final AtomicLong loadersCreated, loadersUnloaded, classesDefined, classesUnloaded;
+	
+	/**
+	 * Creates a new class loader pool.
+	 * @param parent Parent of all class loaders, used to find classes that
+	 * generated classes refer to.
+	 * @param loaderSize Maximum number of classes per loader.
+	 */
+	public ClassLoaderPool(ClassLoader parent, int loaderSize) {
+		if (loaderSize < 1) {
+			throw new IllegalArgumentException("loaders must have space for at least one class");
+		}
+		this.parent = parent;
+		this.loaderSize = loaderSize;
+		this.openLoaders = new ArrayList<>(MAX_OPEN);
+		this.loadersCreated = new AtomicLong();
+		this.loadersUnloaded = new AtomicLong();
+		this.classesDefined = new AtomicLong();
+		this.classesUnloaded = new AtomicLong();
+	}
+	
+	/**
+	 * Defines a class.
+	 * @param name Binary name of the class.
+	 * @param code Class file.
+	 * @return Defined class.
+	 */
+	public Class<?> define(String name, byte[] code) {
+		return defineAll(Map.of(name, code)).get(name);
+	}
+	
+	/**
+	 * Compiles and defines a batch of classes in same class loader. The
+	 * classes may refer to each other.
+	 * @param opts Compile options.
+	 * @param defs Class definitions.
+	 * @return Defined classes, in same order as definitions.
+	 */
+	public List<Class<?>> defineAll(CompileOptions opts, ClassDef... defs) {
+		var classes = new LinkedHashMap<String, byte[]>();
+		for (var def : defs) {
+			classes.put(def.type().name(), def.compile(opts));
+		}
+		return List.copyOf(defineAll(classes).values());
+	}
+	
+	/**
+	 * Defines a batch of classes in same class loader. The classes may refer
+	 * to each other.
+	 * @param classes Class files by binary names of classes.
+	 * @return Defined classes by their names, in iteration order of given map.
+	 */
+	public synchronized Map<String, Class<?>> defineAll(Map<String, byte[]> classes) {
+		if (classes.size() > loaderSize) {
+			throw new IllegalArgumentException("batch of " + classes.size() + " classes exceeds loader size " + loaderSize);
+		}
+		var loader = findLoader(classes);
+		for (var entry : classes.entrySet()) {
+			loader.add(entry.getKey(), entry.getValue());
+		}
+		if (loader.classCount.get() == loaderSize) {
+			openLoaders.remove(loader); // Full, let it be unloaded when possible
+		}
+		
+		var defined = new LinkedHashMap<String, Class<?>>();
+		for (var name : classes.keySet()) {
+			defined.put(name, loader.define(name));
+		}
+		classesDefined.addAndGet(classes.size());
+		return defined;
+	}
+	
+	private PooledLoader findLoader(Map<String, byte[]> classes) {
+		for (var loader : openLoaders) {
+			if (loader.classCount.get() + classes.size() <= loaderSize
+					&& classes.keySet().stream().noneMatch(loader::has)) {
+				return loader;
+			}
+		}
+		
+		// No suitable loader, create a new one
+		if (openLoaders.size() == MAX_OPEN) {
+			openLoaders.remove(0);
+		}
+		var classCount = new AtomicLong();
+		var loader = new PooledLoader(parent, classCount);
+		loadersCreated.incrementAndGet();
+		// Cleanup action must not refer to the loader, or it would never be unloaded
+		CLEANER.register(loader, () -> {
+			loadersUnloaded.incrementAndGet();
+			classesUnloaded.addAndGet(classCount.get());
+		});
+		openLoaders.add(loader);
+		return loader;
+	}
+	
+	/**
+	 * Gets statistics of this pool.
+	 * @return Current statistics.
+	 */
+	public Stats stats() {
+		return new Stats(loadersCreated.get(), loadersUnloaded.get(), classesDefined.get(), classesUnloaded.get());
+	}
+}
@@ -0,0 +1,82 @@
+package fi.benjami.code4jvm.util;
+
+import java.lang.invoke.MethodHandles;
+
+import fi.benjami.code4jvm.Constant;
+import fi.benjami.code4jvm.Type;
+import fi.benjami.code4jvm.call.CallTarget;
+import fi.benjami.code4jvm.call.FixedCallTarget;
+import fi.benjami.code4jvm.flag.Access;
+import fi.benjami.code4jvm.typedef.ClassDef;
+
+/**
+ * Class data for classes that are not hidden.
+ * {@link MethodHandles#classDataAt(java.lang.invoke.MethodHandles.Lookup, String, Class, int) JDK class data}
+ * is only available for hidden classes. This stores the data in an array in
+ * a static field instead.
+ * 
+ * <p>Data is accessed with {@link #constantAt(Type, int) dynamic constants}.
+ * The array is read only when a constant is resolved, so after that the
+ * JVM can treat the value as a true constant.
+ *
+ */
+public class StaticClassData {
+	
+	/**
+	 * Name of the static field that holds class data.
+	 */
+	public static final String FIELD_NAME = "$CLASS_DATA";
+	
+	private static final FixedCallTarget BOOTSTRAP = CallTarget.staticMethod(Type.of(StaticClassData.class),
+			Type.OBJECT, "bootstrapAt", Type.of(MethodHandles.Lookup.class), Type.STRING, Type.of(Class.class), Type.INT);
+	
+	/**
+	 * Adds the class data field to the given class definition.
+	 * @param def Class definition.
+	 */
+	public static void addField(ClassDef def) {
+		def.addStaticField(Access.PUBLIC, Type.OBJECT.array(1), FIELD_NAME);
+	}
+	
+	/**
+	 * Creates a dynamic constant that loads an element of class data.
+	 * @param type Type of the element.
+	 * @param index Index of the element in class data.
+	 * @return A dynamic constant.
+	 */
+	public static Constant constantAt(Type type, int index) {
+		return Constant.dynamic(type, BOOTSTRAP, Constant.of(index));
+	}
+	
+	/**
+	 * Sets class data of a loaded class. This must be done before any of the
+	 * {@link #constantAt(Type, int) constants} are resolved.
+	 * @param lookup Lookup that has access to the class data field.
+	 * @param type Class that has {@link #addField(ClassDef) the field}.
+	 * @param data Class data.
+	 */
+	public static void set(MethodHandles.Lookup lookup, Class<?> type, Object[] data) {
+		try {
+			lookup.findStaticSetter(type, FIELD_NAME, Object[].class).invokeExact(data);
+		} catch (Throwable e) {
+			throw new IllegalArgumentException("failed to set class data of " + type, e);
+		}
+	}
+	
+	/**
+	 * Bootstrap method for {@link #constantAt(Type, int)}.
+	 */
+	public static Object bootstrapAt(MethodHandles.Lookup lookup, String ignoredName, Class<?> type, int index) {
+		Object[] array;
+		try {
+			array = (Object[]) lookup.findStaticGetter(lookup.lookupClass(), FIELD_NAME, Object[].class)
+				.invokeExact();
+		} catch (Throwable e) {
+			throw new AssertionError(e);
+		}
+		if (array == null) {
+			throw new IllegalStateException("class data of " + lookup.lookupClass() + " has not been set");
+		}
+		return array[index];
+	}
+}
@@ -97,6 +97,35 @@ public class BlockTest {
 		assertEquals(100, instance.getAsInt());
 	}
 	
+	@ParameterizedTest
+	@OptionsSource
+	public void deepNesting(CompileOptions opts) throws Throwable {
+		var def = ClassDef.create("fi.benjami.code4jvm.test.DeepNesting", Access.PUBLIC);
+		def.addEmptyConstructor(Access.PUBLIC);
+		def.interfaces(Type.of(IntSupplier.class));
+		
+		var method = def.addMethod(Type.INT, "getAsInt", Access.PUBLIC);
+		var counter = Variable.create(Type.INT);
+		method.add(counter.set(Constant.of(0)));
+		var outer = Block.create();
+		var block = outer;
+		for (var i = 0; i < 1000; i++) {
+			var inner = Block.create();
+			inner.add(counter.set(inner.add(Arithmetic.add(counter, Constant.of(1)))));
+			// Jump over rest of nesting from the middle
+			if (i == 500) {
+				inner.add(Jump.to(outer, Jump.Target.END));
+			}
+			block.add(inner);
+			block = inner;
+		}
+		method.add(outer);
+		method.add(Return.value(counter));
+		
+		var instance = (IntSupplier) TestUtils.newInstance(def, opts);
+		assertEquals(501, instance.getAsInt());
+	}
+	
 	@ParameterizedTest
 	@OptionsSource
 	public void blockAddedTwice(CompileOptions opts) throws Throwable {
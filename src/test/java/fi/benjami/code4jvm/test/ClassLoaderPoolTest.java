@@ -0,0 +1,77 @@
+package fi.benjami.code4jvm.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.function.IntSupplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import fi.benjami.code4jvm.Constant;
+import fi.benjami.code4jvm.Type;
+import fi.benjami.code4jvm.config.CompileOptions;
+import fi.benjami.code4jvm.flag.Access;
+import fi.benjami.code4jvm.statement.Return;
+import fi.benjami.code4jvm.typedef.ClassDef;
+import fi.benjami.code4jvm.typedef.ClassLoaderPool;
+
+@ExtendWith({EnableDebugExtension.class})
+public class ClassLoaderPoolTest {
+	
+	private static ClassDef constant(String name, int value) {
+		var def = ClassDef.create(name, Access.PUBLIC);
+		def.addEmptyConstructor(Access.PUBLIC);
+		def.interfaces(Type.of(IntSupplier.class));
+		var method = def.addMethod(Type.INT, "getAsInt", Access.PUBLIC);
+		method.add(Return.value(Constant.of(value)));
+		return def;
+	}
+	
+	private static int call(Class<?> type) throws ReflectiveOperationException {
+		return ((IntSupplier) type.getConstructor().newInstance()).getAsInt();
+	}
+	
+	@Test
+	public void sharedLoaders() throws Throwable {
+		var pool = new ClassLoaderPool(getClass().getClassLoader(), 2);
+		var a = pool.define("pool.A", constant("pool.A", 1).compile());
+		var b = pool.define("pool.B", constant("pool.B", 2).compile());
+		assertSame(a.getClassLoader(), b.getClassLoader());
+		assertEquals(1, call(a));
+		assertEquals(2, call(b));
+		
+		// Previous loader is full
+		var c = pool.define("pool.C", constant("pool.C", 3).compile());
+		assertNotSame(a.getClassLoader(), c.getClassLoader());
+		
+		// Names must be unique within loader
+		var c2 = pool.define("pool.C", constant("pool.C", 4).compile());
+		assertNotSame(c.getClassLoader(), c2.getClassLoader());
+		assertEquals(3, call(c));
+		assertEquals(4, call(c2));
+		assertEquals(new ClassLoaderPool.Stats(3, 0, 4, 0), pool.stats());
+	}
+	
+	@Test
+	public void batch() throws Throwable {
+		var pool = new ClassLoaderPool(getClass().getClassLoader(), 8);
+		var first = constant("pool.First", 1);
+		
+		// Second class refers to the first one
+		var second = ClassDef.create("pool.Second", Access.PUBLIC);
+		second.addEmptyConstructor(Access.PUBLIC);
+		second.interfaces(Type.of(IntSupplier.class));
+		var method = second.addMethod(Type.INT, "getAsInt", Access.PUBLIC);
+		var instance = method.add(first.type().newInstance());
+		method.add(Return.value(method.add(instance.callVirtual(Type.INT, "getAsInt"))));
+		
+		// Define the referring class first
+		var classes = pool.defineAll(CompileOptions.DEFAULT, second, first);
+		assertEquals(2, classes.size());
+		assertEquals("pool.Second", classes.get(0).getName());
+		assertSame(classes.get(0).getClassLoader(), classes.get(1).getClassLoader());
+		assertEquals(1, call(classes.get(0)));
+	}
+}
@@ -0,0 +1,143 @@
+package fi.benjami.code4jvm.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FrameNode;
+
+import fi.benjami.code4jvm.Condition;
+import fi.benjami.code4jvm.Constant;
+import fi.benjami.code4jvm.Type;
+import fi.benjami.code4jvm.block.Block;
+import fi.benjami.code4jvm.config.CompileListener;
+import fi.benjami.code4jvm.config.CompileOptions;
+import fi.benjami.code4jvm.config.CoreOptions;
+import fi.benjami.code4jvm.flag.Access;
+import fi.benjami.code4jvm.statement.Arithmetic;
+import fi.benjami.code4jvm.statement.Jump;
+import fi.benjami.code4jvm.statement.Return;
+import fi.benjami.code4jvm.typedef.ClassDef;
+
+@ExtendWith({EnableDebugExtension.class})
+public class CompileListenerTest {
+	
+	private static ClassDef createClass() {
+		var def = ClassDef.create("fi.benjami.code4jvm.test.ListenedClass", Access.PUBLIC);
+		var one = def.addStaticMethod(Type.INT, "one", Access.PUBLIC);
+		one.add(Return.value(Constant.of(1)));
+		
+		var abs = def.addStaticMethod(Type.LONG, "abs", Access.PUBLIC);
+		var arg = abs.arg(Type.LONG);
+		var negate = Block.create();
+		negate.add(Jump.to(negate, Jump.Target.END, Condition.lessThan(arg, Constant.of(0L)).not()));
+		negate.add(Return.value(negate.add(Arithmetic.negate(arg))));
+		abs.add(negate);
+		abs.add(Return.value(arg));
+		return def;
+	}
+	
+	private static List<CompileListener.ClassMetrics> compile(ClassDef def, CompileOptions.Builder builder, List<byte[]> output) {
+		var metrics = new ArrayList<CompileListener.ClassMetrics>();
+		output.add(def.compile(builder.set(CoreOptions.COMPILE_LISTENER, metrics::add).build()));
+		return metrics;
+	}
+	
+	@Test
+	public void methodSizes() {
+		var output = new ArrayList<byte[]>();
+		var all = compile(createClass(), CompileOptions.builder(), output);
+		assertEquals(1, all.size());
+		var metrics = all.get(0);
+		var code = output.get(0);
+		assertEquals("fi.benjami.code4jvm.test.ListenedClass", metrics.type().name());
+		assertEquals(code.length, metrics.classSize());
+		assertTrue(metrics.nanos() > 0);
+		
+		var node = new ClassNode();
+		new ClassReader(code).accept(node, ClassReader.EXPAND_FRAMES);
+		assertEquals(node.methods.size(), metrics.methods().size());
+		for (var i = 0; i < node.methods.size(); i++) {
+			var expected = node.methods.get(i);
+			var actual = metrics.methods().get(i);
+			assertEquals(expected.name, actual.name());
+			assertEquals(expected.desc, actual.descriptor());
+			assertEquals(expected.maxStack, actual.maxStack());
+			assertEquals(expected.maxLocals, actual.maxLocals());
+			var frames = 0;
+			for (var insn : expected.instructions) {
+				if (insn instanceof FrameNode) {
+					frames++;
+				}
+			}
+			assertEquals(frames, actual.frameCount());
+			assertNotNull(actual.timings());
+			assertTrue(actual.timings().emission() > 0);
+		}
+		
+		// ICONST_1, IRETURN
+		assertEquals(2, metrics.methods().get(0).codeSize());
+		assertEquals(1, metrics.methods().get(1).frameCount());
+	}
+	
+	@Test
+	public void parallelMetrics() {
+		var sequential = compile(createClass(), CompileOptions.builder(), new ArrayList<>()).get(0);
+		var parallel = compile(createClass(), CompileOptions.builder()
+				.set(CoreOptions.PARALLEL_METHODS, true), new ArrayList<>()).get(0);
+		assertEquals(sequential.classSize(), parallel.classSize());
+		assertEquals(sequential.methods().size(), parallel.methods().size());
+		for (var i = 0; i < sequential.methods().size(); i++) {
+			var expected = sequential.methods().get(i);
+			var actual = parallel.methods().get(i);
+			assertEquals(expected.codeSize(), actual.codeSize());
+			assertEquals(expected.maxStack(), actual.maxStack());
+			assertEquals(expected.frameCount(), actual.frameCount());
+		}
+	}
+	
+	@Test
+	public void recompileTimings() {
+		var def = createClass();
+		var first = compile(def, CompileOptions.builder(), new ArrayList<>()).get(0);
+		var second = compile(def, CompileOptions.builder(), new ArrayList<>()).get(0);
+		assertTrue(first.methods().get(1).timings().frames() > 0);
+		// Frames are built only once
+		assertEquals(0, second.methods().get(1).timings().frames());
+		assertEquals(first.methods().get(1).codeSize(), second.methods().get(1).codeSize());
+	}
+	
+	@Test
+	public void overloads() {
+		var def = ClassDef.create("fi.benjami.code4jvm.test.ListenedOverloads", Access.PUBLIC);
+		var withArg = def.addStaticMethod(Type.INT, "get", Access.PUBLIC);
+		var arg = withArg.arg(Type.INT);
+		withArg.add(Return.value(withArg.add(Arithmetic.add(arg, Constant.of(1000)))));
+		var noArgs = def.addStaticMethod(Type.INT, "get", Access.PUBLIC);
+		noArgs.add(Return.value(Constant.of(1)));
+		
+		var metrics = compile(def, CompileOptions.builder(), new ArrayList<>()).get(0);
+		assertEquals("(I)I", metrics.methods().get(0).descriptor());
+		// ILOAD_0, SIPUSH 1000, IADD, IRETURN
+		assertEquals(6, metrics.methods().get(0).codeSize());
+		assertEquals("()I", metrics.methods().get(1).descriptor());
+		assertEquals(2, metrics.methods().get(1).codeSize());
+	}
+	
+	@Test
+	public void timedOnlyWithListener() {
+		var def = createClass();
+		def.compile(CompileOptions.builder().build());
+		var metrics = compile(def, CompileOptions.builder(), new ArrayList<>()).get(0);
+		// Frames were built without a listener, so that was not measured
+		assertEquals(0, metrics.methods().get(1).timings().frames());
+		assertTrue(metrics.methods().get(1).timings().emission() > 0);
+	}
+}
@@ -1,6 +1,7 @@
 package fi.benjami.code4jvm.test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
@@ -20,6 +21,7 @@ import fi.benjami.code4jvm.config.JavaVersion;
 import fi.benjami.code4jvm.flag.Access;
 import fi.benjami.code4jvm.statement.Return;
 import fi.benjami.code4jvm.typedef.ClassDef;
+import fi.benjami.code4jvm.util.StaticClassData;
 
 @ExtendWith({EnableDebugExtension.class})
 public class ConstantDynamicTest {
@@ -61,4 +63,31 @@ public class ConstantDynamicTest {
 		var instance = (IntSupplier) TestUtils.newInstance(LOOKUP.defineHiddenClassWithClassData(code, classData, true));
 		assertEquals(10, instance.getAsInt());
 	}
+	
+	@ParameterizedTest
+	@OptionsSource
+	public void staticClassData(CompileOptions opts) throws Throwable {
+		Assumptions.assumeTrue(opts.get(CoreOptions.JAVA_VERSION).isAtLeast(JavaVersion.JAVA_11));
+		
+		var def = ClassDef.create("fi.benjami.code4jvm.test.ConstantStaticClassData", Access.PUBLIC);
+		def.addEmptyConstructor(Access.PUBLIC);
+		def.interfaces(Type.of(Supplier.class), Type.of(IntSupplier.class));
+		StaticClassData.addField(def);
+		
+		var get = def.addMethod(Type.OBJECT, "get", Access.PUBLIC);
+		get.add(Return.value(StaticClassData.constantAt(Type.of(List.class), 1)));
+		var getAsInt = def.addMethod(Type.INT, "getAsInt", Access.PUBLIC);
+		getAsInt.add(Return.value(StaticClassData.constantAt(Type.INT, 0)));
+		
+		var list = new ArrayList<>();
+		var lookup = LOOKUP.defineHiddenClass(def.compile(opts), true);
+		StaticClassData.set(lookup, lookup.lookupClass(), new Object[] {42, list});
+		var instance = TestUtils.newInstance(lookup);
+		assertEquals(42, ((IntSupplier) instance).getAsInt());
+		assertSame(list, ((Supplier<?>) instance).get());
+		
+		// Constants are resolved only once
+		StaticClassData.set(lookup, lookup.lookupClass(), new Object[] {0, null});
+		assertEquals(42, ((IntSupplier) instance).getAsInt());
+	}
 }
@@ -0,0 +1,178 @@
+package fi.benjami.code4jvm.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+
+import fi.benjami.code4jvm.Condition;
+import fi.benjami.code4jvm.Constant;
+import fi.benjami.code4jvm.Type;
+import fi.benjami.code4jvm.Variable;
+import fi.benjami.code4jvm.block.Block;
+import fi.benjami.code4jvm.call.CallTarget;
+import fi.benjami.code4jvm.config.CompileOptions;
+import fi.benjami.code4jvm.config.CoreOptions;
+import fi.benjami.code4jvm.flag.Access;
+import fi.benjami.code4jvm.statement.Arithmetic;
+import fi.benjami.code4jvm.statement.BitOp;
+import fi.benjami.code4jvm.statement.Jump;
+import fi.benjami.code4jvm.statement.Return;
+import fi.benjami.code4jvm.typedef.ClassDef;
+
+@ExtendWith({EnableDebugExtension.class})
+public class OptimizerTest {
+	
+	private static final CompileOptions OPTIMIZE = CompileOptions.builder()
+			.set(CoreOptions.OPTIMIZE, true)
+			.build();
+	
+	private static List<AbstractInsnNode> instructions(byte[] code, String name) {
+		var node = new ClassNode();
+		new ClassReader(code).accept(node, 0);
+		var method = node.methods.stream().filter(m -> m.name.equals(name)).findAny().orElseThrow();
+		var result = new ArrayList<AbstractInsnNode>();
+		for (var insn : method.instructions) {
+			if (insn.getOpcode() != -1) {
+				result.add(insn); // Skip labels, frames and line numbers
+			}
+		}
+		return result;
+	}
+	
+	private static boolean hasOpcode(List<AbstractInsnNode> instructions, int opcode) {
+		return instructions.stream().anyMatch(insn -> insn.getOpcode() == opcode);
+	}
+	
+	@Test
+	public void foldConstants() throws Throwable {
+		var def = ClassDef.create("fi.benjami.code4jvm.test.FoldConstants", Access.PUBLIC);
+		var method = def.addStaticMethod(Type.INT, "get", Access.PUBLIC);
+		var sum = method.add(Arithmetic.add(Constant.of(1), Constant.of(2)));
+		var product = method.add(Arithmetic.multiply(sum, Constant.of(3)));
+		var shifted = method.add(BitOp.shiftLeft(product, Constant.of(2)));
+		method.add(Return.value(method.add(BitOp.or(shifted, Constant.of(1)))));
+		
+		var code = def.compile(OPTIMIZE);
+		var insns = instructions(code, "get");
+		assertEquals(2, insns.size()); // Constant and return
+		assertEquals(37, (int) load(code).findStatic(load(code).lookupClass(), "get", MethodType.methodType(int.class)).invokeExact());
+	}
+	
+	@Test
+	public void divisionByZero() throws Throwable {
+		var def = ClassDef.create("fi.benjami.code4jvm.test.FoldDivisionByZero", Access.PUBLIC);
+		var method = def.addStaticMethod(Type.INT, "get", Access.PUBLIC);
+		// Not foldable, and not removable even though result is not used
+		method.add(Arithmetic.divide(Constant.of(1), Constant.of(0)));
+		method.add(Return.value(Constant.of(0)));
+		
+		var lookup = load(def.compile(OPTIMIZE));
+		var handle = lookup.findStatic(lookup.lookupClass(), "get", MethodType.methodType(int.class));
+		assertThrows(ArithmeticException.class, () -> {
+			var result = (int) handle.invokeExact();
+		});
+	}
+	
+	@Test
+	public void removeDeadCode() throws Throwable {
+		var def = ClassDef.create("fi.benjami.code4jvm.test.RemoveDeadCode", Access.PUBLIC);
+		var method = def.addStaticMethod(Type.INT, "get", Access.PUBLIC);
+		var arg = method.arg(Type.INT);
+		// Unused pure expression and a variable that is never read
+		method.add(Arithmetic.multiply(arg, arg));
+		var unused = Variable.create(Type.INT);
+		method.add(unused.set(method.add(Arithmetic.add(arg, Constant.of(1)))));
+		// Calls have side effects, so they must stay
+		method.add(CallTarget.staticMethod(Type.of(System.class), Type.LONG, "nanoTime").call());
+		method.add(Return.value(arg));
+		
+		var code = def.compile(OPTIMIZE);
+		var insns = instructions(code, "get");
+		assertFalse(hasOpcode(insns, Opcodes.IMUL));
+		assertFalse(hasOpcode(insns, Opcodes.IADD));
+		assertFalse(hasOpcode(insns, Opcodes.ISTORE));
+		assertTrue(hasOpcode(insns, Opcodes.INVOKESTATIC));
+		var lookup = load(code);
+		assertEquals(5, (int) lookup.findStatic(lookup.lookupClass(), "get", MethodType.methodType(int.class, int.class)).invokeExact(5));
+	}
+	
+	@Test
+	public void foldBranches() throws Throwable {
+		var def = ClassDef.create("fi.benjami.code4jvm.test.FoldBranches", Access.PUBLIC);
+		var method = def.addStaticMethod(Type.STRING, "get", Access.PUBLIC);
+		var otherwise = Block.create();
+		otherwise.add(Return.value(Constant.of("not taken")));
+		var taken = Block.create();
+		taken.add(Return.value(Constant.of("taken")));
+		
+		var value = method.add(Arithmetic.subtract(Constant.of(10L), Constant.of(3L)));
+		method.add(Jump.to(taken, Jump.Target.START, Condition.greaterThan(value, Constant.of(5L))));
+		method.add(otherwise);
+		method.add(taken);
+		
+		var code = def.compile(OPTIMIZE);
+		var insns = instructions(code, "get");
+		// Only the taken branch remains
+		assertEquals(2, insns.size());
+		var lookup = load(code);
+		assertEquals("taken", (String) lookup.findStatic(lookup.lookupClass(), "get", MethodType.methodType(String.class)).invokeExact());
+	}
+	
+	@Test
+	public void threadJumps() throws Throwable {
+		var def = ClassDef.create("fi.benjami.code4jvm.test.ThreadJumps", Access.PUBLIC);
+		var method = def.addStaticMethod(Type.INT, "get", Access.PUBLIC);
+		var arg = method.arg(Type.INT);
+		var result = Variable.create(Type.INT);
+		var end = Block.create();
+		end.add(Return.value(result));
+		var hop = Block.create();
+		hop.add(Jump.to(end, Jump.Target.START));
+		var skipped = Block.create();
+		skipped.add(result.set(Constant.of(42)));
+		
+		method.add(result.set(Constant.of(0)));
+		method.add(Jump.to(hop, Jump.Target.START, Condition.equal(arg, Constant.of(0))));
+		method.add(result.set(Constant.of(1)));
+		method.add(hop);
+		method.add(skipped); // Never entered
+		method.add(end);
+		
+		var code = def.compile(OPTIMIZE);
+		var insns = instructions(code, "get");
+		for (var insn : insns) {
+			if (insn instanceof JumpInsnNode jump) {
+				// Target of a jump should not be another jump
+				var target = jump.label.getNext();
+				while (target.getOpcode() == -1) {
+					target = target.getNext();
+				}
+				assertFalse(target.getOpcode() == Opcodes.GOTO);
+			}
+		}
+		assertFalse(insns.stream().anyMatch(insn -> insn.getOpcode() == Opcodes.BIPUSH));
+		
+		var lookup = load(code);
+		var handle = lookup.findStatic(lookup.lookupClass(), "get", MethodType.methodType(int.class, int.class));
+		assertEquals(0, (int) handle.invokeExact(0));
+		assertEquals(1, (int) handle.invokeExact(5));
+	}
+	
+	private static MethodHandles.Lookup load(byte[] code) throws IllegalAccessException {
+		return MethodHandles.lookup().defineHiddenClass(code, true);
+	}
+}
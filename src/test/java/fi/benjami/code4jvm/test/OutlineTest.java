@@ -0,0 +1,189 @@
+package fi.benjami.code4jvm.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+
+import fi.benjami.code4jvm.Condition;
+import fi.benjami.code4jvm.Constant;
+import fi.benjami.code4jvm.Type;
+import fi.benjami.code4jvm.Value;
+import fi.benjami.code4jvm.Variable;
+import fi.benjami.code4jvm.block.Block;
+import fi.benjami.code4jvm.call.CallTarget;
+import fi.benjami.code4jvm.config.CompileOptions;
+import fi.benjami.code4jvm.config.CoreOptions;
+import fi.benjami.code4jvm.flag.Access;
+import fi.benjami.code4jvm.statement.Arithmetic;
+import fi.benjami.code4jvm.statement.ArrayAccess;
+import fi.benjami.code4jvm.statement.Jump;
+import fi.benjami.code4jvm.statement.Return;
+import fi.benjami.code4jvm.statement.StringConcat;
+import fi.benjami.code4jvm.statement.Throw;
+import fi.benjami.code4jvm.typedef.ClassDef;
+
+@ExtendWith({EnableDebugExtension.class})
+public class OutlineTest {
+	
+	private static final CompileOptions OUTLINE = CompileOptions.builder()
+			.set(CoreOptions.OUTLINE_LIMIT, 100)
+			.build();
+	
+	private static final Type ISE = Type.of(IllegalStateException.class);
+	
+	/**
+	 * Adds a long computation to the block.
+	 */
+	private static Value scramble(Block block, Value value, int seed) {
+		for (var i = 0; i < 8; i++) {
+			value = block.add(Arithmetic.multiply(value, Constant.of(31)));
+			value = block.add(Arithmetic.add(value, Constant.of(seed + i)));
+		}
+		return value;
+	}
+	
+	private static int scramble(int value, int seed) {
+		for (var i = 0; i < 8; i++) {
+			value = value * 31 + seed + i;
+		}
+		return value;
+	}
+	
+	private static ClassDef errorPaths(String name) {
+		var def = ClassDef.create("fi.benjami.code4jvm.test." + name, Access.PUBLIC);
+		var method = def.addStaticMethod(Type.INT, "get", Access.PUBLIC);
+		var arg = method.arg(Type.INT);
+		for (var i = 0; i < 10; i++) {
+			var check = Block.create();
+			check.add(Jump.to(check, Jump.Target.END, Condition.equal(arg, Constant.of(i)).not()));
+			var error = Block.create("error");
+			var message = error.add(StringConcat.concat(Constant.of("bad value: "), scramble(error, arg, i)));
+			error.add(Throw.value(error.add(CallTarget.constructor(ISE, Type.STRING).call(message))));
+			check.add(error);
+			method.add(check);
+		}
+		method.add(Return.value(method.add(Arithmetic.multiply(arg, Constant.of(2)))));
+		return def;
+	}
+	
+	private static ClassNode read(byte[] code) {
+		var node = new ClassNode();
+		new ClassReader(code).accept(node, 0);
+		return node;
+	}
+	
+	@Test
+	public void errorPaths() throws Throwable {
+		var code = errorPaths("OutlineErrorPaths").compile(OUTLINE);
+		var node = read(code);
+		var outlined = node.methods.stream().filter(m -> m.name.startsWith("outlined$")).toList();
+		assertFalse(outlined.isEmpty());
+		for (var method : outlined) {
+			assertTrue((method.access & Opcodes.ACC_PRIVATE) != 0);
+			assertTrue((method.access & Opcodes.ACC_STATIC) != 0);
+			assertTrue((method.access & Opcodes.ACC_SYNTHETIC) != 0);
+		}
+		var get = node.methods.stream().filter(m -> m.name.equals("get")).findAny().orElseThrow();
+		var original = read(errorPaths("OutlineErrorPaths").compile()).methods.get(0);
+		assertTrue(get.instructions.size() < original.instructions.size());
+		
+		var lookup = MethodHandles.lookup().defineHiddenClass(code, true);
+		var handle = lookup.findStatic(lookup.lookupClass(), "get", MethodType.methodType(int.class, int.class));
+		assertEquals(84, (int) handle.invokeExact(42));
+		for (var i = 0; i < 10; i++) {
+			var value = i;
+			var e = assertThrows(IllegalStateException.class, () -> {
+				var result = (int) handle.invokeExact(value);
+			});
+			assertEquals("bad value: " + scramble(i, i), e.getMessage());
+		}
+	}
+	
+	@Test
+	public void stableOutput() throws Throwable {
+		var lookup = TestUtils.loadHidden(errorPaths("OutlineStable"), OUTLINE);
+		var handle = lookup.findStatic(lookup.lookupClass(), "get", MethodType.methodType(int.class, int.class));
+		assertEquals(84, (int) handle.invokeExact(42));
+		
+		var parallel = CompileOptions.builder()
+				.set(CoreOptions.OUTLINE_LIMIT, 100)
+				.set(CoreOptions.PARALLEL_METHODS, true)
+				.build();
+		assertArrayEquals(errorPaths("OutlineStable").compile(OUTLINE), errorPaths("OutlineStable").compile(parallel));
+	}
+	
+	private static ClassDef fill(String name) {
+		var def = ClassDef.create("fi.benjami.code4jvm.test." + name, Access.PUBLIC);
+		var method = def.addStaticMethod(Type.VOID, "fill", Access.PUBLIC);
+		var array = method.arg(Type.INT.array(1));
+		var seed = method.add(ArrayAccess.get(array, Constant.of(0)));
+		for (var i = 1; i < 8; i++) {
+			// Completes normally and uses local variables from outside
+			var block = Block.create();
+			var copy = Variable.create(Type.INT);
+			block.add(copy.set(seed));
+			block.add(ArrayAccess.set(array, Constant.of(i), scramble(block, copy, i)));
+			method.add(block);
+		}
+		method.add(Return.nothing());
+		return def;
+	}
+	
+	@Test
+	public void sharedVariables() throws Throwable {
+		var def = fill("OutlineSharedVariables");
+		var lookup = TestUtils.loadHidden(def, OUTLINE);
+		var node = read(def.compile(OUTLINE));
+		assertTrue(node.methods.stream().anyMatch(m -> m.name.startsWith("outlined$")));
+		var handle = lookup.findStatic(lookup.lookupClass(), "fill", MethodType.methodType(void.class, int[].class));
+		var values = new int[] {7, 0, 0, 0, 0, 0, 0, 0};
+		handle.invokeExact(values);
+		for (var i = 1; i < 8; i++) {
+			assertEquals(scramble(7, i), values[i]);
+		}
+		
+		// Outlined methods have their own variables, so they can be compiled in any order
+		var parallel = CompileOptions.builder()
+				.set(CoreOptions.OUTLINE_LIMIT, 100)
+				.set(CoreOptions.PARALLEL_METHODS, true)
+				.build();
+		assertArrayEquals(fill("OutlineSharedVariables").compile(OUTLINE), fill("OutlineSharedVariables").compile(parallel));
+	}
+	
+	@Test
+	public void returnFromOutlined() throws Throwable {
+		var def = ClassDef.create("fi.benjami.code4jvm.test.OutlineReturn", Access.PUBLIC);
+		var method = def.addStaticMethod(Type.INT, "get", Access.PUBLIC);
+		var value = method.arg(Type.INT);
+		
+		// Block never completes normally, but it may return
+		var body = Block.create("cold");
+		var positive = Block.create("positive");
+		positive.add(Jump.to(positive, Jump.Target.END, Condition.lessThan(value, Constant.of(0))));
+		positive.add(Return.value(scramble(positive, value, 1)));
+		body.add(positive);
+		body.add(Throw.value(body.add(CallTarget.constructor(ISE, Type.STRING).call(
+				body.add(StringConcat.concat(Constant.of("negative: "), scramble(body, value, 2)))))));
+		method.add(body);
+		
+		var lookup = TestUtils.loadHidden(def, OUTLINE);
+		assertTrue(read(def.compile(OUTLINE)).methods.stream().anyMatch(m -> m.name.startsWith("outlined$")));
+		var handle = lookup.findStatic(lookup.lookupClass(), "get", MethodType.methodType(int.class, int.class));
+		assertEquals(scramble(5, 1), (int) handle.invokeExact(5));
+		var e = assertThrows(IllegalStateException.class, () -> {
+			var result = (int) handle.invokeExact(-5);
+		});
+		assertEquals("negative: " + scramble(-5, 2), e.getMessage());
+	}
+}
@@ -0,0 +1,64 @@
+package fi.benjami.code4jvm.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import fi.benjami.code4jvm.Constant;
+import fi.benjami.code4jvm.Type;
+import fi.benjami.code4jvm.block.Lambda;
+import fi.benjami.code4jvm.config.CompileOptions;
+import fi.benjami.code4jvm.config.CoreOptions;
+import fi.benjami.code4jvm.flag.Access;
+import fi.benjami.code4jvm.statement.Arithmetic;
+import fi.benjami.code4jvm.statement.Return;
+import fi.benjami.code4jvm.typedef.ClassDef;
+
+@ExtendWith({EnableDebugExtension.class})
+public class ParallelCompileTest {
+	
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	
+	private static final int METHOD_COUNT = 64;
+	
+	private ClassDef createClass() {
+		var def = ClassDef.create("fi.benjami.code4jvm.test.ParallelMethods", Access.PUBLIC);
+		for (var i = 0; i < METHOD_COUNT; i++) {
+			var method = def.addStaticMethod(Type.INT, "get" + i, Access.PUBLIC);
+			var arg = method.arg(Type.INT);
+			
+			// Lambdas add methods to class during compilation
+			var inner = Lambda.create(Type.INT);
+			var innerArg = inner.arg(Type.INT);
+			inner.add(Return.value(inner.add(Arithmetic.multiply(innerArg, Constant.of(2)))));
+			var outer = Lambda.create(Type.INT);
+			var outerArg = outer.arg(Type.INT);
+			outer.add(Return.value(outer.add(inner.call(outerArg))));
+			
+			var doubled = method.add(outer.call(arg));
+			method.add(Return.value(method.add(Arithmetic.add(doubled, Constant.of(i)))));
+		}
+		return def;
+	}
+	
+	@Test
+	public void sameAsSequential() throws Throwable {
+		var parallel = CompileOptions.builder().set(CoreOptions.PARALLEL_METHODS, true).build();
+		var code = createClass().compile(parallel);
+		assertArrayEquals(createClass().compile(), code);
+		// Compiling same definition again must not add methods twice
+		var def = createClass();
+		assertArrayEquals(def.compile(parallel), def.compile(parallel));
+		
+		var lookup = LOOKUP.defineHiddenClass(code, true);
+		for (var i = 0; i < METHOD_COUNT; i++) {
+			var handle = lookup.findStatic(lookup.lookupClass(), "get" + i, MethodType.methodType(int.class, int.class));
+			assertEquals(10 + i, (int) handle.invokeExact(5));
+		}
+	}
+}
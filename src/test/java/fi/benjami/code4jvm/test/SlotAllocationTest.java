@@ -0,0 +1,90 @@
+package fi.benjami.code4jvm.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import fi.benjami.code4jvm.Constant;
+import fi.benjami.code4jvm.Type;
+import fi.benjami.code4jvm.Variable;
+import fi.benjami.code4jvm.config.CompileOptions;
+import fi.benjami.code4jvm.flag.Access;
+import fi.benjami.code4jvm.statement.Arithmetic;
+import fi.benjami.code4jvm.statement.Return;
+import fi.benjami.code4jvm.typedef.ClassDef;
+
+@ExtendWith({EnableDebugExtension.class})
+public class SlotAllocationTest {
+	
+	private static HashMap<String, Integer> maxLocals(byte[] code) {
+		var result = new HashMap<String, Integer>();
+		new ClassReader(code).accept(new ClassVisitor(Opcodes.ASM9) {
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+				return new MethodVisitor(Opcodes.ASM9) {
+					@Override
+					public void visitMaxs(int maxStack, int maxLocals) {
+						result.put(name, maxLocals);
+					}
+				};
+			}
+		}, 0);
+		return result;
+	}
+	
+	@ParameterizedTest
+	@OptionsSource
+	public void reuseSlots(CompileOptions opts) throws Throwable {
+		var def = ClassDef.create("fi.benjami.code4jvm.test.ReuseSlots", Access.PUBLIC);
+		def.addEmptyConstructor(Access.PUBLIC);
+		def.interfaces(Type.of(IntSupplier.class), Type.of(LongSupplier.class));
+		
+		{
+			var method = def.addMethod(Type.INT, "getAsInt", Access.PUBLIC);
+			var sum = Variable.create(Type.INT);
+			method.add(sum.set(Constant.of(0)));
+			for (var i = 1; i <= 20; i++) {
+				// Each variable is dead after it has been added to sum
+				var value = Variable.create(Type.INT);
+				method.add(value.set(Constant.of(i)));
+				method.add(sum.set(method.add(Arithmetic.add(sum, value))));
+			}
+			method.add(Return.value(sum));
+		}
+		{
+			var method = def.addMethod(Type.LONG, "getAsLong", Access.PUBLIC);
+			var sum = Variable.create(Type.LONG);
+			method.add(sum.set(Constant.of(0L)));
+			for (var i = 1; i <= 20; i++) {
+				// Mix slot sizes
+				var value = Variable.create(Type.LONG);
+				method.add(value.set(Constant.of((long) i)));
+				var small = Variable.create(Type.INT);
+				method.add(small.set(Constant.of(i)));
+				method.add(sum.set(method.add(Arithmetic.add(sum, value))));
+				method.add(sum.set(method.add(Arithmetic.add(sum, small.cast(Type.LONG)))));
+			}
+			method.add(Return.value(sum));
+		}
+		
+		var locals = maxLocals(def.compile(opts));
+		// this, sum and a value
+		assertTrue(locals.get("getAsInt") <= 3, "too many locals: " + locals.get("getAsInt"));
+		// this, sum (2 slots), value (2 slots) and a small value
+		assertTrue(locals.get("getAsLong") <= 6, "too many locals: " + locals.get("getAsLong"));
+		
+		var instance = TestUtils.newInstance(def, opts);
+		assertEquals(210, ((IntSupplier) instance).getAsInt());
+		assertEquals(420, ((LongSupplier) instance).getAsLong());
+	}
+}
@@ -0,0 +1,168 @@
+package fi.benjami.code4jvm.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.lang.invoke.MethodType;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+
+import fi.benjami.code4jvm.Constant;
+import fi.benjami.code4jvm.Type;
+import fi.benjami.code4jvm.Variable;
+import fi.benjami.code4jvm.block.Block;
+import fi.benjami.code4jvm.config.CompileOptions;
+import fi.benjami.code4jvm.flag.Access;
+import fi.benjami.code4jvm.statement.Return;
+import fi.benjami.code4jvm.structure.SwitchBlock;
+import fi.benjami.code4jvm.typedef.ClassDef;
+
+@ExtendWith({EnableDebugExtension.class})
+public class SwitchBlockTest {
+	
+	private static Block returns(String value) {
+		var block = Block.create();
+		block.add(Return.value(Constant.of(value)));
+		return block;
+	}
+	
+	@ParameterizedTest
+	@OptionsSource
+	public void denseInt(CompileOptions opts) throws Throwable {
+		var def = ClassDef.create("fi.benjami.code4jvm.test.DenseIntSwitch", Access.PUBLIC);
+		def.addEmptyConstructor(Access.PUBLIC);
+		def.interfaces(Type.of(IntFunction.class));
+		
+		var method = def.addMethod(Type.OBJECT, "apply", Access.PUBLIC);
+		var arg = method.arg(Type.INT);
+		method.add(new SwitchBlock(arg)
+				.branch(returns("zero"), 0)
+				.branch(returns("small"), 1, 2, 3)
+				.branch(returns("five"), 5)
+				.fallback(returns("other")));
+		
+		@SuppressWarnings("unchecked")
+		var instance = (IntFunction<Object>) TestUtils.newInstance(def, opts);
+		assertEquals("zero", instance.apply(0));
+		assertEquals("small", instance.apply(1));
+		assertEquals("small", instance.apply(3));
+		assertEquals("other", instance.apply(4));
+		assertEquals("five", instance.apply(5));
+		assertEquals("other", instance.apply(-1));
+		assertEquals("other", instance.apply(Integer.MAX_VALUE));
+	}
+	
+	@ParameterizedTest
+	@OptionsSource
+	public void sparseInt(CompileOptions opts) throws Throwable {
+		var def = ClassDef.create("fi.benjami.code4jvm.test.SparseIntSwitch", Access.PUBLIC);
+		def.addEmptyConstructor(Access.PUBLIC);
+		def.interfaces(Type.of(IntFunction.class));
+		
+		var method = def.addMethod(Type.OBJECT, "apply", Access.PUBLIC);
+		var arg = method.arg(Type.INT);
+		method.add(new SwitchBlock(arg)
+				.branch(Integer.MIN_VALUE, block -> block.add(Return.value(Constant.of("min"))))
+				.branch(-1000, block -> block.add(Return.value(Constant.of("negative"))))
+				.branch(1_000_000, block -> block.add(Return.value(Constant.of("million"))))
+				.branch(Integer.MAX_VALUE, block -> block.add(Return.value(Constant.of("max")))));
+		method.add(Return.value(Constant.of("no match")));
+		
+		@SuppressWarnings("unchecked")
+		var instance = (IntFunction<Object>) TestUtils.newInstance(def, opts);
+		assertEquals("min", instance.apply(Integer.MIN_VALUE));
+		assertEquals("negative", instance.apply(-1000));
+		assertEquals("million", instance.apply(1_000_000));
+		assertEquals("max", instance.apply(Integer.MAX_VALUE));
+		assertEquals("no match", instance.apply(0));
+	}
+	
+	@ParameterizedTest
+	@OptionsSource
+	public void noFallthrough(CompileOptions opts) throws Throwable {
+		var def = ClassDef.create("fi.benjami.code4jvm.test.SwitchNoFallthrough", Access.PUBLIC);
+		def.addEmptyConstructor(Access.PUBLIC);
+		def.interfaces(Type.of(IntFunction.class));
+		
+		var method = def.addMethod(Type.OBJECT, "apply", Access.PUBLIC);
+		var arg = method.arg(Type.INT);
+		var result = Variable.create(Type.of(String.class));
+		method.add(result.set(Constant.of("initial")));
+		method.add(new SwitchBlock(arg)
+				.branch(1, block -> block.add(result.set(Constant.of("one"))))
+				.branch(2, block -> block.add(result.set(Constant.of("two"))))
+				.fallback(block -> block.add(result.set(Constant.of("other")))));
+		method.add(Return.value(result));
+		
+		@SuppressWarnings("unchecked")
+		var instance = (IntFunction<Object>) TestUtils.newInstance(def, opts);
+		assertEquals("one", instance.apply(1));
+		assertEquals("two", instance.apply(2));
+		assertEquals("other", instance.apply(3));
+	}
+	
+	@ParameterizedTest
+	@OptionsSource
+	public void stringKeys(CompileOptions opts) throws Throwable {
+		var def = ClassDef.create("fi.benjami.code4jvm.test.StringSwitch", Access.PUBLIC);
+		def.addEmptyConstructor(Access.PUBLIC);
+		def.interfaces(Type.of(Function.class));
+		
+		var method = def.addMethod(Type.OBJECT, "apply", Access.PUBLIC);
+		var arg = method.arg(Type.OBJECT);
+		var str = arg.cast(Type.of(String.class));
+		// "Aa" and "BB" have same hash code
+		method.add(new SwitchBlock(str)
+				.branch(returns("greeting"), "hello", "hi")
+				.branch(returns("first"), "Aa")
+				.branch(returns("second"), "BB")
+				.fallback(returns("unknown")));
+		
+		@SuppressWarnings("unchecked")
+		var instance = (Function<Object, Object>) TestUtils.newInstance(def, opts);
+		assertEquals("greeting", instance.apply("hello"));
+		assertEquals("greeting", instance.apply("hi"));
+		assertEquals("first", instance.apply("Aa"));
+		assertEquals("second", instance.apply("BB"));
+		assertEquals("unknown", instance.apply("C#")); // Same hash as Aa, BB
+		assertEquals("unknown", instance.apply("bye"));
+		assertThrows(NullPointerException.class, () -> instance.apply(null));
+	}
+	
+	@ParameterizedTest
+	@OptionsSource
+	public void enumKeys(CompileOptions opts) throws Throwable {
+		var def = ClassDef.create("fi.benjami.code4jvm.test.EnumSwitch", Access.PUBLIC);
+		var stateType = Type.of(Thread.State.class);
+		
+		var method = def.addStaticMethod(Type.OBJECT, "describe", Access.PUBLIC);
+		var arg = method.arg(stateType);
+		method.add(new SwitchBlock(arg)
+				.branch(returns("running"), Thread.State.RUNNABLE)
+				.branch(returns("waiting"), Thread.State.WAITING, Thread.State.TIMED_WAITING)
+				.fallback(returns("other")));
+		
+		var lookup = TestUtils.loadHidden(def, opts);
+		var handle = lookup.findStatic(lookup.lookupClass(), "describe", MethodType.methodType(Object.class, Thread.State.class));
+		assertEquals("running", handle.invoke(Thread.State.RUNNABLE));
+		assertEquals("waiting", handle.invoke(Thread.State.WAITING));
+		assertEquals("waiting", handle.invoke(Thread.State.TIMED_WAITING));
+		assertEquals("other", handle.invoke(Thread.State.NEW));
+	}
+	
+	@Test
+	public void invalidKeys() {
+		var intKey = Variable.create(Type.INT);
+		assertThrows(IllegalArgumentException.class, () -> new SwitchBlock(intKey).branch(Block.create(), "foo"));
+		assertThrows(IllegalArgumentException.class, () -> new SwitchBlock(intKey)
+				.branch(Block.create(), 1)
+				.branch(Block.create(), 1));
+		assertThrows(IllegalArgumentException.class, () -> new SwitchBlock(intKey)
+				.branch(Block.create(), 1)
+				.branch(Block.create(), Thread.State.NEW));
+	}
+}
@@ -1,11 +1,19 @@
 package fi.benjami.code4jvm.test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.objectweb.asm.Opcodes;
 
 import fi.benjami.code4jvm.Type;
+import fi.benjami.code4jvm.call.CallTarget;
 
 @ExtendWith({EnableDebugExtension.class})
 public class TypeTest {
@@ -36,6 +44,41 @@ public class TypeTest {
 		}
 	}
 	
+	@Test
+	public void interned() {
+		assertSame(Type.of(List.class), Type.of(List.class));
+		assertSame(Type.of("foo.Bar", false), Type.of("foo.Bar", false));
+		assertSame(Type.of(String[].class), Type.STRING.array(1));
+		assertEquals(Type.of(String[][].class), Type.STRING.array(2));
+		
+		// Same name, but different kind
+		var iface = Type.of("foo.Baz", true);
+		assertTrue(iface.isInterface());
+		assertFalse(Type.of("foo.Baz", false).isInterface());
+		assertSame(iface, Type.of("foo.Baz", true));
+	}
+	
+	@Test
+	public void methodHandles() {
+		var hashCode = Type.STRING.virtualMethod(Type.INT, "hashCode").toMethodHandle();
+		assertEquals(Opcodes.H_INVOKEVIRTUAL, hashCode.getTag());
+		assertEquals("()I", hashCode.getDesc());
+		
+		var get = Type.of(List.class).virtualMethod(Type.OBJECT, "get", Type.INT).toMethodHandle();
+		assertEquals(Opcodes.H_INVOKEINTERFACE, get.getTag());
+		assertEquals("(I)Ljava/lang/Object;", get.getDesc());
+		assertTrue(get.isInterface());
+		
+		var init = CallTarget.constructor(Type.STRING, Type.STRING).toMethodHandle();
+		assertEquals(Opcodes.H_NEWINVOKESPECIAL, init.getTag());
+		assertEquals("<init>", init.getName());
+		assertEquals("(Ljava/lang/String;)V", init.getDesc());
+		
+		var array = CallTarget.constructor(Type.INT.array(1), Type.INT);
+		assertThrows(UnsupportedOperationException.class, array::descriptor);
+		assertThrows(UnsupportedOperationException.class, array::toMethodHandle);
+	}
+	
 	// TODO better test coverage
 
 }
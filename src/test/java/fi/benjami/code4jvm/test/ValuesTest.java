@@ -1,7 +1,9 @@
 package fi.benjami.code4jvm.test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
@@ -23,6 +25,7 @@ import fi.benjami.code4jvm.config.CompileOptions;
 import fi.benjami.code4jvm.config.CoreOptions;
 import fi.benjami.code4jvm.flag.Access;
 import fi.benjami.code4jvm.statement.Arithmetic;
+import fi.benjami.code4jvm.statement.Instanceof;
 import fi.benjami.code4jvm.statement.Jump;
 import fi.benjami.code4jvm.statement.Return;
 import fi.benjami.code4jvm.typedef.ClassDef;
@@ -168,6 +171,37 @@ public class ValuesTest {
 		assertThrows(ClassCastException.class, () -> instance.object2String(new Object()));
 	}
 	
+	interface InstanceChecks {
+		boolean isString(Object value);
+		boolean isStringArray(Object value);
+	}
+	
+	@ParameterizedTest
+	@OptionsSource
+	public void instanceChecks(CompileOptions opts) throws Throwable {
+		var def = ClassDef.create("fi.benjami.code4jvm.test.InstanceChecks", Access.PUBLIC);
+		def.interfaces(Type.of(InstanceChecks.class));
+		def.addEmptyConstructor(Access.PUBLIC);
+		
+		{
+			var method = def.addMethod(Type.BOOLEAN, "isString", Access.PUBLIC);
+			var arg = method.arg(Type.OBJECT);
+			method.add(Return.value(method.add(Instanceof.isInstance(arg, Type.STRING))));
+		}
+		{
+			var method = def.addMethod(Type.BOOLEAN, "isStringArray", Access.PUBLIC);
+			var arg = method.arg(Type.OBJECT);
+			method.add(Return.value(method.add(Instanceof.isInstance(arg, Type.STRING.array(1)))));
+		}
+		
+		var instance = (InstanceChecks) TestUtils.newInstance(def, opts);
+		assertTrue(instance.isString("test"));
+		assertFalse(instance.isString(new Object()));
+		assertFalse(instance.isString(null));
+		assertTrue(instance.isStringArray(new String[0]));
+		assertFalse(instance.isStringArray("test"));
+	}
+	
 	private Method castTester(ClassDef def, String name, Type from, Type to) {
 		var method = def.addMethod(to, name, Access.PUBLIC);
 		var arg = method.arg(from);